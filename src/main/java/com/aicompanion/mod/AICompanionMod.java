@@ -4,8 +4,21 @@ import com.aicompanion.mod.client.gui.AdminPanelScreen;
 import com.aicompanion.mod.client.key.KeyBindings;
 import com.aicompanion.mod.command.AICompanionCommand;
 import com.aicompanion.mod.config.AICompanionConfig;
+import com.aicompanion.mod.entity.SkinRegistry;
+import com.aicompanion.mod.entity.ai.CompanionChunkTickets;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
+import com.aicompanion.mod.entity.ai.FormationManager;
+import com.aicompanion.mod.entity.ai.SafeSpotCache;
+import com.aicompanion.mod.entity.ai.pathfinding.CompanionPathCache;
+import com.aicompanion.mod.entity.ai.pathfinding.CompanionPathWorkers;
+import com.aicompanion.mod.entity.ai.pathfinding.RegionGraph;
+import com.aicompanion.mod.init.ModDataSerializers;
 import com.aicompanion.mod.init.ModEntities;
+import com.aicompanion.mod.network.CompanionRoster;
 import com.aicompanion.mod.network.NetworkHandler;
+import com.aicompanion.mod.network.PacketGovernor;
+import com.aicompanion.mod.web.CompanionReadModel;
 import com.aicompanion.mod.web.WebServer;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.settings.KeyBinding;
@@ -46,6 +59,7 @@ public class AICompanionMod {
         
         // Register mod components
         ModEntities.register(modEventBus);
+        ModDataSerializers.register(modEventBus);
         
         // Register setup methods
         modEventBus.addListener(this::setup);
@@ -156,10 +170,7 @@ public class AICompanionMod {
                                ": type=" + skinTypeStr + ", path=" + skinPathStr);
                     
                     // Call the appropriate method on the companion entity
-                    companion.setSkinType(skinTypeStr);
-                    if (!skinPathStr.isEmpty()) {
-                        companion.setSkinPath(skinPathStr);
-                    }
+                    companion.setSkin(skinTypeStr, skinPathStr.isEmpty() ? companion.getSkinPath() : skinPathStr);
                     
                     return true;
                 } else {
@@ -245,6 +256,20 @@ public class AICompanionMod {
             // Stop web server if it's running
             LOGGER.info("Stopping web interface server");
             WebServer.getInstance().stop();
+            
+            // Cached paths belong to the worlds being unloaded
+            CompanionPathWorkers.shutdown();
+            CompanionPathCache.getInstance().clear();
+            RegionGraph.clearAll();
+            CompanionWorkScheduler.getInstance().clear();
+            SafeSpotCache.getInstance().clear();
+            FormationManager.getInstance().clear();
+            CompanionChunkTickets.getInstance().clear();
+            CompanionIndex.getInstance().clear();
+            CompanionRoster.getInstance().clear();
+            PacketGovernor.getInstance().clear();
+            SkinRegistry.get(false).clear();
+            CompanionReadModel.getInstance().clear();
         }
     }
     
@@ -0,0 +1,75 @@
+package com.aicompanion.mod.client;
+
+import com.aicompanion.mod.network.message.CompanionRosterMessage;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The player's companions as last sent by the server, for the management screen.
+ *
+ * Snapshot pages replace the roster, deltas patch it. Whoever shows the roster
+ * can register a listener to hear about changes.
+ */
+@OnlyIn(Dist.CLIENT)
+public class ClientCompanionRoster {
+    private static final ClientCompanionRoster INSTANCE = new ClientCompanionRoster();
+
+    private final Map<UUID, CompanionRosterMessage.Entry> entries = new LinkedHashMap<>();
+    // Set once all pages of the latest snapshot have arrived
+    private boolean complete = false;
+    private Runnable listener;
+
+    public static ClientCompanionRoster getInstance() {
+        return INSTANCE;
+    }
+
+    public void accept(CompanionRosterMessage message) {
+        if (message.getType() == CompanionRosterMessage.Type.SNAPSHOT) {
+            if (message.getPage() == 0) {
+                this.entries.clear();
+            }
+            this.complete = message.getPage() == message.getPageCount() - 1;
+        }
+
+        for (CompanionRosterMessage.Entry entry : message.getEntries()) {
+            this.entries.put(entry.getUuid(), entry);
+        }
+        for (UUID uuid : message.getRemoved()) {
+            this.entries.remove(uuid);
+        }
+
+        if (this.listener != null) {
+            this.listener.run();
+        }
+    }
+
+    public List<CompanionRosterMessage.Entry> getEntries() {
+        return new ArrayList<>(this.entries.values());
+    }
+
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Run the listener on every change, or stop with null
+     */
+    public void setListener(@Nullable Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Drop the roster when the screen no longer receives updates for it
+     */
+    public void clear() {
+        this.entries.clear();
+        this.complete = false;
+    }
+}
@@ -3,7 +3,9 @@ package com.aicompanion.mod.client.gui;
 import com.aicompanion.mod.AICompanionMod;
 import com.aicompanion.mod.entity.AICompanionEntity;
 import com.aicompanion.mod.network.NetworkHandler;
+import com.aicompanion.mod.network.message.BatchCommandMessage;
 import com.aicompanion.mod.network.message.CommandMessage;
+import com.aicompanion.mod.network.message.CommandPayload;
 import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.systems.RenderSystem;
 import net.minecraft.client.Minecraft;
@@ -12,12 +14,15 @@ import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.client.gui.widget.button.Button;
 import net.minecraft.client.resources.I18n;
 import net.minecraft.entity.Entity;
+import net.minecraft.item.ItemStack;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.text.StringTextComponent;
 import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -30,7 +35,7 @@ public class CompanionCommandScreen extends Screen {
     private static final int BACKGROUND_WIDTH = 248;
     private static final int BACKGROUND_HEIGHT = 166;
     
-    private final String companionUuid;
+    private final List<UUID> companionUuids;
     private final String companionName;
     private TextFieldWidget commandField;
     
@@ -45,8 +50,15 @@ public class CompanionCommandScreen extends Screen {
      * Constructor
      */
     public CompanionCommandScreen(String companionUuid, String companionName) {
+        this(Collections.singletonList(UUID.fromString(companionUuid)), companionName);
+    }
+    
+    /**
+     * Constructor for sending the same command to a group of companions
+     */
+    public CompanionCommandScreen(List<UUID> companionUuids, String companionName) {
         super(new TranslationTextComponent("screen.aicompanion.command_companion"));
-        this.companionUuid = companionUuid;
+        this.companionUuids = companionUuids;
         this.companionName = companionName;
     }
     
@@ -184,8 +196,16 @@ public class CompanionCommandScreen extends Screen {
         String command = this.commandField.getValue().trim();
         
         if (!command.isEmpty()) {
-            // Send command to the server
-            NetworkHandler.sendToServer(new CommandMessage(companionUuid, command));
+            // Send command to the server, in as few packets as possible for a group
+            if (companionUuids.size() == 1) {
+                NetworkHandler.sendToServer(new CommandMessage(companionUuids.get(0), command, null, ItemStack.EMPTY));
+            } else {
+                CommandPayload payload = new CommandPayload(command, null, null);
+                for (int i = 0; i < companionUuids.size(); i += BatchCommandMessage.MAX_COMPANIONS) {
+                    List<UUID> chunk = companionUuids.subList(i, Math.min(i + BatchCommandMessage.MAX_COMPANIONS, companionUuids.size()));
+                    NetworkHandler.sendToServer(new BatchCommandMessage(chunk, payload));
+                }
+            }
             
             // Close the screen
             this.onClose();
@@ -1,9 +1,11 @@
 package com.aicompanion.mod.client.gui;
 
 import com.aicompanion.mod.AICompanionMod;
-import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.client.ClientCompanionRoster;
 import com.aicompanion.mod.network.NetworkHandler;
 import com.aicompanion.mod.network.message.CompanionManagementMessage;
+import com.aicompanion.mod.network.message.CompanionRosterMessage;
+import com.aicompanion.mod.network.message.RosterSubscriptionMessage;
 import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.systems.RenderSystem;
 import net.minecraft.client.Minecraft;
@@ -11,7 +13,6 @@ import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.client.gui.widget.button.Button;
 import net.minecraft.client.gui.widget.list.ExtendedList;
-import net.minecraft.entity.Entity;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.text.StringTextComponent;
 import net.minecraft.util.text.TranslationTextComponent;
@@ -19,7 +20,9 @@ import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -31,6 +34,9 @@ public class CompanionManagementScreen extends Screen {
     private static final ResourceLocation BACKGROUND = new ResourceLocation(AICompanionMod.MOD_ID, "textures/gui/companion_management.png");
     private static final int BACKGROUND_WIDTH = 248;
     private static final int BACKGROUND_HEIGHT = 200;
+    // Ask for the roster again if none arrived in this time, the server may have dropped the request
+    private static final int ROSTER_RETRY_TICKS = 40;
+    private static final int ROSTER_MAX_REQUESTS = 4;
     
     private final Screen parentScreen;
     private CompanionList companionList;
@@ -41,6 +47,12 @@ public class CompanionManagementScreen extends Screen {
     private Button commandButton;
     private TextFieldWidget searchField;
     private List<CompanionEntry> allCompanions;
+    // Companions marked with shift-click or Ctrl+A, to command as a group
+    private final Set<String> markedUuids = new HashSet<>();
+    // init() also runs when the window is resized, only subscribe once per time the screen is shown
+    private boolean subscribed = false;
+    private int rosterRequests = 0;
+    private int rosterWaitTicks = 0;
     
     /**
      * Constructor
@@ -72,9 +84,6 @@ public class CompanionManagementScreen extends Screen {
         this.companionList = new CompanionList(guiLeft + 10, guiTop + 45, BACKGROUND_WIDTH - 20, 100);
         this.children.add(companionList);
         
-        // Populate companion list
-        populateCompanionList();
-        
         // Create action buttons
         this.teleportButton = new Button(guiLeft + 10, guiTop + 150, 55, 20,
                 new TranslationTextComponent("button.aicompanion.teleport"), this::onTeleportClicked);
@@ -98,36 +107,80 @@ public class CompanionManagementScreen extends Screen {
         this.addButton(commandButton);
         this.addButton(backButton);
         
+        // Populate companion list, and again whenever the server sends roster changes
+        ClientCompanionRoster.getInstance().setListener(this::populateCompanionList);
+        if (!this.subscribed) {
+            this.subscribed = true;
+            this.rosterRequests = 0;
+            this.requestRoster();
+        }
+        populateCompanionList();
+        
         // Initial state: disable action buttons until selection
         updateButtonStates();
     }
     
+    private void requestRoster() {
+        NetworkHandler.sendToServer(new RosterSubscriptionMessage(true));
+        this.rosterRequests++;
+        this.rosterWaitTicks = 0;
+    }
+    
+    @Override
+    public void tick() {
+        super.tick();
+        this.searchField.tick();
+        
+        // Subscribing again just sends a new snapshot
+        if (this.subscribed && !ClientCompanionRoster.getInstance().isComplete()
+                && ++this.rosterWaitTicks >= ROSTER_RETRY_TICKS && this.rosterRequests < ROSTER_MAX_REQUESTS) {
+            this.requestRoster();
+        }
+    }
+    
     /**
-     * Populate the list with current companions
+     * Populate the list with the companions in the roster sent by the server
      */
     private void populateCompanionList() {
+        CompanionEntry selected = companionList.getSelected();
+        String selectedUuid = selected != null ? selected.uuid : null;
         allCompanions.clear();
         
-        // Get player's companions from the world
-        if (minecraft != null && minecraft.level != null) {
-            for (Entity entity : minecraft.level.entitiesForRendering()) {
-                if (entity instanceof AICompanionEntity) {
-                    AICompanionEntity companion = (AICompanionEntity) entity;
-                    
-                    // Only show companions owned by this player
-                    UUID ownerUuid = companion.getOwnerUUID();
-                    if (ownerUuid != null && ownerUuid.equals(minecraft.player.getUUID())) {
-                        allCompanions.add(new CompanionEntry(
-                                companion.getUUID().toString(), 
-                                companion.getName().getString(), 
-                                (int)companion.distanceTo(minecraft.player)));
-                    }
-                }
+        Set<String> present = new HashSet<>();
+        if (minecraft != null && minecraft.player != null) {
+            for (CompanionRosterMessage.Entry companion : ClientCompanionRoster.getInstance().getEntries()) {
+                allCompanions.add(new CompanionEntry(
+                        companion.getUuid().toString(),
+                        companion.getName(),
+                        getLocationText(companion)));
+                present.add(companion.getUuid().toString());
             }
         }
+        // Companions that are gone can't stay marked
+        markedUuids.retainAll(present);
         
         // Apply any current filter
         applyFilter(searchField.getValue());
+        
+        // Keep the selection on the same companion
+        companionList.setSelected(null);
+        for (CompanionEntry entry : companionList.children()) {
+            if (entry.uuid.equals(selectedUuid)) {
+                companionList.setSelected(entry);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Distance for companions in the player's dimension, the dimension otherwise
+     */
+    private String getLocationText(CompanionRosterMessage.Entry companion) {
+        if (companion.getDimension().equals(minecraft.player.level.dimension().location())) {
+            int distance = (int) Math.sqrt(companion.getPos().distSqr(minecraft.player.position(), true));
+            return distance + " blocks away";
+        }
+        return "In " + companion.getDimension().getPath();
     }
     
     /**
@@ -171,7 +224,20 @@ public class CompanionManagementScreen extends Screen {
         teleportButton.active = hasSelection;
         renameButton.active = hasSelection;
         removeButton.active = hasSelection;
-        commandButton.active = hasSelection;
+        commandButton.active = hasSelection || !markedUuids.isEmpty();
+    }
+    
+    @Override
+    public boolean keyPressed(int keyCode, int scanCode, int modifiers) {
+        // Ctrl+A marks every companion in the (filtered) list
+        if (Screen.isSelectAll(keyCode) && !this.searchField.isFocused()) {
+            for (CompanionEntry entry : companionList.children()) {
+                markedUuids.add(entry.uuid);
+            }
+            updateButtonStates();
+            return true;
+        }
+        return super.keyPressed(keyCode, scanCode, modifiers);
     }
     
     @Override
@@ -197,11 +263,28 @@ public class CompanionManagementScreen extends Screen {
         
         // Render the companion list
         this.companionList.render(matrixStack, mouseX, mouseY, partialTicks);
+        if (!ClientCompanionRoster.getInstance().isComplete() && allCompanions.isEmpty()) {
+            boolean gaveUp = this.rosterRequests >= ROSTER_MAX_REQUESTS && this.rosterWaitTicks >= ROSTER_RETRY_TICKS;
+            drawCenteredString(matrixStack, this.font, gaveUp ? "Couldn't load companions, reopen to try again" : "Loading companions...",
+                    this.width / 2, guiTop + 90, 0xAAAAAA);
+        } else if (allCompanions.isEmpty()) {
+            // The server only knows about companions in loaded chunks
+            drawCenteredString(matrixStack, this.font, "No loaded companions", this.width / 2, guiTop + 90, 0xAAAAAA);
+        }
         
         // Render buttons
         super.render(matrixStack, mouseX, mouseY, partialTicks);
     }
     
+    @Override
+    public void removed() {
+        // Opening another screen on top of this one resubscribes when coming back
+        NetworkHandler.sendToServer(new RosterSubscriptionMessage(false));
+        this.subscribed = false;
+        ClientCompanionRoster.getInstance().setListener(null);
+        ClientCompanionRoster.getInstance().clear();
+    }
+    
     @Override
     public void onClose() {
         this.minecraft.setScreen(this.parentScreen);
@@ -260,7 +343,16 @@ public class CompanionManagementScreen extends Screen {
      */
     private void onCommandClicked(Button button) {
         CompanionEntry selected = companionList.getSelected();
-        if (selected != null) {
+        if (!markedUuids.isEmpty()) {
+            // Command all marked companions together, including the selected one
+            List<UUID> uuids = new ArrayList<>();
+            for (CompanionEntry entry : allCompanions) {
+                if (markedUuids.contains(entry.uuid) || entry == selected) {
+                    uuids.add(UUID.fromString(entry.uuid));
+                }
+            }
+            minecraft.setScreen(new CompanionCommandScreen(uuids, uuids.size() + " companions"));
+        } else if (selected != null) {
             // Open command screen
             minecraft.setScreen(new CompanionCommandScreen(selected.uuid, selected.name));
         }
@@ -306,27 +398,39 @@ public class CompanionManagementScreen extends Screen {
         
         private final String uuid;
         private final String name;
-        private final int distance;
+        private final String location;
         
-        public CompanionEntry(String uuid, String name, int distance) {
+        public CompanionEntry(String uuid, String name, String location) {
             this.uuid = uuid;
             this.name = name;
-            this.distance = distance;
+            this.location = location;
         }
         
         @Override
         public void render(MatrixStack matrixStack, int index, int top, int left, int width, int height, int mouseX, int mouseY, boolean isHovered, float partialTicks) {
+            // Highlight marked companions
+            if (markedUuids.contains(uuid)) {
+                fill(matrixStack, left, top, left + width, top + height, 0x40FFFFFF);
+            }
+            
             // Render name
             font.draw(matrixStack, name, left + 5, top + 5, 0xFFFFFF);
             
-            // Render distance
-            String distanceText = distance + " blocks away";
-            font.draw(matrixStack, distanceText, 
-                    left + width - font.width(distanceText) - 5, top + 5, 0xAAAAAA);
+            // Render distance or dimension
+            font.draw(matrixStack, location, 
+                    left + width - font.width(location) - 5, top + 5, 0xAAAAAA);
         }
         
         @Override
         public boolean mouseClicked(double mouseX, double mouseY, int button) {
+            // Shift-click marks or unmarks a companion for group commands
+            if (Screen.hasShiftDown()) {
+                if (!markedUuids.remove(uuid)) {
+                    markedUuids.add(uuid);
+                }
+                updateButtonStates();
+                return true;
+            }
             companionList.setSelected(this);
             return true;
         }
@@ -1,31 +1,114 @@
 package com.aicompanion.mod.command;
 
+import com.aicompanion.mod.config.AICompanionConfig;
 import com.aicompanion.mod.entity.AICompanionEntity;
-import com.aicompanion.mod.network.NetworkHandler;
-import com.aicompanion.mod.network.message.CommandMessage;
+import com.aicompanion.mod.entity.MiniBuildEntity;
+import com.aicompanion.mod.entity.ai.BlockReservationManager;
+import com.aicompanion.mod.entity.ai.CompanionChunkTickets;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
+import com.aicompanion.mod.entity.ai.build.BuildJob;
+import com.aicompanion.mod.entity.ai.build.BuildJobData;
+import com.aicompanion.mod.entity.ai.goal.BreakBlockGoal;
+import com.aicompanion.mod.entity.ai.pathfinding.CompanionPathCache;
+import com.aicompanion.mod.network.NetworkMetrics;
+import com.aicompanion.mod.network.PacketGovernor;
+import com.aicompanion.mod.network.message.CommandPayload;
+import com.aicompanion.mod.world.BlockPresenceIndex;
+import com.aicompanion.mod.world.BlockStateMemo;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.block.Block;
 import net.minecraft.command.CommandSource;
 import net.minecraft.command.Commands;
+import net.minecraft.command.ISuggestionProvider;
 import net.minecraft.command.arguments.BlockPosArgument;
 import net.minecraft.command.arguments.ItemArgument;
+import net.minecraft.command.arguments.ResourceLocationArgument;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.inventory.IInventory;
 import net.minecraft.item.ItemStack;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tileentity.LockableTileEntity;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.tags.ITag;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.fml.network.NetworkDirection;
+import net.minecraftforge.registries.ForgeRegistries;
 
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 public class AICompanionCommand {
+    private static final int DEFAULT_SEARCH_RADIUS = 32;
+    private static final int MAX_SEARCH_RADIUS = 128;
+    private static final int MAX_COLLECT_BLOCKS = 64;
+    // Builds start at most this far from the player, companions are only picked up within 32 blocks
+    private static final int MAX_BUILD_DISTANCE = 64;
+    // Same reach vanilla containers allow the player to use them from
+    private static final double CONTAINER_REACH_SQ = 64.0D;
     
     public static void register(CommandDispatcher<CommandSource> dispatcher) {
         dispatcher.register(
             Commands.literal("aicompanion")
                 .requires(source -> source.hasPermission(0)) // Anyone can use
+                .then(searchCommand("mine", false))
+                .then(searchCommand("collect", true))
+                .then(buildCommand())
+                .then(Commands.literal("all")
+                    .then(Commands.argument("command", StringArgumentType.word())
+                        .suggests((context, builder) -> builder
+                            .suggest("follow")
+                            .suggest("stay")
+                            .suggest("move")
+                            .suggest("break")
+                            .suggest("place")
+                            .suggest("use")
+                            .build())
+                        .executes(context -> executeGroupCommand(
+                            context.getSource(),
+                            StringArgumentType.getString(context, "command"),
+                            null,
+                            ItemStack.EMPTY
+                        ))
+                        .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                            .executes(context -> executeGroupCommand(
+                                context.getSource(),
+                                StringArgumentType.getString(context, "command"),
+                                BlockPosArgument.getBlockPos(context, "pos"),
+                                ItemStack.EMPTY
+                            ))
+                            .then(Commands.argument("item", ItemArgument.item())
+                                .executes(context -> executeGroupCommand(
+                                    context.getSource(),
+                                    StringArgumentType.getString(context, "command"),
+                                    BlockPosArgument.getBlockPos(context, "pos"),
+                                    ItemArgument.getItem(context, "item").getDefaultInstance()
+                                ))
+                            )
+                        )
+                    )
+                )
+                .then(Commands.literal("stats")
+                    .requires(source -> source.hasPermission(2)) // Operators only
+                    .executes(context -> showStats(context.getSource()))
+                    .then(Commands.literal("network")
+                        .executes(context -> showNetworkStats(context.getSource()))
+                    )
+                )
                 .then(Commands.argument("command", StringArgumentType.word())
                     .suggests((context, builder) -> builder
                         .suggest("follow")
@@ -64,22 +147,274 @@ public class AICompanionCommand {
         );
     }
     
-    private static int executeCommand(CommandSource source, String command, BlockPos pos, ItemStack item) throws CommandSyntaxException {
+    /**
+     * Build the mine/collect commands, which find blocks by type instead of by coordinates
+     */
+    private static LiteralArgumentBuilder<CommandSource> searchCommand(String name, boolean collectAll) {
+        return Commands.literal(name)
+            .then(Commands.argument("block", ResourceLocationArgument.id())
+                .suggests((context, builder) -> ISuggestionProvider.suggestResource(ForgeRegistries.BLOCKS.getKeys(), builder))
+                .executes(context -> executeSearch(
+                    context.getSource(),
+                    ResourceLocationArgument.getId(context, "block"),
+                    DEFAULT_SEARCH_RADIUS,
+                    collectAll
+                ))
+                .then(Commands.argument("radius", IntegerArgumentType.integer(1, MAX_SEARCH_RADIUS))
+                    .executes(context -> executeSearch(
+                        context.getSource(),
+                        ResourceLocationArgument.getId(context, "block"),
+                        IntegerArgumentType.getInteger(context, "radius"),
+                        collectAll
+                    ))
+                )
+            );
+    }
+    
+    private static int executeSearch(CommandSource source, ResourceLocation id, int radius, boolean collectAll) throws CommandSyntaxException {
         ServerPlayerEntity player = source.getPlayerOrException();
+        Set<Block> blocks = resolveBlocks(id);
+        if (blocks == null) {
+            player.sendMessage(new StringTextComponent("Unknown block or block tag: " + id), UUID.randomUUID());
+            return 0;
+        }
         
-        // Handle help command
-        if (command.equalsIgnoreCase("help")) {
-            displayHelp(player);
-            return 1;
+        AICompanionEntity companion = findNearestCompanion(player);
+        if (companion == null) {
+            return 0;
         }
         
-        // Handle list command - find all owned companions
-        if (command.equalsIgnoreCase("list")) {
-            listCompanions(player);
-            return 1;
+        // The index only scans chunk sections whose palette contains one of the blocks
+        BlockPresenceIndex index = BlockPresenceIndex.get((ServerWorld) player.level);
+        List<BlockPos> found = index.findBlocks(
+                (ServerWorld) player.level, companion.blockPosition(), radius, blocks, collectAll ? MAX_COLLECT_BLOCKS : 1);
+        if (found.isEmpty()) {
+            player.sendMessage(new StringTextComponent("No " + id + " found within " + radius + " blocks"), UUID.randomUUID());
+            return 0;
+        }
+        
+        companion.processCommand("break", found.get(0), ItemStack.EMPTY);
+        if (!companion.getCurrentTask().equals("break") || !found.get(0).equals(companion.getTargetPos())) {
+            // Inactive, or lost its owner; there is nothing to queue the blocks for
+            player.sendMessage(new StringTextComponent("AI Companion can't take commands right now"), UUID.randomUUID());
+            return 0;
+        }
+        if (collectAll) {
+            companion.queueBlocksToBreak(found);
+            player.sendMessage(new StringTextComponent(
+                    "AI Companion will collect " + found.size() + " blocks of " + id), UUID.randomUUID());
+            return found.size();
+        }
+        
+        // Mining takes the whole vein the nearest block belongs to
+        List<BlockPos> vein = BreakBlockGoal.findVein(
+                player.level, found.get(0), AICompanionConfig.SERVER.maxVeinSize.get());
+        companion.queueBlocksToBreak(vein);
+        if (vein.size() > 1) {
+            player.sendMessage(new StringTextComponent(
+                    "AI Companion will mine a vein of " + vein.size() + " " + id), UUID.randomUUID());
+        }
+        return vein.size();
+    }
+    
+    /**
+     * Build the build commands, which have companions rebuild the player's nearest mini build
+     */
+    private static LiteralArgumentBuilder<CommandSource> buildCommand() {
+        return Commands.literal("build")
+            .then(Commands.literal("status")
+                .executes(context -> showBuildStatus(context.getSource()))
+            )
+            .then(Commands.literal("cancel")
+                .executes(context -> cancelBuilds(context.getSource()))
+            )
+            .then(Commands.argument("origin", BlockPosArgument.blockPos())
+                .executes(context -> startBuild(
+                    context.getSource(),
+                    BlockPosArgument.getBlockPos(context, "origin"),
+                    null
+                ))
+                .then(Commands.argument("container", BlockPosArgument.blockPos())
+                    .executes(context -> startBuild(
+                        context.getSource(),
+                        BlockPosArgument.getBlockPos(context, "origin"),
+                        BlockPosArgument.getBlockPos(context, "container")
+                    ))
+                )
+            );
+    }
+    
+    private static int startBuild(CommandSource source, BlockPos origin, @Nullable BlockPos container) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrException();
+        String playerId = player.getUUID().toString();
+        MiniBuildEntity miniBuild = player.level.getEntitiesOfClass(
+                MiniBuildEntity.class,
+                player.getBoundingBox().inflate(32.0D),
+                entity -> playerId.equals(entity.getOwnerUUID())
+        ).stream().min(Comparator.comparingDouble(entity -> entity.distanceToSqr(player))).orElse(null);
+        if (miniBuild == null) {
+            player.sendMessage(new StringTextComponent("You don't have a mini build nearby"), UUID.randomUUID());
+            return 0;
+        }
+        
+        if (!player.level.isLoaded(origin) || !origin.closerThan(player.position(), MAX_BUILD_DISTANCE)) {
+            player.sendMessage(new StringTextComponent("Builds must start within " + MAX_BUILD_DISTANCE + 
+                    " blocks of you"), UUID.randomUUID());
+            return 0;
+        }
+        if (!player.level.mayInteract(player, origin)) {
+            player.sendMessage(new StringTextComponent("You can't build there"), UUID.randomUUID());
+            return 0;
+        }
+        
+        if (container != null) {
+            TileEntity tileEntity = player.level.isLoaded(container) ? player.level.getBlockEntity(container) : null;
+            if (!(tileEntity instanceof IInventory)) {
+                player.sendMessage(new StringTextComponent("There is no container at " + 
+                        container.getX() + ", " + container.getY() + ", " + container.getZ()), UUID.randomUUID());
+                return 0;
+            }
+            // Companions only take from containers the player could open right now
+            if (player.distanceToSqr(Vector3d.atCenterOf(container)) > CONTAINER_REACH_SQ
+                    || !player.level.mayInteract(player, container) || !((IInventory) tileEntity).stillValid(player)) {
+                player.sendMessage(new StringTextComponent("That container is out of your reach"), UUID.randomUUID());
+                return 0;
+            }
+            // Tells the player the container is locked
+            if (tileEntity instanceof LockableTileEntity && !((LockableTileEntity) tileEntity).canOpen(player)) {
+                return 0;
+            }
         }
         
-        // Find the closest owned AI companion
+        List<AICompanionEntity> companions = player.level.getEntitiesOfClass(
+                AICompanionEntity.class,
+                player.getBoundingBox().inflate(32.0D),
+                entity -> entity.isActive() && player.getUUID().equals(entity.getOwnerUUID())
+        );
+        if (companions.isEmpty()) {
+            player.sendMessage(new StringTextComponent("You don't have any AI companions nearby"), UUID.randomUUID());
+            return 0;
+        }
+        
+        BuildJobData data = BuildJobData.get(player.getServer());
+        BuildJob job = data.createJob(player.getUUID(), player.level.dimension(), origin, container, miniBuild.getMiniBlocks());
+        if (job.getTotal() == 0) {
+            data.removeJob(job.getId());
+            player.sendMessage(new StringTextComponent("That mini build has no blocks to build"), UUID.randomUUID());
+            return 0;
+        }
+        // Companions check each block again as they place it, this turns down builds reaching into protected terrain up front
+        for (int i = 0; i < job.getTotal(); i++) {
+            BlockPos pos = job.getWorldPos(i);
+            if (!player.level.mayInteract(player, pos)) {
+                data.removeJob(job.getId());
+                player.sendMessage(new StringTextComponent("You can't build at " + 
+                        pos.getX() + ", " + pos.getY() + ", " + pos.getZ()), UUID.randomUUID());
+                return 0;
+            }
+        }
+        
+        for (AICompanionEntity companion : companions) {
+            companion.startBuildJob(job.getId());
+        }
+        player.sendMessage(new StringTextComponent("Started build #" + job.getId() + ": " + job.getTotal() + 
+                " blocks with " + companions.size() + " companion(s)"), UUID.randomUUID());
+        return job.getTotal();
+    }
+    
+    private static int showBuildStatus(CommandSource source) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrException();
+        List<BuildJob> jobs = BuildJobData.get(player.getServer()).getJobsFor(player.getUUID());
+        if (jobs.isEmpty()) {
+            player.sendMessage(new StringTextComponent("You have no builds in progress"), UUID.randomUUID());
+            return 0;
+        }
+        
+        for (BuildJob job : jobs) {
+            BlockPos origin = job.getOrigin();
+            player.sendMessage(new StringTextComponent("Build #" + job.getId() + " at " + 
+                    origin.getX() + ", " + origin.getY() + ", " + origin.getZ() + ": " + 
+                    job.getCompleted() + "/" + job.getTotal() + " blocks (" + job.getCompleted() * 100 / job.getTotal() + "%), " + 
+                    job.getSkipped() + " skipped, " + job.getWorkerCount() + " companion(s)"), UUID.randomUUID());
+        }
+        return jobs.size();
+    }
+    
+    private static int cancelBuilds(CommandSource source) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrException();
+        BuildJobData data = BuildJobData.get(player.getServer());
+        List<BuildJob> jobs = data.getJobsFor(player.getUUID());
+        // Companions on these jobs go idle by themselves once the job is gone
+        for (BuildJob job : jobs) {
+            data.removeJob(job.getId());
+        }
+        player.sendMessage(new StringTextComponent("Cancelled " + jobs.size() + " build(s)"), UUID.randomUUID());
+        return jobs.size();
+    }
+    
+    /**
+     * Show how well the companion caches and work queues are doing
+     */
+    private static int showStats(CommandSource source) {
+        long memoHits = BlockStateMemo.getHits();
+        long memoLookups = memoHits + BlockStateMemo.getMisses();
+        source.sendSuccess(new StringTextComponent("Block state memo: " + memoHits + "/" + memoLookups + 
+                " hits (" + percent(memoHits, memoLookups) + "%)"), false);
+        
+        CompanionPathCache pathCache = CompanionPathCache.getInstance();
+        long pathHits = pathCache.getHits() + pathCache.getSuffixHits();
+        long pathLookups = pathHits + pathCache.getMisses();
+        source.sendSuccess(new StringTextComponent("Path cache: " + pathCache.size() + " paths, " + 
+                pathHits + "/" + pathLookups + " hits (" + percent(pathHits, pathLookups) + "%), " + 
+                pathCache.getSuffixHits() + " suffix hits, " + pathCache.getInvalidations() + " invalidated"), false);
+        
+        CompanionWorkScheduler scheduler = CompanionWorkScheduler.getInstance();
+        source.sendSuccess(new StringTextComponent("Work scheduler: " + scheduler.getPendingCount() + " pending, " + 
+                scheduler.getJobsRun() + " run, " + scheduler.getTicksOverBudget() + " ticks over budget"), false);
+        
+        source.sendSuccess(new StringTextComponent("Block claims: " + 
+                BlockReservationManager.getInstance().getClaimCount()), false);
+        source.sendSuccess(new StringTextComponent("Chunk tickets: " + 
+                CompanionChunkTickets.getInstance().getTicketCount()), false);
+        
+        PacketGovernor governor = PacketGovernor.getInstance();
+        StringBuilder dropped = new StringBuilder();
+        for (PacketGovernor.Kind kind : PacketGovernor.Kind.values()) {
+            dropped.append(dropped.length() == 0 ? "" : ", ").append(kind.name().toLowerCase()).append(' ').append(governor.getDropped(kind));
+        }
+        source.sendSuccess(new StringTextComponent("Packets dropped: " + dropped + "; commands coalesced: " + 
+                governor.getCoalesced()), false);
+        return 1;
+    }
+    
+    private static long percent(long part, long total) {
+        return total == 0 ? 0 : part * 100 / total;
+    }
+    
+    /**
+     * Resolve a block id, falling back to a block tag with that name
+     */
+    @Nullable
+    private static Set<Block> resolveBlocks(ResourceLocation id) {
+        Set<Block> blocks = new HashSet<>();
+        if (ForgeRegistries.BLOCKS.containsKey(id)) {
+            blocks.add(ForgeRegistries.BLOCKS.getValue(id));
+            return blocks;
+        }
+        
+        ITag<Block> tag = BlockTags.getAllTags().getTag(id);
+        if (tag == null || tag.getValues().isEmpty()) {
+            return null;
+        }
+        blocks.addAll(tag.getValues());
+        return blocks;
+    }
+    
+    /**
+     * Find the player's closest companion within 32 blocks, telling them if there is none
+     */
+    @Nullable
+    private static AICompanionEntity findNearestCompanion(ServerPlayerEntity player) {
         List<AICompanionEntity> companions = player.level.getEntitiesOfClass(
                 AICompanionEntity.class, 
                 player.getBoundingBox().inflate(32.0D),
@@ -88,7 +423,7 @@ public class AICompanionCommand {
         
         if (companions.isEmpty()) {
             player.sendMessage(new StringTextComponent("You don't have any AI companions nearby"), UUID.randomUUID());
-            return 0;
+            return null;
         }
         
         // Get the closest companion
@@ -101,6 +436,29 @@ public class AICompanionCommand {
             
             player.sendMessage(new StringTextComponent("Commanding your nearest AI companion"), UUID.randomUUID());
         }
+        return companion;
+    }
+    
+    private static int executeCommand(CommandSource source, String command, BlockPos pos, ItemStack item) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrException();
+        
+        // Handle help command
+        if (command.equalsIgnoreCase("help")) {
+            displayHelp(player);
+            return 1;
+        }
+        
+        // Handle list command - find all owned companions
+        if (command.equalsIgnoreCase("list")) {
+            listCompanions(player);
+            return 1;
+        }
+        
+        // Find the closest owned AI companion
+        AICompanionEntity companion = findNearestCompanion(player);
+        if (companion == null) {
+            return 0;
+        }
         
         // Process the command
         switch (command.toLowerCase()) {
@@ -190,14 +548,60 @@ public class AICompanionCommand {
                 return 0;
         }
         
-        // Send network message to update clients
-        NetworkHandler.sendToAllTracking(
-                new CommandMessage(companion.getId(), command, pos, item),
-                companion);
-        
+        // Clients see the new task and target through the companion's entity data
         return 1;
     }
     
+    /**
+     * Give the same command to all of the player's companions in the player's world
+     */
+    private static int executeGroupCommand(CommandSource source, String command, @Nullable BlockPos pos, ItemStack item) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrException();
+        List<AICompanionEntity> companions = CompanionIndex.getInstance().getOwnedBy(player.getUUID()).stream()
+                .filter(companion -> companion.level == player.level)
+                .collect(Collectors.toList());
+        if (companions.isEmpty()) {
+            player.sendMessage(new StringTextComponent("You don't have any AI companions in this world"), UUID.randomUUID());
+            return 0;
+        }
+        
+        // Place and use fall back to what the player is holding, like for a single companion
+        String name = command.toLowerCase();
+        ItemStack commandItem = item;
+        if (commandItem.isEmpty() && (name.equals("place") || name.equals("use"))) {
+            commandItem = player.getMainHandItem().copy();
+        }
+        
+        CommandPayload payload = new CommandPayload(name, pos, commandItem);
+        for (AICompanionEntity companion : companions) {
+            payload.applyTo(companion);
+        }
+        player.sendMessage(new StringTextComponent("Sent " + name + " to " + companions.size() + " companion(s)"), UUID.randomUUID());
+        return companions.size();
+    }
+    
+    /**
+     * Traffic of every message type on the mod channel over the last minute
+     */
+    private static int showNetworkStats(CommandSource source) {
+        List<NetworkMetrics.Snapshot> snapshots = NetworkMetrics.getInstance().snapshot();
+        if (snapshots.isEmpty()) {
+            source.sendSuccess(new StringTextComponent("No mod network traffic yet"), false);
+            return 0;
+        }
+        
+        source.sendSuccess(new StringTextComponent("Mod network traffic, last " + NetworkMetrics.WINDOW_SECONDS + "s:"), false);
+        for (NetworkMetrics.Snapshot stats : snapshots) {
+            String direction = stats.direction == NetworkDirection.PLAY_TO_SERVER ? "to server" : "to client";
+            source.sendSuccess(new StringTextComponent(stats.name + " " + direction + ": " + 
+                    stats.sent + " sent (" + stats.sentBytes + " B), " + 
+                    stats.received + " received (" + stats.receivedBytes + " B), " + 
+                    String.format("decode %.2f ms, handle %.2f ms over %d", 
+                            stats.decodeNanos / 1.0E6D, stats.handleNanos / 1.0E6D, stats.handled)), false);
+        }
+        return snapshots.size();
+    }
+    
     private static void displayHelp(ServerPlayerEntity player) {
         player.sendMessage(new StringTextComponent("=== AI Companion Commands ==="), UUID.randomUUID());
         player.sendMessage(new StringTextComponent("/aicompanion follow - Make companion follow you"), UUID.randomUUID());
@@ -207,6 +611,11 @@ public class AICompanionCommand {
         player.sendMessage(new StringTextComponent("/aicompanion place <x> <y> <z> [item] - Make companion place item at position"), UUID.randomUUID());
         player.sendMessage(new StringTextComponent("/aicompanion use <item> [x y z] - Make companion use an item"), UUID.randomUUID());
         player.sendMessage(new StringTextComponent("/aicompanion skin [type] [path] - Change companion's skin"), UUID.randomUUID());
+        player.sendMessage(new StringTextComponent("/aicompanion mine <block|tag> [radius] - Mine the nearest vein of matching blocks"), UUID.randomUUID());
+        player.sendMessage(new StringTextComponent("/aicompanion collect <block|tag> [radius] - Break all matching blocks nearby"), UUID.randomUUID());
+        player.sendMessage(new StringTextComponent("/aicompanion build <x> <y> <z> [container x y z] - Rebuild your nearest mini build"), UUID.randomUUID());
+        player.sendMessage(new StringTextComponent("/aicompanion build status|cancel - Show or cancel your builds"), UUID.randomUUID());
+        player.sendMessage(new StringTextComponent("/aicompanion all <command> [x y z] [item] - Give a command to all your companions"), UUID.randomUUID());
         player.sendMessage(new StringTextComponent("/aicompanion list - List all your companions"), UUID.randomUUID());
     }
     
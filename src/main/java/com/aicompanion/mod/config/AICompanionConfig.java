@@ -51,12 +51,24 @@ public class AICompanionConfig {
         
         // Companion limits
         public final ForgeConfigSpec.IntValue maxCompanionsPerPlayer;
+        public final ForgeConfigSpec.IntValue maxVeinSize;
         
         // Attributes
         public final ForgeConfigSpec.DoubleValue movementSpeed;
         public final ForgeConfigSpec.DoubleValue healthAmount;
         public final ForgeConfigSpec.IntValue teleportDistance;
         
+        // Performance settings
+        public final ForgeConfigSpec.IntValue pathCacheSize;
+        public final ForgeConfigSpec.IntValue asyncPathThreads;
+        public final ForgeConfigSpec.IntValue maxPendingPathRequests;
+        public final ForgeConfigSpec.IntValue asyncPathDistance;
+        public final ForgeConfigSpec.IntValue maxRouteDistance;
+        public final ForgeConfigSpec.IntValue maxRouteSearchNodes;
+        public final ForgeConfigSpec.DoubleValue workTickBudgetMs;
+        public final ForgeConfigSpec.IntValue maxChunkTicketsPerPlayer;
+        public final ForgeConfigSpec.IntValue maxChunkTicketsTotal;
+        
         // Web Interface settings
         public final ForgeConfigSpec.BooleanValue enableWebInterface;
         public final ForgeConfigSpec.IntValue webInterfacePort;
@@ -85,6 +97,9 @@ public class AICompanionConfig {
             maxCompanionsPerPlayer = builder
                     .comment("Maximum number of companions per player")
                     .defineInRange("maxCompanionsPerPlayer", 3, 1, 10);
+            maxVeinSize = builder
+                    .comment("Maximum number of connected blocks a companion mines from one vein")
+                    .defineInRange("maxVeinSize", 64, 1, 512);
             
             // Attributes
             movementSpeed = builder
@@ -99,6 +114,48 @@ public class AICompanionConfig {
                     .comment("Distance at which companions teleport to owner (blocks)")
                     .defineInRange("teleportDistance", 12, 6, 24);
             
+            // Performance settings
+            builder.comment("Performance Settings")
+                   .push("performance");
+            
+            pathCacheSize = builder
+                    .comment("Maximum number of companion paths kept in the shared path cache (0 disables it)")
+                    .defineInRange("pathCacheSize", 512, 0, 8192);
+            
+            asyncPathThreads = builder
+                    .comment("Worker threads used for long companion path searches (0 searches on the server thread, requires restart)")
+                    .defineInRange("asyncPathThreads", 2, 0, 8);
+            
+            maxPendingPathRequests = builder
+                    .comment("Maximum number of queued asynchronous path searches before falling back to the server thread (requires restart)")
+                    .defineInRange("maxPendingPathRequests", 64, 1, 1024);
+            
+            asyncPathDistance = builder
+                    .comment("Moves longer than this many blocks search for a path asynchronously")
+                    .defineInRange("asyncPathDistance", 8, 0, 64);
+            
+            maxRouteDistance = builder
+                    .comment("Longest move (in blocks) that companions plan over the coarse region graph")
+                    .defineInRange("maxRouteDistance", 512, 16, 4096);
+            
+            maxRouteSearchNodes = builder
+                    .comment("Maximum number of regions explored when planning one long route (at most the 1024 sections the region graph keeps)")
+                    .defineInRange("maxRouteSearchNodes", 512, 64, 1024);
+            
+            workTickBudgetMs = builder
+                    .comment("Milliseconds per server tick spent on queued companion work; the rest waits for the next tick")
+                    .defineInRange("workTickBudgetMs", 2.0D, 0.1D, 50.0D);
+            
+            maxChunkTicketsPerPlayer = builder
+                    .comment("Chunks a player's working companions may keep loaded when the player is away (0 disables it)")
+                    .defineInRange("maxChunkTicketsPerPlayer", 16, 0, 256);
+            
+            maxChunkTicketsTotal = builder
+                    .comment("Chunks all working companions together may keep loaded")
+                    .defineInRange("maxChunkTicketsTotal", 256, 0, 4096);
+            
+            builder.pop(); // performance
+            
             // Web interface settings
             builder.comment("Web Interface Settings")
                    .push("webInterface");
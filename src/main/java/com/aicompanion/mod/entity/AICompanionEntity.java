@@ -1,10 +1,17 @@
 package com.aicompanion.mod.entity;
 
+import com.aicompanion.mod.entity.ai.CompanionChunkTickets;
+import com.aicompanion.mod.entity.ai.CompanionSpatialHash;
+import com.aicompanion.mod.entity.ai.FormationManager;
 import com.aicompanion.mod.entity.ai.goal.BreakBlockGoal;
+import com.aicompanion.mod.entity.ai.goal.BuildBlueprintGoal;
 import com.aicompanion.mod.entity.ai.goal.FollowOwnerGoal;
 import com.aicompanion.mod.entity.ai.goal.MoveToBlockGoal;
 import com.aicompanion.mod.entity.ai.goal.PlaceBlockGoal;
 import com.aicompanion.mod.entity.ai.goal.UseItemGoal;
+import com.aicompanion.mod.entity.ai.pathfinding.CompanionPathNavigator;
+import com.aicompanion.mod.init.ModDataSerializers;
+import com.aicompanion.mod.world.BlockChangeTracker;
 
 import net.minecraft.entity.AgeableEntity;
 import net.minecraft.entity.Entity;
@@ -22,28 +29,54 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.network.datasync.DataParameter;
 import net.minecraft.network.datasync.DataSerializers;
 import net.minecraft.network.datasync.EntityDataManager;
+import net.minecraft.pathfinding.PathNavigator;
 import net.minecraft.util.ActionResultType;
+import net.minecraft.util.DamageSource;
 import net.minecraft.util.Hand;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.util.text.StringTextComponent;
 import net.minecraft.world.World;
 import net.minecraft.world.server.ServerWorld;
 
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.UUID;
 
 public class AICompanionEntity extends TameableEntity {
     private static final DataParameter<String> CURRENT_TASK = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.STRING);
-    private static final DataParameter<Integer> TARGET_X = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.INT);
-    private static final DataParameter<Integer> TARGET_Y = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.INT);
-    private static final DataParameter<Integer> TARGET_Z = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.INT);
-    private static final DataParameter<Boolean> IS_ACTIVE = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.BOOLEAN);
-    private static final DataParameter<String> SKIN_TYPE = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.STRING);
-    private static final DataParameter<String> SKIN_PATH = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.STRING);
-    private static final DataParameter<String> TARGET_ENTITY_ID = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.STRING);
+    private static final DataParameter<CompanionTarget> TARGET = EntityDataManager.defineId(AICompanionEntity.class, ModDataSerializers.COMPANION_TARGET);
+    private static final DataParameter<Byte> STATE_FLAGS = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.BYTE);
+    // Id from the SkinRegistry
+    private static final DataParameter<Integer> SKIN_ID = EntityDataManager.defineId(AICompanionEntity.class, DataSerializers.INT);
+    
+    // Bits of STATE_FLAGS
+    private static final int FLAG_ACTIVE = 1;
+    private static final int FLAG_HIBERNATING = 2;
+    
+    // Parked companions wake up when their owner comes this close
+    private static final double WAKE_DISTANCE = 8.0D;
+    
+    // Target entities further away than this are ignored
+    private static final double TARGET_ENTITY_RANGE = 32.0D;
     
     private ItemStack heldItem = ItemStack.EMPTY;
-    private UUID targetEntityUUID = null;
+    // Only known on the server, clients get the entity's network id through TARGET
+    private UUID targetEntityId = null;
+    // Last resolved target entity, so it isn't looked up again on every call
+    private WeakReference<LivingEntity> targetEntityRef = null;
+    // Blocks still to break after the current target, e.g. from a collect command
+    private final Deque<BlockPos> breakQueue = new ArrayDeque<>();
+    // Version of the section under a hibernating companion, so it wakes if its floor changes
+    private long hibernationFloorVersion = 0;
+    // Build job this companion works on, 0 for none
+    private int buildJobId = 0;
+    // Chunk the chunk tickets were last updated for
+    private long ticketChunk = Long.MIN_VALUE;
     
     public AICompanionEntity(EntityType<? extends TameableEntity> entityType, World world) {
         super(entityType, world);
@@ -56,23 +89,160 @@ public class AICompanionEntity extends TameableEntity {
         this.goalSelector.addGoal(3, new MoveToBlockGoal(this, 1.0D));
         this.goalSelector.addGoal(4, new BreakBlockGoal(this));
         this.goalSelector.addGoal(5, new PlaceBlockGoal(this));
+        this.goalSelector.addGoal(5, new BuildBlueprintGoal(this));
         this.goalSelector.addGoal(6, new UseItemGoal(this, 1.0D, 5.0F));
         this.goalSelector.addGoal(7, new WaterAvoidingRandomWalkingGoal(this, 1.0D));
         this.goalSelector.addGoal(8, new LookAtGoal(this, PlayerEntity.class, 6.0F));
         this.goalSelector.addGoal(9, new LookRandomlyGoal(this));
     }
 
+    @Override
+    protected PathNavigator createNavigation(World world) {
+        // Shares computed paths with the other companions on the server
+        return new CompanionPathNavigator(this, world);
+    }
+
+    @Override
+    public void aiStep() {
+        if (!this.level.isClientSide && this.tickCount % 20 == 0) {
+            this.updateHibernation();
+        }
+        
+        super.aiStep();
+        if (!this.level.isClientSide) {
+            // Lets nearby companions steer around us next tick
+            CompanionSpatialHash.get(this.level).insert(this);
+            
+            // Right away when entering another chunk, the tickets have to move along before we leave the ticking area
+            long chunk = ChunkPos.asLong(this.blockPosition().getX() >> 4, this.blockPosition().getZ() >> 4);
+            if (chunk != this.ticketChunk || this.tickCount % 20 == 0) {
+                this.ticketChunk = chunk;
+                this.updateChunkTickets();
+            }
+        }
+    }
+    
+    /**
+     * Hold chunk tickets while doing commanded work for an online owner, release them otherwise
+     */
+    private void updateChunkTickets() {
+        String task = this.getCurrentTask();
+        if (!this.isActive() || !isWorkTask(task) || this.getOwner() == null) {
+            CompanionChunkTickets.getInstance().release(this);
+            return;
+        }
+        BlockPos workPos = "build".equals(task) ? null : this.getTargetPos();
+        CompanionChunkTickets.getInstance().update(this, workPos);
+    }
+    
+    private static boolean isWorkTask(String task) {
+        return "move".equals(task) || "break".equals(task) || "place".equals(task) || "build".equals(task);
+    }
+    
+    @Override
+    public void onRemovedFromWorld() {
+        if (!this.level.isClientSide) {
+            CompanionChunkTickets.getInstance().release(this);
+            // The follow goal isn't stopped when a companion dies or unloads mid-follow
+            if (this.getOwnerUUID() != null) {
+                FormationManager.getInstance().releaseSlot(this.getOwnerUUID(), this.getUUID());
+            }
+        }
+        super.onRemovedFromWorld();
+    }
+
+    @Override
+    protected boolean isImmobile() {
+        // Skips the goal selectors, navigation and look control while hibernating
+        return super.isImmobile() || this.isHibernating();
+    }
+
+    @Override
+    public void travel(Vector3d travelVector) {
+        if (this.isHibernating() && !this.level.isClientSide) {
+            if (BlockChangeTracker.getVersion(this.level, this.blockPosition().below()) != this.hibernationFloorVersion) {
+                // Something changed underfoot, simulate again
+                this.wakeUp();
+            } else if (this.onGround && this.getDeltaMovement().lengthSqr() < 1.0E-4D) {
+                // Settled on unchanged ground, there is nothing to simulate
+                return;
+            }
+        }
+        super.travel(travelVector);
+    }
+
+    @Override
+    public boolean hurt(DamageSource source, float amount) {
+        if (!this.level.isClientSide) {
+            this.wakeUp();
+        }
+        return super.hurt(source, amount);
+    }
+
+    @Override
+    protected void pushEntities() {
+        // A parked companion doesn't push anyone, entities walking into it still get pushed by their own check
+        if (!this.isHibernating()) {
+            super.pushEntities();
+        }
+    }
+
+    /**
+     * Hibernate inactive and staying companions once they've settled, and wake them
+     * when that no longer applies or their owner comes close
+     */
+    private void updateHibernation() {
+        boolean parked = !this.isActive() || "stay".equals(this.getCurrentTask());
+        LivingEntity owner = this.getOwner();
+        boolean ownerNearby = owner != null && owner.level == this.level
+                && owner.distanceToSqr(this) < WAKE_DISTANCE * WAKE_DISTANCE;
+        boolean unsettled = !this.onGround || this.isInWater() || this.isInLava() || this.isOnFire() || this.hurtTime > 0;
+
+        if (this.isHibernating()) {
+            if (!parked || ownerNearby || unsettled) {
+                this.wakeUp();
+            }
+        } else if (parked && !ownerNearby && !unsettled && this.getNavigation().isDone()) {
+            this.getNavigation().stop();
+            this.hibernationFloorVersion = BlockChangeTracker.getVersion(this.level, this.blockPosition().below());
+            this.setStateFlag(FLAG_HIBERNATING, true);
+        }
+    }
+
+    /**
+     * Leave hibernation; the regular check puts the companion back to sleep if it's still parked.
+     * The server only, clients get the flag from it.
+     */
+    public void wakeUp() {
+        if (!this.level.isClientSide) {
+            this.setStateFlag(FLAG_HIBERNATING, false);
+        }
+    }
+
+    public boolean isHibernating() {
+        return (this.entityData.get(STATE_FLAGS) & FLAG_HIBERNATING) != 0;
+    }
+
+    private void setStateFlag(int flag, boolean value) {
+        byte flags = this.entityData.get(STATE_FLAGS);
+        this.entityData.set(STATE_FLAGS, (byte) (value ? flags | flag : flags & ~flag));
+    }
+
+    @Override
+    protected void doPush(Entity entity) {
+        // Companions keep apart through formation steering instead of shoving each other
+        if (!(entity instanceof AICompanionEntity)) {
+            super.doPush(entity);
+        }
+    }
+
     @Override
     protected void defineSynchedData() {
         super.defineSynchedData();
         this.entityData.define(CURRENT_TASK, "idle");
-        this.entityData.define(TARGET_X, 0);
-        this.entityData.define(TARGET_Y, 0);
-        this.entityData.define(TARGET_Z, 0);
-        this.entityData.define(IS_ACTIVE, true);
-        this.entityData.define(SKIN_TYPE, "default");
-        this.entityData.define(SKIN_PATH, "");
-        this.entityData.define(TARGET_ENTITY_ID, "");
+        this.entityData.define(TARGET, CompanionTarget.NONE);
+        this.entityData.define(STATE_FLAGS, (byte) FLAG_ACTIVE);
+        this.entityData.define(SKIN_ID, 0);
     }
 
     @Override
@@ -95,23 +265,22 @@ public class AICompanionEntity extends TameableEntity {
         if (this.getTargetEntityId() != null) {
             compound.putString("TargetEntityId", this.getTargetEntityId().toString());
         }
+        
+        if (this.buildJobId != 0) {
+            compound.putInt("BuildJob", this.buildJobId);
+        }
     }
 
     @Override
     public void readAdditionalSaveData(CompoundNBT compound) {
         super.readAdditionalSaveData(compound);
         this.setCurrentTask(compound.getString("CurrentTask"));
-        this.setTargetX(compound.getInt("TargetX"));
-        this.setTargetY(compound.getInt("TargetY"));
-        this.setTargetZ(compound.getInt("TargetZ"));
+        this.setTargetPos(new BlockPos(compound.getInt("TargetX"), compound.getInt("TargetY"), compound.getInt("TargetZ")));
         this.setActive(compound.getBoolean("IsActive"));
         
-        if (compound.contains("SkinType")) {
-            this.setSkinType(compound.getString("SkinType"));
-        }
-        
-        if (compound.contains("SkinPath")) {
-            this.setSkinPath(compound.getString("SkinPath"));
+        if (compound.contains("SkinType") || compound.contains("SkinPath")) {
+            this.setSkin(compound.getString("SkinType").isEmpty() ? SkinRegistry.DEFAULT.getType() : compound.getString("SkinType"),
+                    compound.getString("SkinPath"));
         }
         
         if (compound.contains("HeldItem")) {
@@ -126,6 +295,8 @@ public class AICompanionEntity extends TameableEntity {
                 // Invalid UUID, ignore
             }
         }
+        
+        this.buildJobId = compound.getInt("BuildJob");
     }
 
     @Override
@@ -163,49 +334,58 @@ public class AICompanionEntity extends TameableEntity {
     }
 
     public void setCurrentTask(String task) {
+        if (!"stay".equals(task)) {
+            this.wakeUp();
+        }
+        if (!this.level.isClientSide && !isWorkTask(task)) {
+            // Done working, let the chunks go right away
+            CompanionChunkTickets.getInstance().release(this);
+        }
         this.entityData.set(CURRENT_TASK, task);
     }
 
     public int getTargetX() {
-        return this.entityData.get(TARGET_X);
+        return this.getTargetPos().getX();
     }
 
     public void setTargetX(int x) {
-        this.entityData.set(TARGET_X, x);
+        this.setTargetPos(new BlockPos(x, this.getTargetY(), this.getTargetZ()));
     }
 
     public int getTargetY() {
-        return this.entityData.get(TARGET_Y);
+        return this.getTargetPos().getY();
     }
 
     public void setTargetY(int y) {
-        this.entityData.set(TARGET_Y, y);
+        this.setTargetPos(new BlockPos(this.getTargetX(), y, this.getTargetZ()));
     }
 
     public int getTargetZ() {
-        return this.entityData.get(TARGET_Z);
+        return this.getTargetPos().getZ();
     }
 
     public void setTargetZ(int z) {
-        this.entityData.set(TARGET_Z, z);
+        this.setTargetPos(new BlockPos(this.getTargetX(), this.getTargetY(), z));
     }
 
     public BlockPos getTargetPos() {
-        return new BlockPos(getTargetX(), getTargetY(), getTargetZ());
+        return this.entityData.get(TARGET).getPos();
     }
 
     public void setTargetPos(BlockPos pos) {
-        setTargetX(pos.getX());
-        setTargetY(pos.getY());
-        setTargetZ(pos.getZ());
+        // Marks nothing dirty if the target didn't change
+        this.entityData.set(TARGET, this.entityData.get(TARGET).withPos(pos));
     }
 
     public boolean isActive() {
-        return this.entityData.get(IS_ACTIVE);
+        return (this.entityData.get(STATE_FLAGS) & FLAG_ACTIVE) != 0;
     }
 
     public void setActive(boolean active) {
-        this.entityData.set(IS_ACTIVE, active);
+        this.setStateFlag(FLAG_ACTIVE, active);
+        if (active) {
+            this.wakeUp();
+        }
     }
 
     public ItemStack getHeldItem() {
@@ -233,7 +413,7 @@ public class AICompanionEntity extends TameableEntity {
      * @return The skin type
      */
     public String getSkinType() {
-        return this.entityData.get(SKIN_TYPE);
+        return SkinRegistry.get(this.level.isClientSide).getSkin(this.entityData.get(SKIN_ID)).getType();
     }
     
     /**
@@ -241,7 +421,7 @@ public class AICompanionEntity extends TameableEntity {
      * @param skinType The new skin type (default, custom, etc.)
      */
     public void setSkinType(String skinType) {
-        this.entityData.set(SKIN_TYPE, skinType);
+        this.setSkin(skinType, this.getSkinPath());
     }
     
     /**
@@ -249,7 +429,7 @@ public class AICompanionEntity extends TameableEntity {
      * @return The skin path
      */
     public String getSkinPath() {
-        return this.entityData.get(SKIN_PATH);
+        return SkinRegistry.get(this.level.isClientSide).getSkin(this.entityData.get(SKIN_ID)).getPath();
     }
     
     /**
@@ -257,31 +437,50 @@ public class AICompanionEntity extends TameableEntity {
      * @param skinPath The path to the custom skin file
      */
     public void setSkinPath(String skinPath) {
-        this.entityData.set(SKIN_PATH, skinPath);
+        this.setSkin(this.getSkinType(), skinPath);
     }
     
     /**
-     * Get the target entity UUID if set
+     * Id of the skin in the SkinRegistry of this side
+     */
+    public int getSkinId() {
+        return this.entityData.get(SKIN_ID);
+    }
+
+    /**
+     * Set the skin type and path together, the server only. Types or paths
+     * longer than SkinRegistry.MAX_LENGTH fall back to the default skin.
+     * @param skinType The new skin type (default, custom, etc.)
+     * @param skinPath The path to the custom skin file, empty for none
+     */
+    public void setSkin(String skinType, String skinPath) {
+        if (!this.level.isClientSide) {
+            this.entityData.set(SKIN_ID, SkinRegistry.get(false).intern(skinType, skinPath));
+        }
+    }
+    
+    /**
+     * Get the target entity UUID if set, the server only
      */
     @Nullable
     public UUID getTargetEntityId() {
-        String id = this.entityData.get(TARGET_ENTITY_ID);
-        if (id != null && !id.isEmpty()) {
-            try {
-                return UUID.fromString(id);
-            } catch (IllegalArgumentException e) {
-                return null;
-            }
-        }
-        return null;
+        return this.targetEntityId;
     }
     
     /**
      * Set the target entity UUID
      */
     public void setTargetEntityId(@Nullable UUID uuid) {
-        this.entityData.set(TARGET_ENTITY_ID, uuid != null ? uuid.toString() : "");
-        this.targetEntityUUID = uuid;
+        this.targetEntityId = uuid;
+        this.targetEntityRef = null;
+        // Clients find the entity by its network id, known once the entity is found
+        this.setSyncedTargetEntity(null);
+    }
+    
+    private void setSyncedTargetEntity(@Nullable Entity entity) {
+        if (!this.level.isClientSide) {
+            this.entityData.set(TARGET, this.entityData.get(TARGET).withEntityId(entity != null ? entity.getId() : -1));
+        }
     }
     
     /**
@@ -289,21 +488,40 @@ public class AICompanionEntity extends TameableEntity {
      */
     @Nullable
     public LivingEntity getTargetEntity() {
-        UUID id = getTargetEntityId();
+        if (this.level.isClientSide) {
+            // The server sends the network id of the entity once it has found it
+            Entity found = this.level.getEntity(this.entityData.get(TARGET).getEntityId());
+            return found instanceof LivingEntity && this.isValidTargetEntity((LivingEntity) found) ? (LivingEntity) found : null;
+        }
+        
+        UUID id = this.getTargetEntityId();
         if (id == null) {
+            this.targetEntityRef = null;
             return null;
         }
         
-        // Look through all entities to find the one with this UUID
-        for (Entity entity : this.level.getEntities(this, this.getBoundingBox().inflate(32.0D))) {
-            if (entity instanceof LivingEntity && entity.getUUID().equals(id)) {
-                return (LivingEntity) entity;
-            }
+        // Reuse the last resolved entity while it's still a valid target
+        LivingEntity cached = this.targetEntityRef != null ? this.targetEntityRef.get() : null;
+        if (cached != null && cached.getUUID().equals(id) && this.isValidTargetEntity(cached)) {
+            return cached;
         }
+        this.targetEntityRef = null;
         
+        Entity found = ((ServerWorld) this.level).getEntity(id);
+        if (found instanceof LivingEntity && this.isValidTargetEntity((LivingEntity) found)) {
+            this.targetEntityRef = new WeakReference<>((LivingEntity) found);
+            this.setSyncedTargetEntity(found);
+            return (LivingEntity) found;
+        }
+        this.setSyncedTargetEntity(null);
         return null;
     }
     
+    private boolean isValidTargetEntity(LivingEntity entity) {
+        return entity.isAlive() && entity.level == this.level
+                && entity.distanceToSqr(this) <= TARGET_ENTITY_RANGE * TARGET_ENTITY_RANGE;
+    }
+    
     /**
      * Set a living entity as the target for this companion
      */
@@ -312,14 +530,77 @@ public class AICompanionEntity extends TameableEntity {
             setTargetEntityId(null);
         } else {
             setTargetEntityId(entity.getUUID());
+            this.targetEntityRef = new WeakReference<>(entity);
+            this.setSyncedTargetEntity(entity);
         }
     }
 
+    /**
+     * Break the given blocks one after another, starting with the first
+     */
+    public void queueBlocksToBreak(List<BlockPos> positions) {
+        this.breakQueue.clear();
+        this.breakQueue.addAll(positions);
+        this.startNextQueuedBreak();
+    }
+    
+    /**
+     * Move on to the next queued block that is still there.
+     * Returns false when the queue is used up.
+     */
+    public boolean startNextQueuedBreak() {
+        while (!this.breakQueue.isEmpty()) {
+            BlockPos next = this.breakQueue.poll();
+            if (!this.level.getBlockState(next).isAir(this.level, next)) {
+                this.setTargetPos(next);
+                this.setCurrentTask("break");
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * The block that will be broken after the current one, if any
+     */
+    @Nullable
+    public BlockPos peekNextQueuedBreak() {
+        return this.breakQueue.peek();
+    }
+    
+    public int getQueuedBreakCount() {
+        return this.breakQueue.size();
+    }
+    
+    /**
+     * Join a build job, replacing any other work
+     */
+    public void startBuildJob(int jobId) {
+        this.wakeUp();
+        this.breakQueue.clear();
+        this.buildJobId = jobId;
+        this.setCurrentTask("build");
+    }
+    
+    public int getBuildJobId() {
+        return this.buildJobId;
+    }
+    
+    public void clearBuildJob() {
+        this.buildJobId = 0;
+    }
+
     // Command processing methods
     public void processCommand(String command, BlockPos targetPos, ItemStack item) {
+        // Any command wakes a hibernating companion, even one that then stays put
+        this.wakeUp();
+        
         if (!this.isActive() || this.getOwner() == null) {
             return;
         }
+        
+        // A new command replaces any queued work
+        this.breakQueue.clear();
 
         switch (command) {
             case "follow":
@@ -396,8 +677,7 @@ public class AICompanionEntity extends TameableEntity {
                     }
                 }
                 
-                this.setSkinType(skinType);
-                this.setSkinPath(skinPath);
+                this.setSkin(skinType, skinPath);
                 
                 if (this.getOwner() instanceof PlayerEntity) {
                     ((PlayerEntity) this.getOwner()).sendMessage(
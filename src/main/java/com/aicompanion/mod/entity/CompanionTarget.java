@@ -0,0 +1,67 @@
+package com.aicompanion.mod.entity;
+
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Where a companion is headed and which entity it is after, synced to clients
+ * as a single entity data field.
+ *
+ * Written as the position packed into a long and the entity's network id as a
+ * varint, so retargeting marks one small field dirty instead of several.
+ */
+public final class CompanionTarget {
+    public static final CompanionTarget NONE = new CompanionTarget(BlockPos.ZERO, -1);
+
+    private final BlockPos pos;
+    // Network id of the target entity, -1 for none
+    private final int entityId;
+
+    public CompanionTarget(BlockPos pos, int entityId) {
+        this.pos = pos.immutable();
+        this.entityId = entityId;
+    }
+
+    public BlockPos getPos() {
+        return this.pos;
+    }
+
+    public int getEntityId() {
+        return this.entityId;
+    }
+
+    public CompanionTarget withPos(BlockPos pos) {
+        return pos.equals(this.pos) ? this : new CompanionTarget(pos, this.entityId);
+    }
+
+    public CompanionTarget withEntityId(int entityId) {
+        return entityId == this.entityId ? this : new CompanionTarget(this.pos, entityId);
+    }
+
+    public void write(PacketBuffer buffer) {
+        buffer.writeLong(this.pos.asLong());
+        // Shifted by one so "none" is a single byte as well
+        buffer.writeVarInt(this.entityId + 1);
+    }
+
+    public static CompanionTarget read(PacketBuffer buffer) {
+        return new CompanionTarget(BlockPos.of(buffer.readLong()), buffer.readVarInt() - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompanionTarget)) {
+            return false;
+        }
+        CompanionTarget other = (CompanionTarget) o;
+        return this.entityId == other.entityId && this.pos.equals(other.pos);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.pos.hashCode() + this.entityId;
+    }
+}
@@ -2,18 +2,21 @@ package com.aicompanion.mod.entity;
 
 import com.aicompanion.mod.AICompanionMod;
 import com.google.common.collect.Lists;
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.NBTUtil;
 import net.minecraft.network.datasync.DataParameter;
 import net.minecraft.network.datasync.DataSerializers;
 import net.minecraft.network.datasync.EntityDataManager;
 import net.minecraft.util.ActionResultType;
 import net.minecraft.util.Direction;
 import net.minecraft.util.Hand;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.Util;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
@@ -21,6 +24,7 @@ import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.util.text.StringTextComponent;
 import net.minecraft.world.World;
 import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.registries.ForgeRegistries;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -352,9 +356,13 @@ public class MiniBuildEntity extends Entity {
             int z = nbt.getInt("Z");
             this.relativePos = new BlockPos(x, y, z);
             
-            // Read block state (simplified for demonstration)
-            String blockName = nbt.getString("Block");
-            // In a full implementation, you would need to deserialize the full BlockState
+            if (nbt.contains("State", Constants.NBT.TAG_COMPOUND)) {
+                this.blockState = NBTUtil.readBlockState(nbt.getCompound("State"));
+            } else if (nbt.contains("Block", Constants.NBT.TAG_STRING)) {
+                // Older saves only kept the block name
+                Block block = ForgeRegistries.BLOCKS.getValue(new ResourceLocation(nbt.getString("Block")));
+                this.blockState = block != null ? block.defaultBlockState() : null;
+            }
         }
         
         public void writeToNBT(CompoundNBT nbt) {
@@ -362,10 +370,9 @@ public class MiniBuildEntity extends Entity {
             nbt.putInt("Y", relativePos.getY());
             nbt.putInt("Z", relativePos.getZ());
             
-            // Write block state (simplified for demonstration)
             if (blockState != null) {
                 nbt.putString("Block", blockState.getBlock().getRegistryName().toString());
-                // In a full implementation, you would need to serialize the full BlockState
+                nbt.put("State", NBTUtil.writeBlockState(blockState));
             }
         }
     }
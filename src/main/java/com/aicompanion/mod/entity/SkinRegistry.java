@@ -0,0 +1,208 @@
+package com.aicompanion.mod.entity;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import com.aicompanion.mod.network.NetworkHandler;
+import com.aicompanion.mod.network.message.SkinRegistryMessage;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gives every skin (type and path) in use a small id, so companions sync the id
+ * instead of two strings.
+ *
+ * The server hands out the ids and sends new ones to all players as they come
+ * up, plus the whole table to players logging in. The client keeps the table it
+ * was sent. Id 0 is always the default skin, which is also what unknown ids
+ * resolve to.
+ *
+ * The table holds at most {@link #MAX_SKINS} skins. When it's full, ids no
+ * loaded companion uses are handed out again; companions save their skin as
+ * strings, so they get an id again when they're loaded.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class SkinRegistry {
+    private static final SkinRegistry SERVER = new SkinRegistry();
+    private static final SkinRegistry CLIENT = new SkinRegistry();
+
+    public static final Skin DEFAULT = new Skin("default", "");
+
+    // Skin strings are file names at most, longer ones can't be synced
+    public static final int MAX_LENGTH = 256;
+    public static final int MAX_SKINS = 1024;
+
+    private final List<Skin> skins = new ArrayList<>();
+    private final Map<Skin, Integer> ids = new HashMap<>();
+
+    private SkinRegistry() {
+        this.clear();
+    }
+
+    /**
+     * The registry of the logical side the caller is on
+     */
+    public static SkinRegistry get(boolean clientSide) {
+        return clientSide ? CLIENT : SERVER;
+    }
+
+    /**
+     * Whether a skin type or path is short enough to be synced
+     */
+    public static boolean isValid(String value) {
+        return value.length() <= MAX_LENGTH;
+    }
+
+    /**
+     * Id of a skin on the server, assigning and announcing a new one if needed.
+     * Falls back to the default skin if the skin is too long to sync or the
+     * table is full of skins in use.
+     */
+    public synchronized int intern(String type, String path) {
+        if (!isValid(type) || !isValid(path)) {
+            AICompanionMod.LOGGER.warn("Skin type or path longer than {} characters, using the default skin", MAX_LENGTH);
+            return 0;
+        }
+
+        Skin skin = new Skin(type, path);
+        Integer id = this.ids.get(skin);
+        if (id != null) {
+            return id;
+        }
+
+        id = this.nextFreeId();
+        if (id < 0) {
+            AICompanionMod.LOGGER.warn("All {} skin ids are in use, using the default skin", MAX_SKINS);
+            return 0;
+        }
+        this.put(id, skin);
+        List<SkinRegistryMessage.Entry> added = new ArrayList<>();
+        added.add(new SkinRegistryMessage.Entry(id, skin));
+        NetworkHandler.sendToAll(new SkinRegistryMessage(false, added));
+        return id;
+    }
+
+    public synchronized Skin getSkin(int id) {
+        Skin skin = id >= 0 && id < this.skins.size() ? this.skins.get(id) : null;
+        return skin != null ? skin : DEFAULT;
+    }
+
+    /**
+     * Take over skins sent by the server
+     */
+    public synchronized void accept(SkinRegistryMessage message) {
+        if (message.isFullTable()) {
+            this.clear();
+        }
+        for (SkinRegistryMessage.Entry entry : message.getEntries()) {
+            this.put(entry.getId(), entry.getSkin());
+        }
+    }
+
+    private void put(int id, Skin skin) {
+        while (this.skins.size() <= id) {
+            this.skins.add(null);
+        }
+        Skin replaced = this.skins.set(id, skin);
+        if (replaced != null) {
+            this.ids.remove(replaced);
+        }
+        this.ids.put(skin, id);
+    }
+
+    /**
+     * An id that isn't assigned, freeing the ones no loaded companion uses if
+     * the table is full; -1 if all are in use
+     */
+    private int nextFreeId() {
+        if (this.skins.size() < MAX_SKINS) {
+            return this.skins.size();
+        }
+
+        Set<Integer> used = new HashSet<>();
+        used.add(0);
+        for (AICompanionEntity companion : CompanionIndex.getInstance().getAll()) {
+            used.add(companion.getSkinId());
+        }
+        int free = -1;
+        for (int id = 1; id < this.skins.size(); id++) {
+            if (!used.contains(id) && this.skins.get(id) != null) {
+                this.ids.remove(this.skins.get(id));
+                this.skins.set(id, null);
+            }
+            if (free < 0 && this.skins.get(id) == null) {
+                free = id;
+            }
+        }
+        return free;
+    }
+
+    private synchronized List<SkinRegistryMessage.Entry> getEntries() {
+        List<SkinRegistryMessage.Entry> entries = new ArrayList<>();
+        for (int id = 0; id < this.skins.size(); id++) {
+            if (this.skins.get(id) != null) {
+                entries.add(new SkinRegistryMessage.Entry(id, this.skins.get(id)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Forget all skins but the default one, e.g. when the server stops
+     */
+    public synchronized void clear() {
+        this.skins.clear();
+        this.ids.clear();
+        this.put(0, DEFAULT);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (event.getPlayer() instanceof ServerPlayerEntity) {
+            NetworkHandler.sendToPlayer(new SkinRegistryMessage(true, SERVER.getEntries()), (ServerPlayerEntity) event.getPlayer());
+        }
+    }
+
+    public static final class Skin {
+        private final String type;
+        private final String path;
+
+        public Skin(String type, String path) {
+            this.type = type;
+            this.path = path;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Skin)) {
+                return false;
+            }
+            Skin other = (Skin) o;
+            return this.type.equals(other.type) && this.path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.type.hashCode() + this.path.hashCode();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.AICompanionMod;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leases on block positions so that several companions given overlapping work
+ * don't walk to and start on the same block.
+ *
+ * A goal claims a block before moving to it, renews the claim while it's
+ * working and releases it when it stops. Claims that aren't renewed expire, so
+ * a companion that dies or unloads mid-task can't hold a block forever. The
+ * tables are ConcurrentHashMaps updated with atomic compute calls, so no
+ * global lock is taken.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class BlockReservationManager {
+    private static final BlockReservationManager INSTANCE = new BlockReservationManager();
+
+    // Claims last five seconds unless renewed
+    public static final int LEASE_TICKS = 100;
+
+    private final Map<RegistryKey<World>, ConcurrentHashMap<Long, Lease>> levels = new ConcurrentHashMap<>();
+
+    public static BlockReservationManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Claim a block for the given entity, or extend its own claim.
+     * Returns false if another entity holds an unexpired claim on it.
+     */
+    public boolean claim(World world, BlockPos pos, Entity holder) {
+        long now = world.getGameTime();
+        UUID holderId = holder.getUUID();
+        Lease lease = this.getLeases(world).compute(pos.asLong(), (key, existing) -> {
+            if (existing == null || existing.holder.equals(holderId) || existing.expiresAt <= now) {
+                return new Lease(holderId, now + LEASE_TICKS);
+            }
+            return existing;
+        });
+        return lease.holder.equals(holderId);
+    }
+
+    /**
+     * Keep an existing claim alive. Returns false if the claim was lost in the meantime.
+     */
+    public boolean renew(World world, BlockPos pos, Entity holder) {
+        return this.claim(world, pos, holder);
+    }
+
+    /**
+     * Give up a claim. Does nothing if the block is held by someone else.
+     */
+    public void release(World world, BlockPos pos, Entity holder) {
+        UUID holderId = holder.getUUID();
+        this.getLeases(world).computeIfPresent(pos.asLong(),
+                (key, existing) -> existing.holder.equals(holderId) ? null : existing);
+    }
+
+    /**
+     * Check whether another entity currently holds the block
+     */
+    public boolean isClaimedByOther(World world, BlockPos pos, Entity holder) {
+        Lease lease = this.getLeases(world).get(pos.asLong());
+        return lease != null && lease.expiresAt > world.getGameTime() && !lease.holder.equals(holder.getUUID());
+    }
+
+    public int getClaimCount() {
+        int count = 0;
+        for (ConcurrentHashMap<Long, Lease> leases : this.levels.values()) {
+            count += leases.size();
+        }
+        return count;
+    }
+
+    private ConcurrentHashMap<Long, Lease> getLeases(World world) {
+        return this.levels.computeIfAbsent(world.dimension(), key -> new ConcurrentHashMap<>());
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.world.isClientSide()) {
+            return;
+        }
+
+        // Sweep claims whose holders never released them
+        long now = event.world.getGameTime();
+        if (now % LEASE_TICKS == 0) {
+            ConcurrentHashMap<Long, Lease> leases = INSTANCE.levels.get(event.world.dimension());
+            if (leases != null) {
+                leases.values().removeIf(lease -> lease.expiresAt <= now);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if (event.getWorld() instanceof World && !event.getWorld().isClientSide()) {
+            INSTANCE.levels.remove(((World) event.getWorld()).dimension());
+        }
+    }
+
+    private static final class Lease {
+        private final UUID holder;
+        private final long expiresAt;
+
+        Lease(UUID holder, long expiresAt) {
+            this.holder = holder;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.config.AICompanionConfig;
+import com.aicompanion.mod.entity.AICompanionEntity;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.server.TicketType;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the chunks a working companion needs loaded after its owner walks away,
+ * so commanded jobs carry on instead of freezing with their chunk.
+ *
+ * A working companion holds tickets on its own chunk, the next chunks along its
+ * path and the chunk of its work target, and nothing else. Each ticket keeps only
+ * its own chunk entity ticking. Tickets follow the companion as it moves and are
+ * dropped as soon as it stops working or its owner goes offline. They expire by
+ * themselves unless refreshed, in case a companion disappears without releasing
+ * them. The number of tickets is capped per player and for the whole server.
+ *
+ * Only accessed from the server thread.
+ */
+public class CompanionChunkTickets {
+    private static final CompanionChunkTickets INSTANCE = new CompanionChunkTickets();
+
+    // Companions refresh their tickets every second, tickets not refreshed for five seconds expire
+    private static final int TICKET_LIFESPAN = 100;
+    // Ticket level 31, the lowest one that still ticks entities in the chunk
+    private static final int TICKET_DISTANCE = 2;
+    // Chunks of the path ahead that are held besides the companion's own
+    private static final int ROUTE_CHUNKS = 2;
+
+    public static final TicketType<Integer> COMPANION_WORK = TicketType.create(
+            AICompanionMod.MOD_ID + ":companion_work", Integer::compare, TICKET_LIFESPAN);
+
+    private final Map<UUID, Held> heldByCompanion = new HashMap<>();
+    private final Map<UUID, Integer> countByOwner = new HashMap<>();
+    private int total = 0;
+
+    public static CompanionChunkTickets getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Move and refresh a working companion's tickets: its own chunk first, then the
+     * path ahead, then the work target, as far as the caps allow
+     */
+    public void update(AICompanionEntity companion, @Nullable BlockPos workPos) {
+        UUID owner = companion.getOwnerUUID();
+        if (owner == null || !(companion.level instanceof ServerWorld)) {
+            this.release(companion);
+            return;
+        }
+        ServerWorld world = (ServerWorld) companion.level;
+
+        LongLinkedOpenHashSet wanted = new LongLinkedOpenHashSet();
+        wanted.add(ChunkPos.asLong(companion.blockPosition().getX() >> 4, companion.blockPosition().getZ() >> 4));
+        Path path = companion.getNavigation().getPath();
+        if (path != null) {
+            for (int i = path.getNextNodeIndex(); i < path.getNodeCount() && wanted.size() <= ROUTE_CHUNKS; i++) {
+                PathPoint node = path.getNode(i);
+                wanted.add(ChunkPos.asLong(node.x >> 4, node.z >> 4));
+            }
+        }
+        if (workPos != null) {
+            wanted.add(ChunkPos.asLong(workPos.getX() >> 4, workPos.getZ() >> 4));
+        }
+
+        Held held = this.heldByCompanion.get(companion.getUUID());
+        if (held != null && (held.dimension != world.dimension() || held.ticketId != companion.getId())) {
+            this.release(companion);
+            held = null;
+        }
+
+        // Counts without this companion's current tickets, which are about to be replaced
+        int heldCount = held == null ? 0 : held.chunks.size();
+        int ownerCount = this.countByOwner.getOrDefault(owner, 0) - heldCount;
+        int otherTotal = this.total - heldCount;
+        int perPlayer = AICompanionConfig.SERVER.maxChunkTicketsPerPlayer.get();
+        int global = AICompanionConfig.SERVER.maxChunkTicketsTotal.get();
+
+        LongOpenHashSet keep = new LongOpenHashSet();
+        for (LongIterator it = wanted.iterator(); it.hasNext(); ) {
+            if (ownerCount + keep.size() >= perPlayer || otherTotal + keep.size() >= global) {
+                break;
+            }
+            keep.add(it.nextLong());
+        }
+
+        if (held != null) {
+            for (LongIterator it = held.chunks.iterator(); it.hasNext(); ) {
+                long chunk = it.nextLong();
+                if (!keep.contains(chunk)) {
+                    world.getChunkSource().removeRegionTicket(COMPANION_WORK, new ChunkPos(chunk), TICKET_DISTANCE, held.ticketId);
+                }
+            }
+        }
+        // Adding a ticket that is already there refreshes its lifespan
+        for (LongIterator it = keep.iterator(); it.hasNext(); ) {
+            world.getChunkSource().addRegionTicket(COMPANION_WORK, new ChunkPos(it.nextLong()), TICKET_DISTANCE, companion.getId());
+        }
+
+        this.total = otherTotal + keep.size();
+        this.setOwnerCount(owner, ownerCount + keep.size());
+        if (keep.isEmpty()) {
+            this.heldByCompanion.remove(companion.getUUID());
+        } else {
+            this.heldByCompanion.put(companion.getUUID(), new Held(owner, world.dimension(), companion.getId(), keep));
+        }
+    }
+
+    /**
+     * Drop all of a companion's tickets
+     */
+    public void release(AICompanionEntity companion) {
+        Held held = this.heldByCompanion.remove(companion.getUUID());
+        if (held == null) {
+            return;
+        }
+
+        // Tickets in a world that is gone have gone with it
+        ServerWorld world = companion.getServer() != null ? companion.getServer().getLevel(held.dimension) : null;
+        if (world != null) {
+            for (LongIterator it = held.chunks.iterator(); it.hasNext(); ) {
+                world.getChunkSource().removeRegionTicket(COMPANION_WORK, new ChunkPos(it.nextLong()), TICKET_DISTANCE, held.ticketId);
+            }
+        }
+        this.total -= held.chunks.size();
+        this.setOwnerCount(held.owner, this.countByOwner.getOrDefault(held.owner, 0) - held.chunks.size());
+    }
+
+    private void setOwnerCount(UUID owner, int count) {
+        if (count > 0) {
+            this.countByOwner.put(owner, count);
+        } else {
+            this.countByOwner.remove(owner);
+        }
+    }
+
+    public int getTicketCount() {
+        return this.total;
+    }
+
+    /**
+     * Forget all tickets, e.g. when the server stops and the worlds take them along
+     */
+    public void clear() {
+        this.heldByCompanion.clear();
+        this.countByOwner.clear();
+        this.total = 0;
+    }
+
+    private static final class Held {
+        private final UUID owner;
+        private final RegistryKey<World> dimension;
+        // Value the tickets were added with, the entity id at the time
+        private final int ticketId;
+        private final LongOpenHashSet chunks;
+
+        Held(UUID owner, RegistryKey<World> dimension, int ticketId, LongOpenHashSet chunks) {
+            this.owner = owner;
+            this.dimension = dimension;
+            this.ticketId = ticketId;
+            this.chunks = chunks;
+        }
+    }
+}
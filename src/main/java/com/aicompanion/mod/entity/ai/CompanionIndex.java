@@ -0,0 +1,86 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.entity.AICompanionEntity;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.entity.EntityLeaveWorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * All companions loaded on the server, by UUID, so commands for a group of
+ * companions can find them without scanning every entity in the world.
+ *
+ * Kept up to date as companions join and leave worlds. Only accessed from the
+ * server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class CompanionIndex {
+    private static final CompanionIndex INSTANCE = new CompanionIndex();
+
+    private final Map<UUID, AICompanionEntity> companions = new HashMap<>();
+
+    public static CompanionIndex getInstance() {
+        return INSTANCE;
+    }
+
+    @Nullable
+    public AICompanionEntity get(UUID uuid) {
+        return this.companions.get(uuid);
+    }
+
+    /**
+     * All loaded companions, in any world
+     */
+    public Collection<AICompanionEntity> getAll() {
+        return Collections.unmodifiableCollection(this.companions.values());
+    }
+
+    /**
+     * All loaded companions of the given owner, in any world
+     */
+    public List<AICompanionEntity> getOwnedBy(UUID owner) {
+        List<AICompanionEntity> owned = new ArrayList<>();
+        for (AICompanionEntity companion : this.companions.values()) {
+            if (owner.equals(companion.getOwnerUUID())) {
+                owned.add(companion);
+            }
+        }
+        return owned;
+    }
+
+    public int size() {
+        return this.companions.size();
+    }
+
+    /**
+     * Forget all companions, e.g. when the server stops
+     */
+    public void clear() {
+        this.companions.clear();
+    }
+
+    @SubscribeEvent
+    public static void onEntityJoin(EntityJoinWorldEvent event) {
+        if (event.getEntity() instanceof AICompanionEntity && !event.getWorld().isClientSide()) {
+            INSTANCE.companions.put(event.getEntity().getUUID(), (AICompanionEntity) event.getEntity());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onEntityLeave(EntityLeaveWorldEvent event) {
+        if (event.getEntity() instanceof AICompanionEntity && !event.getWorld().isClientSide()) {
+            // Only if it's still this instance, a companion changing worlds joins the new one first
+            INSTANCE.companions.remove(event.getEntity().getUUID(), event.getEntity());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.entity.AICompanionEntity;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.world.World;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid of companion positions, used to keep companions apart without
+ * checking every pair.
+ *
+ * Companions insert themselves while ticking; the grid built during one world
+ * tick becomes the readable one at the end of that tick. Queries therefore see
+ * positions from the previous tick, which is plenty for steering.
+ *
+ * Only accessed from the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class CompanionSpatialHash {
+    private static final Map<RegistryKey<World>, CompanionSpatialHash> HASHES = new HashMap<>();
+
+    private static final int CELL_SIZE = 4;
+
+    private Long2ObjectOpenHashMap<List<AICompanionEntity>> current = new Long2ObjectOpenHashMap<>();
+    private Long2ObjectOpenHashMap<List<AICompanionEntity>> building = new Long2ObjectOpenHashMap<>();
+
+    public static CompanionSpatialHash get(World world) {
+        return HASHES.computeIfAbsent(world.dimension(), key -> new CompanionSpatialHash());
+    }
+
+    /**
+     * Record a companion's position for the next tick's queries
+     */
+    public void insert(AICompanionEntity companion) {
+        long key = cellKey(cell(companion.getX()), cell(companion.getY()), cell(companion.getZ()));
+        this.building.computeIfAbsent(key, k -> new ArrayList<>(4)).add(companion);
+    }
+
+    /**
+     * Sum of push-away vectors from other companions within the radius, stronger
+     * the closer they are. Only the horizontal components are set.
+     */
+    public Vector3d getSeparation(AICompanionEntity companion, double radius) {
+        double x = companion.getX();
+        double y = companion.getY();
+        double z = companion.getZ();
+        double pushX = 0.0D;
+        double pushZ = 0.0D;
+
+        int minX = cell(x - radius), maxX = cell(x + radius);
+        int minY = cell(y - radius), maxY = cell(y + radius);
+        int minZ = cell(z - radius), maxZ = cell(z + radius);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                for (int cz = minZ; cz <= maxZ; cz++) {
+                    List<AICompanionEntity> cell = this.current.get(cellKey(cx, cy, cz));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (AICompanionEntity other : cell) {
+                        if (other == companion || !other.isAlive()) {
+                            continue;
+                        }
+                        double dx = x - other.getX();
+                        double dz = z - other.getZ();
+                        double distance = Math.sqrt(dx * dx + dz * dz);
+                        if (distance >= radius || Math.abs(y - other.getY()) >= radius) {
+                            continue;
+                        }
+                        if (distance < 1.0E-4D) {
+                            // Exactly on top of each other, split by entity id
+                            dx = companion.getId() < other.getId() ? 1.0D : -1.0D;
+                            dz = 0.0D;
+                            distance = 1.0D;
+                        }
+                        double strength = (radius - distance) / radius;
+                        pushX += dx / distance * strength;
+                        pushZ += dz / distance * strength;
+                    }
+                }
+            }
+        }
+        return new Vector3d(pushX, 0.0D, pushZ);
+    }
+
+    private void swap() {
+        Long2ObjectOpenHashMap<List<AICompanionEntity>> previous = this.current;
+        this.current = this.building;
+        this.building = previous;
+        this.building.clear();
+    }
+
+    private static int cell(double coordinate) {
+        return MathHelper.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long cellKey(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFL) << 42 | ((long) y & 0xFFFFFL) << 22 | ((long) z & 0x3FFFFFL);
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && !event.world.isClientSide()) {
+            CompanionSpatialHash hash = HASHES.get(event.world.dimension());
+            if (hash != null) {
+                hash.swap();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if (event.getWorld() instanceof World && !event.getWorld().isClientSide()) {
+            HASHES.remove(((World) event.getWorld()).dimension());
+        }
+    }
+}
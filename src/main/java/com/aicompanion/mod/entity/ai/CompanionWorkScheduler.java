@@ -0,0 +1,267 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.config.AICompanionConfig;
+import com.aicompanion.mod.entity.AICompanionEntity;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Central queue for expensive companion work (path requests, block scans).
+ *
+ * Goals submit jobs instead of doing the work inline; the queue is drained at
+ * the end of every server tick until the configured time budget is used up,
+ * and whatever is left spills over to the next tick. Higher priorities are
+ * always drained first, and within a priority owners take turns so one player
+ * with many companions can't starve everyone else. Submitting a job with the
+ * same companion and key as a pending one replaces it instead of queueing twice.
+ *
+ * At least one job runs every tick, even when it alone is over the budget, so
+ * work that can take long must be submitted in steps with {@link #submitSteps}.
+ *
+ * Only accessed from the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class CompanionWorkScheduler {
+    private static final CompanionWorkScheduler INSTANCE = new CompanionWorkScheduler();
+
+    public enum Priority {
+        // Getting a companion out of trouble, e.g. teleporting back to its owner
+        RESCUE,
+        // Keeping up with the owner
+        FOLLOW,
+        // Commanded single tasks
+        TASK,
+        // Long-running bulk work that can wait
+        BULK
+    }
+
+    private final PriorityLevel[] levels = new PriorityLevel[Priority.values().length];
+    private final Map<JobKey, Job> pending = new HashMap<>();
+
+    private long jobsRun = 0;
+    private long ticksOverBudget = 0;
+
+    private CompanionWorkScheduler() {
+        for (int i = 0; i < this.levels.length; i++) {
+            this.levels[i] = new PriorityLevel();
+        }
+    }
+
+    public static CompanionWorkScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queue a job for the given companion. A pending job with the same key is
+     * replaced; it keeps its place in the queue unless the priority changed.
+     */
+    public void submit(AICompanionEntity companion, String key, Priority priority, Runnable work) {
+        this.submitSteps(companion, key, priority, () -> {
+            work.run();
+            return true;
+        });
+    }
+
+    /**
+     * Queue a job that runs in steps. Each step returns whether the job is done;
+     * if not, the job goes to the back of its owner's queue and the next step runs
+     * on its next turn, which may be a later tick. Replaces a pending job with the
+     * same key the same way {@link #submit} does.
+     */
+    public void submitSteps(AICompanionEntity companion, String key, Priority priority, BooleanSupplier work) {
+        JobKey jobKey = new JobKey(companion.getUUID(), key);
+        Job existing = this.pending.get(jobKey);
+        if (existing != null) {
+            if (existing.priority == priority) {
+                existing.work = work;
+                return;
+            }
+            existing.cancelled = true;
+        }
+
+        UUID owner = companion.getOwnerUUID() != null ? companion.getOwnerUUID() : companion.getUUID();
+        Job job = new Job(jobKey, companion, owner, priority, work);
+        this.pending.put(jobKey, job);
+        this.levels[priority.ordinal()].add(owner, job);
+    }
+
+    /**
+     * Check whether a job with the given key is waiting for the companion
+     */
+    public boolean isPending(AICompanionEntity companion, String key) {
+        return this.pending.containsKey(new JobKey(companion.getUUID(), key));
+    }
+
+    /**
+     * Drop a pending job, e.g. when the goal that submitted it stops
+     */
+    public void cancel(AICompanionEntity companion, String key) {
+        Job job = this.pending.remove(new JobKey(companion.getUUID(), key));
+        if (job != null) {
+            job.cancelled = true;
+        }
+    }
+
+    public int getPendingCount() {
+        return this.pending.size();
+    }
+
+    public long getJobsRun() {
+        return this.jobsRun;
+    }
+
+    public long getTicksOverBudget() {
+        return this.ticksOverBudget;
+    }
+
+    /**
+     * Forget all queued work, e.g. when the server stops
+     */
+    public void clear() {
+        this.pending.clear();
+        for (PriorityLevel level : this.levels) {
+            level.clear();
+        }
+    }
+
+    /**
+     * Run queued jobs until the budget is used up, at least one
+     */
+    void drain(long budgetNanos) {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + budgetNanos;
+        boolean ranAny = false;
+
+        for (PriorityLevel level : this.levels) {
+            Job job;
+            // Always make some progress, even if the budget is tiny
+            while ((!ranAny || System.nanoTime() < deadline) && (job = level.poll()) != null) {
+                if (job.cancelled) {
+                    continue;
+                }
+                this.pending.remove(job.key);
+                if (!job.companion.isAlive()) {
+                    continue;
+                }
+
+                boolean done = true;
+                try {
+                    done = job.work.getAsBoolean();
+                } catch (Exception e) {
+                    AICompanionMod.LOGGER.error("Companion job {} failed", job.key.name, e);
+                }
+                this.jobsRun++;
+                ranAny = true;
+
+                // Queue the next step, unless the job was cancelled or replaced while it ran
+                if (!done && !job.cancelled && !this.pending.containsKey(job.key)) {
+                    this.pending.put(job.key, job);
+                    level.add(job.owner, job);
+                }
+            }
+        }
+
+        if (!this.pending.isEmpty() && System.nanoTime() >= deadline) {
+            this.ticksOverBudget++;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            INSTANCE.drain((long) (AICompanionConfig.SERVER.workTickBudgetMs.get() * 1_000_000L));
+        }
+    }
+
+    /**
+     * Jobs of one priority, with a queue per owner served round-robin
+     */
+    private static final class PriorityLevel {
+        private final ArrayDeque<UUID> owners = new ArrayDeque<>();
+        private final Map<UUID, ArrayDeque<Job>> queues = new HashMap<>();
+
+        void add(UUID owner, Job job) {
+            ArrayDeque<Job> queue = this.queues.get(owner);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                this.queues.put(owner, queue);
+                this.owners.addLast(owner);
+            }
+            queue.addLast(job);
+        }
+
+        Job poll() {
+            UUID owner = this.owners.pollFirst();
+            if (owner == null) {
+                return null;
+            }
+
+            ArrayDeque<Job> queue = this.queues.get(owner);
+            Job job = queue.pollFirst();
+            if (queue.isEmpty()) {
+                this.queues.remove(owner);
+            } else {
+                // Back of the line until every other owner had a turn
+                this.owners.addLast(owner);
+            }
+            return job;
+        }
+
+        void clear() {
+            this.owners.clear();
+            this.queues.clear();
+        }
+    }
+
+    private static final class JobKey {
+        private final UUID companion;
+        private final String name;
+
+        JobKey(UUID companion, String name) {
+            this.companion = companion;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof JobKey)) return false;
+            JobKey other = (JobKey) o;
+            return this.companion.equals(other.companion) && this.name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.companion, this.name);
+        }
+    }
+
+    private static final class Job {
+        private final JobKey key;
+        private final AICompanionEntity companion;
+        private final UUID owner;
+        private final Priority priority;
+        private BooleanSupplier work;
+        private boolean cancelled;
+
+        Job(JobKey key, AICompanionEntity companion, UUID owner, Priority priority, BooleanSupplier work) {
+            this.key = key;
+            this.companion = companion;
+            this.owner = owner;
+            this.priority = priority;
+            this.work = work;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.AICompanionMod;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Hands out formation slots around an owner to the companions following them,
+ * so each companion heads for its own spot instead of the owner's feet.
+ *
+ * Slots are laid out in rings of eight around the owner and don't rotate with
+ * the owner's facing, so a slot only moves when the owner actually moves.
+ * Companions keep the lowest free slot for as long as they follow, and give it
+ * back when they stop or leave the world.
+ *
+ * Only accessed from the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class FormationManager {
+    private static final FormationManager INSTANCE = new FormationManager();
+
+    private static final int SLOTS_PER_RING = 8;
+    private static final double FIRST_RING_RADIUS = 2.5D;
+    private static final double RING_SPACING = 1.5D;
+
+    // Owner -> companion holding each slot, null for free slots
+    private final Map<UUID, List<UUID>> slotsByOwner = new HashMap<>();
+
+    public static FormationManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the companion's slot around the owner, assigning the lowest free one if needed
+     */
+    public int acquireSlot(UUID owner, UUID companion) {
+        List<UUID> slots = this.slotsByOwner.computeIfAbsent(owner, key -> new ArrayList<>());
+        int free = -1;
+        for (int i = 0; i < slots.size(); i++) {
+            UUID holder = slots.get(i);
+            if (companion.equals(holder)) {
+                return i;
+            }
+            // Holders that left the world without releasing count as free
+            if (free < 0 && (holder == null || CompanionIndex.getInstance().get(holder) == null)) {
+                free = i;
+            }
+        }
+
+        if (free < 0) {
+            slots.add(companion);
+            return slots.size() - 1;
+        }
+        slots.set(free, companion);
+        return free;
+    }
+
+    /**
+     * Free the companion's slot, e.g. when it stops following
+     */
+    public void releaseSlot(UUID owner, UUID companion) {
+        List<UUID> slots = this.slotsByOwner.get(owner);
+        if (slots == null) {
+            return;
+        }
+
+        int index = slots.indexOf(companion);
+        if (index >= 0) {
+            slots.set(index, null);
+        }
+        // Trim free slots at the end so the list doesn't only ever grow
+        while (!slots.isEmpty() && slots.get(slots.size() - 1) == null) {
+            slots.remove(slots.size() - 1);
+        }
+        if (slots.isEmpty()) {
+            this.slotsByOwner.remove(owner);
+        }
+    }
+
+    /**
+     * World position of a slot around the owner
+     */
+    public static Vector3d getSlotPosition(Entity owner, int slot) {
+        int ring = slot / SLOTS_PER_RING;
+        int indexInRing = slot % SLOTS_PER_RING;
+        // Offset every other ring by half a step so companions don't line up behind each other
+        double angle = (indexInRing + (ring % 2) * 0.5D) * (Math.PI * 2.0D / SLOTS_PER_RING);
+        double radius = FIRST_RING_RADIUS + ring * RING_SPACING;
+        return new Vector3d(
+                owner.getX() + Math.cos(angle) * radius,
+                owner.getY(),
+                owner.getZ() + Math.sin(angle) * radius);
+    }
+
+    /**
+     * Forget all formations, e.g. when the server stops
+     */
+    public void clear() {
+        this.slotsByOwner.clear();
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        INSTANCE.slotsByOwner.remove(event.getPlayer().getUUID());
+    }
+}
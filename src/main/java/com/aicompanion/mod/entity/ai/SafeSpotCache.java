@@ -0,0 +1,223 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.world.BlockChangeTracker;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntitySize;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.pathfinding.PathNodeType;
+import net.minecraft.pathfinding.WalkNodeProcessor;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.util.math.shapes.VoxelShape;
+import net.minecraft.world.World;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-owner safe standing spots around the owner, used when a following
+ * companion falls too far behind and teleports back.
+ *
+ * Spots are probed lazily: each request walks the candidate offsets around the
+ * owner from where the previous one stopped, so the owner's companions are
+ * handed different spots in turn and a teleport usually costs a single probe.
+ * Every probe is remembered, safe or not, together with the versions of the
+ * sections its blocks are in, and reused until one of those sections changes,
+ * also after the owner has moved on. A remembered safe spot only has entities
+ * in the way checked again before it's handed out, since those don't change
+ * section versions. Safe spots are remembered per companion size.
+ *
+ * Only accessed from the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class SafeSpotCache {
+    private static final SafeSpotCache INSTANCE = new SafeSpotCache();
+
+    // Spots are searched in this box around the owner, outside the owner's own 3x3 column
+    private static final int HORIZONTAL_RANGE = 3;
+    private static final int VERTICAL_RANGE = 1;
+    private static final int MIN_DISTANCE = 2;
+    // Remembered probes further than this from the owner are forgotten
+    private static final int FORGET_DISTANCE = 16;
+
+    // Offsets from the owner, spots near the owner's level first since they are the least surprising
+    private static final List<BlockPos> CANDIDATES = new ArrayList<>();
+
+    static {
+        for (int dy = -VERTICAL_RANGE; dy <= VERTICAL_RANGE; dy++) {
+            for (int dx = -HORIZONTAL_RANGE; dx <= HORIZONTAL_RANGE; dx++) {
+                for (int dz = -HORIZONTAL_RANGE; dz <= HORIZONTAL_RANGE; dz++) {
+                    if (Math.abs(dx) >= MIN_DISTANCE || Math.abs(dz) >= MIN_DISTANCE) {
+                        CANDIDATES.add(new BlockPos(dx, dy, dz));
+                    }
+                }
+            }
+        }
+        CANDIDATES.sort((a, b) -> Integer.compare(Math.abs(a.getY()), Math.abs(b.getY())));
+    }
+
+    private final Map<UUID, Spots> spotsByOwner = new HashMap<>();
+
+    public static SafeSpotCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the next safe spot near the owner for the given companion to teleport to,
+     * or null when there is none
+     */
+    @Nullable
+    public BlockPos nextSpot(MobEntity companion, Entity owner) {
+        World world = owner.level;
+        BlockPos center = owner.blockPosition();
+        Spots spots = this.spotsByOwner.get(owner.getUUID());
+        if (spots == null || spots.dimension != world.dimension()) {
+            spots = new Spots(world.dimension());
+            this.spotsByOwner.put(owner.getUUID(), spots);
+        }
+        if (!center.equals(spots.center)) {
+            spots.moveTo(center);
+        }
+
+        EntitySize size = companion.getDimensions(companion.getPose());
+        for (int tried = 0; tried < CANDIDATES.size(); tried++) {
+            BlockPos pos = center.offset(CANDIDATES.get(spots.next));
+            spots.next = (spots.next + 1) % CANDIDATES.size();
+            AxisAlignedBB box = size.makeBoundingBox(pos.getX() + 0.5D, pos.getY(), pos.getZ() + 0.5D);
+
+            Probe probe = spots.getProbe(world, pos, size);
+            if (probe == null) {
+                probe = new Probe(world, pos, box, size, isSafeSpot(companion, pos, box));
+                spots.probes.put(pos.asLong(), probe);
+            } else if (probe.safe && !isClearOfEntities(companion, box)) {
+                continue;
+            }
+            if (probe.safe) {
+                return pos;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget everything, e.g. when the server stops
+     */
+    public void clear() {
+        this.spotsByOwner.clear();
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        INSTANCE.spotsByOwner.remove(event.getPlayer().getUUID());
+    }
+
+    /**
+     * Whether the companion can stand at the spot, with the box it would take up there
+     */
+    private static boolean isSafeSpot(MobEntity companion, BlockPos pos, AxisAlignedBB box) {
+        World world = companion.level;
+        if (WalkNodeProcessor.getBlockPathTypeStatic(world, pos.mutable()) != PathNodeType.WALKABLE) {
+            return false;
+        }
+        return world.noCollision(companion, box);
+    }
+
+    private static boolean isClearOfEntities(MobEntity companion, AxisAlignedBB box) {
+        return companion.level.getEntityCollisions(companion, box, entity -> true).allMatch(VoxelShape::isEmpty);
+    }
+
+    private static final class Spots {
+        private final RegistryKey<World> dimension;
+        private final Long2ObjectOpenHashMap<Probe> probes = new Long2ObjectOpenHashMap<>();
+        private BlockPos center;
+        private int next = 0;
+
+        Spots(RegistryKey<World> dimension) {
+            this.dimension = dimension;
+        }
+
+        void moveTo(BlockPos center) {
+            this.center = center;
+            this.probes.values().removeIf(probe -> !probe.pos.closerThan(center, FORGET_DISTANCE));
+        }
+
+        /**
+         * What an earlier probe of the spot found, null if it needs probing again
+         */
+        @Nullable
+        Probe getProbe(World world, BlockPos pos, EntitySize size) {
+            Probe probe = this.probes.get(pos.asLong());
+            if (probe == null) {
+                return null;
+            }
+            if (!probe.isValid(world)) {
+                this.probes.remove(pos.asLong());
+                return null;
+            }
+            // Unsafe for one size is unsafe for any, the path type check doesn't depend on it
+            return !probe.safe || (probe.width == size.width && probe.height == size.height) ? probe : null;
+        }
+    }
+
+    /**
+     * What probing a spot found, with the sections its blocks are in: the floor
+     * below it up to the head room above it, as wide as the companion
+     */
+    private static final class Probe {
+        private final BlockPos pos;
+        // Size of the companion it was probed for
+        private final float width;
+        private final float height;
+        private final boolean safe;
+        private final long[] sections;
+        private final long[] versions;
+
+        Probe(World world, BlockPos pos, AxisAlignedBB box, EntitySize size, boolean safe) {
+            this.pos = pos;
+            this.width = size.width;
+            this.height = size.height;
+            this.safe = safe;
+            int minX = MathHelper.floor(Math.min(box.minX, pos.getX() - 1)) >> 4;
+            int maxX = MathHelper.floor(Math.max(box.maxX, pos.getX() + 1)) >> 4;
+            int minY = MathHelper.floor(Math.min(box.minY, pos.getY()) - 1) >> 4;
+            int maxY = MathHelper.floor(Math.max(box.maxY, pos.getY() + 2)) >> 4;
+            int minZ = MathHelper.floor(Math.min(box.minZ, pos.getZ() - 1)) >> 4;
+            int maxZ = MathHelper.floor(Math.max(box.maxZ, pos.getZ() + 1)) >> 4;
+            int count = (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+            this.sections = new long[count];
+            this.versions = new long[count];
+            int i = 0;
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        this.sections[i] = SectionPos.asLong(x, y, z);
+                        this.versions[i] = BlockChangeTracker.getSectionVersion(world, this.sections[i]);
+                        i++;
+                    }
+                }
+            }
+        }
+
+        boolean isValid(World world) {
+            for (int i = 0; i < this.sections.length; i++) {
+                long version = BlockChangeTracker.getSectionVersion(world, this.sections[i]);
+                if (version == 0 || version != this.versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
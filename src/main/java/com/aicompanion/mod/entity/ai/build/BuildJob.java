@@ -0,0 +1,375 @@
+package com.aicompanion.mod.entity.ai.build;
+
+import com.aicompanion.mod.entity.MiniBuildEntity;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.INBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.NBTUtil;
+import net.minecraft.util.Direction;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.world.World;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * A captured structure being rebuilt at another origin by one or more companions.
+ *
+ * The blocks are put in build order once, when the job is created: layer by
+ * layer from the bottom, and within a layer starting from blocks that rest on
+ * the layer below and spreading sideways, with blocks that hang on others
+ * (torches, flowers, ...) last. Companions only take blocks from the lowest
+ * unfinished layer, so nothing is placed before what holds it up. Each
+ * companion works its own slice of the structure along the X axis and helps
+ * out in other slices once its own is done.
+ *
+ * Progress is a bit per block, stored with the job in {@link BuildJobData},
+ * so a job carries on where it stopped after a restart.
+ */
+public class BuildJob {
+    private final int id;
+    private final UUID owner;
+    private final RegistryKey<World> dimension;
+    private final BlockPos origin;
+    @Nullable
+    private final BlockPos container;
+
+    // Relative positions and states, in build order
+    private final List<BlockPos> positions;
+    private final List<BlockState> states;
+    // Index one past the last block of the layer each block belongs to
+    private final int[] layerEnds;
+    private final int minX;
+    private final int width;
+
+    private final BitSet done;
+    private final List<UUID> workers = new ArrayList<>();
+    // Every block before the cursor is done
+    private int cursor = 0;
+    private int skipped = 0;
+    private int lastReportedPercent = 0;
+
+    private BuildJob(int id, UUID owner, RegistryKey<World> dimension, BlockPos origin, @Nullable BlockPos container,
+                     List<BlockPos> positions, List<BlockState> states, BitSet done) {
+        this.id = id;
+        this.owner = owner;
+        this.dimension = dimension;
+        this.origin = origin;
+        this.container = container;
+        this.positions = positions;
+        this.states = states;
+        this.done = done;
+
+        this.layerEnds = new int[positions.size()];
+        int end = positions.size();
+        for (int i = positions.size() - 1; i >= 0; i--) {
+            if (i < positions.size() - 1 && positions.get(i).getY() != positions.get(i + 1).getY()) {
+                end = i + 1;
+            }
+            this.layerEnds[i] = end;
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (BlockPos pos : positions) {
+            min = Math.min(min, pos.getX());
+            max = Math.max(max, pos.getX());
+        }
+        this.minX = positions.isEmpty() ? 0 : min;
+        this.width = positions.isEmpty() ? 1 : max - min + 1;
+        this.advanceCursor();
+    }
+
+    /**
+     * Create a job from a mini build's captured blocks
+     */
+    public static BuildJob create(int id, UUID owner, RegistryKey<World> dimension, BlockPos origin,
+                                  @Nullable BlockPos container, List<MiniBuildEntity.MiniBlock> blocks) {
+        Map<BlockPos, BlockState> byPos = new HashMap<>();
+        for (MiniBuildEntity.MiniBlock block : blocks) {
+            if (block.getBlockState() != null && !block.getBlockState().isAir()) {
+                byPos.put(block.getRelativePos(), block.getBlockState());
+            }
+        }
+
+        List<BlockPos> positions = orderForBuilding(byPos);
+        List<BlockState> states = new ArrayList<>(positions.size());
+        for (BlockPos pos : positions) {
+            states.add(byPos.get(pos));
+        }
+        return new BuildJob(id, owner, dimension, origin, container, positions, states, new BitSet(positions.size()));
+    }
+
+    /**
+     * Bottom-up, support-aware build order
+     */
+    private static List<BlockPos> orderForBuilding(Map<BlockPos, BlockState> blocks) {
+        TreeMap<Integer, List<BlockPos>> layers = new TreeMap<>();
+        for (BlockPos pos : blocks.keySet()) {
+            layers.computeIfAbsent(pos.getY(), y -> new ArrayList<>()).add(pos);
+        }
+
+        List<BlockPos> ordered = new ArrayList<>(blocks.size());
+        Set<BlockPos> placed = new HashSet<>();
+        for (List<BlockPos> layer : layers.values()) {
+            // Sorted so the order doesn't depend on hash iteration order
+            layer.sort(Comparator.comparingInt(BlockPos::getX).thenComparingInt(BlockPos::getZ));
+
+            List<BlockPos> solid = new ArrayList<>();
+            List<BlockPos> attached = new ArrayList<>();
+            for (BlockPos pos : layer) {
+                (blocks.get(pos).getMaterial().isSolid() ? solid : attached).add(pos);
+            }
+            orderLayer(solid, blocks, placed, ordered);
+            orderLayer(attached, blocks, placed, ordered);
+        }
+        return ordered;
+    }
+
+    private static void orderLayer(List<BlockPos> layer, Map<BlockPos, BlockState> blocks,
+                                   Set<BlockPos> placed, List<BlockPos> ordered) {
+        Set<BlockPos> remaining = new LinkedHashSet<>(layer);
+        ArrayDeque<BlockPos> open = new ArrayDeque<>();
+
+        // Start from blocks resting on the ground or on the layer below
+        for (BlockPos pos : layer) {
+            if (placed.contains(pos.below()) || !blocks.containsKey(pos.below())) {
+                open.add(pos);
+            }
+        }
+
+        while (!remaining.isEmpty()) {
+            if (open.isEmpty()) {
+                // Nothing left that touches placed blocks, e.g. a platform held up by the terrain
+                open.add(remaining.iterator().next());
+            }
+
+            BlockPos pos = open.poll();
+            if (!remaining.remove(pos)) {
+                continue;
+            }
+            ordered.add(pos);
+            placed.add(pos);
+            for (Direction direction : Direction.Plane.HORIZONTAL) {
+                BlockPos neighbour = pos.relative(direction);
+                if (remaining.contains(neighbour)) {
+                    open.add(neighbour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the next block for a worker: from the lowest unfinished layer, in its own
+     * slice if possible. Blocks the predicate rejects (e.g. claimed by someone else)
+     * are passed over. Returns -1 when there is nothing to do right now.
+     */
+    public int nextFor(UUID worker, Predicate<Integer> accept) {
+        if (this.isFinished()) {
+            return -1;
+        }
+
+        int end = this.layerEnds[this.cursor];
+        int slice = this.workers.indexOf(worker);
+        if (slice >= 0) {
+            for (int i = this.done.nextClearBit(this.cursor); i < end; i = this.done.nextClearBit(i + 1)) {
+                if (this.sliceOf(i) == slice && accept.test(i)) {
+                    return i;
+                }
+            }
+        }
+        for (int i = this.done.nextClearBit(this.cursor); i < end; i = this.done.nextClearBit(i + 1)) {
+            if (accept.test(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int sliceOf(int index) {
+        return (this.positions.get(index).getX() - this.minX) * this.workers.size() / this.width;
+    }
+
+    /**
+     * Mark a block as done. Skipped blocks are counted separately in the progress.
+     */
+    public void markDone(int index, boolean skippedBlock) {
+        if (this.done.get(index)) {
+            return;
+        }
+        this.done.set(index);
+        if (skippedBlock) {
+            this.skipped++;
+        }
+        this.advanceCursor();
+    }
+
+    private void advanceCursor() {
+        this.cursor = this.done.nextClearBit(this.cursor);
+    }
+
+    public boolean isDone(int index) {
+        return this.done.get(index);
+    }
+
+    public boolean isFinished() {
+        return this.cursor >= this.positions.size();
+    }
+
+    /**
+     * Returns the new percentage when progress passed another 10%, otherwise -1
+     */
+    public int checkProgressReport() {
+        int percent = this.getTotal() == 0 ? 100 : this.getCompleted() * 100 / this.getTotal();
+        if (percent / 10 > this.lastReportedPercent / 10) {
+            this.lastReportedPercent = percent;
+            return percent;
+        }
+        return -1;
+    }
+
+    public void addWorker(UUID worker) {
+        if (!this.workers.contains(worker)) {
+            this.workers.add(worker);
+        }
+    }
+
+    public void removeWorker(UUID worker) {
+        this.workers.remove(worker);
+    }
+
+    public BlockPos getWorldPos(int index) {
+        return this.origin.offset(this.positions.get(index));
+    }
+
+    public BlockState getState(int index) {
+        return this.states.get(index);
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public UUID getOwner() {
+        return this.owner;
+    }
+
+    public RegistryKey<World> getDimension() {
+        return this.dimension;
+    }
+
+    public BlockPos getOrigin() {
+        return this.origin;
+    }
+
+    @Nullable
+    public BlockPos getContainer() {
+        return this.container;
+    }
+
+    public int getCompleted() {
+        return this.done.cardinality();
+    }
+
+    public int getSkipped() {
+        return this.skipped;
+    }
+
+    public int getTotal() {
+        return this.positions.size();
+    }
+
+    public int getWorkerCount() {
+        return this.workers.size();
+    }
+
+    public CompoundNBT save() {
+        CompoundNBT tag = new CompoundNBT();
+        tag.putInt("Id", this.id);
+        tag.putUUID("Owner", this.owner);
+        tag.putString("Dimension", this.dimension.location().toString());
+        tag.put("Origin", NBTUtil.writeBlockPos(this.origin));
+        if (this.container != null) {
+            tag.put("Container", NBTUtil.writeBlockPos(this.container));
+        }
+
+        // Each distinct state is written once, blocks refer to it by index
+        List<BlockState> palette = new ArrayList<>();
+        Map<BlockState, Integer> paletteIndex = new HashMap<>();
+        long[] positions = new long[this.positions.size()];
+        int[] stateIds = new int[this.positions.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = this.positions.get(i).asLong();
+            stateIds[i] = paletteIndex.computeIfAbsent(this.states.get(i), state -> {
+                palette.add(state);
+                return palette.size() - 1;
+            });
+        }
+        ListNBT paletteTag = new ListNBT();
+        for (BlockState state : palette) {
+            paletteTag.add(NBTUtil.writeBlockState(state));
+        }
+        tag.put("Palette", paletteTag);
+        tag.putLongArray("Positions", positions);
+        tag.putIntArray("States", stateIds);
+
+        tag.putLongArray("Done", this.done.toLongArray());
+        tag.putInt("Skipped", this.skipped);
+        tag.putInt("LastReported", this.lastReportedPercent);
+
+        ListNBT workersTag = new ListNBT();
+        for (UUID worker : this.workers) {
+            workersTag.add(NBTUtil.createUUID(worker));
+        }
+        tag.put("Workers", workersTag);
+        return tag;
+    }
+
+    public static BuildJob load(CompoundNBT tag) {
+        RegistryKey<World> dimension = RegistryKey.create(
+                Registry.DIMENSION_REGISTRY, new ResourceLocation(tag.getString("Dimension")));
+        BlockPos container = tag.contains("Container") ? NBTUtil.readBlockPos(tag.getCompound("Container")) : null;
+
+        ListNBT paletteTag = tag.getList("Palette", Constants.NBT.TAG_COMPOUND);
+        List<BlockState> palette = new ArrayList<>(paletteTag.size());
+        for (int i = 0; i < paletteTag.size(); i++) {
+            palette.add(NBTUtil.readBlockState(paletteTag.getCompound(i)));
+        }
+
+        long[] positionArray = tag.getLongArray("Positions");
+        int[] stateIds = tag.getIntArray("States");
+        List<BlockPos> positions = new ArrayList<>(positionArray.length);
+        List<BlockState> states = new ArrayList<>(positionArray.length);
+        for (int i = 0; i < positionArray.length; i++) {
+            positions.add(BlockPos.of(positionArray[i]));
+            states.add(palette.get(stateIds[i]));
+        }
+
+        BuildJob job = new BuildJob(tag.getInt("Id"), tag.getUUID("Owner"), dimension,
+                NBTUtil.readBlockPos(tag.getCompound("Origin")), container,
+                positions, states, BitSet.valueOf(tag.getLongArray("Done")));
+        job.skipped = tag.getInt("Skipped");
+        job.lastReportedPercent = tag.getInt("LastReported");
+        for (INBT worker : tag.getList("Workers", Constants.NBT.TAG_INT_ARRAY)) {
+            job.workers.add(NBTUtil.loadUUID(worker));
+        }
+        return job;
+    }
+}
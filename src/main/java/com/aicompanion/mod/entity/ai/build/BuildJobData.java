@@ -0,0 +1,87 @@
+package com.aicompanion.mod.entity.ai.build;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.entity.MiniBuildEntity;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * All build jobs of a server, saved with the overworld so they survive restarts
+ */
+public class BuildJobData extends WorldSavedData {
+    private static final String NAME = AICompanionMod.MOD_ID + "_builds";
+
+    private final Int2ObjectOpenHashMap<BuildJob> jobs = new Int2ObjectOpenHashMap<>();
+    private int nextId = 1;
+
+    public BuildJobData() {
+        super(NAME);
+    }
+
+    public static BuildJobData get(MinecraftServer server) {
+        return server.overworld().getDataStorage().computeIfAbsent(BuildJobData::new, NAME);
+    }
+
+    public BuildJob createJob(UUID owner, RegistryKey<World> dimension, BlockPos origin, @Nullable BlockPos container,
+                              List<MiniBuildEntity.MiniBlock> blocks) {
+        BuildJob job = BuildJob.create(this.nextId++, owner, dimension, origin, container, blocks);
+        this.jobs.put(job.getId(), job);
+        this.setDirty();
+        return job;
+    }
+
+    @Nullable
+    public BuildJob getJob(int id) {
+        return this.jobs.get(id);
+    }
+
+    public List<BuildJob> getJobsFor(UUID owner) {
+        List<BuildJob> result = new ArrayList<>();
+        for (BuildJob job : this.jobs.values()) {
+            if (job.getOwner().equals(owner)) {
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    public void removeJob(int id) {
+        if (this.jobs.remove(id) != null) {
+            this.setDirty();
+        }
+    }
+
+    @Override
+    public void load(CompoundNBT tag) {
+        this.jobs.clear();
+        this.nextId = Math.max(1, tag.getInt("NextId"));
+        ListNBT jobList = tag.getList("Jobs", Constants.NBT.TAG_COMPOUND);
+        for (int i = 0; i < jobList.size(); i++) {
+            BuildJob job = BuildJob.load(jobList.getCompound(i));
+            this.jobs.put(job.getId(), job);
+        }
+    }
+
+    @Override
+    public CompoundNBT save(CompoundNBT tag) {
+        tag.putInt("NextId", this.nextId);
+        ListNBT jobList = new ListNBT();
+        for (BuildJob job : this.jobs.values()) {
+            jobList.add(job.save());
+        }
+        tag.put("Jobs", jobList);
+        return tag;
+    }
+}
@@ -1,17 +1,30 @@
 package com.aicompanion.mod.entity.ai.goal;
 
 import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.BlockReservationManager;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
+import com.aicompanion.mod.entity.ai.pathfinding.CompanionPathNavigator;
+import com.aicompanion.mod.world.BlockStateMemo;
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.entity.ai.goal.Goal;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.ItemStack;
+import net.minecraft.pathfinding.PathNavigator;
 import net.minecraft.util.Hand;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.text.StringTextComponent;
 import net.minecraft.world.GameType;
+import net.minecraft.world.World;
 import net.minecraft.world.server.ServerWorld;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public class BreakBlockGoal extends Goal {
@@ -33,24 +46,79 @@ public class BreakBlockGoal extends Goal {
             return false;
         }
         
+        // Check if we have a valid target block
+        this.targetBlock = this.companion.getTargetPos();
+        if (this.targetBlock == null || this.targetBlock.equals(BlockPos.ZERO)) {
+            return false;
+        }
+        
         // Check if the owner is in creative mode
+        boolean creativeMode = false;
         if (this.companion.getOwner() instanceof PlayerEntity) {
             PlayerEntity owner = (PlayerEntity) this.companion.getOwner();
-            if (owner.abilities.instabuild) {
-                // Allow breaking in creative mode
-                return true;
-            }
+            creativeMode = owner.abilities.instabuild;
         }
         
-        // Check if we have a valid target block
-        this.targetBlock = this.companion.getTargetPos();
-        if (this.targetBlock == null || this.targetBlock.equals(BlockPos.ZERO)) {
+        // Check if the block is valid for breaking (anything goes in creative mode)
+        BlockState blockState = BlockStateMemo.getBlockState(this.companion.level, this.targetBlock);
+        if (!creativeMode && blockState.isAir(this.companion.level, this.targetBlock)) {
+            return false;
+        }
+        
+        // Claim the block before walking to it, another companion may already be on it
+        if (!BlockReservationManager.getInstance().claim(this.companion.level, this.targetBlock, this.companion)) {
+            // Part of a vein or collect order, leave this block to whoever has it and go on with the rest
+            if (this.companion.startNextQueuedBreak()) {
+                return false;
+            }
+            if (this.companion.getOwner() != null) {
+                this.companion.getOwner().sendMessage(
+                        new StringTextComponent("Another AI Companion is already breaking that block"), UUID.randomUUID());
+            }
+            this.companion.setCurrentTask("idle");
             return false;
         }
+        return true;
+    }
+
+    /**
+     * Find the blocks of the same type connected to the origin (including diagonally),
+     * up to the limit, ordered so each block is the nearest remaining one to the last
+     */
+    public static List<BlockPos> findVein(World world, BlockPos origin, int limit) {
+        Block block = world.getBlockState(origin).getBlock();
+        List<BlockPos> vein = new ArrayList<>();
+        Set<BlockPos> seen = new HashSet<>();
+        ArrayDeque<BlockPos> open = new ArrayDeque<>();
+        open.add(origin);
+        seen.add(origin);
+        
+        while (!open.isEmpty() && vein.size() < limit) {
+            BlockPos pos = open.poll();
+            vein.add(pos);
+            for (BlockPos next : BlockPos.betweenClosed(pos.offset(-1, -1, -1), pos.offset(1, 1, 1))) {
+                if (!seen.contains(next) && world.isLoaded(next) && world.getBlockState(next).is(block)) {
+                    BlockPos immutable = next.immutable();
+                    seen.add(immutable);
+                    open.add(immutable);
+                }
+            }
+        }
         
-        // Check if the block is valid for breaking
-        BlockState blockState = this.companion.level.getBlockState(this.targetBlock);
-        return !blockState.isAir(this.companion.level, this.targetBlock);
+        // Nearest-neighbour order from the origin, so the companion walks as little as possible
+        List<BlockPos> ordered = new ArrayList<>(vein.size());
+        BlockPos current = origin;
+        while (!vein.isEmpty()) {
+            int nearest = 0;
+            for (int i = 1; i < vein.size(); i++) {
+                if (vein.get(i).distSqr(current) < vein.get(nearest).distSqr(current)) {
+                    nearest = i;
+                }
+            }
+            current = vein.remove(nearest);
+            ordered.add(current);
+        }
+        return ordered;
     }
 
     @Override
@@ -60,9 +128,14 @@ public class BreakBlockGoal extends Goal {
         }
         
         // Check if the block is still valid
-        BlockState blockState = this.companion.level.getBlockState(this.targetBlock);
+        BlockState blockState = BlockStateMemo.getBlockState(this.companion.level, this.targetBlock);
         if (blockState.isAir(this.companion.level, this.targetBlock)) {
-            // Block has been broken
+            // Block has been broken, carry on with the next queued one without restarting the goal
+            while (this.companion.startNextQueuedBreak()) {
+                if (this.switchTarget(this.companion.getTargetPos())) {
+                    return true;
+                }
+            }
             if (this.companion.getOwner() != null) {
                 this.companion.getOwner().sendMessage(
                         new StringTextComponent("AI Companion has broken the block"), UUID.randomUUID());
@@ -77,7 +150,10 @@ public class BreakBlockGoal extends Goal {
                 this.companion.getOwner().sendMessage(
                         new StringTextComponent("AI Companion couldn't reach the block to break it"), UUID.randomUUID());
             }
-            this.companion.setCurrentTask("idle");
+            // Skip to the next queued block, if any
+            if (!this.companion.startNextQueuedBreak()) {
+                this.companion.setCurrentTask("idle");
+            }
             return false;
         }
         
@@ -86,18 +162,45 @@ public class BreakBlockGoal extends Goal {
 
     @Override
     public void start() {
-        this.companion.getNavigation().moveTo(
-                this.targetBlock.getX() + 0.5, 
-                this.targetBlock.getY(), 
-                this.targetBlock.getZ() + 0.5, 
-                1.0);
+        PathNavigator navigation = this.companion.getNavigation();
+        if (navigation instanceof CompanionPathNavigator) {
+            ((CompanionPathNavigator) navigation).moveToAsync(this.targetBlock, 1, 1.0, null);
+        } else {
+            navigation.moveTo(
+                    this.targetBlock.getX() + 0.5, 
+                    this.targetBlock.getY(), 
+                    this.targetBlock.getZ() + 0.5, 
+                    1.0);
+        }
         this.breakingTime = 0;
+        this.lastBreakProgress = -1;
         this.reachedBlock = false;
         this.timeoutCounter = 0;
     }
+    
+    /**
+     * Move straight on to another block while the goal keeps running.
+     * Returns false if another companion holds it.
+     */
+    private boolean switchTarget(BlockPos next) {
+        BlockReservationManager reservations = BlockReservationManager.getInstance();
+        if (!reservations.claim(this.companion.level, next, this.companion)) {
+            return false;
+        }
+        
+        reservations.release(this.companion.level, this.targetBlock, this.companion);
+        this.companion.level.destroyBlockProgress(this.companion.getId(), this.targetBlock, -1);
+        this.targetBlock = next;
+        
+        // Picks up the search for this block started when the last one broke, if it's still running
+        this.start();
+        return true;
+    }
 
     @Override
     public void stop() {
+        CompanionWorkScheduler.getInstance().cancel(this.companion, "break");
+        BlockReservationManager.getInstance().release(this.companion.level, this.targetBlock, this.companion);
         this.companion.getNavigation().stop();
         this.companion.level.destroyBlockProgress(this.companion.getId(), this.targetBlock, -1);
         this.lastBreakProgress = -1;
@@ -112,6 +215,13 @@ public class BreakBlockGoal extends Goal {
                 this.targetBlock.getZ() + 0.5, 
                 10.0F, (float)this.companion.getMaxHeadXRot());
         
+        // Keep our claim on the block alive
+        if (this.companion.tickCount % 20 == 0
+                && !BlockReservationManager.getInstance().renew(this.companion.level, this.targetBlock, this.companion)) {
+            this.companion.setCurrentTask("idle");
+            return;
+        }
+        
         // Check if we're close enough to the block
         double distanceSq = this.companion.distanceToSqr(
                 this.targetBlock.getX() + 0.5, 
@@ -120,13 +230,15 @@ public class BreakBlockGoal extends Goal {
         
         if (distanceSq > 4.0) { // Need to be within 2 blocks
             // Not close enough, keep moving
-            if (this.companion.getNavigation().isDone()) {
-                // Try to pathfind again
-                this.companion.getNavigation().moveTo(
-                        this.targetBlock.getX() + 0.5, 
-                        this.targetBlock.getY(), 
-                        this.targetBlock.getZ() + 0.5, 
-                        1.0);
+            if (this.companion.getNavigation().isDone() && !this.isPathPending()) {
+                // Try to pathfind again, once the scheduler has time for it
+                BlockPos target = this.targetBlock;
+                CompanionWorkScheduler.getInstance().submit(this.companion, "break", CompanionWorkScheduler.Priority.TASK,
+                        () -> this.companion.getNavigation().moveTo(
+                                target.getX() + 0.5, 
+                                target.getY(), 
+                                target.getZ() + 0.5, 
+                                1.0));
             }
             return;
         }
@@ -145,51 +257,60 @@ public class BreakBlockGoal extends Goal {
             // Creative mode: break instantly
             if (this.companion.level instanceof ServerWorld) {
                 ServerWorld serverWorld = (ServerWorld) this.companion.level;
+                // canContinueToUse notices the block is gone and finishes up
                 serverWorld.destroyBlock(this.targetBlock, true, this.companion);
-                this.companion.setCurrentTask("idle");
-                
-                if (this.companion.getOwner() != null) {
-                    this.companion.getOwner().sendMessage(
-                            new StringTextComponent("AI Companion has broken the block"), UUID.randomUUID());
-                }
+                this.prefetchNext();
             }
             return;
         }
         
+
         // Survival mode: break progressively
-        BlockState blockState = this.companion.level.getBlockState(this.targetBlock);
+        BlockState blockState = BlockStateMemo.getBlockState(this.companion.level, this.targetBlock);
         if (!blockState.isAir(this.companion.level, this.targetBlock)) {
             this.breakingTime++;
             
-            // Animate the breaking
-            int i = (int)(this.breakingTime / 20.0F * 10.0F);
-            if (i != this.lastBreakProgress) {
-                this.companion.level.destroyBlockProgress(this.companion.getId(), this.targetBlock, i);
-                this.lastBreakProgress = i;
-            }
-            
             // Break the block after a certain time (depending on block hardness)
             float hardness = blockState.getDestroySpeed(this.companion.level, this.targetBlock);
             int breakTime = (int)(hardness * 30); // Roughly equivalent to player breaking speed
             
+            // Animate the breaking; stages 0-9, only sent when the stage changes
+            int stage = breakTime > 0 ? MathHelper.clamp((int)((float)this.breakingTime / breakTime * 10.0F), 0, 9) : 9;
+            if (stage != this.lastBreakProgress) {
+                this.companion.level.destroyBlockProgress(this.companion.getId(), this.targetBlock, stage);
+                this.lastBreakProgress = stage;
+            }
+            
             if (this.breakingTime >= breakTime) {
                 // Break the block
                 if (this.companion.level instanceof ServerWorld) {
                     ServerWorld serverWorld = (ServerWorld) this.companion.level;
                     serverWorld.destroyBlock(this.targetBlock, true, this.companion);
+                    this.prefetchNext();
                     
                     // Swing arm animation
                     this.companion.swing(Hand.MAIN_HAND);
                     
-                    // Task complete
-                    this.companion.setCurrentTask("idle");
-                    
-                    if (this.companion.getOwner() != null) {
-                        this.companion.getOwner().sendMessage(
-                                new StringTextComponent("AI Companion has broken the block"), UUID.randomUUID());
-                    }
+                    // Task complete, canContinueToUse notices the block is gone and finishes up
                 }
             }
         }
     }
+    
+    /**
+     * Start looking for a path to the next queued block. Only done once the current
+     * block is gone, a path searched for before that would cross the changed section.
+     */
+    private void prefetchNext() {
+        BlockPos next = this.companion.peekNextQueuedBreak();
+        PathNavigator navigation = this.companion.getNavigation();
+        if (next != null && navigation instanceof CompanionPathNavigator) {
+            ((CompanionPathNavigator) navigation).prefetchPath(next, 1);
+        }
+    }
+    
+    private boolean isPathPending() {
+        PathNavigator navigation = this.companion.getNavigation();
+        return navigation instanceof CompanionPathNavigator && ((CompanionPathNavigator) navigation).isPathPending();
+    }
 }
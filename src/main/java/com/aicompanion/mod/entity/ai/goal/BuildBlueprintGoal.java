@@ -0,0 +1,372 @@
+package com.aicompanion.mod.entity.ai.goal;
+
+import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.BlockReservationManager;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
+import com.aicompanion.mod.entity.ai.build.BuildJob;
+import com.aicompanion.mod.entity.ai.build.BuildJobData;
+import com.aicompanion.mod.world.BlockStateMemo;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.SoundType;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.entity.ai.goal.Goal;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.inventory.IInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.tileentity.HopperTileEntity;
+import net.minecraft.tileentity.LockableTileEntity;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.Direction;
+import net.minecraft.util.Hand;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.shapes.ISelectionContext;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.LockCode;
+import net.minecraft.world.World;
+import net.minecraftforge.common.util.BlockSnapshot;
+import net.minecraftforge.event.ForgeEventFactory;
+
+import javax.annotation.Nullable;
+import java.util.EnumSet;
+import java.util.UUID;
+
+/**
+ * Works on the companion's build job: takes the next block from the job, fetches
+ * the material from the job's container, walks into reach and places it.
+ *
+ * Blocks are placed on the job owner's behalf, so only while the owner is
+ * online: each one must be in terrain the owner may change and pass the place
+ * event as if the owner placed it. Blocks that aren't replaceable are skipped,
+ * never overwritten.
+ */
+public class BuildBlueprintGoal extends Goal {
+    // Blocks are placed from up to 4 blocks away
+    private static final double REACH_SQ = 16.0D;
+    // Wait before asking the job again when the current layer is taken by others
+    private static final int IDLE_WAIT_TICKS = 40;
+    // Wait before looking in the container again when it's missing a material
+    private static final int MISSING_WAIT_TICKS = 100;
+    // Skip a block that couldn't be reached in 20 seconds
+    private static final int REACH_TIMEOUT_TICKS = 400;
+
+    private final AICompanionEntity companion;
+    private BuildJob job;
+    private int index = -1;
+    private BlockPos targetPos;
+    private int moveTicks = 0;
+    private int waitTicks = 0;
+    // Last material the owner was told about, so they are only told once
+    private Item missingItem = null;
+
+    public BuildBlueprintGoal(AICompanionEntity companion) {
+        this.companion = companion;
+        this.setFlags(EnumSet.of(Goal.Flag.MOVE, Goal.Flag.LOOK));
+    }
+
+    @Override
+    public boolean canUse() {
+        if (this.companion.level.isClientSide || !this.companion.isActive()
+                || !this.companion.getCurrentTask().equals("build")) {
+            return false;
+        }
+
+        this.job = this.findJob();
+        if (this.job == null) {
+            // The job was finished or cancelled while we were away
+            this.companion.clearBuildJob();
+            this.companion.setCurrentTask("idle");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean canContinueToUse() {
+        return this.companion.isActive()
+                && this.companion.getCurrentTask().equals("build")
+                && this.job != null
+                && this.findJob() == this.job;
+    }
+
+    @Nullable
+    private BuildJob findJob() {
+        MinecraftServer server = this.companion.getServer();
+        if (server == null || this.companion.getBuildJobId() == 0) {
+            return null;
+        }
+
+        BuildJob found = BuildJobData.get(server).getJob(this.companion.getBuildJobId());
+        if (found == null || found.getDimension() != this.companion.level.dimension()) {
+            return null;
+        }
+        return found;
+    }
+
+    @Override
+    public void start() {
+        this.job.addWorker(this.companion.getUUID());
+        this.index = -1;
+        this.waitTicks = 0;
+        this.missingItem = null;
+    }
+
+    @Override
+    public void stop() {
+        this.releaseTarget();
+        CompanionWorkScheduler.getInstance().cancel(this.companion, "build");
+        this.companion.getNavigation().stop();
+
+        // Leave the job if we were given other work, so the slices are split among the rest
+        if (!this.companion.getCurrentTask().equals("build") && this.job != null) {
+            this.job.removeWorker(this.companion.getUUID());
+            this.companion.clearBuildJob();
+        }
+    }
+
+    @Override
+    public void tick() {
+        if (this.waitTicks > 0) {
+            this.waitTicks--;
+            return;
+        }
+
+        if (this.index < 0 && !this.pickNextBlock()) {
+            return;
+        }
+
+        World world = this.companion.level;
+        BlockState state = this.job.getState(this.index);
+        if (this.job.isDone(this.index)) {
+            this.releaseTarget();
+            return;
+        }
+        if (BlockStateMemo.getBlockState(world, this.targetPos) == state) {
+            this.finishBlock(false);
+            return;
+        }
+
+        // Keep our claim on the block alive
+        if (this.companion.tickCount % 20 == 0
+                && !BlockReservationManager.getInstance().renew(world, this.targetPos, this.companion)) {
+            this.index = -1;
+            return;
+        }
+
+        // Get the material first
+        Item item = state.getBlock().asItem();
+        if (this.needsMaterials()) {
+            if (item == Items.AIR) {
+                // Nothing to place it with, e.g. fluids or fire
+                this.finishBlock(true);
+                return;
+            }
+            ItemStack held = this.companion.getHeldItem();
+            if (held.isEmpty() || held.getItem() != item) {
+                this.fetchMaterial(item);
+                return;
+            }
+        }
+
+        Vector3d center = Vector3d.atCenterOf(this.targetPos);
+        if (this.companion.distanceToSqr(center) > REACH_SQ) {
+            if (this.moveTicks++ > REACH_TIMEOUT_TICKS) {
+                this.finishBlock(true);
+                return;
+            }
+            this.moveTowards(this.targetPos);
+            return;
+        }
+
+        this.companion.getLookControl().setLookAt(center.x, center.y, center.z, 10.0F, (float)this.companion.getMaxHeadXRot());
+
+        PlayerEntity owner = world.getPlayerByUUID(this.job.getOwner());
+        if (owner == null) {
+            // Protection is checked against the owner, wait for them to come back
+            this.waitTicks = MISSING_WAIT_TICKS;
+            return;
+        }
+        BlockState current = BlockStateMemo.getBlockState(world, this.targetPos);
+        if (!current.getMaterial().isReplaceable() || current.hasTileEntity()
+                || !state.canSurvive(world, this.targetPos) || !world.mayInteract(owner, this.targetPos)) {
+            // Something else is in the way, the block has nothing to hold on to, or the spot is protected
+            this.finishBlock(true);
+            return;
+        }
+        if (!world.isUnobstructed(state, this.targetPos, ISelectionContext.empty())) {
+            // Someone is standing in the spot, step back from it
+            Vector3d away = this.companion.position().subtract(center).normalize().scale(3.0D).add(this.companion.position());
+            this.companion.getNavigation().moveTo(away.x, away.y, away.z, 1.0D);
+            return;
+        }
+
+        // Placed first and undone if cancelled, the same way Forge fires the event for players
+        BlockSnapshot snapshot = BlockSnapshot.create(world.dimension(), world, this.targetPos);
+        world.setBlock(this.targetPos, state, 3);
+        if (ForgeEventFactory.onBlockPlace(owner, snapshot, Direction.UP)) {
+            snapshot.restore(true, false);
+            this.finishBlock(true);
+            return;
+        }
+        SoundType sound = state.getSoundType(world, this.targetPos, this.companion);
+        world.playSound(null, this.targetPos, sound.getPlaceSound(), SoundCategory.BLOCKS,
+                (sound.getVolume() + 1.0F) / 2.0F, sound.getPitch() * 0.8F);
+        this.companion.swing(Hand.MAIN_HAND);
+
+        if (this.needsMaterials()) {
+            ItemStack held = this.companion.getHeldItem();
+            held.shrink(1);
+            this.companion.setHeldItem(held.isEmpty() ? ItemStack.EMPTY : held);
+        }
+        this.finishBlock(false);
+    }
+
+    /**
+     * Claim the next block of the job. Returns false if there is nothing to do for now.
+     */
+    private boolean pickNextBlock() {
+        World world = this.companion.level;
+        BlockReservationManager reservations = BlockReservationManager.getInstance();
+        int next = this.job.nextFor(this.companion.getUUID(), i -> {
+            BlockPos pos = this.job.getWorldPos(i);
+            return world.isLoaded(pos) && reservations.claim(world, pos, this.companion);
+        });
+
+        if (next < 0) {
+            this.waitTicks = IDLE_WAIT_TICKS;
+            return false;
+        }
+
+        this.index = next;
+        this.targetPos = this.job.getWorldPos(next);
+        this.moveTicks = 0;
+        return true;
+    }
+
+    private void finishBlock(boolean skipped) {
+        MinecraftServer server = this.companion.getServer();
+        this.job.markDone(this.index, skipped);
+        BuildJobData data = BuildJobData.get(server);
+        data.setDirty();
+        this.releaseTarget();
+
+        int percent = this.job.checkProgressReport();
+        if (this.job.isFinished()) {
+            this.tellOwner("Build #" + this.job.getId() + " finished: " +
+                    (this.job.getTotal() - this.job.getSkipped()) + " blocks placed, " +
+                    this.job.getSkipped() + " skipped");
+            data.removeJob(this.job.getId());
+            this.companion.clearBuildJob();
+            this.companion.setCurrentTask("idle");
+        } else if (percent >= 0) {
+            this.tellOwner("Build #" + this.job.getId() + ": " + percent + "% (" +
+                    this.job.getCompleted() + "/" + this.job.getTotal() + " blocks)");
+        }
+    }
+
+    private void releaseTarget() {
+        if (this.index >= 0) {
+            BlockReservationManager.getInstance().release(this.companion.level, this.targetPos, this.companion);
+            this.index = -1;
+        }
+    }
+
+    private boolean needsMaterials() {
+        LivingEntity owner = this.companion.getOwner();
+        return !(owner instanceof PlayerEntity && ((PlayerEntity) owner).abilities.instabuild);
+    }
+
+    /**
+     * Walk to the job's container and swap what we hold for a stack of the material
+     */
+    private void fetchMaterial(Item item) {
+        BlockPos containerPos = this.job.getContainer();
+        PlayerEntity owner = this.companion.level.getPlayerByUUID(this.job.getOwner());
+        if (containerPos != null && owner == null) {
+            // Only take from the container while its owner is around to vouch for it
+            this.waitTicks = MISSING_WAIT_TICKS;
+            return;
+        }
+        IInventory container = containerPos == null ? null : getContainer(this.companion.level, containerPos, owner);
+        if (container == null) {
+            this.reportMissing(item);
+            this.waitTicks = MISSING_WAIT_TICKS;
+            return;
+        }
+
+        if (this.companion.distanceToSqr(Vector3d.atCenterOf(containerPos)) > REACH_SQ) {
+            this.moveTowards(containerPos);
+            return;
+        }
+
+        // Put back what we are holding, dropping whatever doesn't fit
+        ItemStack held = this.companion.getHeldItem();
+        if (!held.isEmpty()) {
+            ItemStack rest = HopperTileEntity.addItem(null, container, held, null);
+            if (!rest.isEmpty()) {
+                this.companion.spawnAtLocation(rest);
+            }
+            this.companion.setHeldItem(ItemStack.EMPTY);
+        }
+
+        for (int slot = 0; slot < container.getContainerSize(); slot++) {
+            ItemStack stack = container.getItem(slot);
+            if (!stack.isEmpty() && stack.getItem() == item) {
+                this.companion.setHeldItem(container.removeItem(slot, stack.getCount()));
+                container.setChanged();
+                this.missingItem = null;
+                return;
+            }
+        }
+
+        this.reportMissing(item);
+        this.waitTicks = MISSING_WAIT_TICKS;
+    }
+
+    /**
+     * The container at the position, if the job's owner may still use it: not in
+     * protected terrain, and not locked since the build was started
+     */
+    @Nullable
+    private static IInventory getContainer(World world, BlockPos pos, PlayerEntity owner) {
+        if (!world.isLoaded(pos) || !world.mayInteract(owner, pos)) {
+            return null;
+        }
+        TileEntity tileEntity = world.getBlockEntity(pos);
+        if (!(tileEntity instanceof IInventory)) {
+            return null;
+        }
+        // The lock isn't exposed and canOpen would message the owner every time, read it from the saved data
+        if (tileEntity instanceof LockableTileEntity && LockCode.fromTag(tileEntity.save(new CompoundNBT())) != LockCode.NO_LOCK) {
+            return null;
+        }
+        return (IInventory) tileEntity;
+    }
+
+    private void reportMissing(Item item) {
+        if (item != this.missingItem) {
+            this.missingItem = item;
+            this.tellOwner("Build #" + this.job.getId() + " needs more " +
+                    new ItemStack(item).getHoverName().getString() +
+                    (this.job.getContainer() == null ? " (no container linked)" : " in its container"));
+        }
+    }
+
+    private void moveTowards(BlockPos pos) {
+        if (this.companion.getNavigation().isDone()) {
+            CompanionWorkScheduler.getInstance().submit(this.companion, "build", CompanionWorkScheduler.Priority.BULK,
+                    () -> this.companion.getNavigation().moveTo(pos.getX() + 0.5, pos.getY(), pos.getZ() + 0.5, 1.0));
+        }
+    }
+
+    private void tellOwner(String message) {
+        if (this.companion.getOwner() != null) {
+            this.companion.getOwner().sendMessage(new StringTextComponent(message), UUID.randomUUID());
+        }
+    }
+}
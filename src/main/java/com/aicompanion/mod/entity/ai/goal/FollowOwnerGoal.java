@@ -1,16 +1,27 @@
 package com.aicompanion.mod.entity.ai.goal;
 
 import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.CompanionSpatialHash;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
+import com.aicompanion.mod.entity.ai.FormationManager;
+import com.aicompanion.mod.entity.ai.SafeSpotCache;
+import com.aicompanion.mod.entity.ai.pathfinding.CompanionPathNavigator;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.ai.goal.Goal;
 import net.minecraft.pathfinding.PathNavigator;
 import net.minecraft.pathfinding.PathNodeType;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.world.World;
 
 import java.util.EnumSet;
 
 public class FollowOwnerGoal extends Goal {
+    // Only path again once our formation slot has moved this far (1.5 blocks)
+    private static final double SLOT_REPATH_DISTANCE_SQ = 2.25D;
+    private static final double SEPARATION_RADIUS = 1.5D;
+    private static final double SEPARATION_STRENGTH = 0.05D;
+    
     private final AICompanionEntity companion;
     private LivingEntity owner;
     private final World world;
@@ -21,6 +32,8 @@ public class FollowOwnerGoal extends Goal {
     private final float startDistance;
     private float oldWaterCost;
     private final boolean canFly;
+    private int formationSlot;
+    private Vector3d pathedSlotPos;
 
     public FollowOwnerGoal(AICompanionEntity companion, double speed, float startDist, float stopDist, boolean canFly) {
         this.companion = companion;
@@ -54,7 +67,7 @@ public class FollowOwnerGoal extends Goal {
 
     @Override
     public boolean canContinueToUse() {
-        if (this.navigation.isDone()) {
+        if (this.navigation.isDone() && !this.isPathPending()) {
             return false;
         } else if (!this.companion.isActive()) {
             return false;
@@ -68,12 +81,16 @@ public class FollowOwnerGoal extends Goal {
     @Override
     public void start() {
         this.timeToRecalcPath = 0;
+        this.formationSlot = FormationManager.getInstance().acquireSlot(this.owner.getUUID(), this.companion.getUUID());
+        this.pathedSlotPos = null;
         this.oldWaterCost = this.companion.getPathfindingMalus(PathNodeType.WATER);
         this.companion.setPathfindingMalus(PathNodeType.WATER, 0.0F);
     }
 
     @Override
     public void stop() {
+        CompanionWorkScheduler.getInstance().cancel(this.companion, "follow");
+        FormationManager.getInstance().releaseSlot(this.owner.getUUID(), this.companion.getUUID());
         this.owner = null;
         this.navigation.stop();
         this.companion.setPathfindingMalus(PathNodeType.WATER, this.oldWaterCost);
@@ -82,55 +99,51 @@ public class FollowOwnerGoal extends Goal {
     @Override
     public void tick() {
         this.companion.getLookControl().setLookAt(this.owner, 10.0F, (float)this.companion.getMaxHeadXRot());
+        
+        // Steer away from companions that are too close
+        Vector3d separation = CompanionSpatialHash.get(this.world).getSeparation(this.companion, SEPARATION_RADIUS);
+        if (separation.lengthSqr() > 0.0D) {
+            this.companion.setDeltaMovement(this.companion.getDeltaMovement().add(
+                    separation.x * SEPARATION_STRENGTH, 0.0D, separation.z * SEPARATION_STRENGTH));
+        }
+        
         if (--this.timeToRecalcPath <= 0) {
             this.timeToRecalcPath = 10;
             if (!this.companion.isLeashed() && !this.companion.isPassenger()) {
+                // Falling far behind is more urgent than keeping pace
+                CompanionWorkScheduler scheduler = CompanionWorkScheduler.getInstance();
                 if (this.companion.distanceToSqr(this.owner) >= 144.0D) {
-                    this.teleportToOwner();
+                    scheduler.submit(this.companion, "follow", CompanionWorkScheduler.Priority.RESCUE, this::teleportToOwner);
                 } else {
-                    this.navigation.moveTo(this.owner, this.speedModifier);
+                    // Head for our slot around the owner, and only repath once it has moved noticeably
+                    Vector3d slotPos = FormationManager.getSlotPosition(this.owner, this.formationSlot);
+                    if (this.pathedSlotPos == null || this.navigation.isDone()
+                            || slotPos.distanceToSqr(this.pathedSlotPos) > SLOT_REPATH_DISTANCE_SQ) {
+                        this.pathedSlotPos = slotPos;
+                        scheduler.submit(this.companion, "follow", CompanionWorkScheduler.Priority.FOLLOW,
+                                () -> this.navigation.moveTo(slotPos.x, slotPos.y, slotPos.z, this.speedModifier));
+                    }
                 }
             }
         }
     }
 
-    private void teleportToOwner() {
-        BlockPos blockpos = this.owner.blockPosition();
-
-        for(int i = 0; i < 10; ++i) {
-            int j = this.randomIntInclusive(-3, 3);
-            int k = this.randomIntInclusive(-1, 1);
-            int l = this.randomIntInclusive(-3, 3);
-            boolean flag = this.tryToTeleportToLocation(blockpos.getX() + j, blockpos.getY() + k, blockpos.getZ() + l);
-            if (flag) {
-                return;
-            }
-        }
-    }
-
-    private boolean tryToTeleportToLocation(int x, int y, int z) {
-        if (Math.abs(x - this.owner.getX()) < 2.0D && Math.abs(z - this.owner.getZ()) < 2.0D) {
-            return false;
-        } else if (!this.isValidTeleportSpot(new BlockPos(x, y, z))) {
-            return false;
-        } else {
-            this.companion.moveTo((double)x + 0.5D, (double)y, (double)z + 0.5D, this.companion.yRot, this.companion.xRot);
-            this.navigation.stop();
+    /**
+     * Whether a move is still waiting for the scheduler or an asynchronous search
+     */
+    private boolean isPathPending() {
+        if (CompanionWorkScheduler.getInstance().isPending(this.companion, "follow")) {
             return true;
         }
+        return this.navigation instanceof CompanionPathNavigator && ((CompanionPathNavigator) this.navigation).isPathPending();
     }
 
-    private boolean isValidTeleportSpot(BlockPos pos) {
-        PathNodeType pathnodetype = this.navigation.getNodeEvaluator().getBlockPathType(this.world, pos.getX(), pos.getY(), pos.getZ());
-        if (pathnodetype != PathNodeType.WALKABLE) {
-            return false;
-        } else {
-            BlockPos blockpos = pos.subtract(this.companion.blockPosition());
-            return this.world.noCollision(this.companion, this.companion.getBoundingBox().move(blockpos));
+    private void teleportToOwner() {
+        // Safe spots around the owner are shared by all of their companions
+        BlockPos spot = SafeSpotCache.getInstance().nextSpot(this.companion, this.owner);
+        if (spot != null) {
+            this.companion.moveTo((double)spot.getX() + 0.5D, (double)spot.getY(), (double)spot.getZ() + 0.5D, this.companion.yRot, this.companion.xRot);
+            this.navigation.stop();
         }
     }
-
-    private int randomIntInclusive(int min, int max) {
-        return this.companion.getRandom().nextInt(max - min + 1) + min;
-    }
 }
@@ -1,24 +1,35 @@
 package com.aicompanion.mod.entity.ai.goal;
 
+import com.aicompanion.mod.config.AICompanionConfig;
 import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
+import com.aicompanion.mod.entity.ai.pathfinding.CompanionPathNavigator;
+import com.aicompanion.mod.entity.ai.pathfinding.HierarchicalPathPlanner;
 import net.minecraft.entity.ai.goal.Goal;
 import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathNavigator;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.server.ServerWorld;
 
+import javax.annotation.Nullable;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.UUID;
 
 public class MoveToBlockGoal extends Goal {
+    // Moves longer than this (16 blocks) are planned over the region graph first
+    private static final double ROUTE_DISTANCE_SQ = 256.0D;
+    
     private final AICompanionEntity companion;
     private final double speedModifier;
     private Path path;
-    private double pathedTargetX;
-    private double pathedTargetY;
-    private double pathedTargetZ;
     private int ticksUntilNextPathRecalculation;
     private int ticksUntilTimeout;
+    private boolean awaitingFirstPath;
+    private Deque<BlockPos> route;
+    private HierarchicalPathPlanner.RouteSearch routeSearch;
     
     public MoveToBlockGoal(AICompanionEntity companion, double speedModifier) {
         this.companion = companion;
@@ -74,19 +85,124 @@ public class MoveToBlockGoal extends Goal {
         
         this.ticksUntilNextPathRecalculation = 0;
         this.ticksUntilTimeout = 100; // Timeout after 5 seconds (100 ticks) of not finding a path
-        this.path = this.companion.getNavigation().createPath(targetPos.getX(), targetPos.getY(), targetPos.getZ(), 1);
+        this.awaitingFirstPath = true;
+        this.route = null;
+        this.routeSearch = null;
+        this.schedulePathUpdate(targetPos);
+    }
+    
+    /**
+     * Route planning and path requests go through the work scheduler so they don't all land in one tick
+     */
+    private void schedulePathUpdate(BlockPos targetPos) {
+        CompanionWorkScheduler.getInstance().submitSteps(this.companion, "move", CompanionWorkScheduler.Priority.TASK,
+                () -> this.updatePath(targetPos));
+    }
+    
+    /**
+     * Head for the target, either directly or via the next waypoint of a planned route.
+     * Returns false while the route is still being planned.
+     */
+    private boolean updatePath(BlockPos targetPos) {
+        if (this.companion.distanceToSqr(Vector3d.atBottomCenterOf(targetPos)) > ROUTE_DISTANCE_SQ
+                && this.companion.level instanceof ServerWorld) {
+            if (this.route == null && !this.planRoute(targetPos)) {
+                return false;
+            }
+            if (this.route != null) {
+                this.requestPath(this.nextWaypoint());
+                return true;
+            }
+        }
         
-        if (this.path != null) {
-            this.companion.getNavigation().moveTo(this.path, this.speedModifier);
-        } else if (this.companion.getOwner() != null) {
-            this.companion.getOwner().sendMessage(
-                    new StringTextComponent("AI Companion couldn't find a path to the destination"), UUID.randomUUID());
-            this.companion.setCurrentTask("idle");
+        this.route = null;
+        this.requestPath(targetPos);
+        return true;
+    }
+    
+    /**
+     * Plan the long-distance route a step at a time. Returns false while the
+     * search needs more steps; once it returns true the route is set, or left
+     * null when none could be planned.
+     */
+    private boolean planRoute(BlockPos targetPos) {
+        if (this.routeSearch == null) {
+            this.routeSearch = HierarchicalPathPlanner.start((ServerWorld) this.companion.level, this.companion.blockPosition(), targetPos);
+            if (this.routeSearch == null) {
+                return true;
+            }
         }
+        
+        if (!this.routeSearch.step()) {
+            return false;
+        }
+        this.route = this.routeSearch.getRoute();
+        this.routeSearch = null;
+        return true;
+    }
+    
+    /**
+     * Get the next waypoint of the long-distance route
+     */
+    private BlockPos nextWaypoint() {
+        // Drop waypoints we've already walked past
+        BlockPos companionPos = this.companion.blockPosition();
+        while (this.route.size() > 1 && this.route.peekFirst().closerThan(companionPos, 3.0)) {
+            this.route.pollFirst();
+        }
+        return this.route.peekFirst();
+    }
+    
+    /**
+     * Request a path to the target. Long moves are searched on a worker thread
+     * and the result arrives through onPathComputed on a later tick.
+     */
+    private void requestPath(BlockPos targetPos) {
+        PathNavigator navigation = this.companion.getNavigation();
+        int asyncDistance = AICompanionConfig.SERVER.asyncPathDistance.get();
+        
+        if (navigation instanceof CompanionPathNavigator
+                && targetPos.distSqr(this.companion.blockPosition()) > asyncDistance * asyncDistance) {
+            ((CompanionPathNavigator) navigation).moveToAsync(targetPos, 1, this.speedModifier, this::onPathComputed);
+        } else {
+            Path path = navigation.createPath(targetPos.getX(), targetPos.getY(), targetPos.getZ(), 1);
+            if (path != null) {
+                navigation.moveTo(path, this.speedModifier);
+            }
+            this.onPathComputed(path);
+        }
+    }
+    
+    private void onPathComputed(@Nullable Path path) {
+        this.path = path;
+        
+        if (path == null) {
+            // A leg that can't be walked means the route is stale, plan a new one next time
+            this.route = null;
+            
+            if (this.awaitingFirstPath) {
+                if (this.companion.getOwner() != null) {
+                    this.companion.getOwner().sendMessage(
+                            new StringTextComponent("AI Companion couldn't find a path to the destination"), UUID.randomUUID());
+                }
+                this.companion.setCurrentTask("idle");
+            } else if (--this.ticksUntilTimeout <= 0) {
+                // Give up after timeout
+                if (this.companion.getOwner() != null) {
+                    this.companion.getOwner().sendMessage(
+                            new StringTextComponent("AI Companion couldn't reach the destination"), UUID.randomUUID());
+                }
+                this.companion.setCurrentTask("idle");
+            }
+        }
+        this.awaitingFirstPath = false;
     }
 
     @Override
     public void stop() {
+        CompanionWorkScheduler.getInstance().cancel(this.companion, "move");
+        this.route = null;
+        this.routeSearch = null;
         this.companion.getNavigation().stop();
     }
 
@@ -114,35 +230,23 @@ public class MoveToBlockGoal extends Goal {
                 return;
             }
             
+            // Still waiting for the scheduler or an asynchronous search
+            if (this.isPathPending()) {
+                return;
+            }
+            
             if (this.path == null || this.companion.getNavigation().isDone()) {
-                Vector3d companionPosition = this.companion.position();
-                
-                double dx = targetPos.getX() - companionPosition.x;
-                double dy = targetPos.getY() - companionPosition.y;
-                double dz = targetPos.getZ() - companionPosition.z;
-                double distanceSq = dx * dx + dy * dy + dz * dz;
-                
-                if (distanceSq > 256.0D) { // If too far (16 blocks), teleport closer
-                    this.ticksUntilTimeout--;
-                    
-                    if (this.ticksUntilTimeout <= 0) {
-                        // Give up after timeout
-                        if (this.companion.getOwner() != null) {
-                            this.companion.getOwner().sendMessage(
-                                    new StringTextComponent("AI Companion couldn't reach the destination"), UUID.randomUUID());
-                        }
-                        this.companion.setCurrentTask("idle");
-                        return;
-                    }
-                } else {
-                    this.path = this.companion.getNavigation().createPath(targetPos.getX(), targetPos.getY(), targetPos.getZ(), 1);
-                    if (this.path != null) {
-                        this.companion.getNavigation().moveTo(this.path, this.speedModifier);
-                    } else {
-                        this.ticksUntilTimeout--;
-                    }
-                }
+                this.schedulePathUpdate(targetPos);
             }
         }
     }
+    
+    private boolean isPathPending() {
+        if (CompanionWorkScheduler.getInstance().isPending(this.companion, "move")) {
+            return true;
+        }
+        
+        PathNavigator navigation = this.companion.getNavigation();
+        return navigation instanceof CompanionPathNavigator && ((CompanionPathNavigator) navigation).isPathPending();
+    }
 }
@@ -1,6 +1,9 @@
 package com.aicompanion.mod.entity.ai.goal;
 
 import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.BlockReservationManager;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
+import com.aicompanion.mod.world.BlockStateMemo;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.entity.ai.goal.Goal;
@@ -56,7 +59,7 @@ public class PlaceBlockGoal extends Goal {
         }
         
         // Check if the space is valid for placing a block
-        BlockState existingBlock = this.companion.level.getBlockState(this.targetPos);
+        BlockState existingBlock = BlockStateMemo.getBlockState(this.companion.level, this.targetPos);
         if (!existingBlock.isAir(this.companion.level, this.targetPos)) {
             if (this.companion.getOwner() != null) {
                 this.companion.getOwner().sendMessage(
@@ -66,6 +69,15 @@ public class PlaceBlockGoal extends Goal {
             return false;
         }
         
+        // Claim the spot before walking to it, another companion may already be placing there
+        if (!BlockReservationManager.getInstance().claim(this.companion.level, this.targetPos, this.companion)) {
+            if (this.companion.getOwner() != null) {
+                this.companion.getOwner().sendMessage(
+                        new StringTextComponent("Another AI Companion is already placing a block there"), UUID.randomUUID());
+            }
+            this.companion.setCurrentTask("idle");
+            return false;
+        }
         return true;
     }
 
@@ -76,7 +88,7 @@ public class PlaceBlockGoal extends Goal {
         }
         
         // Check if the block has been placed
-        BlockState existingBlock = this.companion.level.getBlockState(this.targetPos);
+        BlockState existingBlock = BlockStateMemo.getBlockState(this.companion.level, this.targetPos);
         ItemStack heldItem = this.companion.getHeldItem();
         
         if (heldItem.isEmpty() || !(heldItem.getItem() instanceof BlockItem)) {
@@ -146,6 +158,8 @@ public class PlaceBlockGoal extends Goal {
 
     @Override
     public void stop() {
+        CompanionWorkScheduler.getInstance().cancel(this.companion, "place");
+        BlockReservationManager.getInstance().release(this.companion.level, this.targetPos, this.companion);
         this.companion.getNavigation().stop();
     }
 
@@ -158,6 +172,13 @@ public class PlaceBlockGoal extends Goal {
                 this.targetPos.getZ() + 0.5, 
                 10.0F, (float)this.companion.getMaxHeadXRot());
         
+        // Keep our claim on the spot alive
+        if (this.companion.tickCount % 20 == 0
+                && !BlockReservationManager.getInstance().renew(this.companion.level, this.targetPos, this.companion)) {
+            this.companion.setCurrentTask("idle");
+            return;
+        }
+        
         BlockPos adjacentPos = findAdjacentPosition();
         if (adjacentPos == null) {
             // No valid adjacent position
@@ -178,12 +199,13 @@ public class PlaceBlockGoal extends Goal {
         if (distanceSq > 4.0) { // Need to be within 2 blocks
             // Not close enough, keep moving
             if (this.companion.getNavigation().isDone()) {
-                // Try to pathfind again
-                this.companion.getNavigation().moveTo(
-                        adjacentPos.getX() + 0.5, 
-                        adjacentPos.getY(), 
-                        adjacentPos.getZ() + 0.5, 
-                        1.0);
+                // Try to pathfind again, once the scheduler has time for it
+                CompanionWorkScheduler.getInstance().submit(this.companion, "place", CompanionWorkScheduler.Priority.TASK,
+                        () -> this.companion.getNavigation().moveTo(
+                                adjacentPos.getX() + 0.5, 
+                                adjacentPos.getY(), 
+                                adjacentPos.getZ() + 0.5, 
+                                1.0));
             }
             return;
         }
@@ -248,7 +270,7 @@ public class PlaceBlockGoal extends Goal {
         
         for (Direction dir : directions) {
             BlockPos checkPos = this.targetPos.relative(dir);
-            BlockState state = this.companion.level.getBlockState(checkPos);
+            BlockState state = BlockStateMemo.getBlockState(this.companion.level, checkPos);
             
             // Check if we can stand at this position
             if (this.companion.level.loadedAndEntityCanStandOn(checkPos, this.companion) || dir == Direction.UP || dir == Direction.DOWN) {
@@ -2,6 +2,7 @@ package com.aicompanion.mod.entity.ai.goal;
 
 import com.aicompanion.mod.AICompanionMod;
 import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.CompanionWorkScheduler;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.ai.goal.Goal;
 import net.minecraft.item.Item;
@@ -96,6 +97,7 @@ public class UseItemGoal extends Goal {
         }
         
         // Reset navigation
+        CompanionWorkScheduler.getInstance().cancel(companion, "use");
         companion.getNavigation().stop();
         
         // Reset task when done
@@ -117,7 +119,9 @@ public class UseItemGoal extends Goal {
         if (targetEntity != null && targetEntity.isAlive()) {
             // If we're too far, keep following
             if (companion.distanceToSqr(targetEntity) > maxDistance * maxDistance) {
-                companion.getNavigation().moveTo(targetEntity, moveSpeed);
+                LivingEntity followed = targetEntity;
+                CompanionWorkScheduler.getInstance().submit(companion, "use", CompanionWorkScheduler.Priority.TASK,
+                        () -> companion.getNavigation().moveTo(followed, moveSpeed));
                 return;
             }
             
@@ -133,7 +137,11 @@ public class UseItemGoal extends Goal {
             // If we're too far, keep moving
             double distanceSq = companion.distanceToSqr(d0, d1, d2);
             if (distanceSq > maxDistance * maxDistance) {
-                companion.getNavigation().moveTo(d0, d1, d2, moveSpeed);
+                // The block doesn't move, only path again once the last path ran out
+                if (companion.getNavigation().isDone()) {
+                    CompanionWorkScheduler.getInstance().submit(companion, "use", CompanionWorkScheduler.Priority.TASK,
+                            () -> companion.getNavigation().moveTo(d0, d1, d2, moveSpeed));
+                }
                 return;
             }
         }
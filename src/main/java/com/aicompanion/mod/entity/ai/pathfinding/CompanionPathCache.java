@@ -0,0 +1,324 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.config.AICompanionConfig;
+import com.aicompanion.mod.world.BlockChangeTracker;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import net.minecraft.block.BlockState;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Server-wide cache of paths computed for AI companions.
+ *
+ * Paths are keyed by (dimension, start block, goal block, mob size class,
+ * navigation flags). A cached path stays valid until a block changes in one of
+ * the chunk sections the search looked at along it: the sections of every node,
+ * its floor, the mob's head room and the blocks next to it, detected through
+ * {@link BlockChangeTracker} versions. Changes the tracker can't see are caught
+ * by comparing the blocks each node stands in and on before a path is handed
+ * out again. When there is no exact hit, a path to the
+ * same goal that passes through the requesting companion's block can be reused
+ * from that node onwards. Entries are evicted least-recently-used first.
+ *
+ * Only accessed from the server thread.
+ */
+public class CompanionPathCache {
+    private static final CompanionPathCache INSTANCE = new CompanionPathCache();
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75F, true);
+    private final Map<GoalKey, List<Entry>> entriesByGoal = new HashMap<>();
+
+    private long hits = 0;
+    private long suffixHits = 0;
+    private long misses = 0;
+    private long invalidations = 0;
+
+    public static CompanionPathCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Look up a path for the given request. Returns a fresh copy that the caller
+     * is free to follow, or null when nothing suitable is cached.
+     */
+    @Nullable
+    public Path get(World world, BlockPos start, BlockPos goal, int sizeClass, int flags) {
+        GoalKey goalKey = new GoalKey(world.dimension(), goal.asLong(), sizeClass, flags);
+        Entry exact = this.entries.get(new Key(goalKey, start.asLong()));
+        if (exact != null) {
+            if (exact.isValid(world)) {
+                this.hits++;
+                return exact.copyFrom(0);
+            }
+            this.remove(exact);
+            this.invalidations++;
+        }
+
+        // No path starting here; look for one to the same goal that passes through our block
+        List<Entry> candidates = this.entriesByGoal.get(goalKey);
+        if (candidates != null) {
+            for (Iterator<Entry> it = candidates.iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                int index = entry.indexOf(start);
+                if (index < 0) {
+                    continue;
+                }
+                if (!entry.isValid(world)) {
+                    it.remove();
+                    this.entries.remove(entry.key);
+                    this.invalidations++;
+                    continue;
+                }
+
+                // Touch the entry so it counts as recently used
+                this.entries.get(entry.key);
+                this.suffixHits++;
+                return entry.copyFrom(index);
+            }
+            if (candidates.isEmpty()) {
+                this.entriesByGoal.remove(goalKey);
+            }
+        }
+
+        this.misses++;
+        return null;
+    }
+
+    /**
+     * Store a freshly computed path. Partial paths (that don't reach the goal)
+     * are not cached since a retry from a different spot may do better.
+     */
+    public void put(World world, BlockPos start, BlockPos goal, int sizeClass, int flags, Path path) {
+        if (path == null || !path.canReach() || path.getNodeCount() == 0) {
+            return;
+        }
+
+        int maxEntries = AICompanionConfig.SERVER.pathCacheSize.get();
+        if (maxEntries <= 0) {
+            return;
+        }
+
+        GoalKey goalKey = new GoalKey(world.dimension(), goal.asLong(), sizeClass, flags);
+        Key key = new Key(goalKey, start.asLong());
+        Entry previous = this.entries.get(key);
+        if (previous != null) {
+            this.remove(previous);
+        }
+
+        Entry entry = new Entry(key, world, path);
+        this.entries.put(key, entry);
+        this.entriesByGoal.computeIfAbsent(goalKey, k -> new ArrayList<>(2)).add(entry);
+
+        // Evict least recently used entries
+        Iterator<Entry> it = this.entries.values().iterator();
+        while (this.entries.size() > maxEntries && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            this.removeFromGoalIndex(eldest);
+        }
+    }
+
+    /**
+     * Drop everything, e.g. when the server stops
+     */
+    public void clear() {
+        this.entries.clear();
+        this.entriesByGoal.clear();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getSuffixHits() {
+        return this.suffixHits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+
+    public long getInvalidations() {
+        return this.invalidations;
+    }
+
+    private void remove(Entry entry) {
+        this.entries.remove(entry.key);
+        this.removeFromGoalIndex(entry);
+    }
+
+    private void removeFromGoalIndex(Entry entry) {
+        List<Entry> list = this.entriesByGoal.get(entry.key.goal);
+        if (list != null) {
+            list.remove(entry);
+            if (list.isEmpty()) {
+                this.entriesByGoal.remove(entry.key.goal);
+            }
+        }
+    }
+
+    /**
+     * The part of the key shared by all paths heading to the same goal
+     */
+    private static final class GoalKey {
+        private final RegistryKey<World> dimension;
+        private final long goal;
+        private final int sizeClass;
+        private final int flags;
+
+        GoalKey(RegistryKey<World> dimension, long goal, int sizeClass, int flags) {
+            this.dimension = dimension;
+            this.goal = goal;
+            this.sizeClass = sizeClass;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GoalKey)) return false;
+            GoalKey other = (GoalKey) o;
+            return this.goal == other.goal && this.sizeClass == other.sizeClass
+                    && this.flags == other.flags && this.dimension == other.dimension;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.dimension, this.goal, this.sizeClass, this.flags);
+        }
+    }
+
+    private static final class Key {
+        private final GoalKey goal;
+        private final long start;
+
+        Key(GoalKey goal, long start) {
+            this.goal = goal;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return this.start == other.start && this.goal.equals(other.goal);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.goal.hashCode() + Long.hashCode(this.start);
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final List<PathPoint> nodes;
+        private final BlockPos target;
+        private final long[] sections;
+        private final long[] versions;
+        // For every node, the blocks from its floor up to the mob's head
+        private final BlockState[] columns;
+        private final int columnHeight;
+
+        Entry(Key key, World world, Path path) {
+            this.key = key;
+            this.target = path.getTarget();
+            this.nodes = new ArrayList<>(path.getNodeCount());
+
+            int width = Math.max(1, key.goal.sizeClass >> 8);
+            int height = Math.max(1, key.goal.sizeClass & 0xFF);
+            this.columnHeight = height + 1;
+            this.columns = new BlockState[path.getNodeCount() * this.columnHeight];
+
+            LongLinkedOpenHashSet crossed = new LongLinkedOpenHashSet();
+            BlockPos.Mutable pos = new BlockPos.Mutable();
+            for (int i = 0; i < path.getNodeCount(); i++) {
+                PathPoint node = path.getNode(i);
+                this.nodes.add(node);
+
+                // The walk evaluator reads the floor, the head room and the neighbouring blocks of each node
+                int minX = (node.x - 1) >> 4, maxX = (node.x + width) >> 4;
+                int minY = (node.y - 1) >> 4, maxY = (node.y + height) >> 4;
+                int minZ = (node.z - 1) >> 4, maxZ = (node.z + width) >> 4;
+                for (int sx = minX; sx <= maxX; sx++) {
+                    for (int sy = minY; sy <= maxY; sy++) {
+                        for (int sz = minZ; sz <= maxZ; sz++) {
+                            crossed.add(SectionPos.asLong(sx, sy, sz));
+                        }
+                    }
+                }
+
+                for (int dy = 0; dy < this.columnHeight; dy++) {
+                    this.columns[i * this.columnHeight + dy] = world.getBlockState(pos.set(node.x, node.y - 1 + dy, node.z));
+                }
+            }
+
+            this.sections = crossed.toLongArray();
+            this.versions = new long[this.sections.length];
+            for (int i = 0; i < this.sections.length; i++) {
+                this.versions[i] = BlockChangeTracker.getSectionVersion(world, this.sections[i]);
+            }
+        }
+
+        boolean isValid(World world) {
+            for (int i = 0; i < this.sections.length; i++) {
+                long version = BlockChangeTracker.getSectionVersion(world, this.sections[i]);
+                if (version == 0 || version != this.versions[i]) {
+                    return false;
+                }
+            }
+
+            // All sections are loaded now, so this never loads a chunk. Catches changes made
+            // without neighbour updates, which BlockChangeTracker doesn't hear about.
+            BlockPos.Mutable pos = new BlockPos.Mutable();
+            for (int i = 0; i < this.nodes.size(); i++) {
+                PathPoint node = this.nodes.get(i);
+                for (int dy = 0; dy < this.columnHeight; dy++) {
+                    if (world.getBlockState(pos.set(node.x, node.y - 1 + dy, node.z)) != this.columns[i * this.columnHeight + dy]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Find the node that a mob standing at the given block would start from
+         */
+        int indexOf(BlockPos start) {
+            for (int i = 0; i < this.nodes.size() - 1; i++) {
+                PathPoint node = this.nodes.get(i);
+                if (node.x == start.getX() && node.z == start.getZ() && Math.abs(node.y - start.getY()) <= 1) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Paths are advanced in place while being followed, so every caller gets its own
+         * instance. Nodes are never modified after the search and can be shared.
+         */
+        Path copyFrom(int index) {
+            return new Path(new ArrayList<>(this.nodes.subList(index, this.nodes.size())), this.target, true);
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.google.common.collect.ImmutableSet;
+import net.minecraft.entity.EntitySize;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.entity.Pose;
+import net.minecraft.entity.ai.attributes.Attributes;
+import net.minecraft.pathfinding.GroundPathNavigator;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathFinder;
+import net.minecraft.pathfinding.PathNodeType;
+import net.minecraft.pathfinding.WalkNodeProcessor;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.Region;
+import net.minecraft.world.World;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Ground navigator for AI companions that shares computed paths between
+ * companions through {@link CompanionPathCache}.
+ *
+ * Every moveTo/createPath variant ends up in {@link #createPath(Set, int, boolean, int)},
+ * so goals don't need to know the cache exists. Goals that make long moves can
+ * use {@link #moveToAsync} instead to run the search on a worker thread.
+ *
+ * Worker searches read a stand-in mob instead of the companion, created once
+ * per navigator and refreshed before each search. Only one search runs at a
+ * time, so the stand-in is never refreshed while a worker reads it; a search
+ * asked for while another is still running waits for it.
+ */
+public class CompanionPathNavigator extends GroundPathNavigator {
+    private static final int FLAG_OPEN_DOORS = 1;
+    private static final int FLAG_PASS_DOORS = 2;
+    private static final int FLAG_FLOAT = 4;
+    private static final int FLAG_FREE_WATER = 8;
+
+    // Same region padding vanilla uses for block targets
+    private static final int REGION_OFFSET = 8;
+
+    // How far around the start and goal the snapshot for an async search reaches
+    private static final int SNAPSHOT_MARGIN_HORIZONTAL = 12;
+    private static final int SNAPSHOT_MARGIN_VERTICAL = 6;
+
+    // Set from createPathFinder while the superclass is constructed, so it must not have an initializer
+    private AdoptingPathFinder adoptingPathFinder;
+
+    private PendingPath pendingPath;
+    private PendingPath prefetch;
+    private boolean deliveringPendingPath;
+
+    // The worker search using the stand-in, including cancelled ones that haven't returned yet
+    private CompletableFuture<Path> searching;
+    private PathfindingStandIn standIn;
+
+    public CompanionPathNavigator(MobEntity mob, World world) {
+        super(mob, world);
+    }
+
+    @Override
+    protected PathFinder createPathFinder(int maxVisitedNodes) {
+        this.nodeEvaluator = new WalkNodeProcessor();
+        this.nodeEvaluator.setCanPassDoors(true);
+        this.adoptingPathFinder = new AdoptingPathFinder(this.nodeEvaluator, maxVisitedNodes);
+        return this.adoptingPathFinder;
+    }
+
+    @Nullable
+    @Override
+    protected Path createPath(Set<BlockPos> targets, int regionOffset, boolean offsetUpward, int accuracy) {
+        if (this.level.isClientSide || targets.size() != 1 || !this.canUpdatePath() || this.mob.getY() < 0.0D) {
+            return super.createPath(targets, regionOffset, offsetUpward, accuracy);
+        }
+
+        BlockPos goal = targets.iterator().next();
+
+        // Still following a path to the same target, keep it
+        if (this.path != null && !this.path.isDone() && goal.equals(this.getTargetPos())) {
+            return this.path;
+        }
+
+        BlockPos start = offsetUpward ? this.mob.blockPosition().above() : this.mob.blockPosition();
+        int sizeClass = this.getSizeClass();
+        int flags = this.getNavigationFlags(regionOffset, accuracy);
+        CompanionPathCache cache = CompanionPathCache.getInstance();
+
+        Path cached = cache.get(this.level, start, goal, sizeClass, flags);
+        if (cached != null) {
+            this.adopt(cached, accuracy);
+            return cached;
+        }
+
+        Path path = super.createPath(targets, regionOffset, offsetUpward, accuracy);
+        if (path != null) {
+            cache.put(this.level, start, goal, sizeClass, flags, path);
+        }
+        return path;
+    }
+
+    /**
+     * Start moving to a block with the path search running on a worker thread.
+     *
+     * The companion keeps following its current path (or stands still) until the
+     * result is delivered on a later tick. {@code onComplete} is then called on
+     * the server thread with the path, or null if none was found. A cached path
+     * is used right away, and if the worker pool is disabled or full the search
+     * runs synchronously instead. If an earlier search or prefetch is still
+     * running, this one starts once it returns. Any new movement request or
+     * {@link #stop()} cancels a pending search without calling {@code onComplete}.
+     */
+    public void moveToAsync(BlockPos target, int accuracy, double speed, @Nullable Consumer<Path> onComplete) {
+        this.cancelPendingPath();
+
+        BlockPos goal = this.adjustTarget(target);
+        BlockPos start = this.mob.blockPosition();
+        int sizeClass = this.getSizeClass();
+        int flags = this.getNavigationFlags(REGION_OFFSET, accuracy);
+
+        Path cached = this.canUpdatePath() ? CompanionPathCache.getInstance().get(this.level, start, goal, sizeClass, flags) : null;
+        Executor executor = CompanionPathWorkers.getExecutor();
+        if (cached != null || executor == null || this.level.isClientSide || !this.canUpdatePath()) {
+            Path path = cached != null ? cached : this.createPath(ImmutableSet.of(goal), REGION_OFFSET, false, accuracy);
+            if (cached != null) {
+                this.adopt(cached, accuracy);
+            }
+            this.moveTo(path, speed);
+            if (onComplete != null) {
+                onComplete.accept(path);
+            }
+            return;
+        }
+
+        // Already being prefetched, wait for that search instead of starting another
+        PendingPath prefetch = this.prefetch;
+        if (prefetch != null && prefetch.start.equals(start) && prefetch.goal.equals(goal) && prefetch.flags == flags) {
+            this.prefetch = null;
+            this.pendingPath = new PendingPath(prefetch.future, prefetch.cancelled, start, goal, sizeClass, flags, accuracy, speed, onComplete);
+            return;
+        }
+
+        this.pendingPath = new PendingPath(null, new AtomicBoolean(), start, goal, sizeClass, flags, accuracy, speed, onComplete);
+        this.submitPendingPath(executor);
+    }
+
+    /**
+     * Hand the pending search to the workers, unless an earlier search still
+     * uses the stand-in; tick tries again then
+     */
+    private void submitPendingPath(Executor executor) {
+        if (this.isSearching()) {
+            return;
+        }
+
+        PendingPath pending = this.pendingPath;
+        try {
+            pending.future = this.submitSearch(executor, pending.start, pending.goal, pending.accuracy, pending.cancelled);
+        } catch (RejectedExecutionException e) {
+            // Too many searches queued, do this one on the server thread
+            this.searchPendingPathHere();
+        }
+    }
+
+    private void searchPendingPathHere() {
+        PendingPath pending = this.pendingPath;
+        this.pendingPath = null;
+        Path path = this.createPath(ImmutableSet.of(pending.goal), REGION_OFFSET, false, pending.accuracy);
+        this.moveTo(path, pending.speed);
+        if (pending.onComplete != null) {
+            pending.onComplete.accept(path);
+        }
+    }
+
+    /**
+     * Search for a path from the current block to the target on a worker thread and
+     * only put the result in the path cache, without moving. A later moveTo to the
+     * same target from the same block then starts right away, and a moveToAsync
+     * while the search is still running takes it over. Does nothing if the
+     * worker pool is disabled or busy, another search is still running, or the
+     * path is already being prefetched.
+     */
+    public void prefetchPath(BlockPos target, int accuracy) {
+        Executor executor = CompanionPathWorkers.getExecutor();
+        if (executor == null || this.level.isClientSide || !this.canUpdatePath()) {
+            return;
+        }
+
+        BlockPos goal = this.adjustTarget(target);
+        BlockPos start = this.mob.blockPosition();
+        if (this.prefetch != null && this.prefetch.goal.equals(goal) && this.prefetch.start.equals(start)) {
+            return;
+        }
+        this.cancelPrefetch();
+        if (this.isSearching()) {
+            return;
+        }
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        try {
+            CompletableFuture<Path> future = this.submitSearch(executor, start, goal, accuracy, cancelled);
+            this.prefetch = new PendingPath(future, cancelled, start, goal,
+                    this.getSizeClass(), this.getNavigationFlags(REGION_OFFSET, accuracy), accuracy, 0.0D, null);
+        } catch (RejectedExecutionException e) {
+            // Prefetching is only an optimisation, skip it when the pool is busy
+        }
+    }
+
+    /**
+     * Whether a worker may still be reading the stand-in. Cancelled searches
+     * count until they return, they are only told to stop, not interrupted.
+     */
+    private boolean isSearching() {
+        return this.searching != null && !this.searching.isDone();
+    }
+
+    /**
+     * Snapshot the blocks around start and goal and run the search on the
+     * executor. Only called while no other search is running.
+     */
+    private CompletableFuture<Path> submitSearch(Executor executor, BlockPos start, BlockPos goal, int accuracy,
+                                                 AtomicBoolean cancelled) {
+        // Snapshot only what the search can reach: the box around start and goal, clamped to the vanilla search region
+        float followRange = (float) this.mob.getAttributeValue(Attributes.FOLLOW_RANGE);
+        int radius = (int) (followRange + REGION_OFFSET);
+        BlockPos from = new BlockPos(
+                Math.max(start.getX() - radius, Math.min(start.getX(), goal.getX()) - SNAPSHOT_MARGIN_HORIZONTAL),
+                Math.max(start.getY() - radius, Math.min(start.getY(), goal.getY()) - SNAPSHOT_MARGIN_VERTICAL),
+                Math.max(start.getZ() - radius, Math.min(start.getZ(), goal.getZ()) - SNAPSHOT_MARGIN_HORIZONTAL));
+        BlockPos to = new BlockPos(
+                Math.min(start.getX() + radius, Math.max(start.getX(), goal.getX()) + SNAPSHOT_MARGIN_HORIZONTAL),
+                Math.min(start.getY() + radius, Math.max(start.getY(), goal.getY()) + SNAPSHOT_MARGIN_VERTICAL),
+                Math.min(start.getZ() + radius, Math.max(start.getZ(), goal.getZ()) + SNAPSHOT_MARGIN_HORIZONTAL));
+        PathSnapshotRegion region = new PathSnapshotRegion(this.level, from, to);
+
+        int maxVisitedNodes = MathHelper.floor(followRange * 16.0F);
+        boolean canPassDoors = this.nodeEvaluator.canPassDoors();
+        boolean canOpenDoors = this.nodeEvaluator.canOpenDoors();
+        boolean canFloat = this.nodeEvaluator.canFloat();
+        // The worker must not read the live mob while the server thread moves it
+        if (this.standIn == null) {
+            this.standIn = new PathfindingStandIn(this.mob);
+        }
+        this.standIn.copyFrom(this.mob);
+        MobEntity standIn = this.standIn;
+
+        CompletableFuture<Path> future = CompletableFuture.supplyAsync(() -> {
+            if (cancelled.get()) {
+                return null;
+            }
+            WalkNodeProcessor evaluator = new DetachedWalkNodeProcessor();
+            evaluator.setCanPassDoors(canPassDoors);
+            evaluator.setCanOpenDoors(canOpenDoors);
+            evaluator.setCanFloat(canFloat);
+            return new PathFinder(evaluator, maxVisitedNodes)
+                    .findPath(region, standIn, ImmutableSet.of(goal), followRange, accuracy, 1.0F);
+        }, executor);
+        this.searching = future;
+        return future;
+    }
+
+    /**
+     * Whether an asynchronous search is still running for this companion
+     */
+    public boolean isPathPending() {
+        return this.pendingPath != null;
+    }
+
+    /**
+     * Drop the pending asynchronous search, if any. Its callback is not called.
+     */
+    public void cancelPendingPath() {
+        if (this.pendingPath != null) {
+            // Not cancelling the future, so it only completes once the worker is done with the stand-in
+            this.pendingPath.cancelled.set(true);
+            this.pendingPath = null;
+        }
+    }
+
+    private void cancelPrefetch() {
+        if (this.prefetch != null) {
+            this.prefetch.cancelled.set(true);
+            this.prefetch = null;
+        }
+    }
+
+    @Override
+    public void tick() {
+        if (this.pendingPath != null && this.pendingPath.future == null) {
+            Executor executor = CompanionPathWorkers.getExecutor();
+            if (executor != null) {
+                this.submitPendingPath(executor);
+            } else {
+                // The pool was shut down while waiting
+                this.searchPendingPathHere();
+            }
+        }
+        if (this.pendingPath != null && this.pendingPath.future != null && this.pendingPath.future.isDone()) {
+            this.deliverPendingPath();
+        }
+        if (this.prefetch != null && this.prefetch.future.isDone()) {
+            PendingPath done = this.prefetch;
+            this.prefetch = null;
+            Path path = done.future.isCompletedExceptionally() ? null : done.future.getNow(null);
+            if (path != null) {
+                CompanionPathCache.getInstance().put(this.level, done.start, done.goal, done.sizeClass, done.flags, path);
+            }
+        }
+        super.tick();
+    }
+
+    private void deliverPendingPath() {
+        PendingPath pending = this.pendingPath;
+        this.pendingPath = null;
+
+        Path path = null;
+        try {
+            path = pending.future.getNow(null);
+        } catch (Exception e) {
+            AICompanionMod.LOGGER.error("Asynchronous companion path search failed", e);
+        }
+
+        if (path != null) {
+            CompanionPathCache.getInstance().put(this.level, pending.start, pending.goal, pending.sizeClass, pending.flags, path);
+            this.adopt(path, pending.accuracy);
+            this.deliveringPendingPath = true;
+            try {
+                this.moveTo(path, pending.speed);
+            } finally {
+                this.deliveringPendingPath = false;
+            }
+        }
+
+        if (pending.onComplete != null) {
+            pending.onComplete.accept(path);
+        }
+    }
+
+    @Override
+    public boolean moveTo(@Nullable Path path, double speed) {
+        // A new movement request supersedes whatever is being searched for
+        if (!this.deliveringPendingPath) {
+            this.cancelPendingPath();
+        }
+        return super.moveTo(path, speed);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        this.cancelPendingPath();
+    }
+
+    /**
+     * Let vanilla take over a path that wasn't searched for here, so it records
+     * the target and reach range for recomputing and resets its stuck timeout,
+     * the same as after its own search.
+     *
+     * Those fields are private to PathNavigator and only set by its createPath,
+     * so this runs that createPath with the path finder set to hand the path
+     * back instead of searching. The Region createPath builds on the way is
+     * thrown away unread; it only holds references to loaded chunks, so that
+     * costs far less than the search it replaces.
+     */
+    private void adopt(Path path, int accuracy) {
+        if (path.getTarget() == null) {
+            return;
+        }
+        // Make sure the "still following the same target" shortcut doesn't skip the bookkeeping
+        Path current = this.path;
+        this.path = null;
+        this.adoptingPathFinder.adopting = path;
+        try {
+            super.createPath(ImmutableSet.of(path.getTarget()), 0, false, accuracy);
+        } finally {
+            this.adoptingPathFinder.adopting = null;
+            this.path = current;
+        }
+    }
+
+    /**
+     * Same target adjustment GroundPathNavigator applies to block targets:
+     * drop onto the ground below air, climb out of solid blocks
+     */
+    private BlockPos adjustTarget(BlockPos pos) {
+        if (this.level.getBlockState(pos).isAir()) {
+            BlockPos below = pos.below();
+            while (below.getY() > 0 && this.level.getBlockState(below).isAir()) {
+                below = below.below();
+            }
+            if (below.getY() > 0) {
+                return below.above();
+            }
+            while (below.getY() < this.level.getMaxBuildHeight() && this.level.getBlockState(below).isAir()) {
+                below = below.above();
+            }
+            pos = below;
+        }
+
+        if (!this.level.getBlockState(pos).getMaterial().isSolid()) {
+            return pos;
+        }
+        BlockPos above = pos.above();
+        while (above.getY() < this.level.getMaxBuildHeight() && this.level.getBlockState(above).getMaterial().isSolid()) {
+            above = above.above();
+        }
+        return above;
+    }
+
+    /**
+     * Mobs whose bounding boxes round to the same block dimensions produce the same paths
+     */
+    private int getSizeClass() {
+        int width = MathHelper.ceil(this.mob.getBbWidth());
+        int height = MathHelper.ceil(this.mob.getBbHeight());
+        return (width << 8) | height;
+    }
+
+    /**
+     * Everything else that changes the outcome of a search: door handling, swimming,
+     * the water malus (FollowOwnerGoal zeroes it), region size and reach distance
+     */
+    private int getNavigationFlags(int regionOffset, int accuracy) {
+        int flags = 0;
+        if (this.nodeEvaluator.canOpenDoors()) flags |= FLAG_OPEN_DOORS;
+        if (this.nodeEvaluator.canPassDoors()) flags |= FLAG_PASS_DOORS;
+        if (this.nodeEvaluator.canFloat()) flags |= FLAG_FLOAT;
+        if (this.mob.getPathfindingMalus(PathNodeType.WATER) == 0.0F) flags |= FLAG_FREE_WATER;
+        return flags | (regionOffset & 0xFF) << 8 | (accuracy & 0xFF) << 16;
+    }
+
+    /**
+     * Walk node evaluator for worker threads. The vanilla one writes the mob's
+     * water malus back in done(), which must only happen on the server thread.
+     */
+    private static class DetachedWalkNodeProcessor extends WalkNodeProcessor {
+        @Override
+        public void done() {
+            this.level = null;
+            this.mob = null;
+        }
+    }
+
+    /**
+     * Path finder that returns the path being adopted, if there is one, instead
+     * of searching; see {@link #adopt}
+     */
+    private static class AdoptingPathFinder extends PathFinder {
+        private Path adopting;
+
+        AdoptingPathFinder(WalkNodeProcessor evaluator, int maxVisitedNodes) {
+            super(evaluator, maxVisitedNodes);
+        }
+
+        @Nullable
+        @Override
+        public Path findPath(Region region, MobEntity mob, Set<BlockPos> targets, float maxRange, int accuracy,
+                             float searchDepthMultiplier) {
+            if (this.adopting != null) {
+                return this.adopting;
+            }
+            return super.findPath(region, mob, targets, maxRange, accuracy, searchDepthMultiplier);
+        }
+    }
+
+    /**
+     * Copy of what the walk node evaluator reads from a mob (position, size, step
+     * height, pathfinding maluses, whether it is in water), taken on the server
+     * thread for a search on a worker thread. Never added to the world.
+     */
+    private static class PathfindingStandIn extends MobEntity {
+        private EntitySize size;
+
+        @SuppressWarnings("unchecked")
+        PathfindingStandIn(MobEntity mob) {
+            super((EntityType<? extends MobEntity>) mob.getType(), mob.level);
+        }
+
+        void copyFrom(MobEntity mob) {
+            this.size = mob.getDimensions(mob.getPose());
+            this.refreshDimensions();
+            this.copyPosition(mob);
+            this.setOnGround(mob.isOnGround());
+            this.wasTouchingWater = mob.isInWater();
+            this.maxUpStep = mob.maxUpStep;
+            for (PathNodeType type : PathNodeType.values()) {
+                this.setPathfindingMalus(type, mob.getPathfindingMalus(type));
+            }
+        }
+
+        @Override
+        public EntitySize getDimensions(Pose pose) {
+            return this.size != null ? this.size : super.getDimensions(pose);
+        }
+    }
+
+    /**
+     * An asynchronous search that hasn't been delivered yet
+     */
+    private static class PendingPath {
+        // Null while waiting for an earlier search to return
+        private CompletableFuture<Path> future;
+        private final AtomicBoolean cancelled;
+        private final BlockPos start;
+        private final BlockPos goal;
+        private final int sizeClass;
+        private final int flags;
+        private final int accuracy;
+        private final double speed;
+        private final Consumer<Path> onComplete;
+
+        PendingPath(CompletableFuture<Path> future, AtomicBoolean cancelled, BlockPos start, BlockPos goal,
+                    int sizeClass, int flags, int accuracy, double speed, @Nullable Consumer<Path> onComplete) {
+            this.future = future;
+            this.cancelled = cancelled;
+            this.start = start;
+            this.goal = goal;
+            this.sizeClass = sizeClass;
+            this.flags = flags;
+            this.accuracy = accuracy;
+            this.speed = speed;
+            this.onComplete = onComplete;
+        }
+    }
+}
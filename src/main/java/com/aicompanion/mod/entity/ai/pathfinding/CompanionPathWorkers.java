@@ -0,0 +1,61 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.config.AICompanionConfig;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded worker pool that runs companion path searches off the server thread.
+ *
+ * Both the number of threads and the number of queued searches are capped by
+ * config. When the queue is full new requests are rejected and callers fall
+ * back to searching on the server thread.
+ */
+public class CompanionPathWorkers {
+    private static ThreadPoolExecutor executor;
+
+    /**
+     * Get the shared executor, creating it on first use. Returns null when
+     * asynchronous pathfinding is disabled in the config.
+     */
+    @Nullable
+    public static synchronized ThreadPoolExecutor getExecutor() {
+        int threads = AICompanionConfig.SERVER.asyncPathThreads.get();
+        if (threads <= 0) {
+            return null;
+        }
+
+        if (executor == null || executor.isShutdown()) {
+            AtomicInteger threadId = new AtomicInteger();
+            executor = new ThreadPoolExecutor(
+                    threads, threads,
+                    30L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(AICompanionConfig.SERVER.maxPendingPathRequests.get()),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "AICompanion-Pathfinder-" + threadId.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            AICompanionMod.LOGGER.debug("Started {} companion pathfinding threads", threads);
+        }
+        return executor;
+    }
+
+    /**
+     * Stop the workers, discarding queued searches. Called when the server stops.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.config.AICompanionConfig;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Plans long companion moves in two stages: an A* search over the coarse
+ * {@link RegionGraph} picks which sections to cross, and the result is a list
+ * of waypoints (one per section entered) that the regular navigator connects
+ * with short, cheap local searches.
+ *
+ * Labelling a section reads about five thousand blocks, so a search is run in
+ * steps that each label only a few new sections, spread over as many ticks as
+ * it needs. A search that would label more sections than the graph keeps gives
+ * up instead of evicting the sections it still needs.
+ */
+public class HierarchicalPathPlanner {
+    // Crossing one section is roughly sixteen blocks of walking
+    private static final double SECTION_COST = 16.0D;
+    // New sections labelled per step
+    private static final int LABELS_PER_STEP = 8;
+    // Total sections one search may label, half of what the graph keeps
+    private static final int MAX_LABELS_PER_SEARCH = RegionGraph.MAX_CACHED_SECTIONS / 2;
+
+    /**
+     * Start planning a route between two positions, or null when it's too far or
+     * either end isn't on known ground
+     */
+    @Nullable
+    public static RouteSearch start(ServerWorld level, BlockPos start, BlockPos target) {
+        int maxDistance = AICompanionConfig.SERVER.maxRouteDistance.get();
+        if (start.distSqr(target) > (double) maxDistance * maxDistance) {
+            return null;
+        }
+
+        RegionGraph graph = RegionGraph.get(level);
+        RegionGraph.Node startNode = graph.nodeAt(start);
+        RegionGraph.Node goalNode = graph.nodeAt(target);
+        if (startNode == null || goalNode == null) {
+            return null;
+        }
+        return new RouteSearch(graph, startNode, goalNode, target);
+    }
+
+    /**
+     * A route search in progress. The graph may change between steps; legs of a
+     * route that turn out to be blocked are caught by the local searches.
+     */
+    public static final class RouteSearch {
+        private final RegionGraph graph;
+        private final RegionGraph.Node goalNode;
+        private final BlockPos target;
+        private final Map<RegionGraph.Node, SearchNode> visited = new HashMap<>();
+        private final PriorityQueue<SearchNode> open = new PriorityQueue<>((a, b) -> Double.compare(a.estimate, b.estimate));
+        private final long firstLabel;
+        private int expanded = 0;
+        private boolean finished = false;
+        private Deque<BlockPos> route;
+
+        private RouteSearch(RegionGraph graph, RegionGraph.Node startNode, RegionGraph.Node goalNode, BlockPos target) {
+            this.graph = graph;
+            this.goalNode = goalNode;
+            this.target = target;
+            this.firstLabel = graph.getLabelCount();
+
+            SearchNode first = new SearchNode(startNode, null, null, 0.0D, heuristic(startNode, goalNode));
+            this.visited.put(startNode, first);
+            this.open.add(first);
+        }
+
+        /**
+         * Continue the search until it finishes or has labelled a few new sections.
+         * Returns true once it is finished.
+         */
+        public boolean step() {
+            if (this.finished) {
+                return true;
+            }
+
+            int maxNodes = AICompanionConfig.SERVER.maxRouteSearchNodes.get();
+            long stepLimit = this.graph.getLabelCount() + LABELS_PER_STEP;
+            while (!this.open.isEmpty() && this.expanded < maxNodes) {
+                if (this.graph.getLabelCount() - this.firstLabel >= MAX_LABELS_PER_SEARCH) {
+                    break;
+                }
+                if (this.graph.getLabelCount() >= stepLimit) {
+                    return false;
+                }
+
+                SearchNode current = this.open.poll();
+                if (current.closed) {
+                    continue;
+                }
+                current.closed = true;
+                this.expanded++;
+
+                if (current.node.equals(this.goalNode)) {
+                    this.route = buildRoute(current, this.target);
+                    break;
+                }
+
+                this.graph.forEachNeighbour(current.node, (neighbour, portal) -> {
+                    double cost = current.cost + SECTION_COST;
+                    SearchNode known = this.visited.get(neighbour);
+                    if (known != null && (known.closed || known.cost <= cost)) {
+                        return;
+                    }
+
+                    // Stale queue entries are skipped through the closed flag
+                    if (known != null) {
+                        known.closed = true;
+                    }
+                    SearchNode next = new SearchNode(neighbour, current, portal, cost, cost + heuristic(neighbour, this.goalNode));
+                    this.visited.put(neighbour, next);
+                    this.open.add(next);
+                });
+            }
+
+            this.finished = true;
+            return true;
+        }
+
+        /**
+         * The waypoints to visit in order, ending with the target itself, or null
+         * when the search is finished without finding a route
+         */
+        @Nullable
+        public Deque<BlockPos> getRoute() {
+            return this.route;
+        }
+    }
+
+    private static Deque<BlockPos> buildRoute(SearchNode end, BlockPos target) {
+        Deque<BlockPos> route = new ArrayDeque<>();
+        route.addFirst(target);
+        for (SearchNode node = end; node.parent != null; node = node.parent) {
+            // The portal into the goal section is redundant with the target itself
+            if (node != end) {
+                route.addFirst(node.portal);
+            }
+        }
+        return route;
+    }
+
+    private static double heuristic(RegionGraph.Node from, RegionGraph.Node to) {
+        int dx = Math.abs(SectionPos.x(from.getSection()) - SectionPos.x(to.getSection()));
+        int dy = Math.abs(SectionPos.y(from.getSection()) - SectionPos.y(to.getSection()));
+        int dz = Math.abs(SectionPos.z(from.getSection()) - SectionPos.z(to.getSection()));
+        return (dx + dy + dz) * SECTION_COST;
+    }
+
+    private static final class SearchNode {
+        private final RegionGraph.Node node;
+        private final SearchNode parent;
+        private final BlockPos portal;
+        private final double cost;
+        private final double estimate;
+        private boolean closed;
+
+        SearchNode(RegionGraph.Node node, @Nullable SearchNode parent, @Nullable BlockPos portal,
+                   double cost, double estimate) {
+            this.node = node;
+            this.parent = parent;
+            this.portal = portal;
+            this.cost = cost;
+            this.estimate = estimate;
+        }
+    }
+}
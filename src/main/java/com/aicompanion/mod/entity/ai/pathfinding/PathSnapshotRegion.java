@@ -0,0 +1,163 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.BitArray;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IBlockReader;
+import net.minecraft.world.Region;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+
+import javax.annotation.Nullable;
+
+/**
+ * Read-only copy of the block states in a box of chunk sections, taken on the
+ * server thread so a path search can run on a worker thread afterwards.
+ *
+ * Sections are copied the way the chunk stores them, a small palette and the
+ * packed indices into it, which costs about as much as copying a few hundred
+ * longs instead of reading 4096 block states. Sections that are empty or not
+ * loaded are stored as null and read as air, the same way vanilla's
+ * {@link Region} treats missing chunks. Block entities are not copied; the
+ * walk node evaluator doesn't need them.
+ */
+public class PathSnapshotRegion extends Region {
+    private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+    private static final int SECTION_SIZE = 4096;
+    // Palettes with more bits than this are replaced by the global block state ids
+    private static final int MAX_PALETTE_BITS = 8;
+
+    private final int minSectionX;
+    private final int minSectionY;
+    private final int minSectionZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final SectionCopy[] sections;
+
+    public PathSnapshotRegion(World world, BlockPos from, BlockPos to) {
+        super(world, from, to);
+
+        this.minSectionX = from.getX() >> 4;
+        this.minSectionY = Math.max(0, from.getY() >> 4);
+        this.minSectionZ = from.getZ() >> 4;
+        this.sizeX = (to.getX() >> 4) - this.minSectionX + 1;
+        this.sizeY = Math.max(0, Math.min(15, to.getY() >> 4) - this.minSectionY + 1);
+        this.sizeZ = (to.getZ() >> 4) - this.minSectionZ + 1;
+        this.sections = new SectionCopy[this.sizeX * this.sizeY * this.sizeZ];
+
+        PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+        for (int sx = 0; sx < this.sizeX; sx++) {
+            for (int sz = 0; sz < this.sizeZ; sz++) {
+                Chunk chunk = world.getChunkSource().getChunkNow(this.minSectionX + sx, this.minSectionZ + sz);
+                if (chunk == null) {
+                    continue;
+                }
+
+                ChunkSection[] chunkSections = chunk.getSections();
+                for (int sy = 0; sy < this.sizeY; sy++) {
+                    ChunkSection section = chunkSections[this.minSectionY + sy];
+                    if (!ChunkSection.isEmpty(section)) {
+                        this.sections[this.index(sx, sy, sz)] = copy(section, buffer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy a section's palette and packed storage. They are only reachable through
+     * the encoding the chunk packet uses, so the section is written to the buffer
+     * and read back: bits per block, the palette's block state ids unless the
+     * global palette is used, then the packed longs.
+     */
+    private static SectionCopy copy(ChunkSection section, PacketBuffer buffer) {
+        buffer.clear();
+        section.getStates().write(buffer);
+
+        int bits = buffer.readUnsignedByte();
+        BlockState[] palette = null;
+        if (bits <= MAX_PALETTE_BITS) {
+            palette = new BlockState[buffer.readVarInt()];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = Block.BLOCK_STATE_REGISTRY.byId(buffer.readVarInt());
+            }
+        }
+
+        long[] data = new long[buffer.readVarInt()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = buffer.readLong();
+        }
+        return new SectionCopy(palette, new BitArray(bits, SECTION_SIZE, data));
+    }
+
+    private int index(int sx, int sy, int sz) {
+        return (sx * this.sizeZ + sz) * this.sizeY + sy;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        int sx = (pos.getX() >> 4) - this.minSectionX;
+        int sy = (pos.getY() >> 4) - this.minSectionY;
+        int sz = (pos.getZ() >> 4) - this.minSectionZ;
+        if (sx < 0 || sy < 0 || sz < 0 || sx >= this.sizeX || sy >= this.sizeY || sz >= this.sizeZ) {
+            return AIR;
+        }
+
+        SectionCopy section = this.sections[this.index(sx, sy, sz)];
+        if (section == null) {
+            return AIR;
+        }
+        return section.get(((pos.getY() & 15) << 8) | ((pos.getZ() & 15) << 4) | (pos.getX() & 15));
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return this.getBlockState(pos).getFluidState();
+    }
+
+    @Nullable
+    @Override
+    public TileEntity getBlockEntity(BlockPos pos) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public IBlockReader getChunkForCollisions(int chunkX, int chunkZ) {
+        // Collision checks read through this view instead of the live chunks
+        return this;
+    }
+
+    /**
+     * One section's block states as indices into a palette, or into the global
+     * block state ids when the palette is null
+     */
+    private static final class SectionCopy {
+        private final BlockState[] palette;
+        private final BitArray storage;
+
+        SectionCopy(@Nullable BlockState[] palette, BitArray storage) {
+            this.palette = palette;
+            this.storage = storage;
+        }
+
+        BlockState get(int index) {
+            int id = this.storage.get(index);
+            BlockState state;
+            if (this.palette == null) {
+                state = Block.BLOCK_STATE_REGISTRY.byId(id);
+            } else {
+                state = id < this.palette.length ? this.palette[id] : null;
+            }
+            return state != null ? state : AIR;
+        }
+    }
+}
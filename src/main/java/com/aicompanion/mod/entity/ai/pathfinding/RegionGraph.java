@@ -0,0 +1,387 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.world.BlockChangeTracker;
+import net.minecraft.block.BlockState;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.FluidTags;
+import net.minecraft.util.Direction;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.util.math.shapes.VoxelShape;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Coarse walkability graph over 16x16x16 chunk sections, used to plan long
+ * companion moves before handing each leg to the regular navigator.
+ *
+ * Each section is split into connected components of standing spots (passable
+ * feet and head, something to stand on below). A graph node is one component
+ * of one section; edges to neighbouring sections are found on demand by
+ * comparing the component labels on both sides of the shared face. Sections
+ * are labelled lazily and relabelled when the {@link BlockChangeTracker}
+ * version of the section, or of the sections just below and above it whose
+ * blocks the labelling reads, changes. Sections in unloaded chunks are treated
+ * as impassable.
+ *
+ * Only accessed from the server thread.
+ */
+public class RegionGraph {
+    private static final Map<RegistryKey<World>, RegionGraph> GRAPHS = new HashMap<>();
+
+    // Labelled sections kept per level; each costs 8 KB when it contains standing spots
+    static final int MAX_CACHED_SECTIONS = 1024;
+
+    private static final short UNLABELLED = -1;
+
+    private final ServerWorld level;
+    private long labelCount = 0;
+    private final LinkedHashMap<Long, SectionData> sections = new LinkedHashMap<Long, SectionData>(256, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SectionData> eldest) {
+            return this.size() > MAX_CACHED_SECTIONS;
+        }
+    };
+
+    private RegionGraph(ServerWorld level) {
+        this.level = level;
+    }
+
+    public static RegionGraph get(ServerWorld level) {
+        RegionGraph graph = GRAPHS.get(level.dimension());
+        if (graph == null || graph.level != level) {
+            graph = new RegionGraph(level);
+            GRAPHS.put(level.dimension(), graph);
+        }
+        return graph;
+    }
+
+    /**
+     * Forget all graphs, e.g. when the server stops
+     */
+    public static void clearAll() {
+        GRAPHS.clear();
+    }
+
+    /**
+     * How many sections this graph has labelled so far, to measure the work a search caused
+     */
+    public long getLabelCount() {
+        return this.labelCount;
+    }
+
+    /**
+     * Find the graph node containing (or right next to) the given standing position
+     */
+    @Nullable
+    public Node nodeAt(BlockPos pos) {
+        long sectionKey = SectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+        SectionData data = this.getSection(sectionKey);
+        if (data == null || data.labels == null) {
+            return null;
+        }
+
+        // The exact block may not count as a standing spot (slabs, path blocks), so look around it
+        int baseX = pos.getX() & 15;
+        int baseY = pos.getY() & 15;
+        int baseZ = pos.getZ() & 15;
+        for (int radius = 0; radius <= 2; radius++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    for (int dz = -radius; dz <= radius; dz++) {
+                        int x = baseX + dx, y = baseY + dy, z = baseZ + dz;
+                        if (x < 0 || y < 0 || z < 0 || x > 15 || y > 15 || z > 15) {
+                            continue;
+                        }
+                        short label = data.labels[index(x, y, z)];
+                        if (label != UNLABELLED) {
+                            return new Node(sectionKey, label);
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Visit every node reachable in one step from the given node. The portal is
+     * a standing spot in the neighbour through which it was entered.
+     */
+    public void forEachNeighbour(Node node, NeighbourConsumer consumer) {
+        SectionData data = this.getSection(node.section);
+        if (data == null || data.labels == null) {
+            return;
+        }
+
+        int sectionX = SectionPos.x(node.section);
+        int sectionY = SectionPos.y(node.section);
+        int sectionZ = SectionPos.z(node.section);
+
+        for (Direction direction : Direction.values()) {
+            long neighbourKey = SectionPos.asLong(
+                    sectionX + direction.getStepX(), sectionY + direction.getStepY(), sectionZ + direction.getStepZ());
+            SectionData neighbour = this.getSection(neighbourKey);
+            if (neighbour == null || neighbour.labels == null) {
+                continue;
+            }
+
+            // One portal per neighbouring component is enough for planning
+            Map<Short, BlockPos> portals = new HashMap<>();
+            if (direction.getAxis() == Direction.Axis.Y) {
+                this.collectVerticalPortals(data, neighbour, node.component, direction, neighbourKey, portals);
+            } else {
+                this.collectHorizontalPortals(data, neighbour, node.component, direction, neighbourKey, portals);
+            }
+
+            for (Map.Entry<Short, BlockPos> portal : portals.entrySet()) {
+                consumer.accept(new Node(neighbourKey, portal.getKey()), portal.getValue());
+            }
+        }
+    }
+
+    /**
+     * Walking across a side face: same height or one block up or down
+     */
+    private void collectHorizontalPortals(SectionData from, SectionData to, short component, Direction direction,
+                                          long toKey, Map<Short, BlockPos> portals) {
+        for (int a = 0; a < 16; a++) {
+            for (int y = 0; y < 16; y++) {
+                int fromX = direction == Direction.EAST ? 15 : direction == Direction.WEST ? 0 : a;
+                int fromZ = direction == Direction.SOUTH ? 15 : direction == Direction.NORTH ? 0 : a;
+                if (from.labels[index(fromX, y, fromZ)] != component) {
+                    continue;
+                }
+
+                int toX = direction == Direction.EAST ? 0 : direction == Direction.WEST ? 15 : a;
+                int toZ = direction == Direction.SOUTH ? 0 : direction == Direction.NORTH ? 15 : a;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int toY = y + dy;
+                    if (toY < 0 || toY > 15) {
+                        continue;
+                    }
+                    short label = to.labels[index(toX, toY, toZ)];
+                    if (label != UNLABELLED && !portals.containsKey(label)) {
+                        portals.put(label, worldPos(toKey, toX, toY, toZ));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Crossing the top or bottom face: a step up or down into a horizontally adjacent spot
+     */
+    private void collectVerticalPortals(SectionData from, SectionData to, short component, Direction direction,
+                                        long toKey, Map<Short, BlockPos> portals) {
+        int fromY = direction == Direction.UP ? 15 : 0;
+        int toY = direction == Direction.UP ? 0 : 15;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                if (from.labels[index(x, fromY, z)] != component) {
+                    continue;
+                }
+                for (Direction side : Direction.Plane.HORIZONTAL) {
+                    int toX = x + side.getStepX();
+                    int toZ = z + side.getStepZ();
+                    if (toX < 0 || toZ < 0 || toX > 15 || toZ > 15) {
+                        continue;
+                    }
+                    short label = to.labels[index(toX, toY, toZ)];
+                    if (label != UNLABELLED && !portals.containsKey(label)) {
+                        portals.put(label, worldPos(toKey, toX, toY, toZ));
+                    }
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private SectionData getSection(long sectionKey) {
+        long version = BlockChangeTracker.getSectionVersion(this.level, sectionKey);
+        if (version == 0) {
+            // Not loaded, nothing is known about it
+            this.sections.remove(sectionKey);
+            return null;
+        }
+
+        // Labelling also reads the top block of the section below and the bottom two of the one above
+        long belowVersion = BlockChangeTracker.getSectionVersion(this.level, SectionPos.offset(sectionKey, Direction.DOWN));
+        long aboveVersion = BlockChangeTracker.getSectionVersion(this.level, SectionPos.offset(sectionKey, Direction.UP));
+        SectionData data = this.sections.get(sectionKey);
+        if (data == null || data.version != version || data.belowVersion != belowVersion || data.aboveVersion != aboveVersion) {
+            data = this.label(sectionKey, version, belowVersion, aboveVersion);
+            this.sections.put(sectionKey, data);
+            this.labelCount++;
+        }
+        return data;
+    }
+
+    /**
+     * Label the connected standing spots of one section
+     */
+    private SectionData label(long sectionKey, long version, long belowVersion, long aboveVersion) {
+        int sectionY = SectionPos.y(sectionKey);
+        if (sectionY < 0 || sectionY > 15) {
+            return new SectionData(version, belowVersion, aboveVersion, null);
+        }
+
+        Chunk chunk = this.level.getChunkSource().getChunkNow(SectionPos.x(sectionKey), SectionPos.z(sectionKey));
+        if (chunk == null) {
+            return new SectionData(version, belowVersion, aboveVersion, null);
+        }
+
+        int originX = SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey));
+        int originY = SectionPos.sectionToBlockCoord(sectionY);
+        int originZ = SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey));
+
+        // Classify every block of the section plus one below and two above it
+        boolean[] passable = new boolean[16 * 16 * 19];
+        boolean[] floor = new boolean[16 * 16 * 19];
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                for (int y = -1; y < 18; y++) {
+                    pos.set(originX + x, originY + y, originZ + z);
+                    BlockState state = chunk.getBlockState(pos);
+                    int i = ((y + 1) * 16 + z) * 16 + x;
+                    VoxelShape shape = state.getCollisionShape(this.level, pos);
+                    boolean isWater = state.getFluidState().is(FluidTags.WATER);
+                    passable[i] = shape.isEmpty() && !state.getFluidState().is(FluidTags.LAVA) && !state.is(BlockTags.FIRE);
+                    floor[i] = isWater || (!shape.isEmpty() && shape.max(Direction.Axis.Y) <= 1.0D);
+                }
+            }
+        }
+
+        short[] labels = new short[4096];
+        Arrays.fill(labels, UNLABELLED);
+        boolean[] standable = new boolean[4096];
+        boolean any = false;
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    int feet = ((y + 1) * 16 + z) * 16 + x;
+                    int head = ((y + 2) * 16 + z) * 16 + x;
+                    int below = (y * 16 + z) * 16 + x;
+                    if (passable[feet] && passable[head] && floor[below]) {
+                        standable[index(x, y, z)] = true;
+                        any = true;
+                    }
+                }
+            }
+        }
+        if (!any) {
+            return new SectionData(version, belowVersion, aboveVersion, null);
+        }
+
+        // Flood fill: horizontal moves at the same height or one block up/down
+        int[] queue = new int[4096];
+        short nextLabel = 0;
+        for (int start = 0; start < 4096; start++) {
+            if (!standable[start] || labels[start] != UNLABELLED) {
+                continue;
+            }
+
+            short label = nextLabel++;
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            labels[start] = label;
+            while (head < tail) {
+                int current = queue[head++];
+                int cx = current & 15;
+                int cz = (current >> 4) & 15;
+                int cy = current >> 8;
+                for (Direction side : Direction.Plane.HORIZONTAL) {
+                    int nx = cx + side.getStepX();
+                    int nz = cz + side.getStepZ();
+                    if (nx < 0 || nz < 0 || nx > 15 || nz > 15) {
+                        continue;
+                    }
+                    for (int dy = -1; dy <= 1; dy++) {
+                        int ny = cy + dy;
+                        if (ny < 0 || ny > 15) {
+                            continue;
+                        }
+                        int next = index(nx, ny, nz);
+                        if (standable[next] && labels[next] == UNLABELLED) {
+                            labels[next] = label;
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+            }
+        }
+
+        return new SectionData(version, belowVersion, aboveVersion, labels);
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    private static BlockPos worldPos(long sectionKey, int x, int y, int z) {
+        return new BlockPos(
+                SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey)) + x,
+                SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey)) + y,
+                SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey)) + z);
+    }
+
+    /**
+     * One connected group of standing spots inside a section
+     */
+    public static final class Node {
+        private final long section;
+        private final short component;
+
+        Node(long section, short component) {
+            this.section = section;
+            this.component = component;
+        }
+
+        public long getSection() {
+            return this.section;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Node)) return false;
+            Node other = (Node) o;
+            return this.section == other.section && this.component == other.component;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.section, this.component);
+        }
+    }
+
+    @FunctionalInterface
+    public interface NeighbourConsumer {
+        void accept(Node neighbour, BlockPos portal);
+    }
+
+    private static final class SectionData {
+        private final long version;
+        private final long belowVersion;
+        private final long aboveVersion;
+        // Component per block, or null when the section has no standing spots at all
+        private final short[] labels;
+
+        SectionData(long version, long belowVersion, long aboveVersion, @Nullable short[] labels) {
+            this.version = version;
+            this.belowVersion = belowVersion;
+            this.aboveVersion = aboveVersion;
+            this.labels = labels;
+        }
+    }
+}
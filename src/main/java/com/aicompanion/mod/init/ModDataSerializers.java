@@ -0,0 +1,42 @@
+package com.aicompanion.mod.init;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.entity.CompanionTarget;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.network.datasync.IDataSerializer;
+import net.minecraftforge.eventbus.api.IEventBus;
+import net.minecraftforge.fml.RegistryObject;
+import net.minecraftforge.registries.DataSerializerEntry;
+import net.minecraftforge.registries.DeferredRegister;
+import net.minecraftforge.registries.ForgeRegistries;
+
+public class ModDataSerializers {
+    public static final DeferredRegister<DataSerializerEntry> DATA_SERIALIZERS = 
+            DeferredRegister.create(ForgeRegistries.DATA_SERIALIZERS, AICompanionMod.MOD_ID);
+
+    // Target of a companion, see CompanionTarget
+    public static final IDataSerializer<CompanionTarget> COMPANION_TARGET = new IDataSerializer<CompanionTarget>() {
+        @Override
+        public void write(PacketBuffer buffer, CompanionTarget value) {
+            value.write(buffer);
+        }
+
+        @Override
+        public CompanionTarget read(PacketBuffer buffer) {
+            return CompanionTarget.read(buffer);
+        }
+
+        @Override
+        public CompanionTarget copy(CompanionTarget value) {
+            // Immutable
+            return value;
+        }
+    };
+
+    public static final RegistryObject<DataSerializerEntry> COMPANION_TARGET_ENTRY = 
+            DATA_SERIALIZERS.register("companion_target", () -> new DataSerializerEntry(COMPANION_TARGET));
+
+    public static void register(IEventBus eventBus) {
+        DATA_SERIALIZERS.register(eventBus);
+    }
+}
@@ -0,0 +1,149 @@
+package com.aicompanion.mod.network;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import com.aicompanion.mod.network.message.CompanionRosterMessage;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sends players the roster of their companions while they have the management
+ * screen open: a snapshot when they subscribe, then once a second whatever
+ * changed since.
+ *
+ * The roster covers every loaded companion of the player, in all dimensions.
+ * Snapshots and deltas are split into pages of
+ * {@link CompanionRosterMessage#PAGE_SIZE} companions.
+ *
+ * Only accessed from the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class CompanionRoster {
+    private static final CompanionRoster INSTANCE = new CompanionRoster();
+
+    private static final int UPDATE_INTERVAL = 20;
+
+    // Subscribed player -> their roster as last sent to them
+    private final Map<UUID, Map<UUID, CompanionRosterMessage.Entry>> sentBySubscriber = new HashMap<>();
+    private int tickCounter = 0;
+
+    public static CompanionRoster getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start sending the player their roster, beginning with a full snapshot
+     */
+    public void subscribe(ServerPlayerEntity player) {
+        Map<UUID, CompanionRosterMessage.Entry> roster = collect(player.getUUID());
+        this.sentBySubscriber.put(player.getUUID(), roster);
+
+        List<CompanionRosterMessage.Entry> entries = new ArrayList<>(roster.values());
+        int pageSize = CompanionRosterMessage.PAGE_SIZE;
+        // An empty roster still gets one page, so the client knows it's complete
+        int pageCount = Math.max(1, (entries.size() + pageSize - 1) / pageSize);
+        for (int page = 0; page < pageCount; page++) {
+            List<CompanionRosterMessage.Entry> pageEntries = new ArrayList<>(
+                    entries.subList(page * pageSize, Math.min((page + 1) * pageSize, entries.size())));
+            NetworkHandler.sendToPlayer(CompanionRosterMessage.snapshot(page, pageCount, pageEntries), player);
+        }
+    }
+
+    public void unsubscribe(ServerPlayerEntity player) {
+        this.sentBySubscriber.remove(player.getUUID());
+    }
+
+    public int getSubscriberCount() {
+        return this.sentBySubscriber.size();
+    }
+
+    /**
+     * Forget all subscriptions, e.g. when the server stops
+     */
+    public void clear() {
+        this.sentBySubscriber.clear();
+    }
+
+    /**
+     * Send every subscriber the companions that changed or went away since the last update
+     */
+    private void update(MinecraftServer server) {
+        Iterator<Map.Entry<UUID, Map<UUID, CompanionRosterMessage.Entry>>> it = this.sentBySubscriber.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Map<UUID, CompanionRosterMessage.Entry>> subscription = it.next();
+            ServerPlayerEntity player = server.getPlayerList().getPlayer(subscription.getKey());
+            if (player == null) {
+                it.remove();
+                continue;
+            }
+
+            Map<UUID, CompanionRosterMessage.Entry> sent = subscription.getValue();
+            Map<UUID, CompanionRosterMessage.Entry> current = collect(subscription.getKey());
+            List<CompanionRosterMessage.Entry> changed = new ArrayList<>();
+            for (CompanionRosterMessage.Entry entry : current.values()) {
+                if (!entry.equals(sent.get(entry.getUuid()))) {
+                    changed.add(entry);
+                }
+            }
+            List<UUID> removed = new ArrayList<>();
+            for (UUID uuid : sent.keySet()) {
+                if (!current.containsKey(uuid)) {
+                    removed.add(uuid);
+                }
+            }
+            if (changed.isEmpty() && removed.isEmpty()) {
+                continue;
+            }
+
+            subscription.setValue(current);
+            int pageSize = CompanionRosterMessage.PAGE_SIZE;
+            for (int i = 0; i < Math.max(changed.size(), removed.size()); i += pageSize) {
+                NetworkHandler.sendToPlayer(CompanionRosterMessage.delta(
+                        new ArrayList<>(changed.subList(Math.min(i, changed.size()), Math.min(i + pageSize, changed.size()))),
+                        new ArrayList<>(removed.subList(Math.min(i, removed.size()), Math.min(i + pageSize, removed.size())))),
+                        player);
+            }
+        }
+    }
+
+    private static Map<UUID, CompanionRosterMessage.Entry> collect(UUID owner) {
+        Map<UUID, CompanionRosterMessage.Entry> roster = new LinkedHashMap<>();
+        for (AICompanionEntity companion : CompanionIndex.getInstance().getOwnedBy(owner)) {
+            roster.put(companion.getUUID(), new CompanionRosterMessage.Entry(
+                    companion.getUUID(),
+                    companion.getName().getString(),
+                    companion.level.dimension().location(),
+                    companion.blockPosition()));
+        }
+        return roster;
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || INSTANCE.sentBySubscriber.isEmpty()) {
+            return;
+        }
+        if (++INSTANCE.tickCounter % UPDATE_INTERVAL == 0) {
+            INSTANCE.update(ServerLifecycleHooks.getCurrentServer());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        INSTANCE.sentBySubscriber.remove(event.getPlayer().getUUID());
+    }
+}
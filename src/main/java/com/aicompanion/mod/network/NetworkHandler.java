@@ -2,16 +2,28 @@ package com.aicompanion.mod.network;
 
 import com.aicompanion.mod.AICompanionMod;
 import com.aicompanion.mod.network.message.AdminPanelMessage;
+import com.aicompanion.mod.network.message.BatchCommandMessage;
 import com.aicompanion.mod.network.message.CommandMessage;
 import com.aicompanion.mod.network.message.CompanionManagementMessage;
+import com.aicompanion.mod.network.message.CompanionRosterMessage;
+import com.aicompanion.mod.network.message.RosterSubscriptionMessage;
+import com.aicompanion.mod.network.message.SkinRegistryMessage;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.fml.network.NetworkDirection;
+import net.minecraftforge.fml.network.NetworkEvent;
 import net.minecraftforge.fml.network.NetworkRegistry;
 import net.minecraftforge.fml.network.PacketDistributor;
 import net.minecraftforge.fml.network.simple.SimpleChannel;
 
+import javax.annotation.Nullable;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
 public class NetworkHandler {
     private static final String PROTOCOL_VERSION = "1";
     
@@ -26,29 +38,118 @@ public class NetworkHandler {
     
     public static void init() {
         // Register messages
-        INSTANCE.registerMessage(
-                id++,
+        registerMessage(
                 CommandMessage.class,
+                NetworkDirection.PLAY_TO_SERVER,
                 CommandMessage::encode,
                 CommandMessage::decode,
-                CommandMessage::handle
+                CommandMessage::accept,
+                null
         );
         
-        INSTANCE.registerMessage(
-                id++,
+        registerMessage(
                 AdminPanelMessage.class,
+                NetworkDirection.PLAY_TO_SERVER,
                 AdminPanelMessage::encode,
                 AdminPanelMessage::decode,
+                AdminPanelMessage::accept,
                 AdminPanelMessage::handle
         );
         
-        INSTANCE.registerMessage(
-                id++,
+        registerMessage(
                 CompanionManagementMessage.class,
+                NetworkDirection.PLAY_TO_SERVER,
                 CompanionManagementMessage::encode,
                 CompanionManagementMessage::decode,
+                CompanionManagementMessage::accept,
                 CompanionManagementMessage::handle
         );
+        
+        registerMessage(
+                BatchCommandMessage.class,
+                NetworkDirection.PLAY_TO_SERVER,
+                BatchCommandMessage::encode,
+                BatchCommandMessage::decode,
+                BatchCommandMessage::accept,
+                null
+        );
+        
+        registerMessage(
+                RosterSubscriptionMessage.class,
+                NetworkDirection.PLAY_TO_SERVER,
+                RosterSubscriptionMessage::encode,
+                RosterSubscriptionMessage::decode,
+                RosterSubscriptionMessage::accept,
+                RosterSubscriptionMessage::handle
+        );
+        
+        registerMessage(
+                CompanionRosterMessage.class,
+                NetworkDirection.PLAY_TO_CLIENT,
+                CompanionRosterMessage::encode,
+                CompanionRosterMessage::decode,
+                CompanionRosterMessage::handle
+        );
+        
+        registerMessage(
+                SkinRegistryMessage.class,
+                NetworkDirection.PLAY_TO_CLIENT,
+                SkinRegistryMessage::encode,
+                SkinRegistryMessage::decode,
+                SkinRegistryMessage::handle
+        );
+    }
+    
+    /**
+     * Register a message that only goes one way, with a handler run on the main thread
+     */
+    private static <MSG> void registerMessage(Class<MSG> type, NetworkDirection direction,
+                                              BiConsumer<MSG, PacketBuffer> encoder,
+                                              Function<PacketBuffer, MSG> decoder,
+                                              BiConsumer<MSG, NetworkEvent.Context> handler) {
+        registerMessage(type, direction, encoder, decoder, null, handler);
+    }
+    
+    /**
+     * Register a message that only goes one way, recording its traffic in NetworkMetrics.
+     *
+     * The filter runs on the network thread and decides whether the handler runs,
+     * e.g. to drop packets over the PacketGovernor's limits before they reach the
+     * main thread. The handler is queued for the main thread and its time recorded
+     * here, so every message is measured without doing anything itself. It is null
+     * for messages the filter passes on itself, like commands handed to the
+     * PacketGovernor, which records their time when it applies them.
+     */
+    private static <MSG> void registerMessage(Class<MSG> type, NetworkDirection direction,
+                                              BiConsumer<MSG, PacketBuffer> encoder,
+                                              Function<PacketBuffer, MSG> decoder,
+                                              @Nullable BiPredicate<MSG, NetworkEvent.Context> filter,
+                                              @Nullable BiConsumer<MSG, NetworkEvent.Context> handler) {
+        NetworkMetrics metrics = NetworkMetrics.getInstance();
+        INSTANCE.registerMessage(
+                id++,
+                type,
+                (message, buffer) -> {
+                    int start = buffer.writerIndex();
+                    encoder.accept(message, buffer);
+                    metrics.recordSent(type, direction, buffer.writerIndex() - start);
+                },
+                buffer -> {
+                    int start = buffer.readerIndex();
+                    long startNanos = System.nanoTime();
+                    MSG message = decoder.apply(buffer);
+                    metrics.recordReceived(type, direction, buffer.readerIndex() - start, System.nanoTime() - startNanos);
+                    return message;
+                },
+                (message, contextSupplier) -> {
+                    NetworkEvent.Context context = contextSupplier.get();
+                    if ((filter == null || filter.test(message, context)) && handler != null) {
+                        context.enqueueWork(metrics.timed(type, direction, () -> handler.accept(message, context)));
+                    }
+                    context.setPacketHandled(true);
+                },
+                Optional.of(direction)
+        );
     }
     
     public static void sendToServer(Object message) {
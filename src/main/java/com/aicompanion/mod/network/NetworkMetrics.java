@@ -0,0 +1,155 @@
+package com.aicompanion.mod.network;
+
+import net.minecraftforge.fml.network.NetworkDirection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts what every message type of the mod channel costs, per direction, over
+ * the last minute: how many were sent and received, their encoded size, the time
+ * spent decoding them and the time their handlers took on the main thread.
+ *
+ * Recorded from the network threads and the main thread alike.
+ */
+public class NetworkMetrics {
+    private static final NetworkMetrics INSTANCE = new NetworkMetrics();
+
+    // Rolling window of one slot per second
+    public static final int WINDOW_SECONDS = 60;
+
+    private final Map<String, Stats> statsByKey = new ConcurrentHashMap<>();
+
+    public static NetworkMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void recordSent(Class<?> type, NetworkDirection direction, int bytes) {
+        this.get(type, direction).record(Field.SENT, 1, bytes);
+    }
+
+    public void recordReceived(Class<?> type, NetworkDirection direction, int bytes, long decodeNanos) {
+        Stats stats = this.get(type, direction);
+        stats.record(Field.RECEIVED, 1, bytes);
+        stats.record(Field.DECODE_NANOS, 0, decodeNanos);
+    }
+
+    public void recordHandled(Class<?> type, NetworkDirection direction, long handleNanos) {
+        this.get(type, direction).record(Field.HANDLED, 1, handleNanos);
+    }
+
+    /**
+     * Wrap work a handler queues for the main thread so its time gets recorded
+     */
+    public Runnable timed(Class<?> type, NetworkDirection direction, Runnable work) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                work.run();
+            } finally {
+                this.recordHandled(type, direction, System.nanoTime() - start);
+            }
+        };
+    }
+
+    private Stats get(Class<?> type, NetworkDirection direction) {
+        return this.statsByKey.computeIfAbsent(type.getSimpleName() + "/" + direction,
+                key -> new Stats(type.getSimpleName(), direction));
+    }
+
+    /**
+     * Totals over the window for every message type that has seen traffic, sorted by name
+     */
+    public List<Snapshot> snapshot() {
+        long second = System.currentTimeMillis() / 1000L;
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Stats stats : this.statsByKey.values()) {
+            snapshots.add(stats.snapshot(second));
+        }
+        snapshots.sort((a, b) -> a.name.equals(b.name) ? a.direction.compareTo(b.direction) : a.name.compareTo(b.name));
+        return snapshots;
+    }
+
+    private enum Field {
+        SENT,
+        RECEIVED,
+        DECODE_NANOS,
+        HANDLED
+    }
+
+    private static final class Stats {
+        private final String name;
+        private final NetworkDirection direction;
+        // Per slot and field: how many, and their bytes or nanoseconds
+        private final long[] slotSecond = new long[WINDOW_SECONDS];
+        private final long[][] counts = new long[WINDOW_SECONDS][Field.values().length];
+        private final long[][] amounts = new long[WINDOW_SECONDS][Field.values().length];
+
+        Stats(String name, NetworkDirection direction) {
+            this.name = name;
+            this.direction = direction;
+        }
+
+        synchronized void record(Field field, long count, long amount) {
+            long second = System.currentTimeMillis() / 1000L;
+            int slot = (int) (second % WINDOW_SECONDS);
+            if (this.slotSecond[slot] != second) {
+                // First record in this second, the slot still holds one from a minute ago
+                this.slotSecond[slot] = second;
+                Arrays.fill(this.counts[slot], 0L);
+                Arrays.fill(this.amounts[slot], 0L);
+            }
+            this.counts[slot][field.ordinal()] += count;
+            this.amounts[slot][field.ordinal()] += amount;
+        }
+
+        synchronized Snapshot snapshot(long now) {
+            long[] count = new long[Field.values().length];
+            long[] amount = new long[Field.values().length];
+            for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+                if (now - this.slotSecond[slot] < WINDOW_SECONDS) {
+                    for (int field = 0; field < count.length; field++) {
+                        count[field] += this.counts[slot][field];
+                        amount[field] += this.amounts[slot][field];
+                    }
+                }
+            }
+            return new Snapshot(this.name, this.direction,
+                    count[Field.SENT.ordinal()], amount[Field.SENT.ordinal()],
+                    count[Field.RECEIVED.ordinal()], amount[Field.RECEIVED.ordinal()],
+                    amount[Field.DECODE_NANOS.ordinal()],
+                    count[Field.HANDLED.ordinal()], amount[Field.HANDLED.ordinal()]);
+        }
+    }
+
+    /**
+     * One message type and direction over the window
+     */
+    public static final class Snapshot {
+        public final String name;
+        public final NetworkDirection direction;
+        public final long sent;
+        public final long sentBytes;
+        public final long received;
+        public final long receivedBytes;
+        public final long decodeNanos;
+        public final long handled;
+        public final long handleNanos;
+
+        Snapshot(String name, NetworkDirection direction, long sent, long sentBytes, long received, long receivedBytes,
+                 long decodeNanos, long handled, long handleNanos) {
+            this.name = name;
+            this.direction = direction;
+            this.sent = sent;
+            this.sentBytes = sentBytes;
+            this.received = received;
+            this.receivedBytes = receivedBytes;
+            this.decodeNanos = decodeNanos;
+            this.handled = handled;
+            this.handleNanos = handleNanos;
+        }
+    }
+}
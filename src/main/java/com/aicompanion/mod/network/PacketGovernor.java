@@ -0,0 +1,242 @@
+package com.aicompanion.mod.network;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import com.aicompanion.mod.network.message.CommandPayload;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.network.NetworkDirection;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many packets each player can send to the server, so a macro or a
+ * misbehaving screen can't flood the server thread.
+ *
+ * Every player has a token bucket per kind of packet; packets arriving with the
+ * bucket empty are dropped and counted. Companion commands aren't applied as
+ * they arrive but collected, and once per tick only the latest command each
+ * player sent to each companion is applied; the ones it replaced are counted as
+ * coalesced. Commands are kept per player, so a player who doesn't own a
+ * companion can't replace its owner's command before ownership is checked.
+ *
+ * Packets are checked on the network threads, pending commands are applied on
+ * the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class PacketGovernor {
+    private static final PacketGovernor INSTANCE = new PacketGovernor();
+
+    /**
+     * Kinds of packets with their own limit: how many can arrive at once, and
+     * how many per second after that
+     */
+    public enum Kind {
+        COMMAND(20, 10.0D),
+        BATCH_COMMAND(5, 2.0D),
+        MANAGEMENT(10, 5.0D),
+        ADMIN_PANEL(10, 5.0D),
+        ROSTER(4, 1.0D);
+
+        private final int burst;
+        private final double perSecond;
+
+        Kind(int burst, double perSecond) {
+            this.burst = burst;
+            this.perSecond = perSecond;
+        }
+    }
+
+    private final Map<UUID, Bucket[]> bucketsByPlayer = new ConcurrentHashMap<>();
+    // (player, companion) -> latest command from that player for it that hasn't been applied yet
+    private final Map<CommandKey, PendingCommand> pendingByCompanion = new ConcurrentHashMap<>();
+    private final LongAdder[] dropped = new LongAdder[Kind.values().length];
+    private final LongAdder coalesced = new LongAdder();
+
+    private PacketGovernor() {
+        for (int i = 0; i < this.dropped.length; i++) {
+            this.dropped[i] = new LongAdder();
+        }
+    }
+
+    public static PacketGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Take a token for a packet from the player, false if the packet should be dropped
+     */
+    public boolean tryAcquire(ServerPlayerEntity player, Kind kind) {
+        Bucket[] buckets = this.bucketsByPlayer.computeIfAbsent(player.getUUID(), key -> newBuckets());
+        Bucket bucket = buckets[kind.ordinal()];
+        if (bucket.tryTake(System.nanoTime())) {
+            return true;
+        }
+
+        this.dropped[kind.ordinal()].increment();
+        if (bucket.startThrottling()) {
+            AICompanionMod.LOGGER.warn("Player {} is sending too many {} packets, dropping them",
+                    player.getName().getString(), kind);
+        }
+        return false;
+    }
+
+    /**
+     * Queue a command for a companion, replacing the player's command for it not yet applied
+     */
+    public void submitCommand(ServerPlayerEntity player, UUID companionUuid, CommandPayload payload, Class<?> messageType) {
+        CommandKey key = new CommandKey(player.getUUID(), companionUuid);
+        if (this.pendingByCompanion.put(key, new PendingCommand(payload, messageType)) != null) {
+            this.coalesced.increment();
+        }
+    }
+
+    /**
+     * Apply the latest pending command of every companion, checking it is its owner's
+     */
+    private void applyPending(MinecraftServer server) {
+        if (this.pendingByCompanion.isEmpty()) {
+            return;
+        }
+
+        Map<ServerPlayerEntity, Integer> rejected = new HashMap<>();
+        for (CommandKey key : this.pendingByCompanion.keySet()) {
+            // A command arriving after this is left for the next tick
+            PendingCommand pending = this.pendingByCompanion.remove(key);
+            if (pending == null) {
+                continue;
+            }
+
+            ServerPlayerEntity player = server.getPlayerList().getPlayer(key.player);
+            AICompanionEntity companion = CompanionIndex.getInstance().get(key.companion);
+            if (player == null || companion == null || companion.level != player.level) {
+                continue;
+            }
+            if (player.getUUID().equals(companion.getOwnerUUID())) {
+                // Counted as main thread handler time of the message that carried the command
+                long start = System.nanoTime();
+                pending.payload.applyTo(companion);
+                NetworkMetrics.getInstance().recordHandled(pending.messageType, NetworkDirection.PLAY_TO_SERVER, System.nanoTime() - start);
+            } else {
+                rejected.merge(player, 1, Integer::sum);
+            }
+        }
+
+        for (Map.Entry<ServerPlayerEntity, Integer> entry : rejected.entrySet()) {
+            AICompanionMod.LOGGER.warn("Player {} attempted to command {} companion(s) they don't own",
+                    entry.getKey().getName().getString(), entry.getValue());
+        }
+    }
+
+    public long getDropped(Kind kind) {
+        return this.dropped[kind.ordinal()].sum();
+    }
+
+    public long getCoalesced() {
+        return this.coalesced.sum();
+    }
+
+    /**
+     * Forget all buckets and pending commands, e.g. when the server stops
+     */
+    public void clear() {
+        this.bucketsByPlayer.clear();
+        this.pendingByCompanion.clear();
+    }
+
+    private static Bucket[] newBuckets() {
+        Bucket[] buckets = new Bucket[Kind.values().length];
+        for (Kind kind : Kind.values()) {
+            buckets[kind.ordinal()] = new Bucket(kind);
+        }
+        return buckets;
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        // Before the worlds tick, so companions act on their commands right away
+        if (event.phase == TickEvent.Phase.START) {
+            INSTANCE.applyPending(ServerLifecycleHooks.getCurrentServer());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        INSTANCE.bucketsByPlayer.remove(event.getPlayer().getUUID());
+    }
+
+    static final class Bucket {
+        private final Kind kind;
+        private double tokens;
+        private long lastRefill;
+        // Set while packets are being dropped, so that is logged once instead of for every packet
+        private boolean throttled = false;
+
+        Bucket(Kind kind) {
+            this.kind = kind;
+            this.tokens = kind.burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        synchronized boolean tryTake(long now) {
+            this.tokens = Math.min(this.kind.burst, this.tokens + (now - this.lastRefill) / 1.0E9D * this.kind.perSecond);
+            this.lastRefill = now;
+            if (this.tokens < 1.0D) {
+                return false;
+            }
+            this.tokens -= 1.0D;
+            this.throttled = false;
+            return true;
+        }
+
+        synchronized boolean startThrottling() {
+            boolean started = !this.throttled;
+            this.throttled = true;
+            return started;
+        }
+    }
+
+    private static final class CommandKey {
+        private final UUID player;
+        private final UUID companion;
+
+        CommandKey(UUID player, UUID companion) {
+            this.player = player;
+            this.companion = companion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CommandKey)) return false;
+            CommandKey other = (CommandKey) o;
+            return this.player.equals(other.player) && this.companion.equals(other.companion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.player, this.companion);
+        }
+    }
+
+    private static final class PendingCommand {
+        private final CommandPayload payload;
+        private final Class<?> messageType;
+
+        PendingCommand(CommandPayload payload, Class<?> messageType) {
+            this.payload = payload;
+            this.messageType = messageType;
+        }
+    }
+}
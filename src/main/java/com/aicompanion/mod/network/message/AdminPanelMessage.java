@@ -3,12 +3,11 @@ package com.aicompanion.mod.network.message;
 import com.aicompanion.mod.AICompanionMod;
 import com.aicompanion.mod.config.AICompanionConfig;
 import com.aicompanion.mod.client.gui.CompanionRenameScreen;
+import com.aicompanion.mod.network.PacketGovernor;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.fml.network.NetworkEvent;
 
-import java.util.function.Supplier;
-
 /**
  * Network message for admin panel settings
  */
@@ -34,20 +33,24 @@ public class AdminPanelMessage {
         return new AdminPanelMessage(settingKey, settingValue);
     }
     
-    public static void handle(AdminPanelMessage message, Supplier<NetworkEvent.Context> contextSupplier) {
-        NetworkEvent.Context context = contextSupplier.get();
-        context.enqueueWork(() -> {
-            // We are on the server side here
-            ServerPlayerEntity player = context.getSender();
-            
-            if (player != null && player.hasPermissions(2)) { // Only ops can change server settings
-                applySetting(message.settingKey, message.settingValue);
-            } else {
-                AICompanionMod.LOGGER.warn("Player {} attempted to change server settings without permission",
-                        player != null ? player.getName().getString() : "Unknown");
-            }
-        });
-        context.setPacketHandled(true);
+    /**
+     * On the network thread, whether the message gets handled at all
+     */
+    public static boolean accept(AdminPanelMessage message, NetworkEvent.Context context) {
+        ServerPlayerEntity sender = context.getSender();
+        return sender == null || PacketGovernor.getInstance().tryAcquire(sender, PacketGovernor.Kind.ADMIN_PANEL);
+    }
+    
+    public static void handle(AdminPanelMessage message, NetworkEvent.Context context) {
+        // We are on the server side here
+        ServerPlayerEntity player = context.getSender();
+        
+        if (player != null && player.hasPermissions(2)) { // Only ops can change server settings
+            applySetting(message.settingKey, message.settingValue);
+        } else {
+            AICompanionMod.LOGGER.warn("Player {} attempted to change server settings without permission",
+                    player != null ? player.getName().getString() : "Unknown");
+        }
     }
     
     /**
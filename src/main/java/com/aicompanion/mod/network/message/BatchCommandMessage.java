@@ -0,0 +1,74 @@
+package com.aicompanion.mod.network.message;
+
+import com.aicompanion.mod.network.PacketGovernor;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tells a group of companions to carry out the same command, in one packet.
+ *
+ * Written as the number of companions, their UUIDs as two longs each, then the
+ * shared {@link CommandPayload}.
+ */
+public class BatchCommandMessage {
+    // More than any player can own, but keeps a bad packet from allocating much
+    public static final int MAX_COMPANIONS = 64;
+
+    private final List<UUID> companionUuids;
+    private final CommandPayload payload;
+
+    public BatchCommandMessage(List<UUID> companionUuids, CommandPayload payload) {
+        this.companionUuids = companionUuids;
+        this.payload = payload;
+    }
+
+    public static void encode(BatchCommandMessage message, PacketBuffer buffer) {
+        buffer.writeVarInt(message.companionUuids.size());
+        for (UUID uuid : message.companionUuids) {
+            buffer.writeUUID(uuid);
+        }
+        message.payload.write(buffer);
+    }
+
+    public static BatchCommandMessage decode(PacketBuffer buffer) {
+        int count = buffer.readVarInt();
+        if (count < 0 || count > MAX_COMPANIONS) {
+            throw new IllegalArgumentException("Too many companions in one command: " + count);
+        }
+
+        List<UUID> companionUuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            companionUuids.add(buffer.readUUID());
+        }
+        return new BatchCommandMessage(companionUuids, CommandPayload.read(buffer));
+    }
+
+    public List<UUID> getCompanionUuids() {
+        return this.companionUuids;
+    }
+
+    public CommandPayload getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * On the network thread, hands the commands to the PacketGovernor, which
+     * applies them on the next tick; nothing is left for the main thread
+     */
+    public static boolean accept(BatchCommandMessage message, NetworkEvent.Context context) {
+        // Checked here on the network thread, so dropped packets never reach the server thread
+        ServerPlayerEntity player = context.getSender();
+        if (player != null && PacketGovernor.getInstance().tryAcquire(player, PacketGovernor.Kind.BATCH_COMMAND)) {
+            // Ownership of all companions is checked in one pass when the commands are applied on the next tick
+            for (UUID uuid : message.companionUuids) {
+                PacketGovernor.getInstance().submitCommand(player, uuid, message.payload, BatchCommandMessage.class);
+            }
+        }
+        return false;
+    }
+}
@@ -1,48 +1,69 @@
 package com.aicompanion.mod.network.message;
 
 import com.aicompanion.mod.AICompanionMod;
-import com.aicompanion.mod.entity.AICompanionEntity;
-import net.minecraft.client.Minecraft;
-import net.minecraft.entity.Entity;
+import com.aicompanion.mod.network.PacketGovernor;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.ItemStack;
-import net.minecraft.item.Items;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.server.ServerWorld;
 import net.minecraftforge.fml.network.NetworkEvent;
 
 import java.util.UUID;
-import java.util.function.Supplier;
 
+/**
+ * Tells a companion to carry out a command.
+ *
+ * Written in a compact binary format: a marker byte and format version, the
+ * companion UUID as two longs, then the {@link CommandPayload}. The old format
+ * (UUID and command as strings, item always included) is still read, so
+ * clients that haven't updated yet keep working.
+ */
 public class CommandMessage {
-    private final String companionUuid;
-    private final String command;
-    private final BlockPos targetPos;
-    private final ItemStack item;
+    // Never the first byte of the old format, which starts with the UUID string's length
+    private static final byte BINARY_MARKER = (byte) 0xFF;
+    private static final int FORMAT_VERSION = 1;
+    
+    private final UUID companionUuid;
+    private final CommandPayload payload;
     
     public CommandMessage(String companionUuid, String command) {
-        this(companionUuid, command, null, ItemStack.EMPTY);
+        this(UUID.fromString(companionUuid), command, null, ItemStack.EMPTY);
+    }
+    
+    public CommandMessage(UUID companionUuid, String command, BlockPos targetPos, ItemStack item) {
+        this(companionUuid, new CommandPayload(command, targetPos, item));
     }
     
-    public CommandMessage(String companionUuid, String command, BlockPos targetPos, ItemStack item) {
+    public CommandMessage(UUID companionUuid, CommandPayload payload) {
         this.companionUuid = companionUuid;
-        this.command = command;
-        this.targetPos = targetPos;
-        this.item = item != null ? item : ItemStack.EMPTY;
+        this.payload = payload;
     }
     
     public static void encode(CommandMessage message, PacketBuffer buffer) {
-        buffer.writeUtf(message.companionUuid);
-        buffer.writeUtf(message.command);
-        buffer.writeBoolean(message.targetPos != null);
-        if (message.targetPos != null) {
-            buffer.writeBlockPos(message.targetPos);
-        }
-        buffer.writeItemStack(message.item);
+        buffer.writeByte(BINARY_MARKER);
+        buffer.writeByte(FORMAT_VERSION);
+        buffer.writeUUID(message.companionUuid);
+        message.payload.write(buffer);
     }
     
     public static CommandMessage decode(PacketBuffer buffer) {
+        if (buffer.getByte(buffer.readerIndex()) != BINARY_MARKER) {
+            return decodeLegacy(buffer);
+        }
+        
+        buffer.readByte();
+        int version = buffer.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown command message format " + version);
+        }
+        UUID companionUuid = buffer.readUUID();
+        return new CommandMessage(companionUuid, CommandPayload.read(buffer));
+    }
+    
+    /**
+     * Read the string based format sent before the binary one
+     */
+    private static CommandMessage decodeLegacy(PacketBuffer buffer) {
         String companionUuid = buffer.readUtf(36); // UUID string length
         String command = buffer.readUtf(100);
         BlockPos targetPos = null;
@@ -51,42 +72,36 @@ public class CommandMessage {
         }
         ItemStack item = buffer.readItem();
         
-        return new CommandMessage(companionUuid, command, targetPos, item);
+        // An unreadable UUID can't match any companion, the handler just won't find one
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(companionUuid);
+        } catch (IllegalArgumentException e) {
+            AICompanionMod.LOGGER.error("Invalid UUID format in command: {}", companionUuid);
+            uuid = new UUID(0L, 0L);
+        }
+        return new CommandMessage(uuid, command, targetPos, item);
+    }
+    
+    public UUID getCompanionUuid() {
+        return this.companionUuid;
     }
     
-    public static void handle(CommandMessage message, Supplier<NetworkEvent.Context> contextSupplier) {
-        NetworkEvent.Context context = contextSupplier.get();
-        context.enqueueWork(() -> {
-            // We are on the server side here
-            ServerPlayerEntity player = context.getSender();
-            
-            if (player != null) {
-                ServerWorld world = player.getLevel();
-                
-                try {
-                    UUID uuid = UUID.fromString(message.companionUuid);
-                    
-                    // Find the companion entity by UUID
-                    for (Entity entity : world.getAllEntities()) {
-                        if (entity instanceof AICompanionEntity && entity.getUUID().equals(uuid)) {
-                            AICompanionEntity companion = (AICompanionEntity) entity;
-                            
-                            // Verify ownership
-                            UUID ownerUuid = companion.getOwnerUUID();
-                            if (ownerUuid != null && ownerUuid.equals(player.getUUID())) {
-                                companion.processCommand(message.command, message.targetPos, message.item);
-                            } else {
-                                AICompanionMod.LOGGER.warn("Player {} attempted to command a companion they don't own", 
-                                        player.getName().getString());
-                            }
-                            break;
-                        }
-                    }
-                } catch (IllegalArgumentException e) {
-                    AICompanionMod.LOGGER.error("Invalid UUID format in command: {}", message.companionUuid);
-                }
-            }
-        });
-        context.setPacketHandled(true);
+    public CommandPayload getPayload() {
+        return this.payload;
+    }
+    
+    /**
+     * On the network thread, hands the command to the PacketGovernor, which
+     * applies it on the next tick; nothing is left for the main thread
+     */
+    public static boolean accept(CommandMessage message, NetworkEvent.Context context) {
+        // Checked here on the network thread, so dropped packets never reach the server thread
+        ServerPlayerEntity player = context.getSender();
+        if (player != null && PacketGovernor.getInstance().tryAcquire(player, PacketGovernor.Kind.COMMAND)) {
+            // Applied on the next tick, unless a newer command for the companion replaces it
+            PacketGovernor.getInstance().submitCommand(player, message.companionUuid, message.payload, CommandMessage.class);
+        }
+        return false;
     }
 }
@@ -0,0 +1,116 @@
+package com.aicompanion.mod.network.message;
+
+import com.aicompanion.mod.entity.AICompanionEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+
+import javax.annotation.Nullable;
+
+/**
+ * A command with its optional target position and item, as sent to one or many
+ * companions.
+ *
+ * Written as the command as a varint code, then a bitmask saying which of the
+ * optional fields follow, then those fields.
+ */
+public class CommandPayload {
+    // Bits of the optional field mask
+    private static final int HAS_POS = 1;
+    private static final int HAS_ITEM = 2;
+    private static final int HAS_NAME = 4;
+
+    /**
+     * Commands with their own code; anything else is sent by name as CUSTOM
+     */
+    public enum Command {
+        CUSTOM,
+        FOLLOW,
+        STAY,
+        MOVE,
+        BREAK,
+        PLACE,
+        USE,
+        SKIN;
+
+        private final String commandName = this.name().toLowerCase();
+
+        static Command fromName(String name) {
+            for (Command command : values()) {
+                if (command != CUSTOM && command.commandName.equals(name)) {
+                    return command;
+                }
+            }
+            return CUSTOM;
+        }
+    }
+
+    private final String command;
+    private final BlockPos targetPos;
+    private final ItemStack item;
+
+    public CommandPayload(String command, @Nullable BlockPos targetPos, @Nullable ItemStack item) {
+        this.command = command;
+        this.targetPos = targetPos;
+        this.item = item != null ? item : ItemStack.EMPTY;
+    }
+
+    /**
+     * Have a companion carry out the command
+     */
+    public void applyTo(AICompanionEntity companion) {
+        companion.processCommand(this.command, this.targetPos, this.item);
+    }
+
+    public void write(PacketBuffer buffer) {
+        Command code = Command.fromName(this.command);
+        int fields = 0;
+        if (this.targetPos != null) {
+            fields |= HAS_POS;
+        }
+        if (!this.item.isEmpty()) {
+            fields |= HAS_ITEM;
+        }
+        if (code == Command.CUSTOM) {
+            fields |= HAS_NAME;
+        }
+
+        buffer.writeVarInt(code.ordinal());
+        buffer.writeByte(fields);
+        if ((fields & HAS_POS) != 0) {
+            buffer.writeBlockPos(this.targetPos);
+        }
+        if ((fields & HAS_ITEM) != 0) {
+            buffer.writeItem(this.item);
+        }
+        if ((fields & HAS_NAME) != 0) {
+            buffer.writeUtf(this.command, 100);
+        }
+    }
+
+    public static CommandPayload read(PacketBuffer buffer) {
+        int codeId = buffer.readVarInt();
+        if (codeId < 0 || codeId >= Command.values().length) {
+            throw new IllegalArgumentException("Unknown command id " + codeId);
+        }
+        Command code = Command.values()[codeId];
+        int fields = buffer.readUnsignedByte();
+        BlockPos targetPos = (fields & HAS_POS) != 0 ? buffer.readBlockPos() : null;
+        ItemStack item = (fields & HAS_ITEM) != 0 ? buffer.readItem() : ItemStack.EMPTY;
+        String name = (fields & HAS_NAME) != 0 ? buffer.readUtf(100) : code.commandName;
+        return new CommandPayload(name, targetPos, item);
+    }
+
+    public String getCommand() {
+        return this.command;
+    }
+
+    @Nullable
+    public BlockPos getTargetPos() {
+        return this.targetPos;
+    }
+
+    public ItemStack getItem() {
+        return this.item;
+    }
+}
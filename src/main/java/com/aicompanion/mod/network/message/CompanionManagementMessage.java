@@ -2,6 +2,7 @@ package com.aicompanion.mod.network.message;
 
 import com.aicompanion.mod.AICompanionMod;
 import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.network.PacketGovernor;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.network.PacketBuffer;
@@ -10,7 +11,6 @@ import net.minecraft.world.server.ServerWorld;
 import net.minecraftforge.fml.network.NetworkEvent;
 
 import java.util.UUID;
-import java.util.function.Supplier;
 
 /**
  * Network message for companion management actions (teleport, rename, remove)
@@ -53,51 +53,55 @@ public class CompanionManagementMessage {
         return new CompanionManagementMessage(action, companionUuid, extraData);
     }
     
-    public static void handle(CompanionManagementMessage message, Supplier<NetworkEvent.Context> contextSupplier) {
-        NetworkEvent.Context context = contextSupplier.get();
-        context.enqueueWork(() -> {
-            // We are on the server side here
-            ServerPlayerEntity player = context.getSender();
+    /**
+     * On the network thread, whether the message gets handled at all
+     */
+    public static boolean accept(CompanionManagementMessage message, NetworkEvent.Context context) {
+        ServerPlayerEntity sender = context.getSender();
+        return sender == null || PacketGovernor.getInstance().tryAcquire(sender, PacketGovernor.Kind.MANAGEMENT);
+    }
+    
+    public static void handle(CompanionManagementMessage message, NetworkEvent.Context context) {
+        // We are on the server side here
+        ServerPlayerEntity player = context.getSender();
+        
+        if (player != null) {
+            ServerWorld world = player.getLevel();
             
-            if (player != null) {
-                ServerWorld world = player.getLevel();
+            try {
+                UUID uuid = UUID.fromString(message.companionUuid);
                 
-                try {
-                    UUID uuid = UUID.fromString(message.companionUuid);
-                    
-                    // Find the companion entity by UUID
-                    for (Entity entity : world.getAllEntities()) {
-                        if (entity instanceof AICompanionEntity && entity.getUUID().equals(uuid)) {
-                            AICompanionEntity companion = (AICompanionEntity) entity;
-                            
-                            // Verify ownership
-                            UUID ownerUuid = companion.getOwnerUUID();
-                            if (ownerUuid != null && ownerUuid.equals(player.getUUID())) {
-                                // Process the requested action
-                                switch (message.action) {
-                                    case TELEPORT:
-                                        handleTeleport(companion, player);
-                                        break;
-                                    case RENAME:
-                                        handleRename(companion, message.extraData);
-                                        break;
-                                    case REMOVE:
-                                        handleRemove(companion);
-                                        break;
-                                }
-                            } else {
-                                AICompanionMod.LOGGER.warn("Player {} attempted to manage a companion they don't own", 
-                                        player.getName().getString());
+                // Find the companion entity by UUID
+                for (Entity entity : world.getAllEntities()) {
+                    if (entity instanceof AICompanionEntity && entity.getUUID().equals(uuid)) {
+                        AICompanionEntity companion = (AICompanionEntity) entity;
+                        
+                        // Verify ownership
+                        UUID ownerUuid = companion.getOwnerUUID();
+                        if (ownerUuid != null && ownerUuid.equals(player.getUUID())) {
+                            // Process the requested action
+                            switch (message.action) {
+                                case TELEPORT:
+                                    handleTeleport(companion, player);
+                                    break;
+                                case RENAME:
+                                    handleRename(companion, message.extraData);
+                                    break;
+                                case REMOVE:
+                                    handleRemove(companion);
+                                    break;
                             }
-                            break;
+                        } else {
+                            AICompanionMod.LOGGER.warn("Player {} attempted to manage a companion they don't own", 
+                                    player.getName().getString());
                         }
+                        break;
                     }
-                } catch (IllegalArgumentException e) {
-                    AICompanionMod.LOGGER.error("Invalid UUID format in management message: {}", message.companionUuid);
                 }
+            } catch (IllegalArgumentException e) {
+                AICompanionMod.LOGGER.error("Invalid UUID format in management message: {}", message.companionUuid);
             }
-        });
-        context.setPacketHandled(true);
+        }
     }
     
     /**
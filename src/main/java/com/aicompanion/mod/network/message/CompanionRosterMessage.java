@@ -0,0 +1,202 @@
+package com.aicompanion.mod.network.message;
+
+import com.aicompanion.mod.client.ClientCompanionRoster;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Part of a player's companion roster, sent from the server while the player
+ * has the management screen open.
+ *
+ * A snapshot is sent as numbered pages when the screen opens, after that deltas
+ * carry the companions that were added or changed and the ones that are gone.
+ * No message holds more than {@link #PAGE_SIZE} companions of either kind.
+ */
+public class CompanionRosterMessage {
+    public static final int PAGE_SIZE = 32;
+
+    public enum Type {
+        SNAPSHOT,
+        DELTA
+    }
+
+    private final Type type;
+    // Only used by snapshots
+    private final int page;
+    private final int pageCount;
+    private final List<Entry> entries;
+    private final List<UUID> removed;
+
+    private CompanionRosterMessage(Type type, int page, int pageCount, List<Entry> entries, List<UUID> removed) {
+        this.type = type;
+        this.page = page;
+        this.pageCount = pageCount;
+        this.entries = entries;
+        this.removed = removed;
+    }
+
+    public static CompanionRosterMessage snapshot(int page, int pageCount, List<Entry> entries) {
+        return new CompanionRosterMessage(Type.SNAPSHOT, page, pageCount, entries, new ArrayList<>());
+    }
+
+    public static CompanionRosterMessage delta(List<Entry> changed, List<UUID> removed) {
+        return new CompanionRosterMessage(Type.DELTA, 0, 1, changed, removed);
+    }
+
+    public static void encode(CompanionRosterMessage message, PacketBuffer buffer) {
+        buffer.writeEnum(message.type);
+        if (message.type == Type.SNAPSHOT) {
+            buffer.writeVarInt(message.page);
+            buffer.writeVarInt(message.pageCount);
+        }
+        buffer.writeVarInt(message.entries.size());
+        for (Entry entry : message.entries) {
+            entry.write(buffer);
+        }
+        buffer.writeVarInt(message.removed.size());
+        for (UUID uuid : message.removed) {
+            buffer.writeUUID(uuid);
+        }
+    }
+
+    public static CompanionRosterMessage decode(PacketBuffer buffer) {
+        Type type = buffer.readEnum(Type.class);
+        int page = 0;
+        int pageCount = 1;
+        if (type == Type.SNAPSHOT) {
+            page = buffer.readVarInt();
+            pageCount = buffer.readVarInt();
+        }
+
+        int entryCount = readCount(buffer);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(Entry.read(buffer));
+        }
+        int removedCount = readCount(buffer);
+        List<UUID> removed = new ArrayList<>(removedCount);
+        for (int i = 0; i < removedCount; i++) {
+            removed.add(buffer.readUUID());
+        }
+        return new CompanionRosterMessage(type, page, pageCount, entries, removed);
+    }
+
+    private static int readCount(PacketBuffer buffer) {
+        int count = buffer.readVarInt();
+        if (count < 0 || count > PAGE_SIZE) {
+            throw new IllegalArgumentException("Too many companions in one roster message: " + count);
+        }
+        return count;
+    }
+
+    public static void handle(CompanionRosterMessage message, NetworkEvent.Context context) {
+        // We are on the client side here
+        DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> ClientCompanionRoster.getInstance().accept(message));
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public int getPage() {
+        return this.page;
+    }
+
+    public int getPageCount() {
+        return this.pageCount;
+    }
+
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    public List<UUID> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * What the management screen shows about one companion
+     */
+    public static final class Entry {
+        // Longer names are cut off, readUtf checks this many characters
+        private static final int MAX_NAME_LENGTH = 64;
+
+        private final UUID uuid;
+        private final String name;
+        private final ResourceLocation dimension;
+        private final BlockPos pos;
+
+        public Entry(UUID uuid, String name, ResourceLocation dimension, BlockPos pos) {
+            this.uuid = uuid;
+            this.name = name;
+            this.dimension = dimension;
+            this.pos = pos;
+        }
+
+        void write(PacketBuffer buffer) {
+            buffer.writeUUID(this.uuid);
+            // writeUtf limits encoded bytes, not characters, so only the default limit is safe for any name
+            buffer.writeUtf(truncate(this.name));
+            buffer.writeResourceLocation(this.dimension);
+            buffer.writeBlockPos(this.pos);
+        }
+
+        static Entry read(PacketBuffer buffer) {
+            return new Entry(buffer.readUUID(), buffer.readUtf(MAX_NAME_LENGTH), buffer.readResourceLocation(), buffer.readBlockPos());
+        }
+
+        private static String truncate(String name) {
+            if (name.length() <= MAX_NAME_LENGTH) {
+                return name;
+            }
+            // Don't split a surrogate pair
+            int end = Character.isHighSurrogate(name.charAt(MAX_NAME_LENGTH - 1)) ? MAX_NAME_LENGTH - 1 : MAX_NAME_LENGTH;
+            return name.substring(0, end);
+        }
+
+        public UUID getUuid() {
+            return this.uuid;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public ResourceLocation getDimension() {
+            return this.dimension;
+        }
+
+        public BlockPos getPos() {
+            return this.pos;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return this.uuid.equals(other.uuid)
+                    && this.name.equals(other.name)
+                    && this.dimension.equals(other.dimension)
+                    && this.pos.equals(other.pos);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.uuid, this.name, this.dimension, this.pos);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.aicompanion.mod.network.message;
+
+import com.aicompanion.mod.network.CompanionRoster;
+import com.aicompanion.mod.network.PacketGovernor;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+/**
+ * Sent when the management screen opens or closes, to start or stop receiving
+ * the player's companion roster
+ */
+public class RosterSubscriptionMessage {
+    private final boolean subscribe;
+
+    public RosterSubscriptionMessage(boolean subscribe) {
+        this.subscribe = subscribe;
+    }
+
+    public static void encode(RosterSubscriptionMessage message, PacketBuffer buffer) {
+        buffer.writeBoolean(message.subscribe);
+    }
+
+    public static RosterSubscriptionMessage decode(PacketBuffer buffer) {
+        return new RosterSubscriptionMessage(buffer.readBoolean());
+    }
+
+    /**
+     * On the network thread, whether the message gets handled at all
+     */
+    public static boolean accept(RosterSubscriptionMessage message, NetworkEvent.Context context) {
+        // Only subscribing costs anything, a dropped unsubscribe would keep the updates coming
+        ServerPlayerEntity sender = context.getSender();
+        return !message.subscribe || sender == null || PacketGovernor.getInstance().tryAcquire(sender, PacketGovernor.Kind.ROSTER);
+    }
+
+    public static void handle(RosterSubscriptionMessage message, NetworkEvent.Context context) {
+        // We are on the server side here
+        ServerPlayerEntity player = context.getSender();
+        if (player == null) {
+            return;
+        }
+
+        if (message.subscribe) {
+            CompanionRoster.getInstance().subscribe(player);
+        } else {
+            CompanionRoster.getInstance().unsubscribe(player);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.aicompanion.mod.network.message;
+
+import com.aicompanion.mod.entity.SkinRegistry;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Skin ids sent from the server, either the whole table or ones just added
+ */
+public class SkinRegistryMessage {
+    // Ids and strings beyond what the server's table holds make a bad packet
+    private static final int MAX_ID = SkinRegistry.MAX_SKINS - 1;
+    private static final int MAX_LENGTH = SkinRegistry.MAX_LENGTH;
+
+    private final boolean fullTable;
+    private final List<Entry> entries;
+
+    public SkinRegistryMessage(boolean fullTable, List<Entry> entries) {
+        this.fullTable = fullTable;
+        this.entries = entries;
+    }
+
+    public static void encode(SkinRegistryMessage message, PacketBuffer buffer) {
+        buffer.writeBoolean(message.fullTable);
+        buffer.writeVarInt(message.entries.size());
+        for (Entry entry : message.entries) {
+            buffer.writeVarInt(entry.id);
+            buffer.writeUtf(entry.skin.getType(), MAX_LENGTH);
+            buffer.writeUtf(entry.skin.getPath(), MAX_LENGTH);
+        }
+    }
+
+    public static SkinRegistryMessage decode(PacketBuffer buffer) {
+        boolean fullTable = buffer.readBoolean();
+        int count = buffer.readVarInt();
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int id = buffer.readVarInt();
+            if (id < 0 || id > MAX_ID) {
+                throw new IllegalArgumentException("Invalid skin id " + id);
+            }
+            entries.add(new Entry(id, new SkinRegistry.Skin(buffer.readUtf(MAX_LENGTH), buffer.readUtf(MAX_LENGTH))));
+        }
+        return new SkinRegistryMessage(fullTable, entries);
+    }
+
+    public static void handle(SkinRegistryMessage message, NetworkEvent.Context context) {
+        // We are on the client side here
+        SkinRegistry.get(true).accept(message);
+    }
+
+    public boolean isFullTable() {
+        return this.fullTable;
+    }
+
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    public static final class Entry {
+        private final int id;
+        private final SkinRegistry.Skin skin;
+
+        public Entry(int id, SkinRegistry.Skin skin) {
+            this.id = id;
+            this.skin = skin;
+        }
+
+        public int getId() {
+            return this.id;
+        }
+
+        public SkinRegistry.Skin getSkin() {
+            return this.skin;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.aicompanion.mod.web;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.config.AICompanionConfig;
+import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * What the REST API serves about companions, refreshed on the server thread and
+ * read by the web server's threads without touching the game or blocking.
+ *
+ * Every refresh that changes anything publishes a new immutable view with a
+ * higher version, which requests can use as ETag. Each companion also keeps the
+ * version it last changed in. JSON is only built once per view and companion.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class CompanionReadModel {
+    private static final CompanionReadModel INSTANCE = new CompanionReadModel();
+    private static final Gson GSON = new Gson();
+
+    private static final int REFRESH_INTERVAL = 10;
+
+    // Starts at the current time, so versions from an earlier run can't be mistaken for current ones
+    private volatile View view = new View(System.currentTimeMillis(), Collections.emptyMap());
+    private int tickCounter = 0;
+
+    public static CompanionReadModel getInstance() {
+        return INSTANCE;
+    }
+
+    public View getView() {
+        return this.view;
+    }
+
+    /**
+     * Publish a new view if any companion changed, on the server thread only
+     */
+    private void refresh(Collection<AICompanionEntity> companions) {
+        View previous = this.view;
+        long version = previous.version + 1;
+        boolean changed = companions.size() != previous.entries.size();
+        Map<UUID, Entry> entries = new LinkedHashMap<>();
+        for (AICompanionEntity companion : companions) {
+            CompanionState state = new CompanionState(companion);
+            Entry old = previous.entries.get(state.uuid);
+            if (old != null && old.state.equals(state)) {
+                entries.put(state.uuid, old);
+            } else {
+                entries.put(state.uuid, new Entry(state, version));
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            this.view = new View(version, entries);
+        }
+    }
+
+    /**
+     * Drop all companions, e.g. when the server stops; the version keeps counting
+     */
+    public void clear() {
+        this.view = new View(this.view.version + 1, Collections.emptyMap());
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || !AICompanionConfig.SERVER.enableWebInterface.get()) {
+            return;
+        }
+        if (++INSTANCE.tickCounter % REFRESH_INTERVAL == 0) {
+            INSTANCE.refresh(CompanionIndex.getInstance().getAll());
+        }
+    }
+
+    /**
+     * All companions as of one version
+     */
+    public static final class View {
+        private final long version;
+        private final Map<UUID, Entry> entries;
+        // Built by the first request that needs it
+        private volatile String json;
+
+        private View(long version, Map<UUID, Entry> entries) {
+            this.version = version;
+            this.entries = Collections.unmodifiableMap(entries);
+        }
+
+        public long getVersion() {
+            return this.version;
+        }
+
+        @Nullable
+        public Entry get(UUID uuid) {
+            return this.entries.get(uuid);
+        }
+
+        /**
+         * The companion list response
+         */
+        public String toJson() {
+            String json = this.json;
+            if (json == null) {
+                JsonArray companionsArray = new JsonArray();
+                for (Entry entry : this.entries.values()) {
+                    companionsArray.add(entry.state.toJson());
+                }
+                JsonObject response = new JsonObject();
+                response.add("companions", companionsArray);
+                json = GSON.toJson(response);
+                this.json = json;
+            }
+            return json;
+        }
+    }
+
+    /**
+     * One companion and the version it last changed in
+     */
+    public static final class Entry {
+        private final CompanionState state;
+        private final long version;
+        private volatile String json;
+
+        private Entry(CompanionState state, long version) {
+            this.state = state;
+            this.version = version;
+        }
+
+        public long getVersion() {
+            return this.version;
+        }
+
+        public String toJson() {
+            String json = this.json;
+            if (json == null) {
+                json = GSON.toJson(this.state.toJson());
+                this.json = json;
+            }
+            return json;
+        }
+    }
+
+    private static final class CompanionState {
+        private final UUID uuid;
+        private final String name;
+        private final UUID ownerUuid;
+        private final String ownerName;
+        // Rounded to a hundredth of a block, so jitter doesn't count as a change
+        private final double x;
+        private final double y;
+        private final double z;
+        private final float health;
+        private final float maxHealth;
+
+        CompanionState(AICompanionEntity companion) {
+            this.uuid = companion.getUUID();
+            this.name = companion.getName().getString();
+            this.ownerUuid = companion.getOwnerUUID();
+            this.ownerName = this.ownerUuid != null ? companion.getOwnerName() : null;
+            this.x = Math.round(companion.getX() * 100.0D) / 100.0D;
+            this.y = Math.round(companion.getY() * 100.0D) / 100.0D;
+            this.z = Math.round(companion.getZ() * 100.0D) / 100.0D;
+            this.health = companion.getHealth();
+            this.maxHealth = companion.getMaxHealth();
+        }
+
+        JsonObject toJson() {
+            JsonObject companionObj = new JsonObject();
+            companionObj.addProperty("id", this.uuid.toString());
+            companionObj.addProperty("name", this.name);
+
+            // Owner info
+            if (this.ownerUuid != null) {
+                companionObj.addProperty("ownerUuid", this.ownerUuid.toString());
+                companionObj.addProperty("ownerName", this.ownerName);
+            }
+
+            // Position
+            JsonObject position = new JsonObject();
+            position.addProperty("x", this.x);
+            position.addProperty("y", this.y);
+            position.addProperty("z", this.z);
+            companionObj.add("position", position);
+
+            // Health
+            companionObj.addProperty("health", this.health);
+            companionObj.addProperty("maxHealth", this.maxHealth);
+            return companionObj;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CompanionState)) {
+                return false;
+            }
+            CompanionState other = (CompanionState) o;
+            return this.uuid.equals(other.uuid)
+                    && this.name.equals(other.name)
+                    && Objects.equals(this.ownerUuid, other.ownerUuid)
+                    && Objects.equals(this.ownerName, other.ownerName)
+                    && this.x == other.x && this.y == other.y && this.z == other.z
+                    && this.health == other.health && this.maxHealth == other.maxHealth;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.uuid, this.x, this.y, this.z, this.health);
+        }
+    }
+}
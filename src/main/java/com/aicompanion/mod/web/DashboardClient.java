@@ -0,0 +1,170 @@
+package com.aicompanion.mod.web;
+
+import com.aicompanion.mod.AICompanionMod;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A web dashboard connected over WebSocket, with the topics it subscribed to
+ * and the messages waiting to be sent to it.
+ *
+ * Messages are sent one at a time without blocking, so a slow browser only
+ * holds up itself. A queued message is replaced by a newer one with the same
+ * key; a client that still falls too far behind is disconnected.
+ *
+ * Messages are queued as serialized frames, shared with every other client
+ * they're sent to; companion status is binary for clients that connected
+ * with {@link StatusFrameCodec#PROTOCOL}.
+ */
+final class DashboardClient implements WriteCallback {
+    static final int MAX_QUEUED = 128;
+    static final int MAX_TOPICS = 32;
+    // How long a single message may take to send before the client counts as stuck
+    private static final long MAX_SEND_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final UUID id;
+    private final WebServer.WebSocketSession session;
+    private final boolean binary;
+    private final Runnable onGiveUp;
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+
+    // Key -> latest message for it, in the order the keys were first queued
+    private final Map<Object, OutboundFrame> queue = new LinkedHashMap<>();
+    private boolean sending = false;
+    private long sendStarted;
+    private boolean closed = false;
+
+    DashboardClient(UUID id, WebServer.WebSocketSession session, boolean binary, Runnable onGiveUp) {
+        this.id = id;
+        this.session = session;
+        this.binary = binary;
+        this.onGiveUp = onGiveUp;
+    }
+
+    UUID getId() {
+        return this.id;
+    }
+
+    /**
+     * Whether companion status is sent to this client as binary frames
+     */
+    boolean isBinary() {
+        return this.binary;
+    }
+
+    Set<String> getTopics() {
+        return Collections.unmodifiableSet(this.topics);
+    }
+
+    /**
+     * Add a topic, false if the client already has as many as it may
+     */
+    boolean addTopic(String topic) {
+        if (this.topics.size() >= MAX_TOPICS && !this.topics.contains(topic)) {
+            return false;
+        }
+        this.topics.add(topic);
+        return true;
+    }
+
+    boolean removeTopic(String topic) {
+        return this.topics.remove(topic);
+    }
+
+    /**
+     * Queue a message, replacing the queued one with the same key if there is one.
+     * Messages without a key are never replaced.
+     */
+    void enqueue(@Nullable String key, OutboundFrame message) {
+        this.enqueue(key, message, message);
+    }
+
+    /**
+     * Queue a message, or the replacement if it replaces a queued one with the
+     * same key. For messages that only make sense after the one before them,
+     * such as deltas, with a replacement that stands on its own.
+     */
+    void enqueue(@Nullable String key, OutboundFrame message, OutboundFrame replacement) {
+        OutboundFrame next = null;
+        boolean giveUp = false;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            Object queueKey = key != null ? key : new Object();
+            boolean stuck = this.sending && System.nanoTime() - this.sendStarted > MAX_SEND_NANOS;
+            if (stuck || (this.queue.size() >= MAX_QUEUED && !this.queue.containsKey(queueKey))) {
+                this.closed = true;
+                this.queue.clear();
+                giveUp = true;
+            } else {
+                this.queue.merge(queueKey, message, (queued, newer) -> replacement);
+                if (!this.sending) {
+                    next = this.pollNext();
+                }
+            }
+        }
+
+        if (giveUp) {
+            AICompanionMod.LOGGER.warn("Web client {} can't keep up, disconnecting it", this.id);
+            this.onGiveUp.run();
+            this.session.close(StatusCode.POLICY_VIOLATION, "Client too slow");
+        } else if (next != null) {
+            this.session.send(next, this);
+        }
+    }
+
+    /**
+     * Drop all queued messages and stop sending
+     */
+    synchronized void close() {
+        this.closed = true;
+        this.queue.clear();
+    }
+
+    @Override
+    public void writeSuccess() {
+        OutboundFrame next;
+        synchronized (this) {
+            next = this.closed ? null : this.pollNext();
+            if (next == null) {
+                this.sending = false;
+                return;
+            }
+        }
+        this.session.send(next, this);
+    }
+
+    @Override
+    public void writeFailed(Throwable cause) {
+        AICompanionMod.LOGGER.debug("Error sending message to web client " + this.id, cause);
+        this.close();
+    }
+
+    /**
+     * Take the oldest queued message and mark it as being sent, null if there is none
+     */
+    @Nullable
+    private OutboundFrame pollNext() {
+        Iterator<OutboundFrame> iterator = this.queue.values().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        OutboundFrame message = iterator.next();
+        iterator.remove();
+        this.sending = true;
+        this.sendStarted = System.nanoTime();
+        return message;
+    }
+}
@@ -0,0 +1,79 @@
+package com.aicompanion.mod.web;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A WebSocket message serialized once, ready to be sent to any number of
+ * clients.
+ *
+ * The payload is read-only and never consumed: every send works on its own
+ * duplicate, so the same frame can be queued for all subscribers at once.
+ */
+public final class OutboundFrame {
+    private final boolean text;
+    private final ByteBuffer payload;
+
+    private OutboundFrame(boolean text, ByteBuffer payload) {
+        this.text = text;
+        this.payload = payload.asReadOnlyBuffer();
+    }
+
+    /**
+     * A text frame with the message encoded as UTF-8
+     */
+    public static OutboundFrame text(String message) {
+        return new OutboundFrame(true, ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * A text frame with JSON written straight to UTF-8, without building a tree first
+     */
+    public static OutboundFrame json(JsonBody body) {
+        Buffer bytes = new Buffer();
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+            body.write(writer);
+        } catch (IOException e) {
+            // Only writes to memory, can't happen
+            throw new UncheckedIOException(e);
+        }
+        return new OutboundFrame(true, bytes.toBuffer());
+    }
+
+    public static OutboundFrame binary(ByteBuffer payload) {
+        return new OutboundFrame(false, payload);
+    }
+
+    public boolean isText() {
+        return this.text;
+    }
+
+    /**
+     * The payload for one send, positioned at its start
+     */
+    public ByteBuffer getPayload() {
+        return this.payload.duplicate();
+    }
+
+    @FunctionalInterface
+    public interface JsonBody {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    // Hands out its array instead of copying it
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(256);
+        }
+
+        ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(this.buf, 0, this.count);
+        }
+    }
+}
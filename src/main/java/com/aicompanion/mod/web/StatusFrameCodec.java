@@ -0,0 +1,177 @@
+package com.aicompanion.mod.web;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Encodes companion status for dashboards that connected with the binary
+ * sub-protocol, decoded again by scripts.js.
+ *
+ * Companions are referred to by a small wire id, which a full record binds to
+ * the companion's UUID. Coordinates and health are sent in tenths, matching
+ * what {@link StatusSnapshot} keeps. A delta record only has the fields that
+ * changed since the previous snapshot, coordinates and health as differences.
+ * Integers are varints, signed ones zigzag encoded, strings are a varint length
+ * followed by UTF-8. A frame may hold several records back to back.
+ */
+public final class StatusFrameCodec {
+    public static final String PROTOCOL = "aicompanion.bin.v1";
+
+    public static final int RECORD_FULL = 1;
+    public static final int RECORD_DELTA = 2;
+    public static final int RECORD_REMOVED = 3;
+
+    // Full record flags
+    private static final int FULL_ACTIVE = 1;
+    private static final int FULL_HAS_OWNER = 2;
+
+    // Delta record fields
+    private static final int DELTA_POSITION = 1;
+    private static final int DELTA_HEALTH = 2;
+    private static final int DELTA_MAX_HEALTH = 4;
+    private static final int DELTA_TASK = 8;
+    private static final int DELTA_ACTIVE = 16;
+    // Value of active, when DELTA_ACTIVE is set
+    private static final int DELTA_ACTIVE_VALUE = 32;
+
+    private StatusFrameCodec() {
+    }
+
+    /**
+     * Everything about a companion, binding the wire id to it
+     */
+    public static OutboundFrame encodeFull(int id, StatusSnapshot.CompanionStatus status) {
+        Writer writer = new Writer();
+        writer.write(RECORD_FULL);
+        writer.writeVarInt(id);
+        writer.writeUuid(status.getUuid());
+        writer.write((status.isActive() ? FULL_ACTIVE : 0) | (status.getOwner() != null ? FULL_HAS_OWNER : 0));
+        if (status.getOwner() != null) {
+            writer.writeUuid(status.getOwner());
+        }
+        writer.writeString(status.getName());
+        writer.writeString(status.getDimension());
+        writer.writeSignedVarInt(tenths(status.getX()));
+        writer.writeSignedVarInt(tenths(status.getY()));
+        writer.writeSignedVarInt(tenths(status.getZ()));
+        writer.writeSignedVarInt(tenths(status.getHealth()));
+        writer.writeSignedVarInt(tenths(status.getMaxHealth()));
+        writer.writeString(status.getTask());
+        return writer.toFrame();
+    }
+
+    /**
+     * What changed about a companion since the previous status, null if that
+     * can't be said with a delta and a full record is needed
+     */
+    @Nullable
+    public static OutboundFrame encodeDelta(int id, StatusSnapshot.CompanionStatus previous, StatusSnapshot.CompanionStatus status) {
+        if (!previous.getName().equals(status.getName())
+                || !previous.getDimension().equals(status.getDimension())
+                || !Objects.equals(previous.getOwner(), status.getOwner())) {
+            return null;
+        }
+
+        int dx = tenths(status.getX()) - tenths(previous.getX());
+        int dy = tenths(status.getY()) - tenths(previous.getY());
+        int dz = tenths(status.getZ()) - tenths(previous.getZ());
+        int dHealth = tenths(status.getHealth()) - tenths(previous.getHealth());
+        int dMaxHealth = tenths(status.getMaxHealth()) - tenths(previous.getMaxHealth());
+        boolean taskChanged = !previous.getTask().equals(status.getTask());
+        boolean activeChanged = previous.isActive() != status.isActive();
+
+        int fields = 0;
+        if (dx != 0 || dy != 0 || dz != 0) {
+            fields |= DELTA_POSITION;
+        }
+        if (dHealth != 0) {
+            fields |= DELTA_HEALTH;
+        }
+        if (dMaxHealth != 0) {
+            fields |= DELTA_MAX_HEALTH;
+        }
+        if (taskChanged) {
+            fields |= DELTA_TASK;
+        }
+        if (activeChanged) {
+            fields |= DELTA_ACTIVE | (status.isActive() ? DELTA_ACTIVE_VALUE : 0);
+        }
+
+        Writer writer = new Writer();
+        writer.write(RECORD_DELTA);
+        writer.writeVarInt(id);
+        writer.write(fields);
+        if ((fields & DELTA_POSITION) != 0) {
+            writer.writeSignedVarInt(dx);
+            writer.writeSignedVarInt(dy);
+            writer.writeSignedVarInt(dz);
+        }
+        if ((fields & DELTA_HEALTH) != 0) {
+            writer.writeSignedVarInt(dHealth);
+        }
+        if ((fields & DELTA_MAX_HEALTH) != 0) {
+            writer.writeSignedVarInt(dMaxHealth);
+        }
+        if ((fields & DELTA_TASK) != 0) {
+            writer.writeString(status.getTask());
+        }
+        return writer.toFrame();
+    }
+
+    /**
+     * A companion is gone, its wire id is no longer bound
+     */
+    public static OutboundFrame encodeRemoved(int id) {
+        Writer writer = new Writer();
+        writer.write(RECORD_REMOVED);
+        writer.writeVarInt(id);
+        return writer.toFrame();
+    }
+
+    private static int tenths(double value) {
+        return (int) Math.round(value * 10.0D);
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+        Writer() {
+            super(32);
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                this.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.write(value);
+        }
+
+        void writeSignedVarInt(int value) {
+            this.writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        void writeUuid(UUID uuid) {
+            this.writeLong(uuid.getMostSignificantBits());
+            this.writeLong(uuid.getLeastSignificantBits());
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                this.write((int) (value >>> shift));
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.writeVarInt(bytes.length);
+            this.write(bytes, 0, bytes.length);
+        }
+
+        OutboundFrame toFrame() {
+            return OutboundFrame.binary(ByteBuffer.wrap(this.buf, 0, this.count));
+        }
+    }
+}
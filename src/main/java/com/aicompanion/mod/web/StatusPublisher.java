@@ -0,0 +1,33 @@
+package com.aicompanion.mod.web;
+
+import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.config.AICompanionConfig;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+/**
+ * Captures a status snapshot of all companions on the server thread ten times
+ * a second and hands it to the web server, which pushes what changed to the
+ * dashboard from its own thread
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class StatusPublisher {
+    private static final int SNAPSHOT_INTERVAL = 2;
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || !AICompanionConfig.SERVER.enableWebInterface.get()) {
+            return;
+        }
+
+        int tick = ServerLifecycleHooks.getCurrentServer().getTickCount();
+        WebServer webServer = WebServer.getInstance();
+        // Nobody to show it to, don't bother capturing
+        if (tick % SNAPSHOT_INTERVAL == 0 && webServer.isRunning() && webServer.hasClients()) {
+            webServer.publishStatus(StatusSnapshot.capture(tick, CompanionIndex.getInstance().getAll()));
+        }
+    }
+}
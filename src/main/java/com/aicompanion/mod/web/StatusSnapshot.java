@@ -0,0 +1,204 @@
+package com.aicompanion.mod.web;
+
+import com.aicompanion.mod.entity.AICompanionEntity;
+import com.google.gson.stream.JsonWriter;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * The state of all loaded companions at one point in time, as shown on the web
+ * dashboard.
+ *
+ * Captured on the server thread and never changed after, so the web server's
+ * threads can read it without touching the game.
+ */
+public final class StatusSnapshot {
+    private final long tick;
+    private final Map<UUID, CompanionStatus> companions;
+
+    private StatusSnapshot(long tick, Map<UUID, CompanionStatus> companions) {
+        this.tick = tick;
+        this.companions = Collections.unmodifiableMap(companions);
+    }
+
+    /**
+     * Capture the companions' state, on the server thread only
+     */
+    public static StatusSnapshot capture(long tick, Collection<AICompanionEntity> companions) {
+        Map<UUID, CompanionStatus> statuses = new LinkedHashMap<>();
+        for (AICompanionEntity companion : companions) {
+            statuses.put(companion.getUUID(), new CompanionStatus(companion));
+        }
+        return new StatusSnapshot(tick, statuses);
+    }
+
+    public long getTick() {
+        return this.tick;
+    }
+
+    public Map<UUID, CompanionStatus> getCompanions() {
+        return this.companions;
+    }
+
+    /**
+     * A status message with one of the companions in this snapshot
+     */
+    public OutboundFrame toStatusMessage(CompanionStatus status) {
+        return OutboundFrame.json(writer -> {
+            writer.beginObject();
+            writer.name("type").value("companion_status");
+            writer.name("tick").value(this.tick);
+            writer.name("companion");
+            status.write(writer);
+            writer.endObject();
+        });
+    }
+
+    /**
+     * A message that a companion is gone as of this snapshot
+     */
+    public OutboundFrame toRemovedMessage(UUID uuid) {
+        return OutboundFrame.json(writer -> writer.beginObject()
+                .name("type").value("companion_removed")
+                .name("tick").value(this.tick)
+                .name("id").value(uuid.toString())
+                .endObject());
+    }
+
+    /**
+     * What the dashboard shows about one companion
+     */
+    public static final class CompanionStatus {
+        private final UUID uuid;
+        private final String name;
+        @Nullable
+        private final UUID owner;
+        private final String dimension;
+        // Rounded to a tenth of a block, so companions standing still don't show up as changed
+        private final double x;
+        private final double y;
+        private final double z;
+        private final float health;
+        private final float maxHealth;
+        private final String task;
+        private final boolean active;
+
+        CompanionStatus(AICompanionEntity companion) {
+            this(companion.getUUID(), companion.getName().getString(), companion.getOwnerUUID(),
+                    companion.level.dimension().location().toString(),
+                    companion.getX(), companion.getY(), companion.getZ(),
+                    companion.getHealth(), companion.getMaxHealth(), companion.getCurrentTask(), companion.isActive());
+        }
+
+        CompanionStatus(UUID uuid, String name, @Nullable UUID owner, String dimension, double x, double y, double z,
+                        float health, float maxHealth, String task, boolean active) {
+            this.uuid = uuid;
+            this.name = name;
+            this.owner = owner;
+            this.dimension = dimension;
+            this.x = Math.round(x * 10.0D) / 10.0D;
+            this.y = Math.round(y * 10.0D) / 10.0D;
+            this.z = Math.round(z * 10.0D) / 10.0D;
+            this.health = health;
+            this.maxHealth = maxHealth;
+            this.task = task;
+            this.active = active;
+        }
+
+        public UUID getUuid() {
+            return this.uuid;
+        }
+
+        @Nullable
+        public UUID getOwner() {
+            return this.owner;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDimension() {
+            return this.dimension;
+        }
+
+        public double getX() {
+            return this.x;
+        }
+
+        public double getY() {
+            return this.y;
+        }
+
+        public double getZ() {
+            return this.z;
+        }
+
+        public float getHealth() {
+            return this.health;
+        }
+
+        public float getMaxHealth() {
+            return this.maxHealth;
+        }
+
+        public String getTask() {
+            return this.task;
+        }
+
+        public boolean isActive() {
+            return this.active;
+        }
+
+        void write(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("id").value(this.uuid.toString());
+            writer.name("name").value(this.name);
+            if (this.owner != null) {
+                writer.name("ownerUuid").value(this.owner.toString());
+            }
+            writer.name("dimension").value(this.dimension);
+            writer.name("position").beginObject()
+                    .name("x").value(this.x)
+                    .name("y").value(this.y)
+                    .name("z").value(this.z)
+                    .endObject();
+            writer.name("health").value(this.health);
+            writer.name("maxHealth").value(this.maxHealth);
+            writer.name("task").value(this.task);
+            writer.name("active").value(this.active);
+            writer.endObject();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CompanionStatus)) {
+                return false;
+            }
+            CompanionStatus other = (CompanionStatus) o;
+            return this.uuid.equals(other.uuid)
+                    && this.name.equals(other.name)
+                    && Objects.equals(this.owner, other.owner)
+                    && this.dimension.equals(other.dimension)
+                    && this.x == other.x && this.y == other.y && this.z == other.z
+                    && this.health == other.health && this.maxHealth == other.maxHealth
+                    && this.task.equals(other.task)
+                    && this.active == other.active;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.uuid, this.x, this.y, this.z, this.health, this.task, this.active);
+        }
+    }
+}
@@ -8,6 +8,9 @@ import com.aicompanion.mod.web.handler.AuthHandler;
 import com.aicompanion.mod.web.handler.StaticFileHandler;
 import com.aicompanion.mod.web.handler.WebSocketHandler;
 import com.aicompanion.mod.web.security.JWTManager;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.jsonwebtoken.security.Keys;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
@@ -15,22 +18,32 @@ import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
+import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
 import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
 import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 import com.aicompanion.mod.web.handler.WebSocketHandler;
 
+import javax.annotation.Nullable;
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.net.URL;
 import java.security.Key;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Web server implementation for the AI Companion mod.
@@ -40,14 +53,33 @@ public class WebServer {
     private static WebServer instance;
     private Server server;
     private final int port;
-    private boolean running = false;
+    private volatile boolean running = false;
     private JWTManager jwtManager;
     
-    // Connected clients (UUID to websocket session)
-    private final Map<UUID, WebSocketSession> connectedClients = new ConcurrentHashMap<>();
+    // Topics clients can subscribe to besides single companions and owners
+    public static final String TOPIC_COMPANIONS = "companions";
+    public static final String TOPIC_STATS = "stats";
+    
+    // Connected clients (UUID to dashboard client)
+    private final Map<UUID, DashboardClient> connectedClients = new ConcurrentHashMap<>();
+    
+    // Topic to the clients subscribed to it
+    private final Map<String, Set<DashboardClient>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong slowClientsDisconnected = new AtomicLong();
     
     // Executor for background tasks
     private final ScheduledExecutorService executor;
+    
+    // Latest companion status from the server thread, and the one last broadcast
+    private volatile StatusSnapshot latestStatus = null;
+    private StatusSnapshot lastSentStatus = null;
+    // Held while broadcasting and while catching up new subscribers, so they can't miss a change
+    private final Object statusLock = new Object();
+    // Companion -> id binary clients know it by, guarded by statusLock
+    private final Map<UUID, Integer> wireIds = new HashMap<>();
+    private int nextWireId = 0;
+    // Only touched by the broadcast task
+    private int broadcastCount = 0;
 
     /**
      * Private constructor - use getInstance() instead
@@ -145,8 +177,8 @@ public class WebServer {
             server.start();
             running = true;
             
-            // Schedule status broadcast
-            executor.scheduleAtFixedRate(this::broadcastStatus, 5, 5, TimeUnit.SECONDS);
+            // Schedule status broadcast, at the rate companion status is published
+            executor.scheduleAtFixedRate(this::broadcastStatus, 100, 100, TimeUnit.MILLISECONDS);
             
             AICompanionMod.LOGGER.info("Web server started on port " + port);
         } catch (Exception e) {
@@ -171,6 +203,11 @@ public class WebServer {
             }
             
             running = false;
+            latestStatus = null;
+            synchronized (statusLock) {
+                lastSentStatus = null;
+                wireIds.clear();
+            }
             AICompanionMod.LOGGER.info("Web server stopped");
         } catch (Exception e) {
             AICompanionMod.LOGGER.error("Error stopping web server", e);
@@ -178,32 +215,141 @@ public class WebServer {
     }
 
     /**
-     * Register a new client connection
+     * Register a new client connection, it gets no updates until it subscribes
      */
     public void addClient(UUID clientId, WebSocketSession session) {
-        connectedClients.put(clientId, session);
-        AICompanionMod.LOGGER.info("Client connected: " + clientId);
+        addClient(clientId, session, false);
+    }
+    
+    /**
+     * Register a new client connection, sending it companion status as binary
+     * frames if it connected with the binary sub-protocol
+     */
+    public void addClient(UUID clientId, WebSocketSession session, boolean binary) {
+        connectedClients.put(clientId, new DashboardClient(clientId, session, binary, slowClientsDisconnected::incrementAndGet));
+        AICompanionMod.LOGGER.info("Client connected: " + clientId + (binary ? " (binary)" : ""));
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    public boolean hasClients() {
+        return !connectedClients.isEmpty();
+    }
+    
+    /**
+     * Hand over the latest companion status, called from the server thread
+     */
+    public void publishStatus(StatusSnapshot status) {
+        latestStatus = status;
     }
 
     /**
      * Remove a client connection
      */
     public void removeClient(UUID clientId) {
-        connectedClients.remove(clientId);
+        DashboardClient client = connectedClients.remove(clientId);
+        if (client != null) {
+            client.close();
+            synchronized (statusLock) {
+                for (String topic : client.getTopics()) {
+                    removeSubscriber(topic, client);
+                }
+            }
+        }
         AICompanionMod.LOGGER.info("Client disconnected: " + clientId);
     }
+    
+    /**
+     * Subscribe a client to a topic: "companions" for all companions, "stats" for
+     * overall numbers, "companion:<uuid>" for one companion or "owner:<uuid>" for
+     * one player's companions. The client is sent the current status of the
+     * companions the topic covers right away.
+     * 
+     * @return false if the topic is invalid or the client has too many
+     */
+    public boolean subscribe(UUID clientId, String topic) {
+        DashboardClient client = connectedClients.get(clientId);
+        if (client == null || !isValidTopic(topic)) {
+            return false;
+        }
+        
+        synchronized (statusLock) {
+            if (client.getTopics().contains(topic)) {
+                return true;
+            }
+            if (!client.addTopic(topic)) {
+                return false;
+            }
+            subscribers.compute(topic, (key, clients) -> {
+                Set<DashboardClient> result = clients != null ? clients : ConcurrentHashMap.newKeySet();
+                result.add(client);
+                return result;
+            });
+            
+            // Catch up with what the other subscribers were sent already
+            StatusSnapshot status = lastSentStatus;
+            if (status != null) {
+                for (StatusSnapshot.CompanionStatus companion : status.getCompanions().values()) {
+                    if (topic.equals(TOPIC_COMPANIONS) || topic.equals("companion:" + companion.getUuid())
+                            || (companion.getOwner() != null && topic.equals("owner:" + companion.getOwner()))) {
+                        OutboundFrame message = client.isBinary()
+                                ? StatusFrameCodec.encodeFull(wireId(companion.getUuid()), companion)
+                                : status.toStatusMessage(companion);
+                        client.enqueue("companion:" + companion.getUuid(), message);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Unsubscribe a client from a topic
+     */
+    public void unsubscribe(UUID clientId, String topic) {
+        DashboardClient client = connectedClients.get(clientId);
+        if (client != null && client.removeTopic(topic)) {
+            removeSubscriber(topic, client);
+        }
+    }
+    
+    private void removeSubscriber(String topic, DashboardClient client) {
+        subscribers.computeIfPresent(topic, (key, clients) -> {
+            clients.remove(client);
+            return clients.isEmpty() ? null : clients;
+        });
+    }
+    
+    private static boolean isValidTopic(String topic) {
+        if (topic.equals(TOPIC_COMPANIONS) || topic.equals(TOPIC_STATS)) {
+            return true;
+        }
+        
+        String id;
+        if (topic.startsWith("companion:")) {
+            id = topic.substring("companion:".length());
+        } else if (topic.startsWith("owner:")) {
+            id = topic.substring("owner:".length());
+        } else {
+            return false;
+        }
+        try {
+            // Must be exactly how UUID prints it, or it would never match
+            return UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
 
     /**
      * Send a message to a specific client
      */
     public void sendMessage(UUID clientId, String message) {
-        WebSocketSession session = connectedClients.get(clientId);
-        if (session != null && session.isOpen()) {
-            try {
-                session.sendMessage(message);
-            } catch (IOException e) {
-                AICompanionMod.LOGGER.error("Error sending message to client " + clientId, e);
-            }
+        DashboardClient client = connectedClients.get(clientId);
+        if (client != null) {
+            client.enqueue(null, OutboundFrame.text(message));
         }
     }
 
@@ -211,22 +357,165 @@ public class WebServer {
      * Send a message to all connected clients
      */
     public void broadcastMessage(String message) {
-        for (Map.Entry<UUID, WebSocketSession> entry : connectedClients.entrySet()) {
-            if (entry.getValue().isOpen()) {
-                try {
-                    entry.getValue().sendMessage(message);
-                } catch (IOException e) {
-                    AICompanionMod.LOGGER.error("Error broadcasting message to client " + entry.getKey(), e);
+        broadcastFrame(OutboundFrame.text(message));
+    }
+    
+    /**
+     * Send a frame to all connected clients, the same frame to each of them
+     */
+    public void broadcastFrame(OutboundFrame frame) {
+        for (DashboardClient client : connectedClients.values()) {
+            client.enqueue(null, frame);
+        }
+    }
+    
+    /**
+     * Broadcast status updates to the clients subscribed to them
+     */
+    private void broadcastStatus() {
+        try {
+            synchronized (statusLock) {
+                // Only ever reads the snapshot, never the game itself
+                StatusSnapshot status = latestStatus;
+                if (status != null && status != lastSentStatus) {
+                    broadcastChanges(lastSentStatus, status);
+                    lastSentStatus = status;
                 }
             }
+            // Overall numbers don't need to be any fresher than once a second
+            if (++broadcastCount % 10 == 0) {
+                broadcastStats();
+            }
+        } catch (Exception e) {
+            // Thrown out of a scheduled task, it would cancel all further broadcasts
+            AICompanionMod.LOGGER.error("Error broadcasting companion status", e);
         }
     }
     
     /**
-     * Broadcast status updates to all connected clients
+     * Send every companion that changed or is gone to its subscribers. Each
+     * message is serialized once however many clients get it, as JSON and as a
+     * binary record if any of them want that, and the same frame is queued for
+     * all of them.
      */
-    private void broadcastStatus() {
-        // TODO: Collect status of all AI companions and broadcast
+    private void broadcastChanges(@Nullable StatusSnapshot previous, StatusSnapshot status) {
+        Set<DashboardClient> recipients = new HashSet<>();
+        for (StatusSnapshot.CompanionStatus companion : status.getCompanions().values()) {
+            StatusSnapshot.CompanionStatus old = previous != null ? previous.getCompanions().get(companion.getUuid()) : null;
+            if (companion.equals(old)) {
+                continue;
+            }
+            
+            recipients.clear();
+            collectSubscribers(recipients, companion);
+            if (old != null) {
+                // Lets the previous owner's subscribers know in case it changed hands
+                collectSubscribers(recipients, old);
+            }
+            if (recipients.isEmpty()) {
+                continue;
+            }
+            
+            String key = "companion:" + companion.getUuid();
+            OutboundFrame json = null;
+            OutboundFrame full = null;
+            OutboundFrame delta = null;
+            for (DashboardClient client : recipients) {
+                if (!client.isBinary()) {
+                    if (json == null) {
+                        json = status.toStatusMessage(companion);
+                    }
+                    client.enqueue(key, json);
+                    continue;
+                }
+                
+                if (full == null) {
+                    int id = wireId(companion.getUuid());
+                    full = StatusFrameCodec.encodeFull(id, companion);
+                    // Without a previous status the client has nothing to apply a delta to
+                    delta = old != null ? StatusFrameCodec.encodeDelta(id, old, companion) : null;
+                    if (delta == null) {
+                        delta = full;
+                    }
+                }
+                // A delta replacing one still queued would skip a step, so that gets the full record
+                client.enqueue(key, delta, full);
+            }
+        }
+        
+        if (previous == null) {
+            return;
+        }
+        for (StatusSnapshot.CompanionStatus old : previous.getCompanions().values()) {
+            if (!status.getCompanions().containsKey(old.getUuid())) {
+                recipients.clear();
+                collectSubscribers(recipients, old);
+                if (!recipients.isEmpty()) {
+                    OutboundFrame json = status.toRemovedMessage(old.getUuid());
+                    OutboundFrame removed = wireIds.containsKey(old.getUuid()) ? StatusFrameCodec.encodeRemoved(wireIds.get(old.getUuid())) : null;
+                    for (DashboardClient client : recipients) {
+                        if (!client.isBinary()) {
+                            client.enqueue("companion:" + old.getUuid(), json);
+                        } else if (removed != null) {
+                            client.enqueue("companion:" + old.getUuid(), removed);
+                        }
+                    }
+                }
+                wireIds.remove(old.getUuid());
+            }
+        }
+    }
+    
+    /**
+     * The id binary clients know a companion by, only while holding statusLock
+     */
+    private int wireId(UUID companion) {
+        return wireIds.computeIfAbsent(companion, key -> nextWireId++);
+    }
+    
+    private void collectSubscribers(Set<DashboardClient> recipients, StatusSnapshot.CompanionStatus companion) {
+        addSubscribers(recipients, TOPIC_COMPANIONS);
+        addSubscribers(recipients, "companion:" + companion.getUuid());
+        if (companion.getOwner() != null) {
+            addSubscribers(recipients, "owner:" + companion.getOwner());
+        }
+    }
+    
+    private void addSubscribers(Set<DashboardClient> recipients, String topic) {
+        Set<DashboardClient> clients = subscribers.get(topic);
+        if (clients != null) {
+            recipients.addAll(clients);
+        }
+    }
+    
+    private static void enqueueAll(Set<DashboardClient> recipients, String key, OutboundFrame message) {
+        for (DashboardClient client : recipients) {
+            client.enqueue(key, message);
+        }
+    }
+    
+    /**
+     * Send overall numbers to the clients subscribed to them
+     */
+    private void broadcastStats() {
+        Set<DashboardClient> clients = subscribers.get(TOPIC_STATS);
+        StatusSnapshot status = latestStatus;
+        if (clients == null || clients.isEmpty() || status == null) {
+            return;
+        }
+        
+        long activeCompanions = status.getCompanions().values().stream()
+                .filter(StatusSnapshot.CompanionStatus::isActive)
+                .count();
+        OutboundFrame message = OutboundFrame.json(writer -> writer.beginObject()
+                .name("type").value("stats")
+                .name("tick").value(status.getTick())
+                .name("companions").value(status.getCompanions().size())
+                .name("activeCompanions").value(activeCompanions)
+                .name("clients").value(connectedClients.size())
+                .name("slowClientsDisconnected").value(slowClientsDisconnected.get())
+                .endObject());
+        enqueueAll(clients, TOPIC_STATS, message);
     }
     
     /**
@@ -234,7 +523,25 @@ public class WebServer {
      */
     public interface WebSocketSession {
         boolean isOpen();
-        void sendMessage(String message) throws IOException;
+        
+        /**
+         * Send a frame without blocking, the callback is told when it is done.
+         * The frame's payload must be sent as it is, not copied or re-encoded.
+         */
+        void send(OutboundFrame frame, WriteCallback callback);
+        
+        void close(int statusCode, String reason);
+    }
+    
+    /**
+     * Send a serialized frame on a Jetty session. The public API only takes text
+     * as a String, which it encodes again for every session, so the frame is
+     * handed to the endpoint directly with its payload as it is.
+     */
+    public static void sendFrame(org.eclipse.jetty.websocket.api.Session session, OutboundFrame frame, WriteCallback callback) {
+        WebSocketFrame webSocketFrame = frame.isText() ? new TextFrame() : new BinaryFrame();
+        webSocketFrame.setPayload(frame.getPayload());
+        ((WebSocketRemoteEndpoint) session.getRemote()).uncheckedSendFrame(webSocketFrame, callback);
     }
     
     /**
@@ -268,8 +575,14 @@ public class WebServer {
                     }
                 }
                 
+                // Companion status as binary frames if the client asks for it, JSON otherwise
+                boolean binary = req.getSubProtocols().contains(StatusFrameCodec.PROTOCOL);
+                if (binary) {
+                    resp.setAcceptedSubProtocol(StatusFrameCodec.PROTOCOL);
+                }
+                
                 // Create a new socket with authentication status
-                return new SimpleWebSocket(webServer, authenticated);
+                return new SimpleWebSocket(webServer, authenticated, binary);
             });
         }
     }
@@ -280,12 +593,14 @@ public class WebServer {
     private static class SimpleWebSocket implements org.eclipse.jetty.websocket.api.WebSocketListener {
         private final WebServer webServer;
         private final boolean authenticated;
+        private final boolean binary;
         private org.eclipse.jetty.websocket.api.Session session;
         private UUID clientId;
         
-        public SimpleWebSocket(WebServer webServer, boolean authenticated) {
+        public SimpleWebSocket(WebServer webServer, boolean authenticated, boolean binary) {
             this.webServer = webServer;
             this.authenticated = authenticated;
+            this.binary = binary;
             this.clientId = UUID.randomUUID();
         }
         
@@ -307,23 +622,40 @@ public class WebServer {
             }
             
             // Register with WebServer
-            webServer.addClient(clientId, new JettyWebSocketSession(session));
+            webServer.addClient(clientId, new JettyWebSocketSession(session), binary);
             
-            // Send welcome message
-            try {
-                String msg = "{\"type\":\"connection\",\"clientId\":\"" + 
-                             clientId + "\",\"message\":\"Connected to AI Companion WebSocket server\"}";
-                session.getRemote().sendString(msg);
-            } catch (IOException e) {
-                AICompanionMod.LOGGER.error("Error sending welcome message", e);
-            }
+            // Send welcome message, queued like everything else so it can't block
+            String msg = "{\"type\":\"connection\",\"clientId\":\"" + 
+                         clientId + "\",\"message\":\"Connected to AI Companion WebSocket server\"}";
+            webServer.sendMessage(clientId, msg);
         }
         
         @Override
         public void onWebSocketText(String message) {
             // Process incoming messages
-            AICompanionMod.LOGGER.info("WebSocket message received: " + message);
-            // Here we would parse and handle the message
+            AICompanionMod.LOGGER.debug("WebSocket message received: " + message);
+            if (!authenticated) {
+                return;
+            }
+            
+            try {
+                JsonObject json = JsonParser.parseString(message).getAsJsonObject();
+                String type = json.has("type") ? json.get("type").getAsString() : "";
+                if ((type.equals("subscribe") || type.equals("unsubscribe")) && json.has("topics")) {
+                    for (JsonElement topic : json.getAsJsonArray("topics")) {
+                        if (type.equals("unsubscribe")) {
+                            webServer.unsubscribe(clientId, topic.getAsString());
+                        } else if (!webServer.subscribe(clientId, topic.getAsString())) {
+                            JsonObject error = new JsonObject();
+                            error.addProperty("type", "error");
+                            error.addProperty("message", "Can't subscribe to " + topic.getAsString());
+                            webServer.sendMessage(clientId, error.toString());
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                AICompanionMod.LOGGER.debug("Invalid WebSocket message from client " + clientId, e);
+            }
         }
         
         @Override
@@ -339,7 +671,7 @@ public class WebServer {
         
         @Override
         public void onWebSocketBinary(byte[] payload, int offset, int len) {
-            // Not handling binary messages
+            // Binary frames only go to the client, requests are always JSON text
         }
     }
     
@@ -359,8 +691,13 @@ public class WebServer {
         }
         
         @Override
-        public void sendMessage(String message) throws IOException {
-            session.getRemote().sendString(message);
+        public void send(OutboundFrame frame, WriteCallback callback) {
+            sendFrame(session, frame, callback);
+        }
+        
+        @Override
+        public void close(int statusCode, String reason) {
+            session.close(statusCode, reason);
         }
     }
 }
\ No newline at end of file
@@ -2,6 +2,10 @@ package com.aicompanion.mod.web.handler;
 
 import com.aicompanion.mod.AICompanionMod;
 import com.aicompanion.mod.entity.AICompanionEntity;
+import com.aicompanion.mod.entity.SkinRegistry;
+import com.aicompanion.mod.entity.ai.CompanionIndex;
+import com.aicompanion.mod.network.NetworkMetrics;
+import com.aicompanion.mod.web.CompanionReadModel;
 import com.aicompanion.mod.web.WebServer;
 import com.aicompanion.mod.web.security.JWTManager;
 import com.google.gson.Gson;
@@ -11,12 +15,9 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
-import net.minecraft.world.server.ServerWorld;
-import net.minecraftforge.fml.LogicalSide;
-import net.minecraftforge.fml.LogicalSidedProvider;
+import net.minecraftforge.fml.network.NetworkDirection;
 import net.minecraftforge.fml.server.ServerLifecycleHooks;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileUploadException;
@@ -96,6 +97,8 @@ public class APIHandler extends HttpServlet {
             resp.getWriter().write("{\"message\": \"AI Companion API\"}");
         } else if (path.equals("/companions")) {
             handleGetCompanions(req, resp);
+        } else if (path.equals("/stats/network")) {
+            handleGetNetworkStats(req, resp);
         } else if (path.startsWith("/companions/")) {
             String companionId = path.substring("/companions/".length());
             handleGetCompanion(req, resp, companionId);
@@ -131,32 +134,40 @@ public class APIHandler extends HttpServlet {
      * Handle GET request for all companions
      */
     private void handleGetCompanions(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
-        if (server == null) {
-            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
-            resp.getWriter().write("{\"error\": \"Server not available\"}");
+        CompanionReadModel.View view = CompanionReadModel.getInstance().getView();
+        String etag = "\"companions-" + view.getVersion() + "\"";
+        if (isNotModified(req, resp, etag)) {
             return;
         }
         
-        JsonArray companionsArray = new JsonArray();
-        
-        for (ServerWorld world : server.getAllLevels()) {
-            List<AICompanionEntity> companions = world.getEntitiesOfClass(
-                AICompanionEntity.class, 
-                new AxisAlignedBB(
-                    Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE,
-                    Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE
-                )
-            );
-            
-            for (AICompanionEntity companion : companions) {
-                JsonObject companionObj = createCompanionJson(companion);
-                companionsArray.add(companionObj);
-            }
+        resp.setContentType("application/json");
+        resp.setHeader("ETag", etag);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.getWriter().write(view.toJson());
+    }
+
+    /**
+     * Handle GET request for the mod channel's traffic over the last minute
+     */
+    private void handleGetNetworkStats(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        JsonArray messagesArray = new JsonArray();
+        for (NetworkMetrics.Snapshot stats : NetworkMetrics.getInstance().snapshot()) {
+            JsonObject messageObj = new JsonObject();
+            messageObj.addProperty("message", stats.name);
+            messageObj.addProperty("direction", stats.direction == NetworkDirection.PLAY_TO_SERVER ? "serverbound" : "clientbound");
+            messageObj.addProperty("sent", stats.sent);
+            messageObj.addProperty("sentBytes", stats.sentBytes);
+            messageObj.addProperty("received", stats.received);
+            messageObj.addProperty("receivedBytes", stats.receivedBytes);
+            messageObj.addProperty("decodeNanos", stats.decodeNanos);
+            messageObj.addProperty("handled", stats.handled);
+            messageObj.addProperty("handleNanos", stats.handleNanos);
+            messagesArray.add(messageObj);
         }
         
         JsonObject response = new JsonObject();
-        response.add("companions", companionsArray);
+        response.addProperty("windowSeconds", NetworkMetrics.WINDOW_SECONDS);
+        response.add("messages", messagesArray);
         
         resp.setContentType("application/json");
         resp.setStatus(HttpServletResponse.SC_OK);
@@ -169,7 +180,7 @@ public class APIHandler extends HttpServlet {
     private void handleGetCompanion(HttpServletRequest req, HttpServletResponse resp, String companionId) throws IOException {
         try {
             UUID uuid = UUID.fromString(companionId);
-            AICompanionEntity companion = findCompanionById(uuid);
+            CompanionReadModel.Entry companion = CompanionReadModel.getInstance().getView().get(uuid);
             
             if (companion == null) {
                 resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -177,11 +188,16 @@ public class APIHandler extends HttpServlet {
                 return;
             }
             
-            JsonObject companionObj = createCompanionJson(companion);
+            // Only changes when this companion does, not with every other companion
+            String etag = "\"companion-" + companion.getVersion() + "\"";
+            if (isNotModified(req, resp, etag)) {
+                return;
+            }
             
             resp.setContentType("application/json");
+            resp.setHeader("ETag", etag);
             resp.setStatus(HttpServletResponse.SC_OK);
-            resp.getWriter().write(gson.toJson(companionObj));
+            resp.getWriter().write(companion.toJson());
         } catch (IllegalArgumentException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             resp.getWriter().write("{\"error\": \"Invalid companion ID format\"}");
@@ -194,9 +210,7 @@ public class APIHandler extends HttpServlet {
     private void handleCompanionCommand(HttpServletRequest req, HttpServletResponse resp, String companionId) throws IOException {
         try {
             UUID uuid = UUID.fromString(companionId);
-            AICompanionEntity companion = findCompanionById(uuid);
-            
-            if (companion == null) {
+            if (CompanionReadModel.getInstance().getView().get(uuid) == null) {
                 resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 resp.getWriter().write("{\"error\": \"Companion not found\"}");
                 return;
@@ -236,34 +250,25 @@ public class APIHandler extends HttpServlet {
     }
 
     /**
-     * Create a JSON representation of a companion
+     * Answer with 304 Not Modified if the client already has this version
+     * 
+     * @return Whether the response was sent
      */
-    private JsonObject createCompanionJson(AICompanionEntity companion) {
-        JsonObject companionObj = new JsonObject();
-        companionObj.addProperty("id", companion.getUUID().toString());
-        companionObj.addProperty("name", companion.getName().getString());
-        
-        // Owner info
-        if (companion.getOwnerUUID() != null) {
-            companionObj.addProperty("ownerUuid", companion.getOwnerUUID().toString());
-            companionObj.addProperty("ownerName", companion.getOwnerName());
+    static boolean isNotModified(HttpServletRequest req, HttpServletResponse resp, String etag) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
         }
         
-        // Position
-        JsonObject position = new JsonObject();
-        position.addProperty("x", companion.getX());
-        position.addProperty("y", companion.getY());
-        position.addProperty("z", companion.getZ());
-        companionObj.add("position", position);
-        
-        // Health
-        companionObj.addProperty("health", companion.getHealth());
-        companionObj.addProperty("maxHealth", companion.getMaxHealth());
-        
-        // Status
-        // TODO: Add more detailed status information
-        
-        return companionObj;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                resp.setHeader("ETag", etag);
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -273,9 +278,8 @@ public class APIHandler extends HttpServlet {
         try {
             // Validate companion exists
             UUID uuid = UUID.fromString(companionId);
-            AICompanionEntity companion = findCompanionById(uuid);
             
-            if (companion == null) {
+            if (CompanionReadModel.getInstance().getView().get(uuid) == null) {
                 resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 resp.getWriter().write("{\"error\": \"Companion not found\"}");
                 return;
@@ -297,8 +301,13 @@ public class APIHandler extends HttpServlet {
                 JsonObject json = gson.fromJson(sb.toString(), JsonObject.class);
                 if (json != null && json.has("skinType")) {
                     String skinType = json.get("skinType").getAsString();
+                    if (!SkinRegistry.isValid(skinType)) {
+                        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                        resp.getWriter().write("{\"error\": \"skinType too long\"}");
+                        return;
+                    }
                     // Apply default skin
-                    String skinPath = applySkin(companion, skinType, null);
+                    String skinPath = applySkin(uuid, skinType, null);
                     
                     // Return success response with skin info
                     JsonObject response = new JsonObject();
@@ -364,8 +373,14 @@ public class APIHandler extends HttpServlet {
                     }
                 }
                 
+                if (!SkinRegistry.isValid(skinType)) {
+                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    resp.getWriter().write("{\"error\": \"skinType too long\"}");
+                    return;
+                }
+
                 // Apply the skin to the companion
-                String skinPath = applySkin(companion, skinType, uploadedFile);
+                String skinPath = applySkin(uuid, skinType, uploadedFile);
                 
                 // Return success response with skin path
                 JsonObject response = new JsonObject();
@@ -392,53 +407,47 @@ public class APIHandler extends HttpServlet {
     }
     
     /**
-     * Apply a skin to a companion entity
+     * Apply a skin to a companion entity on the server thread
      * 
-     * @param companion The AI companion entity
+     * @param uuid The AI companion's UUID
      * @param skinType The skin type to apply
      * @param customSkinFile The custom skin file (if any)
      * @return The skin path for custom skins, or null for built-in skins
      */
-    private String applySkin(AICompanionEntity companion, String skinType, File customSkinFile) {
+    private String applySkin(UUID uuid, String skinType, File customSkinFile) {
         String skinPath = null;
         
         if (customSkinFile != null) {
             // Get the relative path for the skin
             skinPath = "skins/" + customSkinFile.getName();
-            AICompanionMod.LOGGER.info("Setting custom skin for companion " + companion.getUUID() + 
+            AICompanionMod.LOGGER.info("Setting custom skin for companion " + uuid + 
                 " from file " + skinPath);
-            
-            // Set the custom skin path on the entity
-            companion.setSkinPath(skinPath);
         } else {
-            AICompanionMod.LOGGER.info("Setting skin type '" + skinType + "' for companion " + companion.getUUID());
-            
-            // Set the skin type on the entity
-            companion.setSkinType(skinType);
-            
-            // Reset skin path for built-in skins
-            companion.setSkinPath("");
+            AICompanionMod.LOGGER.info("Setting skin type '" + skinType + "' for companion " + uuid);
         }
         
-        return skinPath;
-    }
-
-    /**
-     * Find a companion entity by its UUID
-     */
-    private AICompanionEntity findCompanionById(UUID uuid) {
-        MinecraftServer server = LogicalSidedProvider.INSTANCE.get(LogicalSide.SERVER);
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
         if (server == null) {
-            return null;
+            return skinPath;
         }
         
-        for (ServerWorld world : server.getAllLevels()) {
-            AICompanionEntity companion = (AICompanionEntity) world.getEntity(uuid);
-            if (companion != null) {
-                return companion;
+        // Entities may only be changed on the server thread, this request isn't on it
+        String customSkinPath = skinPath;
+        server.execute(() -> {
+            AICompanionEntity companion = CompanionIndex.getInstance().get(uuid);
+            if (companion == null) {
+                return;
             }
-        }
+            
+            if (customSkinPath != null) {
+                // Set the custom skin path on the entity
+                companion.setSkin(companion.getSkinType(), customSkinPath);
+            } else {
+                // Set the skin type on the entity, resetting the skin path for built-in skins
+                companion.setSkin(skinType, "");
+            }
+        });
         
-        return null;
+        return skinPath;
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,14 @@
 package com.aicompanion.mod.web.handler;
 
 import com.aicompanion.mod.AICompanionMod;
+import com.aicompanion.mod.web.OutboundFrame;
 import com.aicompanion.mod.web.WebServer;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
@@ -256,8 +258,13 @@ public class WebSocketHandler {
         }
         
         @Override
-        public void sendMessage(String message) throws IOException {
-            session.getRemote().sendString(message);
+        public void send(OutboundFrame frame, WriteCallback callback) {
+            WebServer.sendFrame(session, frame, callback);
+        }
+        
+        @Override
+        public void close(int statusCode, String reason) {
+            session.close(statusCode, reason);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.aicompanion.mod.world;
+
+import com.aicompanion.mod.AICompanionMod;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks a version stamp for every loaded 16x16x16 chunk section on the server.
+ *
+ * Block changes that notify their neighbours, and blocks broken or placed by
+ * entities, move the version of their section forward; loading or unloading a
+ * chunk resets all of its sections. Changes made without neighbour updates
+ * (setBlock with flag 2 alone, as structure placement and some commands do)
+ * fire no event and are not seen, so caches that must never act on stale
+ * terrain re-check the few blocks they depend on as well. Caches that depend on
+ * the terrain (cached paths, region graphs, safe spots) remember the versions
+ * they were built against and compare them later instead of re-reading blocks.
+ * Services that keep their own incremental state can register a
+ * {@link ChangeListener} to hear about each change as it happens.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class BlockChangeTracker {
+    private static final Map<RegistryKey<World>, LevelVersions> LEVELS = new HashMap<>();
+
+    // Shared across levels so a version is never handed out twice
+    private static long versionCounter = 0;
+
+    private static final List<ChangeListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Receives every tracked block change on the server
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void onBlockChanged(World world, BlockPos pos, BlockState newState, long sectionVersion);
+    }
+
+    public static void addListener(ChangeListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Get the current version of the section containing the given block.
+     * A result of 0 means the chunk is not loaded (or was never seen loading).
+     */
+    public static long getVersion(World world, BlockPos pos) {
+        return getSectionVersion(world, SectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4));
+    }
+
+    /**
+     * Get the current version of a section, keyed by {@link SectionPos#asLong}
+     */
+    public static long getSectionVersion(World world, long sectionKey) {
+        LevelVersions versions = LEVELS.get(world.dimension());
+        if (versions == null) {
+            return 0;
+        }
+
+        long chunkKey = ChunkPos.asLong(SectionPos.x(sectionKey), SectionPos.z(sectionKey));
+        long chunkVersion = versions.chunks.get(chunkKey);
+        if (chunkVersion == 0) {
+            return 0;
+        }
+        return Math.max(chunkVersion, versions.sections.get(sectionKey));
+    }
+
+    /**
+     * Record a block change at the given position
+     */
+    public static void markChanged(IWorld world, BlockPos pos) {
+        markChanged(world, pos, world.getBlockState(pos));
+    }
+
+    /**
+     * Record a block change at the given position, with the state the block is changing to
+     */
+    public static void markChanged(IWorld world, BlockPos pos, BlockState newState) {
+        if (world.isClientSide() || !(world instanceof World)) {
+            return;
+        }
+
+        LevelVersions versions = LEVELS.get(((World) world).dimension());
+        if (versions == null) {
+            return;
+        }
+        long version = ++versionCounter;
+        versions.sections.put(SectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4), version);
+
+        for (ChangeListener listener : LISTENERS) {
+            listener.onBlockChanged((World) world, pos, newState, version);
+        }
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onNeighborNotify(BlockEvent.NeighborNotifyEvent event) {
+        // Fired by World.setBlock for every change that updates neighbours (flag 1)
+        markChanged(event.getWorld(), event.getPos(), event.getState());
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onBlockBreak(BlockEvent.BreakEvent event) {
+        if (!event.isCanceled()) {
+            // The block isn't removed yet, it will be air (or fluid) once it is
+            markChanged(event.getWorld(), event.getPos(), event.getState().getFluidState().createLegacyBlock());
+        }
+    }
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onBlockPlace(BlockEvent.EntityPlaceEvent event) {
+        if (!event.isCanceled()) {
+            markChanged(event.getWorld(), event.getPos(), event.getPlacedBlock());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        IWorld world = event.getWorld();
+        if (world == null || world.isClientSide() || !(world instanceof World)) {
+            return;
+        }
+
+        // Proto chunks are still being generated and can be loaded off the server thread
+        if (!(event.getChunk() instanceof Chunk)) {
+            return;
+        }
+
+        LevelVersions versions = LEVELS.computeIfAbsent(((World) world).dimension(), key -> new LevelVersions());
+        versions.chunks.put(event.getChunk().getPos().toLong(), ++versionCounter);
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        IWorld world = event.getWorld();
+        if (world == null || world.isClientSide() || !(world instanceof World)) {
+            return;
+        }
+
+        LevelVersions versions = LEVELS.get(((World) world).dimension());
+        if (versions == null) {
+            return;
+        }
+
+        ChunkPos chunkPos = event.getChunk().getPos();
+        versions.chunks.remove(chunkPos.toLong());
+        for (int sectionY = 0; sectionY < 16; sectionY++) {
+            versions.sections.remove(SectionPos.asLong(chunkPos.x, sectionY, chunkPos.z));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        IWorld world = event.getWorld();
+        if (!world.isClientSide() && world instanceof World) {
+            LEVELS.remove(((World) world).dimension());
+        }
+    }
+
+    /**
+     * Version tables for a single dimension
+     */
+    private static class LevelVersions {
+        private final Long2LongOpenHashMap chunks = new Long2LongOpenHashMap();
+        private final Long2LongOpenHashMap sections = new Long2LongOpenHashMap();
+    }
+}
@@ -0,0 +1,249 @@
+package com.aicompanion.mod.world;
+
+import com.aicompanion.mod.AICompanionMod;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers "which blocks might be in this chunk section" without reading the
+ * section block by block, so companions can search large areas for a block type.
+ *
+ * A section's entry is the set of blocks in its palette. Placed blocks are added
+ * as they happen through {@link BlockChangeTracker}; removed blocks are left in
+ * the set, so an entry may claim a block that is gone. Blocks set without
+ * neighbour updates don't reach the tracker and are missing from the entry
+ * until it is read from the palette again, which happens at least every
+ * {@value #REFRESH_TICKS} ticks. Searches only scan the sections whose entry
+ * matches. Sections that use the global palette (too many different states)
+ * are always scanned.
+ *
+ * Only accessed from the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class BlockPresenceIndex {
+    private static final Map<RegistryKey<World>, BlockPresenceIndex> INDEXES = new HashMap<>();
+
+    // Entries are read from the palette again after this long, reading it only walks the palette
+    private static final long REFRESH_TICKS = 600;
+
+    static {
+        BlockChangeTracker.addListener(BlockPresenceIndex::onBlockChanged);
+    }
+
+    private final Long2ObjectOpenHashMap<SectionEntry> sections = new Long2ObjectOpenHashMap<>();
+
+    public static BlockPresenceIndex get(ServerWorld world) {
+        return INDEXES.computeIfAbsent(world.dimension(), key -> new BlockPresenceIndex());
+    }
+
+    /**
+     * Find matching blocks within a cube around the center, nearest first.
+     * Only loaded chunks are searched.
+     */
+    public List<BlockPos> findBlocks(ServerWorld world, BlockPos center, int radius, Set<Block> blocks, int limit) {
+        List<BlockPos> found = new ArrayList<>();
+        int minY = Math.max(0, center.getY() - radius);
+        int maxY = Math.min(world.getMaxBuildHeight() - 1, center.getY() + radius);
+
+        // Collect the sections that may contain one of the blocks
+        List<long[]> candidates = new ArrayList<>();
+        for (int sx = (center.getX() - radius) >> 4; sx <= (center.getX() + radius) >> 4; sx++) {
+            for (int sz = (center.getZ() - radius) >> 4; sz <= (center.getZ() + radius) >> 4; sz++) {
+                Chunk chunk = world.getChunkSource().getChunkNow(sx, sz);
+                if (chunk == null) {
+                    continue;
+                }
+                for (int sy = minY >> 4; sy <= maxY >> 4; sy++) {
+                    long key = SectionPos.asLong(sx, sy, sz);
+                    if (this.mayContain(world, chunk, key, blocks)) {
+                        candidates.add(new long[]{key, sectionDistanceSq(key, center)});
+                    }
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong(candidate -> candidate[1]));
+
+        // Scan candidates nearest first, stopping once no closer match is possible
+        long worstAccepted = Long.MAX_VALUE;
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (long[] candidate : candidates) {
+            if (found.size() >= limit && candidate[1] > worstAccepted) {
+                break;
+            }
+
+            long key = candidate[0];
+            Chunk chunk = world.getChunkSource().getChunkNow(SectionPos.x(key), SectionPos.z(key));
+            ChunkSection section = chunk == null ? null : chunk.getSections()[SectionPos.y(key)];
+            if (ChunkSection.isEmpty(section)) {
+                continue;
+            }
+
+            int originX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+            int originY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+            int originZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+            for (int y = 0; y < 16; y++) {
+                int worldY = originY + y;
+                if (worldY < minY || worldY > maxY) {
+                    continue;
+                }
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        pos.set(originX + x, worldY, originZ + z);
+                        if (Math.abs(pos.getX() - center.getX()) > radius || Math.abs(pos.getZ() - center.getZ()) > radius) {
+                            continue;
+                        }
+                        if (blocks.contains(section.getBlockState(x, y, z).getBlock())) {
+                            found.add(pos.immutable());
+                        }
+                    }
+                }
+            }
+
+            found.sort(Comparator.comparingDouble(center::distSqr));
+            if (found.size() > limit) {
+                found.subList(limit, found.size()).clear();
+            }
+            if (found.size() >= limit) {
+                worstAccepted = (long) found.get(found.size() - 1).distSqr(center);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the closest matching block, or null when there is none in range
+     */
+    @Nullable
+    public BlockPos findNearest(ServerWorld world, BlockPos center, int radius, Set<Block> blocks) {
+        List<BlockPos> found = this.findBlocks(world, center, radius, blocks, 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private boolean mayContain(World world, Chunk chunk, long key, Set<Block> blocks) {
+        long version = BlockChangeTracker.getSectionVersion(world, key);
+        SectionEntry entry = this.sections.get(key);
+        long now = world.getGameTime();
+        if (entry == null || entry.version != version || now - entry.readTime >= REFRESH_TICKS) {
+            entry = SectionEntry.fromPalette(chunk.getSections()[SectionPos.y(key)], version, now);
+            this.sections.put(key, entry);
+        }
+
+        if (entry.blocks == null) {
+            return true;
+        }
+        for (Block block : blocks) {
+            if (entry.blocks.contains(block)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Smallest possible squared distance from the center to any block in the section
+     */
+    private static long sectionDistanceSq(long key, BlockPos center) {
+        long dx = axisDistance(center.getX(), SectionPos.sectionToBlockCoord(SectionPos.x(key)));
+        long dy = axisDistance(center.getY(), SectionPos.sectionToBlockCoord(SectionPos.y(key)));
+        long dz = axisDistance(center.getZ(), SectionPos.sectionToBlockCoord(SectionPos.z(key)));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long axisDistance(int coordinate, int sectionMin) {
+        if (coordinate < sectionMin) {
+            return sectionMin - coordinate;
+        }
+        return Math.max(0, coordinate - (sectionMin + 15));
+    }
+
+    private static void onBlockChanged(World world, BlockPos pos, BlockState newState, long sectionVersion) {
+        BlockPresenceIndex index = INDEXES.get(world.dimension());
+        if (index == null) {
+            return;
+        }
+
+        long key = SectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+        SectionEntry entry = index.sections.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        // Keep the entry current instead of rereading the palette on the next search
+        if (entry.blocks != null) {
+            entry.blocks.add(newState.getBlock());
+        }
+        entry.version = sectionVersion;
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if (event.getWorld() == null || event.getWorld().isClientSide() || !(event.getWorld() instanceof World)) {
+            return;
+        }
+
+        BlockPresenceIndex index = INDEXES.get(((World) event.getWorld()).dimension());
+        if (index != null) {
+            int chunkX = event.getChunk().getPos().x;
+            int chunkZ = event.getChunk().getPos().z;
+            for (int sectionY = 0; sectionY < 16; sectionY++) {
+                index.sections.remove(SectionPos.asLong(chunkX, sectionY, chunkZ));
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if (event.getWorld() instanceof World && !event.getWorld().isClientSide()) {
+            INDEXES.remove(((World) event.getWorld()).dimension());
+        }
+    }
+
+    private static final class SectionEntry {
+        private long version;
+        // Game time the palette was read
+        private final long readTime;
+        // Null when the section uses the global palette and could contain anything
+        private final Set<Block> blocks;
+
+        private SectionEntry(long version, long readTime, @Nullable Set<Block> blocks) {
+            this.version = version;
+            this.readTime = readTime;
+            this.blocks = blocks;
+        }
+
+        static SectionEntry fromPalette(@Nullable ChunkSection section, long version, long readTime) {
+            Set<Block> blocks = new ReferenceOpenHashSet<>();
+            if (ChunkSection.isEmpty(section)) {
+                return new SectionEntry(version, readTime, blocks);
+            }
+
+            // maybeHas walks the palette entries; only the global palette answers without asking
+            boolean global = section.maybeHas(state -> {
+                blocks.add(state.getBlock());
+                return false;
+            });
+            return new SectionEntry(version, readTime, global ? null : blocks);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.aicompanion.mod.world;
+
+import com.aicompanion.mod.AICompanionMod;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Block states read by companion goals during the current tick, so the same
+ * handful of positions probed by several goals and companions is only read
+ * from the chunk once.
+ *
+ * The memo is emptied at the start and end of every world tick, and positions
+ * reported by {@link BlockChangeTracker} are dropped as they change, so a goal
+ * sees its own placing and breaking straight away.
+ *
+ * Only accessed from the server thread.
+ */
+@Mod.EventBusSubscriber(modid = AICompanionMod.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class BlockStateMemo {
+    private static final Map<RegistryKey<World>, BlockStateMemo> MEMOS = new HashMap<>();
+
+    private static final int TRIM_SIZE = 256;
+
+    private static long hits = 0;
+    private static long misses = 0;
+
+    static {
+        BlockChangeTracker.addListener((world, pos, newState, sectionVersion) -> {
+            BlockStateMemo memo = MEMOS.get(world.dimension());
+            if (memo != null) {
+                memo.states.remove(pos.asLong());
+            }
+        });
+    }
+
+    private final Long2ObjectOpenHashMap<BlockState> states = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Get a block state through the memo of the world's current tick.
+     * Client worlds are read directly.
+     */
+    public static BlockState getBlockState(World world, BlockPos pos) {
+        if (world.isClientSide()) {
+            return world.getBlockState(pos);
+        }
+
+        BlockStateMemo memo = MEMOS.computeIfAbsent(world.dimension(), key -> new BlockStateMemo());
+        long key = pos.asLong();
+        BlockState state = memo.states.get(key);
+        if (state != null) {
+            hits++;
+            return state;
+        }
+
+        misses++;
+        state = world.getBlockState(pos);
+        memo.states.put(key, state);
+        return state;
+    }
+
+    public static long getHits() {
+        return hits;
+    }
+
+    public static long getMisses() {
+        return misses;
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (event.world.isClientSide()) {
+            return;
+        }
+
+        // Also cleared at the start, reads from after the world tick (e.g. scheduled work) must not carry over
+        BlockStateMemo memo = MEMOS.get(event.world.dimension());
+        if (memo != null) {
+            memo.states.clear();
+            // Don't keep the table at the size of the busiest tick forever
+            memo.states.trim(TRIM_SIZE);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if (event.getWorld() instanceof World && !event.getWorld().isClientSide()) {
+            MEMOS.remove(((World) event.getWorld()).dimension());
+        }
+    }
+}
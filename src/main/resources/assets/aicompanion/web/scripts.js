@@ -5,6 +5,13 @@ let authToken = null;
 let webSocket = null;
 let selectedCompanionId = null;
 let selectedSkin = 'default';
+// Live companion status pushed over the WebSocket, by companion ID
+const liveCompanions = new Map();
+// Binary companion status sub-protocol, see StatusFrameCodec on the server
+const STATUS_PROTOCOL = 'aicompanion.bin.v1';
+// Companions with their values in tenths, by the wire ID binary status records use
+const wireCompanions = new Map();
+const utf8Decoder = new TextDecoder();
 
 // DOM References
 const loginScreen = document.getElementById('login-screen');
@@ -261,7 +268,9 @@ function initWebSocket() {
     console.log(`Connecting to WebSocket (Attempt ${reconnectAttempts + 1})...`);
     
     try {
-        webSocket = new WebSocket(wsUrl);
+        // Offer the binary protocol, the server falls back to JSON if it doesn't pick it
+        webSocket = new WebSocket(wsUrl, [STATUS_PROTOCOL]);
+        webSocket.binaryType = 'arraybuffer';
         
         webSocket.onopen = function() {
             console.log('WebSocket connection established');
@@ -272,6 +281,14 @@ function initWebSocket() {
             reconnectInterval = 1000;
             isReconnecting = false;
             
+            // Ask for live updates, the server only sends what was subscribed to
+            liveCompanions.clear();
+            wireCompanions.clear();
+            webSocket.send(JSON.stringify({
+                type: 'subscribe',
+                topics: ['companions', 'stats']
+            }));
+            
             // Set up ping interval to keep connection alive
             pingInterval = setInterval(() => {
                 if (webSocket && webSocket.readyState === WebSocket.OPEN) {
@@ -290,6 +307,15 @@ function initWebSocket() {
         };
         
         webSocket.onmessage = function(event) {
+            if (event.data instanceof ArrayBuffer) {
+                try {
+                    applyStatusFrame(event.data);
+                } catch (error) {
+                    console.error('Error decoding status frame:', error);
+                }
+                return;
+            }
+            
             try {
                 const message = JSON.parse(event.data);
                 console.log('Received WebSocket message:', message);
@@ -356,6 +382,118 @@ function tryReconnect() {
     }, delay);
 }
 
+// Apply a binary status frame, one or more records back to back
+function applyStatusFrame(buffer) {
+    const bytes = new Uint8Array(buffer);
+    let offset = 0;
+    
+    // Varints may hold up to 32 bits, too many for JavaScript's bitwise operators
+    function readVarInt() {
+        let result = 0;
+        let multiplier = 1;
+        let b;
+        do {
+            b = bytes[offset++];
+            result += (b & 0x7f) * multiplier;
+            multiplier *= 128;
+        } while (b & 0x80);
+        return result;
+    }
+    
+    function readSignedVarInt() {
+        const value = readVarInt();
+        return value % 2 === 0 ? value / 2 : -(value + 1) / 2;
+    }
+    
+    function readString() {
+        const length = readVarInt();
+        const value = utf8Decoder.decode(bytes.subarray(offset, offset + length));
+        offset += length;
+        return value;
+    }
+    
+    function readUuid() {
+        let hex = '';
+        for (let i = 0; i < 16; i++) {
+            hex += bytes[offset++].toString(16).padStart(2, '0');
+        }
+        return `${hex.slice(0, 8)}-${hex.slice(8, 12)}-${hex.slice(12, 16)}-${hex.slice(16, 20)}-${hex.slice(20)}`;
+    }
+    
+    while (offset < bytes.length) {
+        const type = bytes[offset++];
+        const wireId = readVarInt();
+        
+        if (type === 1) {
+            // Full record
+            const id = readUuid();
+            const flags = bytes[offset++];
+            const ownerUuid = (flags & 2) ? readUuid() : undefined;
+            wireCompanions.set(wireId, {
+                id: id,
+                ownerUuid: ownerUuid,
+                active: (flags & 1) !== 0,
+                name: readString(),
+                dimension: readString(),
+                x: readSignedVarInt(),
+                y: readSignedVarInt(),
+                z: readSignedVarInt(),
+                health: readSignedVarInt(),
+                maxHealth: readSignedVarInt(),
+                task: readString()
+            });
+        } else if (type === 2) {
+            // Delta record, read even for an unknown companion to get to the next record
+            const fields = bytes[offset++];
+            const companion = wireCompanions.get(wireId) || {};
+            if (fields & 1) {
+                companion.x += readSignedVarInt();
+                companion.y += readSignedVarInt();
+                companion.z += readSignedVarInt();
+            }
+            if (fields & 2) {
+                companion.health += readSignedVarInt();
+            }
+            if (fields & 4) {
+                companion.maxHealth += readSignedVarInt();
+            }
+            if (fields & 8) {
+                companion.task = readString();
+            }
+            if (fields & 16) {
+                companion.active = (fields & 32) !== 0;
+            }
+        } else if (type === 3) {
+            // Removed record
+            const companion = wireCompanions.get(wireId);
+            if (companion) {
+                liveCompanions.delete(companion.id);
+                wireCompanions.delete(wireId);
+            }
+        } else {
+            console.error('Unknown status record type:', type);
+            break;
+        }
+        
+        const companion = wireCompanions.get(wireId);
+        if (companion) {
+            liveCompanions.set(companion.id, {
+                id: companion.id,
+                name: companion.name,
+                ownerUuid: companion.ownerUuid,
+                dimension: companion.dimension,
+                position: { x: companion.x / 10, y: companion.y / 10, z: companion.z / 10 },
+                health: companion.health / 10,
+                maxHealth: companion.maxHealth / 10,
+                task: companion.task,
+                active: companion.active
+            });
+        }
+    }
+    
+    updateCompanionData(Array.from(liveCompanions.values()));
+}
+
 // Handle incoming WebSocket messages
 function handleWebSocketMessage(message) {
     console.log('Received message:', message);
@@ -373,6 +511,17 @@ function handleWebSocketMessage(message) {
         case 'command_result':
             handleCommandResult(message);
             break;
+        case 'companion_status':
+            liveCompanions.set(message.companion.id, message.companion);
+            updateCompanionData(Array.from(liveCompanions.values()));
+            break;
+        case 'companion_removed':
+            liveCompanions.delete(message.id);
+            updateCompanionData(Array.from(liveCompanions.values()));
+            break;
+        case 'stats':
+            console.log('Server stats:', message);
+            break;
         case 'pong':
             // Server responded to our ping, connection is healthy
             console.log('Received pong from server, latency:', Date.now() - message.timestamp, 'ms');
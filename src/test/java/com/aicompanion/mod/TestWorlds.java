@@ -0,0 +1,101 @@
+package com.aicompanion.mod;
+
+import com.aicompanion.mod.world.BlockChangeTracker;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.registry.Bootstrap;
+import net.minecraft.util.registry.Registry;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.server.ServerChunkProvider;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.world.ChunkEvent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mocked server worlds for tests of code that reads blocks and section versions.
+ *
+ * Every world gets a dimension of its own, so tests don't see each other's
+ * entries in the per-dimension tables. Chunks hold real sections, and the world
+ * reads its blocks from them.
+ */
+public final class TestWorlds {
+    private static final AtomicInteger WORLD_COUNTER = new AtomicInteger();
+
+    private TestWorlds() {
+    }
+
+    public static ServerWorld newWorld() {
+        Bootstrap.bootStrap();
+
+        ServerWorld world = mock(ServerWorld.class);
+        RegistryKey<World> dimension = RegistryKey.create(Registry.DIMENSION_REGISTRY,
+                new ResourceLocation(AICompanionMod.MOD_ID, "test_" + WORLD_COUNTER.incrementAndGet()));
+        ServerChunkProvider chunkSource = mock(ServerChunkProvider.class);
+        when(world.dimension()).thenReturn(dimension);
+        when(world.getMaxBuildHeight()).thenReturn(256);
+        when(world.getChunkSource()).thenReturn(chunkSource);
+        when(world.getBlockState(any(BlockPos.class))).thenAnswer(invocation -> getBlock(world, invocation.getArgument(0)));
+        return world;
+    }
+
+    /**
+     * Load an empty chunk into the world, the way BlockChangeTracker sees chunks loading
+     */
+    public static Chunk loadChunk(ServerWorld world, int chunkX, int chunkZ) {
+        Chunk chunk = mock(Chunk.class);
+        ChunkSection[] sections = new ChunkSection[16];
+        when(chunk.getPos()).thenReturn(new ChunkPos(chunkX, chunkZ));
+        when(chunk.getSections()).thenReturn(sections);
+        when(chunk.getWorldForge()).thenReturn(world);
+        when(world.getChunkSource().getChunkNow(chunkX, chunkZ)).thenReturn(chunk);
+        when(world.getChunk(chunkX, chunkZ)).thenReturn(chunk);
+
+        BlockChangeTracker.onChunkLoad(new ChunkEvent.Load(chunk));
+        return chunk;
+    }
+
+    /**
+     * Change a block in a loaded chunk without telling BlockChangeTracker, like
+     * setBlock without neighbour updates
+     */
+    public static void setBlockSilently(ServerWorld world, BlockPos pos, BlockState state) {
+        Chunk chunk = world.getChunkSource().getChunkNow(pos.getX() >> 4, pos.getZ() >> 4);
+        ChunkSection[] sections = chunk.getSections();
+        int sectionY = pos.getY() >> 4;
+        if (sections[sectionY] == null) {
+            sections[sectionY] = new ChunkSection(sectionY << 4);
+        }
+        sections[sectionY].setBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15, state);
+    }
+
+    /**
+     * Change a block in a loaded chunk and report it like a regular block update
+     */
+    public static void setBlock(ServerWorld world, BlockPos pos, BlockState state) {
+        setBlockSilently(world, pos, state);
+        BlockChangeTracker.markChanged(world, pos, state);
+    }
+
+    private static BlockState getBlock(ServerWorld world, BlockPos pos) {
+        Chunk chunk = world.getChunkSource().getChunkNow(pos.getX() >> 4, pos.getZ() >> 4);
+        if (chunk == null || pos.getY() < 0 || pos.getY() > 255) {
+            return Blocks.AIR.defaultBlockState();
+        }
+        ChunkSection section = chunk.getSections()[pos.getY() >> 4];
+        if (ChunkSection.isEmpty(section)) {
+            return Blocks.AIR.defaultBlockState();
+        }
+        return section.getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+}
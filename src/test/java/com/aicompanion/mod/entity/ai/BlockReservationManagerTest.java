@@ -0,0 +1,106 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.TestWorlds;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.fml.LogicalSide;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BlockReservationManagerTest {
+    private static final BlockPos POS = new BlockPos(10, 64, -3);
+
+    private final BlockReservationManager manager = BlockReservationManager.getInstance();
+    private ServerWorld world;
+    private Entity first;
+    private Entity second;
+    private long time;
+
+    @BeforeEach
+    void setUp() {
+        this.world = TestWorlds.newWorld();
+        this.time = 1000L;
+        when(this.world.getGameTime()).thenAnswer(invocation -> this.time);
+        this.first = entity();
+        this.second = entity();
+    }
+
+    @Test
+    void claimedBlocksCantBeClaimedByOthers() {
+        assertTrue(this.manager.claim(this.world, POS, this.first));
+        assertFalse(this.manager.claim(this.world, POS, this.second));
+        assertTrue(this.manager.isClaimedByOther(this.world, POS, this.second));
+        assertFalse(this.manager.isClaimedByOther(this.world, POS, this.first));
+
+        // Other blocks are unaffected
+        assertTrue(this.manager.claim(this.world, POS.above(), this.second));
+    }
+
+    @Test
+    void claimsAreKeptPerDimension() {
+        ServerWorld other = TestWorlds.newWorld();
+        when(other.getGameTime()).thenReturn(this.time);
+
+        assertTrue(this.manager.claim(this.world, POS, this.first));
+        assertTrue(this.manager.claim(other, POS, this.second));
+    }
+
+    @Test
+    void claimsExpireUnlessRenewed() {
+        assertTrue(this.manager.claim(this.world, POS, this.first));
+
+        this.time += BlockReservationManager.LEASE_TICKS - 1;
+        assertFalse(this.manager.claim(this.world, POS, this.second));
+        assertTrue(this.manager.renew(this.world, POS, this.first));
+
+        // Renewing started the lease over
+        this.time += BlockReservationManager.LEASE_TICKS - 1;
+        assertFalse(this.manager.claim(this.world, POS, this.second));
+
+        this.time += 1;
+        assertFalse(this.manager.isClaimedByOther(this.world, POS, this.second));
+        assertTrue(this.manager.claim(this.world, POS, this.second));
+        assertFalse(this.manager.renew(this.world, POS, this.first));
+    }
+
+    @Test
+    void onlyTheHolderCanRelease() {
+        assertTrue(this.manager.claim(this.world, POS, this.first));
+
+        this.manager.release(this.world, POS, this.second);
+        assertTrue(this.manager.isClaimedByOther(this.world, POS, this.second));
+
+        this.manager.release(this.world, POS, this.first);
+        assertFalse(this.manager.isClaimedByOther(this.world, POS, this.second));
+        assertTrue(this.manager.claim(this.world, POS, this.second));
+    }
+
+    @Test
+    void expiredClaimsAreSwept() {
+        this.time = BlockReservationManager.LEASE_TICKS * 10L;
+        this.manager.claim(this.world, POS, this.first);
+        this.manager.claim(this.world, POS.above(), this.first);
+        int claims = this.manager.getClaimCount();
+
+        this.time += BlockReservationManager.LEASE_TICKS;
+        BlockReservationManager.onWorldTick(new TickEvent.WorldTickEvent(LogicalSide.SERVER, TickEvent.Phase.END, this.world));
+
+        assertEquals(claims - 2, this.manager.getClaimCount());
+    }
+
+    private static Entity entity() {
+        Entity entity = mock(Entity.class);
+        when(entity.getUUID()).thenReturn(UUID.randomUUID());
+        return entity;
+    }
+}
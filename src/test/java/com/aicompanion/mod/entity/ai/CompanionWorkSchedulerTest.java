@@ -0,0 +1,153 @@
+package com.aicompanion.mod.entity.ai;
+
+import com.aicompanion.mod.entity.AICompanionEntity;
+import net.minecraft.util.registry.Bootstrap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CompanionWorkSchedulerTest {
+    // Enough for every job in these tests
+    private static final long LARGE_BUDGET = 1_000_000_000L;
+
+    private final CompanionWorkScheduler scheduler = CompanionWorkScheduler.getInstance();
+    private final List<String> ran = new ArrayList<>();
+
+    @BeforeAll
+    static void bootstrap() {
+        Bootstrap.bootStrap();
+    }
+
+    @BeforeEach
+    void setUp() {
+        this.scheduler.clear();
+    }
+
+    @Test
+    void higherPrioritiesRunFirst() {
+        UUID owner = UUID.randomUUID();
+        this.scheduler.submit(companion(owner), "bulk", CompanionWorkScheduler.Priority.BULK, this.record("bulk"));
+        this.scheduler.submit(companion(owner), "task", CompanionWorkScheduler.Priority.TASK, this.record("task"));
+        this.scheduler.submit(companion(owner), "rescue", CompanionWorkScheduler.Priority.RESCUE, this.record("rescue"));
+
+        this.scheduler.drain(LARGE_BUDGET);
+
+        assertEquals(Arrays.asList("rescue", "task", "bulk"), this.ran);
+    }
+
+    @Test
+    void ownersTakeTurns() {
+        UUID busy = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        this.scheduler.submit(companion(busy), "a", CompanionWorkScheduler.Priority.TASK, this.record("busy1"));
+        this.scheduler.submit(companion(busy), "a", CompanionWorkScheduler.Priority.TASK, this.record("busy2"));
+        this.scheduler.submit(companion(busy), "a", CompanionWorkScheduler.Priority.TASK, this.record("busy3"));
+        this.scheduler.submit(companion(other), "a", CompanionWorkScheduler.Priority.TASK, this.record("other"));
+
+        this.scheduler.drain(LARGE_BUDGET);
+
+        assertEquals(Arrays.asList("busy1", "other", "busy2", "busy3"), this.ran);
+    }
+
+    @Test
+    void sameKeyReplacesThePendingJob() {
+        AICompanionEntity companion = companion(UUID.randomUUID());
+        this.scheduler.submit(companion, "path", CompanionWorkScheduler.Priority.TASK, this.record("first"));
+        this.scheduler.submit(companion, "path", CompanionWorkScheduler.Priority.TASK, this.record("second"));
+        assertEquals(1, this.scheduler.getPendingCount());
+
+        this.scheduler.drain(LARGE_BUDGET);
+
+        assertEquals(Arrays.asList("second"), this.ran);
+    }
+
+    @Test
+    void changedPriorityMovesTheJob() {
+        UUID owner = UUID.randomUUID();
+        AICompanionEntity companion = companion(owner);
+        this.scheduler.submit(companion, "path", CompanionWorkScheduler.Priority.BULK, this.record("bulk"));
+        this.scheduler.submit(companion(owner), "other", CompanionWorkScheduler.Priority.TASK, this.record("task"));
+        this.scheduler.submit(companion, "path", CompanionWorkScheduler.Priority.RESCUE, this.record("rescue"));
+
+        this.scheduler.drain(LARGE_BUDGET);
+
+        assertEquals(Arrays.asList("rescue", "task"), this.ran);
+        assertEquals(0, this.scheduler.getPendingCount());
+    }
+
+    @Test
+    void oneJobRunsEvenWithoutBudget() {
+        UUID owner = UUID.randomUUID();
+        this.scheduler.submit(companion(owner), "a", CompanionWorkScheduler.Priority.TASK, this.record("a"));
+        this.scheduler.submit(companion(owner), "b", CompanionWorkScheduler.Priority.TASK, this.record("b"));
+        long overBudget = this.scheduler.getTicksOverBudget();
+
+        this.scheduler.drain(0L);
+
+        assertEquals(Arrays.asList("a"), this.ran);
+        assertEquals(1, this.scheduler.getPendingCount());
+        assertEquals(overBudget + 1, this.scheduler.getTicksOverBudget());
+
+        this.scheduler.drain(0L);
+        assertEquals(Arrays.asList("a", "b"), this.ran);
+    }
+
+    @Test
+    void stepsRunOnLaterTurnsUntilDone() {
+        AICompanionEntity companion = companion(UUID.randomUUID());
+        int[] steps = {0};
+        this.scheduler.submitSteps(companion, "route", CompanionWorkScheduler.Priority.BULK, () -> ++steps[0] >= 3);
+
+        this.scheduler.drain(0L);
+        assertEquals(1, steps[0]);
+        assertTrue(this.scheduler.isPending(companion, "route"));
+
+        this.scheduler.drain(0L);
+        this.scheduler.drain(0L);
+        assertEquals(3, steps[0]);
+        assertFalse(this.scheduler.isPending(companion, "route"));
+
+        this.scheduler.drain(0L);
+        assertEquals(3, steps[0]);
+    }
+
+    @Test
+    void cancelledJobsAndDeadCompanionsAreSkipped() {
+        UUID owner = UUID.randomUUID();
+        AICompanionEntity cancelled = companion(owner);
+        AICompanionEntity dead = companion(owner);
+        when(dead.isAlive()).thenReturn(false);
+        this.scheduler.submit(cancelled, "a", CompanionWorkScheduler.Priority.TASK, this.record("cancelled"));
+        this.scheduler.submit(dead, "a", CompanionWorkScheduler.Priority.TASK, this.record("dead"));
+        this.scheduler.submit(companion(owner), "a", CompanionWorkScheduler.Priority.TASK, this.record("alive"));
+        this.scheduler.cancel(cancelled, "a");
+
+        this.scheduler.drain(LARGE_BUDGET);
+
+        assertEquals(Arrays.asList("alive"), this.ran);
+        assertEquals(0, this.scheduler.getPendingCount());
+    }
+
+    private Runnable record(String name) {
+        return () -> this.ran.add(name);
+    }
+
+    private static AICompanionEntity companion(UUID owner) {
+        AICompanionEntity companion = mock(AICompanionEntity.class);
+        when(companion.getUUID()).thenReturn(UUID.randomUUID());
+        when(companion.getOwnerUUID()).thenReturn(owner);
+        when(companion.isAlive()).thenReturn(true);
+        return companion;
+    }
+}
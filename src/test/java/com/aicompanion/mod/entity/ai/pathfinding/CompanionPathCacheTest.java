@@ -0,0 +1,129 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.TestWorlds;
+import net.minecraft.block.Blocks;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CompanionPathCacheTest {
+    // One block wide, two high
+    private static final int SIZE_CLASS = (1 << 8) | 2;
+    private static final int FLAGS = 0;
+    private static final BlockPos START = new BlockPos(1, 64, 1);
+    private static final BlockPos GOAL = new BlockPos(6, 64, 1);
+
+    private final CompanionPathCache cache = CompanionPathCache.getInstance();
+    private ServerWorld world;
+
+    @BeforeEach
+    void setUp() {
+        this.cache.clear();
+        this.world = TestWorlds.newWorld();
+        TestWorlds.loadChunk(this.world, 0, 0);
+        for (int x = START.getX(); x <= GOAL.getX(); x++) {
+            TestWorlds.setBlock(this.world, new BlockPos(x, 63, 1), Blocks.STONE.defaultBlockState());
+        }
+    }
+
+    @Test
+    void exactHitIsACopy() {
+        Path path = straightPath(START, GOAL, true);
+        this.cache.put(this.world, START, GOAL, SIZE_CLASS, FLAGS, path);
+
+        Path first = this.cache.get(this.world, START, GOAL, SIZE_CLASS, FLAGS);
+        Path second = this.cache.get(this.world, START, GOAL, SIZE_CLASS, FLAGS);
+        assertNotNull(first);
+        assertNotSame(path, first);
+        assertNotSame(first, second);
+        assertEquals(path.getNodeCount(), first.getNodeCount());
+        assertEquals(GOAL, first.getTarget());
+
+        // Following one copy doesn't move the other
+        first.advance();
+        assertEquals(0, second.getNextNodeIndex());
+    }
+
+    @Test
+    void keyIncludesSizeFlagsAndDimension() {
+        this.cache.put(this.world, START, GOAL, SIZE_CLASS, FLAGS, straightPath(START, GOAL, true));
+
+        assertNull(this.cache.get(this.world, START, GOAL, (2 << 8) | 2, FLAGS));
+        assertNull(this.cache.get(this.world, START, GOAL, SIZE_CLASS, 1));
+        assertNull(this.cache.get(this.world, START, GOAL.east(), SIZE_CLASS, FLAGS));
+
+        ServerWorld other = TestWorlds.newWorld();
+        TestWorlds.loadChunk(other, 0, 0);
+        assertNull(this.cache.get(other, START, GOAL, SIZE_CLASS, FLAGS));
+    }
+
+    @Test
+    void suffixHitStartsAtTheCompanionsNode() {
+        this.cache.put(this.world, START, GOAL, SIZE_CLASS, FLAGS, straightPath(START, GOAL, true));
+        long suffixHits = this.cache.getSuffixHits();
+
+        Path path = this.cache.get(this.world, new BlockPos(3, 64, 1), GOAL, SIZE_CLASS, FLAGS);
+        assertNotNull(path);
+        assertEquals(suffixHits + 1, this.cache.getSuffixHits());
+        assertEquals(4, path.getNodeCount());
+        assertEquals(3, path.getNode(0).x);
+    }
+
+    @Test
+    void changeInACrossedSectionInvalidates() {
+        this.cache.put(this.world, START, GOAL, SIZE_CLASS, FLAGS, straightPath(START, GOAL, true));
+        long invalidations = this.cache.getInvalidations();
+
+        TestWorlds.setBlock(this.world, new BlockPos(10, 70, 10), Blocks.STONE.defaultBlockState());
+
+        assertNull(this.cache.get(this.world, START, GOAL, SIZE_CLASS, FLAGS));
+        assertEquals(invalidations + 1, this.cache.getInvalidations());
+        assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    void changeInAnotherChunkKeepsThePath() {
+        this.cache.put(this.world, START, GOAL, SIZE_CLASS, FLAGS, straightPath(START, GOAL, true));
+        TestWorlds.loadChunk(this.world, 4, 4);
+
+        TestWorlds.setBlock(this.world, new BlockPos(70, 64, 70), Blocks.STONE.defaultBlockState());
+
+        assertNotNull(this.cache.get(this.world, START, GOAL, SIZE_CLASS, FLAGS));
+    }
+
+    @Test
+    void untrackedChangeOnThePathInvalidates() {
+        this.cache.put(this.world, START, GOAL, SIZE_CLASS, FLAGS, straightPath(START, GOAL, true));
+
+        TestWorlds.setBlockSilently(this.world, new BlockPos(4, 65, 1), Blocks.STONE.defaultBlockState());
+
+        assertNull(this.cache.get(this.world, START, GOAL, SIZE_CLASS, FLAGS));
+    }
+
+    @Test
+    void partialPathsAreNotCached() {
+        this.cache.put(this.world, START, GOAL, SIZE_CLASS, FLAGS, straightPath(START, GOAL.west(), false));
+
+        assertEquals(0, this.cache.size());
+        assertNull(this.cache.get(this.world, START, GOAL, SIZE_CLASS, FLAGS));
+    }
+
+    private static Path straightPath(BlockPos from, BlockPos to, boolean reached) {
+        List<PathPoint> nodes = new ArrayList<>();
+        for (int x = from.getX(); x <= to.getX(); x++) {
+            nodes.add(new PathPoint(x, from.getY(), from.getZ()));
+        }
+        return new Path(nodes, to, reached);
+    }
+}
@@ -0,0 +1,52 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.TestWorlds;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HierarchicalPathPlannerTest {
+    @AfterEach
+    void tearDown() {
+        RegionGraph.clearAll();
+    }
+
+    @Test
+    void routesBeyondTheMaxDistanceAreNotPlanned() {
+        ServerWorld world = TestWorlds.newWorld();
+        TestWorlds.loadChunk(world, 0, 0);
+
+        assertNull(HierarchicalPathPlanner.start(world, new BlockPos(0, 64, 0), new BlockPos(5000, 64, 0)));
+        // Turned down before the graph labels anything
+        assertEquals(0, RegionGraph.get(world).getLabelCount());
+    }
+
+    @Test
+    void unloadedSectionsHaveNoNodes() {
+        ServerWorld world = TestWorlds.newWorld();
+
+        assertNull(RegionGraph.get(world).nodeAt(new BlockPos(0, 64, 0)));
+        assertNull(HierarchicalPathPlanner.start(world, new BlockPos(0, 64, 0), new BlockPos(100, 64, 0)));
+        assertEquals(0, RegionGraph.get(world).getLabelCount());
+    }
+
+    @Test
+    void graphIsKeptPerLevel() {
+        ServerWorld world = TestWorlds.newWorld();
+        RegionGraph graph = RegionGraph.get(world);
+        assertSame(graph, RegionGraph.get(world));
+
+        // A new level object for the same dimension, e.g. after the server restarted, starts over
+        ServerWorld reloaded = mock(ServerWorld.class);
+        when(reloaded.dimension()).thenReturn(world.dimension());
+        assertNotSame(graph, RegionGraph.get(reloaded));
+    }
+}
@@ -0,0 +1,90 @@
+package com.aicompanion.mod.entity.ai.pathfinding;
+
+import com.aicompanion.mod.TestWorlds;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PathSnapshotRegionTest {
+    private static final BlockPos FROM = new BlockPos(0, 32, 0);
+    private static final BlockPos TO = new BlockPos(31, 79, 15);
+
+    private ServerWorld world;
+
+    @BeforeEach
+    void setUp() {
+        this.world = TestWorlds.newWorld();
+        TestWorlds.loadChunk(this.world, 0, 0);
+        TestWorlds.loadChunk(this.world, 1, 0);
+    }
+
+    @Test
+    void copiesPalettedSections() {
+        TestWorlds.setBlock(this.world, new BlockPos(3, 40, 4), Blocks.STONE.defaultBlockState());
+        TestWorlds.setBlock(this.world, new BlockPos(15, 47, 15), Blocks.OAK_LOG.defaultBlockState());
+        TestWorlds.setBlock(this.world, new BlockPos(0, 48, 0), Blocks.WATER.defaultBlockState());
+
+        PathSnapshotRegion snapshot = new PathSnapshotRegion(this.world, FROM, TO);
+
+        assertSameBlocks(snapshot, 0, 32, 0, 32, 80, 16);
+    }
+
+    @Test
+    void copiesSectionsUsingTheGlobalPalette() {
+        // More different states than a section palette holds
+        int i = 0;
+        for (BlockState state : Block.BLOCK_STATE_REGISTRY) {
+            if (i >= 600) {
+                break;
+            }
+            TestWorlds.setBlockSilently(this.world, new BlockPos(i & 15, 48 + (i >> 8), (i >> 4) & 15), state);
+            i++;
+        }
+
+        PathSnapshotRegion snapshot = new PathSnapshotRegion(this.world, FROM, TO);
+
+        assertSameBlocks(snapshot, 0, 48, 0, 16, 64, 16);
+    }
+
+    @Test
+    void emptySectionsAndBlocksOutsideReadAsAir() {
+        TestWorlds.setBlock(this.world, new BlockPos(20, 40, 4), Blocks.STONE.defaultBlockState());
+        TestWorlds.setBlock(this.world, new BlockPos(3, 100, 4), Blocks.STONE.defaultBlockState());
+
+        PathSnapshotRegion snapshot = new PathSnapshotRegion(this.world, FROM, TO);
+
+        assertEquals(Blocks.STONE.defaultBlockState(), snapshot.getBlockState(new BlockPos(20, 40, 4)));
+        assertEquals(Blocks.AIR.defaultBlockState(), snapshot.getBlockState(new BlockPos(3, 100, 4)));
+        assertEquals(Blocks.AIR.defaultBlockState(), snapshot.getBlockState(new BlockPos(3, 40, 4)));
+        assertEquals(Blocks.AIR.defaultBlockState(), snapshot.getBlockState(new BlockPos(40, 40, 4)));
+    }
+
+    @Test
+    void laterChangesDontReachTheSnapshot() {
+        BlockPos pos = new BlockPos(5, 50, 5);
+        TestWorlds.setBlock(this.world, pos, Blocks.STONE.defaultBlockState());
+
+        PathSnapshotRegion snapshot = new PathSnapshotRegion(this.world, FROM, TO);
+        TestWorlds.setBlock(this.world, pos, Blocks.DIRT.defaultBlockState());
+
+        assertEquals(Blocks.STONE.defaultBlockState(), snapshot.getBlockState(pos));
+    }
+
+    private void assertSameBlocks(PathSnapshotRegion snapshot, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+        for (int x = minX; x < maxX; x++) {
+            for (int y = minY; y < maxY; y++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    pos.set(x, y, z);
+                    assertEquals(this.world.getBlockState(pos), snapshot.getBlockState(pos), pos.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.aicompanion.mod.network;
+
+import com.aicompanion.mod.network.message.BatchCommandMessage;
+import com.aicompanion.mod.network.message.CommandMessage;
+import com.aicompanion.mod.network.message.CommandPayload;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.util.registry.Bootstrap;
+import net.minecraft.util.text.StringTextComponent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PacketGovernorTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final PacketGovernor governor = PacketGovernor.getInstance();
+
+    @BeforeAll
+    static void bootstrap() {
+        Bootstrap.bootStrap();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.governor.clear();
+    }
+
+    @Test
+    void bucketAllowsABurstThenRefills() {
+        PacketGovernor.Bucket bucket = new PacketGovernor.Bucket(PacketGovernor.Kind.ROSTER);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryTake(now));
+        }
+        assertFalse(bucket.tryTake(now));
+
+        // One per second
+        assertTrue(bucket.tryTake(now + SECOND));
+        assertFalse(bucket.tryTake(now + SECOND));
+    }
+
+    @Test
+    void bucketNeverHoldsMoreThanItsBurst() {
+        PacketGovernor.Bucket bucket = new PacketGovernor.Bucket(PacketGovernor.Kind.ROSTER);
+        long later = System.nanoTime() + 100 * SECOND;
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryTake(later));
+        }
+        assertFalse(bucket.tryTake(later));
+    }
+
+    @Test
+    void throttlingIsReportedOncePerRun() {
+        PacketGovernor.Bucket bucket = new PacketGovernor.Bucket(PacketGovernor.Kind.ROSTER);
+        long now = System.nanoTime();
+
+        assertTrue(bucket.startThrottling());
+        assertFalse(bucket.startThrottling());
+
+        // A packet getting through ends the run
+        assertTrue(bucket.tryTake(now));
+        assertTrue(bucket.startThrottling());
+    }
+
+    @Test
+    void packetsOverTheLimitAreDroppedAndCounted() {
+        ServerPlayerEntity player = player();
+        long dropped = this.governor.getDropped(PacketGovernor.Kind.ROSTER);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(this.governor.tryAcquire(player, PacketGovernor.Kind.ROSTER));
+        }
+        assertFalse(this.governor.tryAcquire(player, PacketGovernor.Kind.ROSTER));
+
+        assertEquals(dropped + 1, this.governor.getDropped(PacketGovernor.Kind.ROSTER));
+        // Each kind and each player has its own bucket
+        assertTrue(this.governor.tryAcquire(player, PacketGovernor.Kind.COMMAND));
+        assertTrue(this.governor.tryAcquire(player(), PacketGovernor.Kind.ROSTER));
+    }
+
+    @Test
+    void laterCommandsForTheSameCompanionReplaceEarlierOnes() {
+        ServerPlayerEntity player = player();
+        UUID companion = UUID.randomUUID();
+        long coalesced = this.governor.getCoalesced();
+
+        this.governor.submitCommand(player, companion, new CommandPayload("follow", null, null), CommandMessage.class);
+        this.governor.submitCommand(player, companion, new CommandPayload("stay", null, null), BatchCommandMessage.class);
+        assertEquals(coalesced + 1, this.governor.getCoalesced());
+
+        // Another companion, or another player's command for the same one, doesn't replace anything
+        this.governor.submitCommand(player, UUID.randomUUID(), new CommandPayload("stay", null, null), CommandMessage.class);
+        this.governor.submitCommand(player(), companion, new CommandPayload("stay", null, null), CommandMessage.class);
+        assertEquals(coalesced + 1, this.governor.getCoalesced());
+    }
+
+    private static ServerPlayerEntity player() {
+        ServerPlayerEntity player = mock(ServerPlayerEntity.class);
+        when(player.getUUID()).thenReturn(UUID.randomUUID());
+        when(player.getName()).thenReturn(new StringTextComponent("Tester"));
+        return player;
+    }
+}
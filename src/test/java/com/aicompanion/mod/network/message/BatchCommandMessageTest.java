@@ -0,0 +1,72 @@
+package com.aicompanion.mod.network.message;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.Bootstrap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchCommandMessageTest {
+    @BeforeAll
+    static void bootstrap() {
+        Bootstrap.bootStrap();
+    }
+
+    @Test
+    void roundTrip() {
+        List<UUID> companions = randomUuids(BatchCommandMessage.MAX_COMPANIONS);
+        BlockPos target = new BlockPos(64, 80, -64);
+        PacketBuffer buffer = newBuffer();
+        BatchCommandMessage.encode(new BatchCommandMessage(companions, new CommandPayload("place", target, null)), buffer);
+
+        BatchCommandMessage decoded = BatchCommandMessage.decode(buffer);
+
+        assertEquals(companions, decoded.getCompanionUuids());
+        assertEquals("place", decoded.getPayload().getCommand());
+        assertEquals(target, decoded.getPayload().getTargetPos());
+        assertTrue(decoded.getPayload().getItem().isEmpty());
+        assertEquals(0, buffer.readableBytes());
+    }
+
+    @Test
+    void emptyBatchRoundTrip() {
+        PacketBuffer buffer = newBuffer();
+        BatchCommandMessage.encode(new BatchCommandMessage(Collections.emptyList(), new CommandPayload("whistle", null, null)), buffer);
+
+        BatchCommandMessage decoded = BatchCommandMessage.decode(buffer);
+
+        assertTrue(decoded.getCompanionUuids().isEmpty());
+        assertEquals("whistle", decoded.getPayload().getCommand());
+    }
+
+    @Test
+    void tooManyCompanionsAreRejected() {
+        PacketBuffer buffer = newBuffer();
+        BatchCommandMessage.encode(new BatchCommandMessage(randomUuids(BatchCommandMessage.MAX_COMPANIONS + 1),
+                new CommandPayload("follow", null, null)), buffer);
+
+        assertThrows(IllegalArgumentException.class, () -> BatchCommandMessage.decode(buffer));
+    }
+
+    private static List<UUID> randomUuids(int count) {
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        return uuids;
+    }
+
+    private static PacketBuffer newBuffer() {
+        return new PacketBuffer(Unpooled.buffer());
+    }
+}
@@ -0,0 +1,119 @@
+package com.aicompanion.mod.network.message;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.item.ItemStack;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.registry.Bootstrap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandMessageTest {
+    private static final UUID COMPANION = UUID.fromString("4f9c1f0e-2b7d-4c55-9a43-0d6a3c1e8b21");
+
+    @BeforeAll
+    static void bootstrap() {
+        Bootstrap.bootStrap();
+    }
+
+    @Test
+    void knownCommandRoundTrip() {
+        BlockPos target = new BlockPos(-120, 70, 33_000);
+        PacketBuffer buffer = newBuffer();
+        CommandMessage.encode(new CommandMessage(COMPANION, "move", target, ItemStack.EMPTY), buffer);
+
+        CommandMessage decoded = CommandMessage.decode(buffer);
+
+        assertEquals(COMPANION, decoded.getCompanionUuid());
+        assertEquals("move", decoded.getPayload().getCommand());
+        assertEquals(target, decoded.getPayload().getTargetPos());
+        assertTrue(decoded.getPayload().getItem().isEmpty());
+        assertEquals(0, buffer.readableBytes());
+    }
+
+    @Test
+    void knownCommandsAreSentAsCodes() {
+        PacketBuffer buffer = newBuffer();
+        CommandMessage.encode(new CommandMessage(COMPANION.toString(), "follow"), buffer);
+
+        // Marker, version, UUID, command code, field mask
+        assertEquals(1 + 1 + 16 + 1 + 1, buffer.readableBytes());
+        CommandMessage decoded = CommandMessage.decode(buffer);
+        assertEquals("follow", decoded.getPayload().getCommand());
+        assertNull(decoded.getPayload().getTargetPos());
+    }
+
+    @Test
+    void customCommandKeepsItsName() {
+        PacketBuffer buffer = newBuffer();
+        CommandMessage.encode(new CommandMessage(COMPANION, "dance", null, null), buffer);
+
+        CommandMessage decoded = CommandMessage.decode(buffer);
+
+        assertEquals("dance", decoded.getPayload().getCommand());
+        assertNull(decoded.getPayload().getTargetPos());
+        assertEquals(0, buffer.readableBytes());
+    }
+
+    @Test
+    void legacyFormatIsStillRead() {
+        BlockPos target = new BlockPos(1, 2, 3);
+        PacketBuffer buffer = newBuffer();
+        buffer.writeUtf(COMPANION.toString(), 36);
+        buffer.writeUtf("break", 100);
+        buffer.writeBoolean(true);
+        buffer.writeBlockPos(target);
+        buffer.writeItem(ItemStack.EMPTY);
+
+        CommandMessage decoded = CommandMessage.decode(buffer);
+
+        assertEquals(COMPANION, decoded.getCompanionUuid());
+        assertEquals("break", decoded.getPayload().getCommand());
+        assertEquals(target, decoded.getPayload().getTargetPos());
+        assertEquals(0, buffer.readableBytes());
+    }
+
+    @Test
+    void legacyFormatWithBadUuidMatchesNoCompanion() {
+        PacketBuffer buffer = newBuffer();
+        buffer.writeUtf("not-a-uuid", 36);
+        buffer.writeUtf("stay", 100);
+        buffer.writeBoolean(false);
+        buffer.writeItem(ItemStack.EMPTY);
+
+        CommandMessage decoded = CommandMessage.decode(buffer);
+
+        assertEquals(new UUID(0L, 0L), decoded.getCompanionUuid());
+        assertEquals("stay", decoded.getPayload().getCommand());
+    }
+
+    @Test
+    void unknownFormatVersionIsRejected() {
+        PacketBuffer buffer = newBuffer();
+        buffer.writeByte(0xFF);
+        buffer.writeByte(2);
+        buffer.writeUUID(COMPANION);
+
+        assertThrows(IllegalArgumentException.class, () -> CommandMessage.decode(buffer));
+    }
+
+    @Test
+    void unknownCommandCodeIsRejected() {
+        PacketBuffer buffer = newBuffer();
+        buffer.writeVarInt(CommandPayload.Command.values().length);
+        buffer.writeByte(0);
+
+        assertThrows(IllegalArgumentException.class, () -> CommandPayload.read(buffer));
+    }
+
+    private static PacketBuffer newBuffer() {
+        return new PacketBuffer(Unpooled.buffer());
+    }
+}
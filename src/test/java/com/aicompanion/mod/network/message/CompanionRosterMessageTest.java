@@ -0,0 +1,102 @@
+package com.aicompanion.mod.network.message;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompanionRosterMessageTest {
+    private static final ResourceLocation OVERWORLD = new ResourceLocation("minecraft", "overworld");
+    private static final ResourceLocation NETHER = new ResourceLocation("minecraft", "the_nether");
+
+    @Test
+    void snapshotRoundTrip() {
+        List<CompanionRosterMessage.Entry> entries = Arrays.asList(
+                entry("Builder", OVERWORLD, new BlockPos(10, 64, -20)),
+                entry("Miner", NETHER, new BlockPos(-300, 12, 4000)));
+
+        CompanionRosterMessage decoded = roundTrip(CompanionRosterMessage.snapshot(1, 3, entries));
+
+        assertEquals(CompanionRosterMessage.Type.SNAPSHOT, decoded.getType());
+        assertEquals(1, decoded.getPage());
+        assertEquals(3, decoded.getPageCount());
+        assertEquals(entries, decoded.getEntries());
+        assertTrue(decoded.getRemoved().isEmpty());
+    }
+
+    @Test
+    void deltaRoundTrip() {
+        List<CompanionRosterMessage.Entry> changed = Collections.singletonList(entry("Scout", OVERWORLD, BlockPos.ZERO));
+        List<UUID> removed = Arrays.asList(UUID.randomUUID(), UUID.randomUUID());
+
+        CompanionRosterMessage decoded = roundTrip(CompanionRosterMessage.delta(changed, removed));
+
+        assertEquals(CompanionRosterMessage.Type.DELTA, decoded.getType());
+        assertEquals(changed, decoded.getEntries());
+        assertEquals(removed, decoded.getRemoved());
+    }
+
+    @Test
+    void longNamesAreCutOff() {
+        String name = repeat('x', 100);
+
+        CompanionRosterMessage decoded = roundTrip(CompanionRosterMessage.delta(
+                Collections.singletonList(entry(name, OVERWORLD, BlockPos.ZERO)), Collections.emptyList()));
+
+        assertEquals(name.substring(0, 64), decoded.getEntries().get(0).getName());
+    }
+
+    @Test
+    void cuttingOffDoesntSplitSurrogatePairs() {
+        // The emoji's high surrogate is the 64th character
+        String name = repeat('x', 63) + "😀" + "tail";
+
+        CompanionRosterMessage decoded = roundTrip(CompanionRosterMessage.delta(
+                Collections.singletonList(entry(name, OVERWORLD, BlockPos.ZERO)), Collections.emptyList()));
+
+        assertEquals(repeat('x', 63), decoded.getEntries().get(0).getName());
+    }
+
+    @Test
+    void oversizedPagesAreRejected() {
+        List<CompanionRosterMessage.Entry> entries = new ArrayList<>();
+        for (int i = 0; i <= CompanionRosterMessage.PAGE_SIZE; i++) {
+            entries.add(entry("Companion " + i, OVERWORLD, BlockPos.ZERO));
+        }
+        PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+        CompanionRosterMessage.encode(CompanionRosterMessage.snapshot(0, 1, entries), buffer);
+
+        assertThrows(IllegalArgumentException.class, () -> CompanionRosterMessage.decode(buffer));
+    }
+
+    private static CompanionRosterMessage roundTrip(CompanionRosterMessage message) {
+        PacketBuffer buffer = new PacketBuffer(Unpooled.buffer());
+        CompanionRosterMessage.encode(message, buffer);
+        CompanionRosterMessage decoded = CompanionRosterMessage.decode(buffer);
+        assertEquals(0, buffer.readableBytes());
+        return decoded;
+    }
+
+    private static CompanionRosterMessage.Entry entry(String name, ResourceLocation dimension, BlockPos pos) {
+        return new CompanionRosterMessage.Entry(UUID.randomUUID(), name, dimension, pos);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
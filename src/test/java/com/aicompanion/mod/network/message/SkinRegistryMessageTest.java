@@ -0,0 +1,102 @@
+package com.aicompanion.mod.network.message;
+
+import com.aicompanion.mod.entity.SkinRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.network.PacketBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkinRegistryMessageTest {
+    private static final SkinRegistry.Skin KNIGHT = new SkinRegistry.Skin("custom", "knight.png");
+    private static final SkinRegistry.Skin WIZARD = new SkinRegistry.Skin("custom", "wizard.png");
+
+    @AfterEach
+    void tearDown() {
+        SkinRegistry.get(true).clear();
+    }
+
+    @Test
+    void roundTrip() {
+        List<SkinRegistryMessage.Entry> entries = Arrays.asList(
+                new SkinRegistryMessage.Entry(0, SkinRegistry.DEFAULT),
+                new SkinRegistryMessage.Entry(7, KNIGHT),
+                new SkinRegistryMessage.Entry(SkinRegistry.MAX_SKINS - 1, WIZARD));
+        PacketBuffer buffer = newBuffer();
+        SkinRegistryMessage.encode(new SkinRegistryMessage(true, entries), buffer);
+
+        SkinRegistryMessage decoded = SkinRegistryMessage.decode(buffer);
+
+        assertTrue(decoded.isFullTable());
+        assertEquals(entries.size(), decoded.getEntries().size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).getId(), decoded.getEntries().get(i).getId());
+            assertEquals(entries.get(i).getSkin(), decoded.getEntries().get(i).getSkin());
+        }
+        assertEquals(0, buffer.readableBytes());
+    }
+
+    @Test
+    void idsBeyondTheTableAreRejected() {
+        PacketBuffer buffer = newBuffer();
+        SkinRegistryMessage.encode(new SkinRegistryMessage(false, Collections.singletonList(
+                new SkinRegistryMessage.Entry(SkinRegistry.MAX_SKINS, KNIGHT))), buffer);
+
+        assertThrows(IllegalArgumentException.class, () -> SkinRegistryMessage.decode(buffer));
+    }
+
+    @Test
+    void overlongSkinsAreRejected() {
+        PacketBuffer buffer = newBuffer();
+        buffer.writeBoolean(false);
+        buffer.writeVarInt(1);
+        buffer.writeVarInt(1);
+        buffer.writeUtf("custom");
+        buffer.writeUtf(repeat('a', SkinRegistry.MAX_LENGTH + 1));
+
+        assertThrows(DecoderException.class, () -> SkinRegistryMessage.decode(buffer));
+        assertTrue(SkinRegistry.isValid(repeat('a', SkinRegistry.MAX_LENGTH)));
+        assertFalse(SkinRegistry.isValid(repeat('a', SkinRegistry.MAX_LENGTH + 1)));
+    }
+
+    @Test
+    void clientTakesOverTheServersTable() {
+        SkinRegistry client = SkinRegistry.get(true);
+        client.accept(new SkinRegistryMessage(true, Arrays.asList(
+                new SkinRegistryMessage.Entry(0, SkinRegistry.DEFAULT),
+                new SkinRegistryMessage.Entry(1, KNIGHT))));
+        client.accept(new SkinRegistryMessage(false, Collections.singletonList(new SkinRegistryMessage.Entry(2, WIZARD))));
+
+        assertEquals(KNIGHT, client.getSkin(1));
+        assertEquals(WIZARD, client.getSkin(2));
+        // Unknown ids show the default skin
+        assertEquals(SkinRegistry.DEFAULT, client.getSkin(3));
+        assertEquals(SkinRegistry.DEFAULT, client.getSkin(-1));
+
+        // A full table replaces everything sent before
+        client.accept(new SkinRegistryMessage(true, Collections.singletonList(new SkinRegistryMessage.Entry(1, WIZARD))));
+        assertEquals(WIZARD, client.getSkin(1));
+        assertEquals(SkinRegistry.DEFAULT, client.getSkin(2));
+    }
+
+    private static PacketBuffer newBuffer() {
+        return new PacketBuffer(Unpooled.buffer());
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
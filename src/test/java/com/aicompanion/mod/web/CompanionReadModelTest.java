@@ -0,0 +1,39 @@
+package com.aicompanion.mod.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompanionReadModelTest {
+    private final CompanionReadModel model = CompanionReadModel.getInstance();
+
+    @Test
+    void versionsKeepCountingAcrossClears() {
+        CompanionReadModel.View before = this.model.getView();
+
+        this.model.clear();
+        CompanionReadModel.View after = this.model.getView();
+
+        assertTrue(after.getVersion() > before.getVersion());
+        assertNull(after.get(UUID.randomUUID()));
+        assertEquals("{\"companions\":[]}", after.toJson());
+    }
+
+    @Test
+    void versionsStartAfterEarlierRuns() {
+        // An ETag handed out before a restart must not match the new run's first version
+        assertTrue(this.model.getView().getVersion() > 1_600_000_000_000L);
+    }
+
+    @Test
+    void viewJsonIsBuiltOnce() {
+        CompanionReadModel.View view = this.model.getView();
+
+        assertSame(view.toJson(), view.toJson());
+    }
+}
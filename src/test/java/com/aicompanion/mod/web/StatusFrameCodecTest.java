@@ -0,0 +1,170 @@
+package com.aicompanion.mod.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StatusFrameCodecTest {
+    private static final UUID COMPANION = UUID.fromString("0b7c3e52-9a1d-4f0e-8c6b-2d4a5e6f7a8b");
+    private static final UUID OWNER = UUID.fromString("7d9e0f1a-2b3c-4d5e-9f60-718293a4b5c6");
+    private static final String OVERWORLD = "minecraft:overworld";
+
+    @Test
+    void fullRecordRoundTrip() {
+        StatusSnapshot.CompanionStatus status = status(OWNER, "Builder", 12.34D, 64.0D, -7.06D, 17.5F, "mine", true);
+
+        OutboundFrame frame = StatusFrameCodec.encodeFull(5, status);
+        assertFalse(frame.isText());
+        Reader reader = new Reader(frame);
+
+        assertEquals(StatusFrameCodec.RECORD_FULL, reader.readByte());
+        assertEquals(5, reader.readVarInt());
+        assertEquals(COMPANION, reader.readUuid());
+        assertEquals(3, reader.readByte());
+        assertEquals(OWNER, reader.readUuid());
+        assertEquals("Builder", reader.readString());
+        assertEquals(OVERWORLD, reader.readString());
+        assertEquals(123, reader.readSignedVarInt());
+        assertEquals(640, reader.readSignedVarInt());
+        assertEquals(-71, reader.readSignedVarInt());
+        assertEquals(175, reader.readSignedVarInt());
+        assertEquals(200, reader.readSignedVarInt());
+        assertEquals("mine", reader.readString());
+        reader.assertFinished();
+    }
+
+    @Test
+    void fullRecordWithoutOwner() {
+        StatusSnapshot.CompanionStatus status = status(null, "Stray", 0.0D, 0.0D, 0.0D, 20.0F, "idle", false);
+        Reader reader = new Reader(StatusFrameCodec.encodeFull(300, status));
+
+        assertEquals(StatusFrameCodec.RECORD_FULL, reader.readByte());
+        assertEquals(300, reader.readVarInt());
+        assertEquals(COMPANION, reader.readUuid());
+        assertEquals(0, reader.readByte());
+        assertEquals("Stray", reader.readString());
+    }
+
+    @Test
+    void deltaOnlyHoldsWhatChanged() {
+        StatusSnapshot.CompanionStatus previous = status(OWNER, "Builder", 10.0D, 64.0D, 10.0D, 20.0F, "follow", true);
+        StatusSnapshot.CompanionStatus moved = status(OWNER, "Builder", 9.5D, 64.0D, 12.0D, 20.0F, "follow", true);
+
+        Reader reader = new Reader(StatusFrameCodec.encodeDelta(5, previous, moved));
+
+        assertEquals(StatusFrameCodec.RECORD_DELTA, reader.readByte());
+        assertEquals(5, reader.readVarInt());
+        assertEquals(1, reader.readByte());
+        assertEquals(-5, reader.readSignedVarInt());
+        assertEquals(0, reader.readSignedVarInt());
+        assertEquals(20, reader.readSignedVarInt());
+        reader.assertFinished();
+    }
+
+    @Test
+    void deltaWithHealthTaskAndActive() {
+        StatusSnapshot.CompanionStatus previous = status(OWNER, "Builder", 10.0D, 64.0D, 10.0D, 20.0F, "follow", true);
+        StatusSnapshot.CompanionStatus hurt = status(OWNER, "Builder", 10.0D, 64.0D, 10.0D, 14.5F, "idle", false);
+
+        Reader reader = new Reader(StatusFrameCodec.encodeDelta(5, previous, hurt));
+
+        assertEquals(StatusFrameCodec.RECORD_DELTA, reader.readByte());
+        assertEquals(5, reader.readVarInt());
+        // Health, task and active, with active now false
+        assertEquals(2 | 8 | 16, reader.readByte());
+        assertEquals(-55, reader.readSignedVarInt());
+        assertEquals("idle", reader.readString());
+        reader.assertFinished();
+    }
+
+    @Test
+    void unchangedStatusIsAnEmptyDelta() {
+        StatusSnapshot.CompanionStatus status = status(OWNER, "Builder", 10.0D, 64.0D, 10.0D, 20.0F, "follow", true);
+
+        Reader reader = new Reader(StatusFrameCodec.encodeDelta(5, status, status));
+
+        assertEquals(StatusFrameCodec.RECORD_DELTA, reader.readByte());
+        assertEquals(5, reader.readVarInt());
+        assertEquals(0, reader.readByte());
+        reader.assertFinished();
+    }
+
+    @Test
+    void identityChangesNeedAFullRecord() {
+        StatusSnapshot.CompanionStatus previous = status(OWNER, "Builder", 10.0D, 64.0D, 10.0D, 20.0F, "follow", true);
+
+        assertNull(StatusFrameCodec.encodeDelta(5, previous, status(OWNER, "Renamed", 10.0D, 64.0D, 10.0D, 20.0F, "follow", true)));
+        assertNull(StatusFrameCodec.encodeDelta(5, previous, status(null, "Builder", 10.0D, 64.0D, 10.0D, 20.0F, "follow", true)));
+        StatusSnapshot.CompanionStatus nether = new StatusSnapshot.CompanionStatus(COMPANION, "Builder", OWNER,
+                "minecraft:the_nether", 10.0D, 64.0D, 10.0D, 20.0F, 20.0F, "follow", true);
+        assertNull(StatusFrameCodec.encodeDelta(5, previous, nether));
+        assertNotNull(StatusFrameCodec.encodeDelta(5, previous, previous));
+    }
+
+    @Test
+    void removedRecord() {
+        Reader reader = new Reader(StatusFrameCodec.encodeRemoved(1000));
+
+        assertEquals(StatusFrameCodec.RECORD_REMOVED, reader.readByte());
+        assertEquals(1000, reader.readVarInt());
+        reader.assertFinished();
+    }
+
+    private static StatusSnapshot.CompanionStatus status(UUID owner, String name, double x, double y, double z,
+                                                         float health, String task, boolean active) {
+        return new StatusSnapshot.CompanionStatus(COMPANION, name, owner, OVERWORLD, x, y, z, health, 20.0F, task, active);
+    }
+
+    /**
+     * Reads frames the way scripts.js does
+     */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+
+        Reader(OutboundFrame frame) {
+            this.buffer = frame.getPayload();
+        }
+
+        int readByte() {
+            return this.buffer.get() & 0xFF;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = this.readByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        int readSignedVarInt() {
+            int value = this.readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        UUID readUuid() {
+            return new UUID(this.buffer.getLong(), this.buffer.getLong());
+        }
+
+        String readString() {
+            byte[] bytes = new byte[this.readVarInt()];
+            this.buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void assertFinished() {
+            assertEquals(0, this.buffer.remaining());
+        }
+    }
+}
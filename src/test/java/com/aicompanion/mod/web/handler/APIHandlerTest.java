@@ -0,0 +1,51 @@
+package com.aicompanion.mod.web.handler;
+
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class APIHandlerTest {
+    private static final String ETAG = "\"companions-42\"";
+
+    @Test
+    void matchingETagIsNotModified() {
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+
+        assertTrue(APIHandler.isNotModified(request(ETAG), resp, ETAG));
+
+        verify(resp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(resp).setHeader("ETag", ETAG);
+    }
+
+    @Test
+    void anyOfSeveralETagsMatches() {
+        assertTrue(APIHandler.isNotModified(request("\"companions-41\", " + ETAG), mock(HttpServletResponse.class), ETAG));
+        assertTrue(APIHandler.isNotModified(request("*"), mock(HttpServletResponse.class), ETAG));
+    }
+
+    @Test
+    void otherVersionsGetTheFullResponse() {
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+
+        assertFalse(APIHandler.isNotModified(request("\"companions-41\""), resp, ETAG));
+        assertFalse(APIHandler.isNotModified(request("\"companion-42\""), resp, ETAG));
+        assertFalse(APIHandler.isNotModified(request(null), resp, ETAG));
+
+        verify(resp, never()).setStatus(anyInt());
+    }
+
+    private static HttpServletRequest request(String ifNoneMatch) {
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        return req;
+    }
+}
@@ -0,0 +1,95 @@
+package com.aicompanion.mod.world;
+
+import com.aicompanion.mod.TestWorlds;
+import net.minecraft.block.Block;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+class BlockPresenceIndexTest {
+    private static final BlockPos CENTER = new BlockPos(8, 64, 8);
+
+    private ServerWorld world;
+    private BlockPresenceIndex index;
+    private Set<Block> diamonds;
+    private long time;
+
+    @BeforeEach
+    void setUp() {
+        this.world = TestWorlds.newWorld();
+        this.time = 0L;
+        when(this.world.getGameTime()).thenAnswer(invocation -> this.time);
+        for (int x = -1; x <= 1; x++) {
+            for (int z = -1; z <= 1; z++) {
+                TestWorlds.loadChunk(this.world, x, z);
+            }
+        }
+        this.index = BlockPresenceIndex.get(this.world);
+        this.diamonds = Collections.singleton(Blocks.DIAMOND_ORE);
+    }
+
+    @Test
+    void findsTheNearestMatchesFirst() {
+        BlockPos far = new BlockPos(-10, 70, 20);
+        BlockPos near = new BlockPos(10, 60, 8);
+        BlockPos nearest = new BlockPos(8, 65, 9);
+        for (BlockPos pos : Arrays.asList(far, near, nearest)) {
+            TestWorlds.setBlock(this.world, pos, Blocks.DIAMOND_ORE.defaultBlockState());
+        }
+
+        assertEquals(Arrays.asList(nearest, near), this.index.findBlocks(this.world, CENTER, 24, this.diamonds, 2));
+        assertEquals(Arrays.asList(nearest, near, far), this.index.findBlocks(this.world, CENTER, 24, this.diamonds, 10));
+        assertEquals(nearest, this.index.findNearest(this.world, CENTER, 24, this.diamonds));
+    }
+
+    @Test
+    void onlySearchesWithinTheRadius() {
+        TestWorlds.setBlock(this.world, new BlockPos(20, 64, 8), Blocks.DIAMOND_ORE.defaultBlockState());
+
+        assertNull(this.index.findNearest(this.world, CENTER, 8, this.diamonds));
+        assertEquals(new BlockPos(20, 64, 8), this.index.findNearest(this.world, CENTER, 12, this.diamonds));
+    }
+
+    @Test
+    void placedBlocksAreFoundRightAway() {
+        assertNull(this.index.findNearest(this.world, CENTER, 16, this.diamonds));
+
+        TestWorlds.setBlock(this.world, new BlockPos(4, 64, 4), Blocks.DIAMOND_ORE.defaultBlockState());
+
+        assertEquals(new BlockPos(4, 64, 4), this.index.findNearest(this.world, CENTER, 16, this.diamonds));
+    }
+
+    @Test
+    void untrackedBlocksAreFoundOnceTheEntryIsRead() {
+        assertNull(this.index.findNearest(this.world, CENTER, 16, this.diamonds));
+
+        // The section's entry doesn't know about it, so the section isn't scanned
+        TestWorlds.setBlockSilently(this.world, new BlockPos(4, 64, 4), Blocks.DIAMOND_ORE.defaultBlockState());
+        assertNull(this.index.findNearest(this.world, CENTER, 16, this.diamonds));
+
+        this.time += 600;
+        assertEquals(new BlockPos(4, 64, 4), this.index.findNearest(this.world, CENTER, 16, this.diamonds));
+    }
+
+    @Test
+    void anyOfSeveralBlocksMatches() {
+        TestWorlds.setBlock(this.world, new BlockPos(2, 64, 2), Blocks.GOLD_ORE.defaultBlockState());
+        TestWorlds.setBlock(this.world, new BlockPos(-6, 64, -6), Blocks.DIAMOND_ORE.defaultBlockState());
+        Set<Block> ores = new HashSet<>(Arrays.asList(Blocks.DIAMOND_ORE, Blocks.GOLD_ORE));
+
+        assertTrue(this.index.findBlocks(this.world, CENTER, 24, ores, 10).containsAll(
+                Arrays.asList(new BlockPos(2, 64, 2), new BlockPos(-6, 64, -6))));
+    }
+}
@@ -0,0 +1,72 @@
+package com.aicompanion.mod.world;
+
+import com.aicompanion.mod.TestWorlds;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.fml.LogicalSide;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlockStateMemoTest {
+    private static final BlockPos POS = new BlockPos(3, 64, 5);
+
+    private ServerWorld world;
+
+    @BeforeEach
+    void setUp() {
+        this.world = TestWorlds.newWorld();
+        TestWorlds.loadChunk(this.world, 0, 0);
+        TestWorlds.setBlock(this.world, POS, Blocks.STONE.defaultBlockState());
+    }
+
+    @Test
+    void repeatedReadsHitTheMemo() {
+        long hits = BlockStateMemo.getHits();
+        long misses = BlockStateMemo.getMisses();
+
+        assertEquals(Blocks.STONE.defaultBlockState(), BlockStateMemo.getBlockState(this.world, POS));
+        assertEquals(Blocks.STONE.defaultBlockState(), BlockStateMemo.getBlockState(this.world, POS));
+        assertEquals(Blocks.STONE.defaultBlockState(), BlockStateMemo.getBlockState(this.world, new BlockPos(POS)));
+
+        verify(this.world, times(1)).getBlockState(POS);
+        assertEquals(hits + 2, BlockStateMemo.getHits());
+        assertEquals(misses + 1, BlockStateMemo.getMisses());
+    }
+
+    @Test
+    void trackedChangesAreSeenRightAway() {
+        BlockStateMemo.getBlockState(this.world, POS);
+
+        TestWorlds.setBlock(this.world, POS, Blocks.DIRT.defaultBlockState());
+
+        assertEquals(Blocks.DIRT.defaultBlockState(), BlockStateMemo.getBlockState(this.world, POS));
+    }
+
+    @Test
+    void memoOnlyLastsOneTick() {
+        BlockStateMemo.getBlockState(this.world, POS);
+        TestWorlds.setBlockSilently(this.world, POS, Blocks.DIRT.defaultBlockState());
+        assertEquals(Blocks.STONE.defaultBlockState(), BlockStateMemo.getBlockState(this.world, POS));
+
+        BlockStateMemo.onWorldTick(new TickEvent.WorldTickEvent(LogicalSide.SERVER, TickEvent.Phase.START, this.world));
+
+        assertEquals(Blocks.DIRT.defaultBlockState(), BlockStateMemo.getBlockState(this.world, POS));
+    }
+
+    @Test
+    void clientWorldsAreReadDirectly() {
+        when(this.world.isClientSide()).thenReturn(true);
+
+        BlockStateMemo.getBlockState(this.world, POS);
+        BlockStateMemo.getBlockState(this.world, POS);
+
+        verify(this.world, times(2)).getBlockState(POS);
+    }
+}